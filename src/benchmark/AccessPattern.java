@@ -0,0 +1,94 @@
+package benchmark;
+
+import java.util.SplittableRandom;
+
+/** This enum is the set of ways the benchmark picks which rows an operation touches. Keys are drawn ahead of time into
+ * a ring that the operations walk through, so drawing a key is never part of what is being measured.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+enum AccessPattern {
+
+    /** Every row is equally likely to be picked. */
+    UNIFORM {
+        @Override
+        int[] keys(int rows, SplittableRandom random) {
+            int[] keys = new int[RING_SIZE];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = random.nextInt(rows);
+            }
+            return keys;
+        }
+    },
+
+    /** Rows are picked from a Zipf distribution with an exponent of 0.99, the same skew YCSB uses, so a small set of
+     * popular rows takes most of the traffic. The popular rows are scattered across the catalog rather than being the
+     * first rows added.
+     * */
+    SKEWED {
+        @Override
+        int[] keys(int rows, SplittableRandom random) {
+            Zipf zipf = new Zipf(rows);
+            int[] keys = new int[RING_SIZE];
+            for (int i = 0; i < keys.length; i++) {
+                keys[i] = scramble(zipf.next(random.nextDouble()), rows);
+            }
+            return keys;
+        }
+    };
+
+    /** The number of keys drawn ahead of time, which is a power of two so the ring can be walked with a mask. */
+    static final int RING_SIZE = 1 << 20;
+
+    /** This method draws the keys for one run of an operation.
+     * @param rows the number of rows in the catalog
+     * @param random the source of randomness
+     * @return RING_SIZE row numbers between zero and rows
+     * */
+    abstract int[] keys(int rows, SplittableRandom random);
+
+    private static int scramble(long rank, int rows) {
+        long h = rank * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 32;
+        return (int) Long.remainderUnsigned(h, rows);
+    }
+
+    /** This class draws ranks from a Zipf distribution using the method from Gray et al., "Quickly Generating
+     * Billion-Record Synthetic Databases", which is what YCSB's ZipfianGenerator is built on.
+     * */
+    private static final class Zipf {
+        private static final double THETA = 0.99;
+
+        private final int items;
+        private final double alpha;
+        private final double zetaN;
+        private final double eta;
+
+        Zipf(int items) {
+            this.items = items;
+            double zeta2 = zeta(2);
+            zetaN = zeta(items);
+            alpha = 1.0 / (1.0 - THETA);
+            eta = (1 - Math.pow(2.0 / items, 1 - THETA)) / (1 - zeta2 / zetaN);
+        }
+
+        long next(double u) {
+            double uz = u * zetaN;
+            if (uz < 1.0) {
+                return 0;
+            }
+            if (uz < 1.0 + Math.pow(0.5, THETA)) {
+                return 1;
+            }
+            return Math.min(items - 1, (long) (items * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(long n) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, THETA);
+            }
+            return sum;
+        }
+    }
+}
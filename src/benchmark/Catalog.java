@@ -0,0 +1,93 @@
+package benchmark;
+
+import model.InHouse;
+import model.Inventory;
+import model.Outsourced;
+import model.Part;
+import model.Product;
+
+/** This class fills the Inventory with a generated catalog and remembers the ID of each row, so that operations can
+ * turn the row numbers drawn by an AccessPattern into IDs. Names are built from a row's number, so the name of any row
+ * can be rebuilt without keeping millions of Strings around. The catalog has one Product for every ten Parts.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class Catalog {
+
+    private static final String[] PART_WORDS = {"Bolt", "Bracket", "Cable", "Clamp", "Gasket", "Gear", "Hinge",
+            "Nut", "Pulley", "Rivet", "Screw", "Seal", "Spring", "Valve", "Washer", "Wheel"};
+    private static final String[] PRODUCT_WORDS = {"Bicycle", "Cart", "Drill", "Fan", "Grinder", "Lamp", "Mixer",
+            "Pump", "Scooter", "Trailer"};
+    private static final int COMPANIES = 50;
+
+    final int[] partIds;
+    final int[] productIds;
+    // IDs kept free for the add benchmarks, which delete what they add, so they can add under the same IDs every batch
+    final int[] sparePartIds = new int[Operation.BATCH_SIZE];
+    final int[] spareProductIds = new int[Operation.BATCH_SIZE];
+
+    /** This is the Catalog class constructor, which adds every Part and Product to the Inventory.
+     * @param partCount the number of Parts to add
+     * */
+    Catalog(int partCount) {
+        partIds = new int[partCount];
+        for (int row = 0; row < partCount; row++) {
+            partIds[row] = Inventory.getNextUniquePartId();
+            Inventory.addPart(newPart(partIds[row], row));
+        }
+        productIds = new int[Math.max(1, partCount / 10)];
+        for (int row = 0; row < productIds.length; row++) {
+            productIds[row] = Inventory.getNextUniqueProductId();
+            Inventory.addProduct(newProduct(productIds[row], row));
+        }
+        for (int i = 0; i < Operation.BATCH_SIZE; i++) {
+            sparePartIds[i] = Inventory.getNextUniquePartId();
+            spareProductIds[i] = Inventory.getNextUniqueProductId();
+        }
+    }
+
+    /** This method builds a Part for a row, alternating between InHouse and Outsourced parts.
+     * @param id the Part's ID
+     * @param row the row number the name and fields are built from
+     * @return a new Part
+     * */
+    Part newPart(int id, int row) {
+        if ((row & 1) == 0) {
+            return new InHouse(id, partName(row), 1.99 + row % 100, row % 500, 0, 1000, row % 20);
+        }
+        return new Outsourced(id, partName(row), 1.99 + row % 100, row % 500, 0, 1000,
+                "Supplier " + row % COMPANIES);
+    }
+
+    /** This method builds a Product for a row, associated with two Parts from the catalog.
+     * @param id the Product's ID
+     * @param row the row number the name and fields are built from
+     * @return a new Product
+     * */
+    Product newProduct(int id, int row) {
+        Product product = new Product(id, productName(row), 49.99 + row % 50, row % 50, 0, 100);
+        for (int i = 0; i < 2; i++) {
+            Part part = Inventory.lookupPart(partIds[(row * 2 + i) % partIds.length]);
+            if (part != null) {
+                product.addAssociatedPart(part);
+            }
+        }
+        return product;
+    }
+
+    /** This method returns the name given to the Part in a row.
+     * @param row the row number
+     * @return the Part's name
+     * */
+    static String partName(int row) {
+        return PART_WORDS[row & 15] + " " + row;
+    }
+
+    /** This method returns the name given to the Product in a row.
+     * @param row the row number
+     * @return the Product's name
+     * */
+    static String productName(int row) {
+        return PRODUCT_WORDS[row % PRODUCT_WORDS.length] + " " + row;
+    }
+}
@@ -0,0 +1,221 @@
+package benchmark;
+
+import model.CommandClient;
+import model.CommandServer;
+import model.Inventory;
+import model.InventoryServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/** This class is a command line benchmark of stock changes sent through the binary command protocol of CommandServer,
+ * against the same changes sent one request each to the JSON endpoint of InventoryServer. It fills the Inventory with
+ * a generated catalog and starts both servers in the same process, and then each connection sends changes of one unit
+ * up or down to random Parts for a while, as fast as it can. Over HTTP each change waits for its answer before the next
+ * is sent; through the command protocol changes are sent without waiting, up to the window. Every connection count is
+ * run over both, and the total stock is checked against the changes answered as made.
+ * Usage: CommandBenchmark [-parts partCount] [-connections 1,4,...] [-window commands] [-t secondsPerRun]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class CommandBenchmark {
+
+    private int partCount = 100_000;
+    private int[] connectionCounts = {1, 4, 16};
+    private int window = 4_096;
+    private long runNanos = 3_000_000_000L;
+
+    private CommandBenchmark() { }
+
+    /** This is the main method that runs the benchmark.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        CommandBenchmark benchmark = new CommandBenchmark();
+        try {
+            benchmark.parse(args);
+            // Set before the Inventory class loads, since it reads them once when it starts
+            Path scratch = Files.createTempDirectory("inventory-commands");
+            System.setProperty("inventory.persist", "false");
+            System.setProperty("inventory.dataDir", scratch.toString());
+            try {
+                benchmark.runAll();
+            }
+            finally {
+                Files.deleteIfExists(scratch.resolve("ids.properties"));
+                Files.deleteIfExists(scratch.resolve("ids.properties.lock"));
+                Files.deleteIfExists(scratch);
+            }
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException | InterruptedException exception) {
+            System.out.println("The benchmark could not be run: " + exception);
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-parts":
+                    partCount = Integer.parseInt(value);
+                    break;
+                case "-connections":
+                    connectionCounts = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim()))
+                            .toArray();
+                    break;
+                case "-window":
+                    window = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    runNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (partCount < 1 || window < 1 || Arrays.stream(connectionCounts).anyMatch(count -> count < 1)) {
+            throw new IllegalArgumentException("-parts, -window and -connections must be positive");
+        }
+    }
+
+    private void runAll() throws IOException, InterruptedException {
+        Catalog catalog = new Catalog(partCount);
+        InventoryServer http = InventoryServer.start(0, 16);
+        CommandServer commands = CommandServer.start(0, 4);
+        HttpClient httpClient = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+        try {
+            System.out.println(String.format("%,d parts, window of %d commands, %.1f s per run", partCount, window,
+                    runNanos / 1e9));
+            System.out.println(String.format("%-9s %12s %14s %12s %12s %10s", "Protocol", "Connections",
+                    "changes/s", "made", "turned down", "checked"));
+            // One unreported run of each warms the JIT up, so the first connection count is not measured cold
+            run(catalog, connectionCounts[0], false, httpClient, http, commands);
+            run(catalog, connectionCounts[0], true, httpClient, http, commands);
+            for (int connections : connectionCounts) {
+                for (boolean binary : new boolean[] {false, true}) {
+                    run(catalog, connections, binary, httpClient, http, commands);
+                }
+            }
+        }
+        finally {
+            commands.stop();
+            http.stop();
+        }
+    }
+
+    private void run(Catalog catalog, int connections, boolean binary, HttpClient httpClient, InventoryServer http,
+                     CommandServer commands) throws InterruptedException {
+        long stockBefore = Inventory.getStatistics().getPartStock();
+        LongAdder made = new LongAdder();
+        LongAdder turnedDown = new LongAdder();
+        LongAdder netChange = new LongAdder();
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> senders = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            SplittableRandom random = new SplittableRandom(c * 7919L + connections);
+            Runnable sender = binary ? () -> sendCommands(catalog, random, commands.getPort(), start, deadline, made,
+                    turnedDown, netChange, failure)
+                    : () -> sendRequests(catalog, random, httpClient, "http://127.0.0.1:" + http.getPort(), start,
+                    deadline, made, turnedDown, netChange, failure);
+            Thread thread = new Thread(sender, "stock-sender-" + c);
+            senders.add(thread);
+            thread.start();
+        }
+        deadline[0] = System.nanoTime() + runNanos;
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        long elapsed = System.nanoTime() - started;
+        if (failure.get() != null) {
+            throw new IllegalStateException("A connection failed", failure.get());
+        }
+        boolean checked = Inventory.getStatistics().getPartStock() == stockBefore + netChange.sum();
+        System.out.println(String.format("%-9s %12d %14.0f %12d %12d %10s", binary ? "commands" : "HTTP",
+                connections, (made.sum() + turnedDown.sum()) * 1e9 / elapsed, made.sum(), turnedDown.sum(),
+                checked ? "ok" : "WRONG"));
+    }
+
+    private void sendCommands(Catalog catalog, SplittableRandom random, int port, CountDownLatch start,
+                              long[] deadline, LongAdder made, LongAdder turnedDown, LongAdder netChange,
+                              AtomicReference<Exception> failure) {
+        // The change sent under each sequence number still waiting for an answer
+        int[] changes = new int[Integer.highestOneBit(window) * 2];
+        long[] net = new long[1];
+        try (CommandClient client = CommandClient.connect("127.0.0.1", port, window)) {
+            client.setListener((sequence, outcome, partId) -> {
+                if (outcome == CommandClient.Outcome.APPLIED) {
+                    net[0] += changes[(int) sequence & (changes.length - 1)];
+                }
+            });
+            start.await();
+            while (System.nanoTime() - deadline[0] < 0) {
+                // The clock is only read every so often, since a command costs far less than reading it
+                for (int i = 0; i < 256; i++) {
+                    int change = random.nextBoolean() ? 1 : -1;
+                    long sequence = client.adjustStock(catalog.partIds[random.nextInt(catalog.partIds.length)],
+                            change);
+                    changes[(int) sequence & (changes.length - 1)] = change;
+                }
+            }
+            client.sync();
+            made.add(client.getAppliedCount());
+            turnedDown.add(client.getRejectedCount() + client.getInvalidCount());
+            netChange.add(net[0]);
+        }
+        catch (IOException | InterruptedException exception) {
+            failure.compareAndSet(null, exception);
+        }
+    }
+
+    private static void sendRequests(Catalog catalog, SplittableRandom random, HttpClient httpClient, String base,
+                                     CountDownLatch start, long[] deadline, LongAdder made, LongAdder turnedDown,
+                                     LongAdder netChange, AtomicReference<Exception> failure) {
+        try {
+            start.await();
+            while (System.nanoTime() - deadline[0] < 0) {
+                int change = random.nextBoolean() ? 1 : -1;
+                HttpRequest request = HttpRequest.newBuilder(URI.create(base + "/parts/"
+                        + catalog.partIds[random.nextInt(catalog.partIds.length)] + "/stock?delta=" + change))
+                        .POST(HttpRequest.BodyPublishers.noBody()).build();
+                int status = httpClient.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                if (status == 200) {
+                    made.increment();
+                    netChange.add(change);
+                }
+                else if (status == 409) {
+                    turnedDown.increment();
+                }
+                else {
+                    throw new IOException("The server answered " + status);
+                }
+            }
+        }
+        catch (IOException | InterruptedException exception) {
+            failure.compareAndSet(null, exception);
+        }
+    }
+}
@@ -0,0 +1,219 @@
+package benchmark;
+
+import model.InHouse;
+import model.Inventory;
+import model.StockReservation;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+
+/** This class is a command line benchmark of stock reservations under contention, where many builder threads keep
+ * reserving and committing stock from a handful of hot Parts. Each transaction reserves one unit from several hot Parts
+ * picked at random and commits it, and a builder turned down for want of stock restocks the Parts it wanted and goes
+ * on. Every thread count is run twice, once through Inventory.reserveStock() as it is, which only locks the stripes of
+ * the Parts a transaction touches, and once with every transaction behind one global lock, the way the inventory would
+ * have to work without striped transactions. At the end of each run the stock is checked against what was committed
+ * and restocked, and no Part may be below its minimum.
+ * Usage: ContentionBenchmark [-threads 1,2,4,...] [-hot partCount] [-width partsPerTransaction]
+ * [-t secondsPerRun]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class ContentionBenchmark {
+
+    private static final int STOCK = 1_000;
+    private static final int MIN = 10;
+    private static final int MAX = Integer.MAX_VALUE;
+    private static final Object GLOBAL_LOCK = new Object();
+
+    private int[] threadCounts = {1, 2, 4, 8, 16, 32};
+    private int hotParts = 8;
+    private int width = 3;
+    private long runNanos = 2_000_000_000L;
+
+    private ContentionBenchmark() { }
+
+    /** This is the main method that runs the benchmark.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        ContentionBenchmark benchmark = new ContentionBenchmark();
+        try {
+            benchmark.parse(args);
+            // Set before the Inventory class loads, since it reads them once when it starts
+            Path scratch = Files.createTempDirectory("inventory-contention");
+            System.setProperty("inventory.persist", "false");
+            System.setProperty("inventory.dataDir", scratch.toString());
+            try {
+                benchmark.runAll();
+            }
+            finally {
+                Files.deleteIfExists(scratch.resolve("ids.properties"));
+                Files.deleteIfExists(scratch.resolve("ids.properties.lock"));
+                Files.deleteIfExists(scratch);
+            }
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException | InterruptedException exception) {
+            System.out.println("The benchmark could not be run: " + exception);
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-threads":
+                    threadCounts = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    break;
+                case "-hot":
+                    hotParts = Integer.parseInt(value);
+                    break;
+                case "-width":
+                    width = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    runNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (hotParts < 1 || width < 1 || width > hotParts) {
+            throw new IllegalArgumentException("-width must be between 1 and the number of hot Parts");
+        }
+    }
+
+    private void runAll() throws InterruptedException {
+        int[] partIds = new int[hotParts];
+        for (int i = 0; i < hotParts; i++) {
+            partIds[i] = Inventory.getNextUniquePartId();
+            Inventory.addPart(new InHouse(partIds[i], "Hot part " + (i + 1), 1.0, STOCK, MIN, MAX, i + 1));
+        }
+        System.out.println(String.format("%d hot parts, %d parts per transaction, %.1f s per run", hotParts, width,
+                runNanos / 1e9));
+        System.out.println(String.format("%-8s %8s %16s %16s %12s %10s", "Locking", "Threads", "commits/s",
+                "rejections/s", "restocks", "checked"));
+        // One unreported run of each kind warms the JIT up, so the first thread count is not measured cold
+        run(partIds, threadCounts[0], false, false);
+        run(partIds, threadCounts[0], true, false);
+        for (int threads : threadCounts) {
+            for (boolean global : new boolean[] {false, true}) {
+                run(partIds, threads, global, true);
+            }
+        }
+    }
+
+    private void run(int[] partIds, int threads, boolean global, boolean report) throws InterruptedException {
+        long stockBefore = totalStock(partIds);
+        LongAdder commits = new LongAdder();
+        LongAdder rejections = new LongAdder();
+        LongAdder restocked = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        long[] deadline = new long[1];
+        List<Thread> builders = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            SplittableRandom random = new SplittableRandom(t * 7919L + threads);
+            Thread builder = new Thread(() -> {
+                int[] wanted = new int[width];
+                int[] quantities = new int[width];
+                Arrays.fill(quantities, 1);
+                try {
+                    start.await();
+                }
+                catch (InterruptedException exception) {
+                    return;
+                }
+                while (System.nanoTime() < deadline[0]) {
+                    pick(partIds, wanted, random);
+                    if (global ? transactGlobally(wanted, quantities) : transact(wanted, quantities)) {
+                        commits.increment();
+                    }
+                    else {
+                        rejections.increment();
+                        for (int partId : wanted) {
+                            Inventory.patchPart(partId, part -> part.setStock(part.getStock() + STOCK));
+                            restocked.add(STOCK);
+                        }
+                    }
+                }
+            }, "builder-" + t);
+            builders.add(builder);
+            builder.start();
+        }
+        deadline[0] = System.nanoTime() + runNanos;
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread builder : builders) {
+            builder.join();
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        long expected = stockBefore + restocked.sum() - commits.sum() * width;
+        if (!report) {
+            return;
+        }
+        String checked = totalStock(partIds) == expected && aboveMinimum(partIds) ? "ok" : "MISMATCH";
+        System.out.println(String.format(Locale.ROOT, "%-8s %8d %,16.1f %,16.1f %,12d %10s",
+                global ? "global" : "striped", threads, commits.sum() / seconds, rejections.sum() / seconds,
+                restocked.sum(), checked));
+    }
+
+    // Picks distinct hot Parts, so every transaction touches exactly width of them
+    private void pick(int[] partIds, int[] wanted, SplittableRandom random) {
+        for (int i = 0; i < wanted.length; i++) {
+            int partId;
+            boolean repeated;
+            do {
+                partId = partIds[random.nextInt(partIds.length)];
+                repeated = false;
+                for (int j = 0; j < i; j++) {
+                    repeated |= wanted[j] == partId;
+                }
+            } while (repeated);
+            wanted[i] = partId;
+        }
+    }
+
+    private static boolean transact(int[] partIds, int[] quantities) {
+        StockReservation reservation = Inventory.reserveStock(partIds, quantities);
+        return reservation != null && reservation.commit();
+    }
+
+    private static boolean transactGlobally(int[] partIds, int[] quantities) {
+        synchronized (GLOBAL_LOCK) {
+            return transact(partIds, quantities);
+        }
+    }
+
+    private static long totalStock(int[] partIds) {
+        long total = 0;
+        for (int partId : partIds) {
+            total += Inventory.lookupPart(partId).getStock();
+        }
+        return total;
+    }
+
+    private static boolean aboveMinimum(int[] partIds) {
+        for (int partId : partIds) {
+            if (Inventory.lookupPart(partId).getStock() < MIN) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,308 @@
+package benchmark;
+
+import com.sun.management.ThreadMXBean;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.SplittableRandom;
+import java.util.stream.Stream;
+
+/** This class is a command line benchmark of the Inventory methods, measuring operations per second and how much
+ * memory each operation allocates, at a range of catalog sizes and with uniform and skewed access. It works the way a
+ * JMH benchmark does: every catalog size runs in its own forked JVM so one size cannot warm up or fill the heap for
+ * the next, each operation is warmed up before it is measured, and only the Inventory calls themselves are timed.
+ * Allocation is read from the benchmark thread's allocation counter, which is what JMH's gc profiler reports as
+ * gc.alloc.rate.norm, and the number of garbage collections during measurement is reported alongside it.
+ * The forked JVMs get the same JVM options as this one, so run it with a heap big enough for the largest catalog and
+ * with -Dinventory.storage=columnar to measure the columnar store. Persistence is turned off in the forks, and their
+ * IDs are leased from a temporary directory that is deleted afterwards.
+ * Usage: InventoryBenchmark [-sizes 1000,10000,...] [-ops lookupPart,addPart,...] [-patterns uniform,skewed]
+ * [-wi warmupIterations] [-i iterations] [-t secondsPerIteration] [-o results.csv]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class InventoryBenchmark {
+
+    private static final String FORK = "--fork";
+    private static final String RESULT = "RESULT,";
+    private static final String HEADER = "operation,size,pattern,ops_per_sec,ops_per_sec_sd,alloc_bytes_per_op,"
+            + "alloc_mb_per_sec,gc_count,gc_ms";
+
+    private int[] sizes = {1_000, 10_000, 100_000, 1_000_000, 10_000_000};
+    private List<Operation> operations = Arrays.asList(Operation.values());
+    private List<AccessPattern> patterns = Arrays.asList(AccessPattern.values());
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationNanos = 1_000_000_000L;
+    private Path output;
+    private final List<String> passedOn = new ArrayList<>();
+
+    // Every measurement stores what its calls returned here, so the JIT cannot drop the calls
+    private static volatile long blackhole;
+
+    private InventoryBenchmark() { }
+
+    /** This is the main method that runs the benchmark, or when started with --fork, one catalog size of it.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        InventoryBenchmark benchmark = new InventoryBenchmark();
+        try {
+            if (args.length >= 2 && args[0].equals(FORK)) {
+                benchmark.parse(Arrays.copyOfRange(args, 2, args.length));
+                benchmark.runFork(Integer.parseInt(args[1]));
+            }
+            else {
+                benchmark.parse(args);
+                benchmark.runAll();
+            }
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException | InterruptedException exception) {
+            System.out.println("The benchmark could not be run: " + exception);
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-sizes":
+                    sizes = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    continue;
+                case "-ops":
+                    operations = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        operations.addAll(matching(name.trim()));
+                    }
+                    break;
+                case "-patterns":
+                    patterns = new ArrayList<>();
+                    for (String name : value.split(",")) {
+                        patterns.add(AccessPattern.valueOf(name.trim().toUpperCase(Locale.ROOT)));
+                    }
+                    break;
+                case "-wi":
+                    warmupIterations = Integer.parseInt(value);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    iterationNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                case "-o":
+                    output = Paths.get(value);
+                    continue;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+            passedOn.add(args[i]);
+            passedOn.add(value);
+        }
+    }
+
+    // Matches on the start of the method name, so "lookupPart" picks both Part lookups
+    private static List<Operation> matching(String name) {
+        List<Operation> matches = new ArrayList<>();
+        for (Operation operation : Operation.values()) {
+            if (operation.label().startsWith(name)) {
+                matches.add(operation);
+            }
+        }
+        if (matches.isEmpty()) {
+            throw new IllegalArgumentException("No operation called " + name);
+        }
+        return matches;
+    }
+
+    private void runAll() throws IOException, InterruptedException {
+        List<String> results = new ArrayList<>();
+        System.out.println(String.format("%-22s %10s %-8s %16s %12s %12s %12s %6s", "Benchmark", "Size", "Pattern",
+                "ops/s", "+- sd", "alloc B/op", "alloc MB/s", "GCs"));
+        for (int size : sizes) {
+            List<String> command = new ArrayList<>();
+            command.add(Paths.get(System.getProperty("java.home"), "bin", "java").toString());
+            command.addAll(ManagementFactory.getRuntimeMXBean().getInputArguments());
+            command.add("-cp");
+            command.add(System.getProperty("java.class.path"));
+            command.add(InventoryBenchmark.class.getName());
+            command.add(FORK);
+            command.add(Integer.toString(size));
+            command.addAll(passedOn);
+            Process fork = new ProcessBuilder(command).redirectErrorStream(true).start();
+            try (BufferedReader lines = new BufferedReader(new InputStreamReader(fork.getInputStream(),
+                    StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = lines.readLine()) != null) {
+                    if (line.startsWith(RESULT)) {
+                        results.add(line.substring(RESULT.length()));
+                        System.out.println(format(line.substring(RESULT.length()).split(",")));
+                    }
+                    else {
+                        System.out.println("  " + line);
+                    }
+                }
+            }
+            int exitCode = fork.waitFor();
+            if (exitCode != 0) {
+                System.out.println("  The run for " + size + " rows stopped with exit code " + exitCode);
+            }
+        }
+        if (output != null) {
+            try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+                writer.println(HEADER);
+                results.forEach(writer::println);
+            }
+            System.out.println("Results written to " + output);
+        }
+    }
+
+    private static String format(String[] fields) {
+        return String.format(Locale.ROOT, "%-22s %10s %-8s %,16.1f %12s %,12.1f %,12.1f %6s", fields[0], fields[1],
+                fields[2], Double.parseDouble(fields[3]), String.format(Locale.ROOT, "+- %,.1f",
+                        Double.parseDouble(fields[4])), Double.parseDouble(fields[5]), Double.parseDouble(fields[6]),
+                fields[7]);
+    }
+
+    private void runFork(int size) throws IOException {
+        // Set before the Inventory class loads, since it reads them once when it starts
+        Path scratch = Files.createTempDirectory("inventory-benchmark");
+        System.setProperty("inventory.persist", "false");
+        System.setProperty("inventory.dataDir", scratch.toString());
+        try {
+            long started = System.nanoTime();
+            Catalog catalog = new Catalog(size);
+            System.out.println(String.format("Filled %,d parts and %,d products in %.1f s", catalog.partIds.length,
+                    catalog.productIds.length, (System.nanoTime() - started) / 1e9));
+            for (Operation operation : operations) {
+                int rows = operation.onProducts() ? catalog.productIds.length : catalog.partIds.length;
+                for (AccessPattern pattern : patterns) {
+                    int[] keys = pattern.keys(rows, new SplittableRandom(size * 31L + pattern.ordinal()));
+                    Measurement measurement = new Measurement(operation, catalog, keys, Math.min(rows,
+                            Operation.BATCH_SIZE));
+                    for (int i = 0; i < warmupIterations; i++) {
+                        measurement.iterate(iterationNanos);
+                    }
+                    measurement.reset();
+                    for (int i = 0; i < iterations; i++) {
+                        measurement.iterate(iterationNanos);
+                    }
+                    System.out.println(RESULT + operation.label() + "," + size + "," + pattern.name().toLowerCase(
+                            Locale.ROOT) + "," + measurement.summary());
+                }
+            }
+        }
+        finally {
+            try (Stream<Path> files = Files.list(scratch)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(scratch);
+        }
+    }
+
+    /** This class runs the measurement iterations of one operation and pattern, and adds up what they measured. */
+    private static final class Measurement {
+        private final Operation operation;
+        private final Catalog catalog;
+        private final int[] keys;
+        private final Operation.Batch batch = new Operation.Batch();
+        private final ThreadMXBean threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private final long threadId = Thread.currentThread().getId();
+        private final List<Double> rates = new ArrayList<>();
+        private int cursor;
+        private long operationCount;
+        private long timedNanos;
+        private long allocatedBytes;
+        private long gcCountAtReset;
+        private long gcMillisAtReset;
+        private long sink;
+
+        Measurement(Operation operation, Catalog catalog, int[] keys, int batchSize) {
+            this.operation = operation;
+            this.catalog = catalog;
+            this.keys = keys;
+            batch.size = batchSize;
+        }
+
+        void iterate(long nanos) {
+            long iterationOperations = 0;
+            long iterationNanos = 0;
+            long deadline = System.nanoTime() + nanos;
+            while (System.nanoTime() < deadline) {
+                for (int i = 0; i < batch.size; i++) {
+                    batch.keys[i] = keys[cursor++ & (AccessPattern.RING_SIZE - 1)];
+                }
+                operation.prepare(catalog, batch);
+                long allocatedBefore = threads.getThreadAllocatedBytes(threadId);
+                long start = System.nanoTime();
+                sink += operation.run(batch);
+                long elapsed = System.nanoTime() - start;
+                allocatedBytes += threads.getThreadAllocatedBytes(threadId) - allocatedBefore;
+                operation.restore(batch);
+                iterationOperations += batch.size;
+                iterationNanos += elapsed;
+            }
+            operationCount += iterationOperations;
+            timedNanos += iterationNanos;
+            rates.add(iterationOperations * 1e9 / iterationNanos);
+        }
+
+        void reset() {
+            rates.clear();
+            operationCount = 0;
+            timedNanos = 0;
+            allocatedBytes = 0;
+            gcCountAtReset = gcCount();
+            gcMillisAtReset = gcMillis();
+        }
+
+        String summary() {
+            double mean = rates.stream().mapToDouble(Double::doubleValue).average().orElse(0);
+            double variance = rates.stream().mapToDouble(rate -> (rate - mean) * (rate - mean)).sum()
+                    / Math.max(1, rates.size() - 1);
+            double bytesPerOperation = (double) allocatedBytes / operationCount;
+            double megabytesPerSecond = allocatedBytes / 1e6 / (timedNanos / 1e9);
+            blackhole = sink;
+            return String.format(Locale.ROOT, "%.1f,%.1f,%.1f,%.1f,%d,%d", mean, Math.sqrt(variance),
+                    bytesPerOperation, megabytesPerSecond, gcCount() - gcCountAtReset, gcMillis() - gcMillisAtReset);
+        }
+
+        private static long gcCount() {
+            long count = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                count += Math.max(0, collector.getCollectionCount());
+            }
+            return count;
+        }
+
+        private static long gcMillis() {
+            long millis = 0;
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                millis += Math.max(0, collector.getCollectionTime());
+            }
+            return millis;
+        }
+    }
+}
@@ -0,0 +1,588 @@
+package benchmark;
+
+import javafx.collections.ObservableList;
+import model.InHouse;
+import model.Inventory;
+import model.Outsourced;
+import model.Part;
+import model.PartMeasure;
+import model.Product;
+import model.UpdateResult;
+import model.Versioned;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/** This enum is the set of Inventory methods the benchmark measures. Each operation runs in batches. prepare() builds
+ * the arguments for a batch, run() makes the Inventory calls and is the only part that is timed, and restore() undoes
+ * the batch, so the catalog stays the same size however long the benchmark runs. Adding and deleting are undone after
+ * every batch, the same way a JMH benchmark would undo them in an untimed tear-down, so each batch changes at most
+ * BATCH_SIZE rows. The batch operations make the whole batch in one Inventory call, and still count one operation per
+ * row so they can be compared with the single-row operations.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+enum Operation {
+
+    LOOKUP_PART_BY_ID("lookupPart(int)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.partIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupPart(batch.ids[i]).getStock();
+            }
+            return sink;
+        }
+    },
+
+    LOOKUP_PART_BY_NAME("lookupPart(String)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.names[i] = Catalog.partName(batch.keys[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupPart(batch.names[i]).size();
+            }
+            return sink;
+        }
+    },
+
+    ADD_PART("addPart") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.parts[i] = catalog.newPart(catalog.sparePartIds[i], batch.keys[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.addPart(batch.parts[i]);
+            }
+            return batch.size;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.deletePart(Inventory.lookupPart(batch.parts[i].getId()));
+            }
+        }
+    },
+
+    ADD_PARTS("addParts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            ADD_PART.prepare(catalog, batch);
+        }
+
+        @Override
+        long run(Batch batch) {
+            Inventory.addParts(Arrays.asList(batch.parts).subList(0, batch.size));
+            return batch.size;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            ADD_PART.restore(batch);
+        }
+    },
+
+    UPDATE_PART_BY_INDEX("updatePart(index)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            ObservableList<Part> allParts = Inventory.getAllParts();
+            for (int i = 0; i < batch.size; i++) {
+                int index = batch.keys[i] % allParts.size();
+                batch.ids[i] = index;
+                batch.parts[i] = withNewStock(allParts.get(index));
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.updatePart(batch.ids[i], batch.parts[i]);
+            }
+            return batch.size;
+        }
+    },
+
+    UPDATE_PART_BY_ID("updatePart(version)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            pickDistinct(catalog.partIds, batch);
+            for (int i = 0; i < batch.size; i++) {
+                Versioned<Part> current = Inventory.lookupVersionedPart(batch.ids[i]);
+                batch.parts[i] = withNewStock(current.getItem());
+                batch.versions[i] = current.getVersion();
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.updatePart(batch.parts[i], batch.versions[i]) == UpdateResult.UPDATED ? 1 : 0;
+            }
+            return sink;
+        }
+    },
+
+    DELETE_PART("deletePart") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            pickDistinct(catalog.partIds, batch);
+            for (int i = 0; i < batch.size; i++) {
+                batch.parts[i] = Inventory.lookupPart(batch.ids[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.deletePart(batch.parts[i]) ? 1 : 0;
+            }
+            return sink;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.addPart(batch.parts[i]);
+            }
+        }
+    },
+
+    DELETE_PARTS("deleteParts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            DELETE_PART.prepare(catalog, batch);
+            boxIds(batch);
+        }
+
+        @Override
+        long run(Batch batch) {
+            return Inventory.deleteParts(batch.idList);
+        }
+
+        @Override
+        void restore(Batch batch) {
+            DELETE_PART.restore(batch);
+        }
+    },
+
+    PATCH_PART("patchPart") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.partIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.patchPart(batch.ids[i], part -> part.setStock((part.getStock() + 1) % 1000)) ? 1 : 0;
+            }
+            return sink;
+        }
+    },
+
+    LOOKUP_PRODUCTS_USING_PART("lookupProductsUsingPart") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.partIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupProductsUsingPart(batch.ids[i]).size();
+            }
+            return sink;
+        }
+    },
+
+    GET_LOW_STOCK_PARTS("getLowStockParts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            // Every call asks for the same list, so there is nothing to pick
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.getLowStockParts().size();
+            }
+            return sink;
+        }
+    },
+
+    COUNT_PARTS_BETWEEN("countPartsBetween") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            // Catalog prices run from 1.99 to 100.99, so each range covers a tenth of them
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = batch.keys[i] % 90;
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.countPartsBetween(PartMeasure.PRICE, batch.ids[i], batch.ids[i] + 10);
+            }
+            return sink;
+        }
+    },
+
+    LOOKUP_HIGHEST_PARTS("lookupHighestParts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            // Every call asks for the same ten Parts, so there is nothing to pick
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupHighestParts(PartMeasure.PRICE, 10).get(0).getId();
+            }
+            return sink;
+        }
+    },
+
+    GET_STATISTICS("getStatistics") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            // Every call reads the same totals, so there is nothing to pick
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.getStatistics().getPartStock();
+            }
+            return sink;
+        }
+    },
+
+    LOOKUP_PRODUCT_BY_ID("lookupProduct(int)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.productIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupProduct(batch.ids[i]).getStock();
+            }
+            return sink;
+        }
+    },
+
+    GET_BUILDABLE_UNITS("getBuildableUnits") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.productIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.getBuildableUnits(batch.ids[i]);
+            }
+            return sink;
+        }
+    },
+
+    LOOKUP_PRODUCT_BY_NAME("lookupProduct(String)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.names[i] = Catalog.productName(batch.keys[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.lookupProduct(batch.names[i]).size();
+            }
+            return sink;
+        }
+    },
+
+    ADD_PRODUCT("addProduct") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.products[i] = catalog.newProduct(catalog.spareProductIds[i], batch.keys[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.addProduct(batch.products[i]);
+            }
+            return batch.size;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.deleteProduct(Inventory.lookupProduct(batch.products[i].getId()));
+            }
+        }
+    },
+
+    ADD_PRODUCTS("addProducts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            ADD_PRODUCT.prepare(catalog, batch);
+        }
+
+        @Override
+        long run(Batch batch) {
+            Inventory.addProducts(Arrays.asList(batch.products).subList(0, batch.size));
+            return batch.size;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            ADD_PRODUCT.restore(batch);
+        }
+    },
+
+    UPDATE_PRODUCT_BY_INDEX("updateProduct(index)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            ObservableList<Product> allProducts = Inventory.getAllProducts();
+            for (int i = 0; i < batch.size; i++) {
+                int index = batch.keys[i] % allProducts.size();
+                batch.ids[i] = index;
+                batch.products[i] = withNewStock(allProducts.get(index));
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.updateProduct(batch.ids[i], batch.products[i]);
+            }
+            return batch.size;
+        }
+    },
+
+    UPDATE_PRODUCT_BY_ID("updateProduct(version)") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            pickDistinct(catalog.productIds, batch);
+            for (int i = 0; i < batch.size; i++) {
+                Versioned<Product> current = Inventory.lookupVersionedProduct(batch.ids[i]);
+                batch.products[i] = withNewStock(current.getItem());
+                batch.versions[i] = current.getVersion();
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.updateProduct(batch.products[i], batch.versions[i]) == UpdateResult.UPDATED ? 1 : 0;
+            }
+            return sink;
+        }
+    },
+
+    DELETE_PRODUCT("deleteProduct") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            pickDistinct(catalog.productIds, batch);
+            for (int i = 0; i < batch.size; i++) {
+                batch.products[i] = Inventory.lookupProduct(batch.ids[i]);
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.deleteProduct(batch.products[i]) ? 1 : 0;
+            }
+            return sink;
+        }
+
+        @Override
+        void restore(Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                Inventory.addProduct(batch.products[i]);
+            }
+        }
+    },
+
+    DELETE_PRODUCTS("deleteProducts") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            DELETE_PRODUCT.prepare(catalog, batch);
+            boxIds(batch);
+        }
+
+        @Override
+        long run(Batch batch) {
+            return Inventory.deleteProducts(batch.idList);
+        }
+
+        @Override
+        void restore(Batch batch) {
+            DELETE_PRODUCT.restore(batch);
+        }
+    },
+
+    PATCH_PRODUCT("patchProduct") {
+        @Override
+        void prepare(Catalog catalog, Batch batch) {
+            for (int i = 0; i < batch.size; i++) {
+                batch.ids[i] = catalog.productIds[batch.keys[i]];
+            }
+        }
+
+        @Override
+        long run(Batch batch) {
+            long sink = 0;
+            for (int i = 0; i < batch.size; i++) {
+                sink += Inventory.patchProduct(batch.ids[i], product -> product.setStock((product.getStock() + 1) % 100))
+                        ? 1 : 0;
+            }
+            return sink;
+        }
+    };
+
+    /** The number of calls made between two readings of the clock. */
+    static final int BATCH_SIZE = 256;
+
+    private final String label;
+
+    Operation(String label) {
+        this.label = label;
+    }
+
+    /** This method returns the name of the Inventory method being measured.
+     * @return the method name as it is shown in the results
+     * */
+    String label() {
+        return label;
+    }
+
+    /** This method tells whether the operation works on Products rather than Parts.
+     * @return true for the Product operations
+     * */
+    boolean onProducts() {
+        return compareTo(LOOKUP_PRODUCT_BY_ID) >= 0;
+    }
+
+    /** This method builds the arguments for a batch from the batch's keys. It is not timed.
+     * @param catalog the catalog the keys refer to
+     * @param batch the batch to fill in
+     * */
+    abstract void prepare(Catalog catalog, Batch batch);
+
+    /** This method makes the Inventory calls for a batch. It is the only part of the benchmark that is timed.
+     * @param batch the prepared batch
+     * @return a value worked out from the results, so the calls cannot be optimised away
+     * */
+    abstract long run(Batch batch);
+
+    /** This method puts the catalog back the way it was before the batch ran. It is not timed.
+     * @param batch the batch that has just run
+     * */
+    void restore(Batch batch) {
+    }
+
+    private static Part withNewStock(Part current) {
+        int stock = (current.getStock() + 1) % 1000;
+        if (current instanceof InHouse) {
+            return new InHouse(current.getId(), current.getName(), current.getPrice(), stock, current.getMin(),
+                    current.getMax(), ((InHouse) current).getMachineId());
+        }
+        return new Outsourced(current.getId(), current.getName(), current.getPrice(), stock, current.getMin(),
+                current.getMax(), ((Outsourced) current).getCompanyName());
+    }
+
+    private static Product withNewStock(Product current) {
+        Product replacement = new Product(current.getId(), current.getName(), current.getPrice(),
+                (current.getStock() + 1) % 100, current.getMin(), current.getMax());
+        for (Part part : current.getAllAssociatedParts()) {
+            replacement.addAssociatedPart(part);
+        }
+        return replacement;
+    }
+
+    // A batch never picks the same row twice, since a second delete would only measure a failed lookup and a second
+    // versioned update a conflict. A batch is never larger than the catalog, so there is always another row to move to
+    private static void pickDistinct(int[] ids, Batch batch) {
+        Set<Integer> picked = new HashSet<>();
+        for (int i = 0; i < batch.size; i++) {
+            int key = batch.keys[i];
+            while (!picked.add(key)) {
+                key = (key + 1) % ids.length;
+            }
+            batch.ids[i] = ids[key];
+        }
+    }
+
+    // The batch deletes take a collection of IDs, which is boxed here so the boxing is not timed
+    private static void boxIds(Batch batch) {
+        batch.idList.clear();
+        for (int i = 0; i < batch.size; i++) {
+            batch.idList.add(batch.ids[i]);
+        }
+    }
+
+    /** This class holds the keys and prepared arguments for one batch. */
+    static final class Batch {
+        final int[] keys = new int[BATCH_SIZE];
+        final int[] ids = new int[BATCH_SIZE];
+        final String[] names = new String[BATCH_SIZE];
+        final Part[] parts = new Part[BATCH_SIZE];
+        final Product[] products = new Product[BATCH_SIZE];
+        final int[] versions = new int[BATCH_SIZE];
+        final List<Integer> idList = new ArrayList<>(BATCH_SIZE);
+        int size;
+    }
+}
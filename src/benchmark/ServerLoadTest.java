@@ -0,0 +1,244 @@
+package benchmark;
+
+import model.InventoryServer;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/** This class is a command line load test of InventoryServer. It fills the Inventory with a generated catalog, starts
+ * the server on a free loopback port in the same process, and then has a number of clients keep sending it requests
+ * for a while, each sending its next request as soon as the answer to the last one arrives. Four in five requests read
+ * a Part by ID, one in ten searches Parts by name, and one in ten adds or takes one unit of a Part's stock. Every
+ * client count is run in turn and reported with its throughput and the 50th, 90th and 99th percentile and largest
+ * latencies, from the moment a request is sent to the moment its whole answer has arrived. A stock change turned
+ * down because it would leave the stock outside its Minimum and Maximum is counted as rejected; any other answer that
+ * is not a success, and any request that fails, is counted as an error.
+ * Usage: ServerLoadTest [-parts partCount] [-clients 1,10,100,...] [-threads serverThreads] [-t secondsPerRun]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class ServerLoadTest {
+
+    // Latencies are counted in buckets eight to each power of two of microseconds, which keeps every percentile
+    // within an eighth of its true value however long the largest latency is
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private int partCount = 100_000;
+    private int[] clientCounts = {1, 10, 100, 1_000, 4_000};
+    private int serverThreads = 64;
+    private long runNanos = 5_000_000_000L;
+
+    private ServerLoadTest() { }
+
+    /** This is the main method that runs the load test.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        ServerLoadTest test = new ServerLoadTest();
+        try {
+            test.parse(args);
+            // Set before the Inventory class loads, since it reads them once when it starts
+            Path scratch = Files.createTempDirectory("inventory-server");
+            System.setProperty("inventory.persist", "false");
+            System.setProperty("inventory.dataDir", scratch.toString());
+            try {
+                test.runAll();
+            }
+            finally {
+                Files.deleteIfExists(scratch.resolve("ids.properties"));
+                Files.deleteIfExists(scratch.resolve("ids.properties.lock"));
+                Files.deleteIfExists(scratch);
+            }
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException | InterruptedException exception) {
+            System.out.println("The load test could not be run: " + exception);
+            System.exit(1);
+        }
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-parts":
+                    partCount = Integer.parseInt(value);
+                    break;
+                case "-clients":
+                    clientCounts = Arrays.stream(value.split(",")).mapToInt(s -> Integer.parseInt(s.trim())).toArray();
+                    break;
+                case "-threads":
+                    serverThreads = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    runNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (partCount < 1 || Arrays.stream(clientCounts).anyMatch(count -> count < 1)) {
+            throw new IllegalArgumentException("-parts and -clients must be positive");
+        }
+    }
+
+    private void runAll() throws IOException, InterruptedException {
+        Catalog catalog = new Catalog(partCount);
+        InventoryServer server = InventoryServer.start(0, serverThreads);
+        // A few threads are enough to hand the answers back, since a client only builds its next request on them
+        ExecutorService clientThreads = Executors.newFixedThreadPool(4, runnable -> {
+            Thread thread = new Thread(runnable, "load-test-client");
+            thread.setDaemon(true);
+            return thread;
+        });
+        HttpClient http = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).executor(clientThreads)
+                .connectTimeout(Duration.ofSeconds(30)).build();
+        String base = "http://127.0.0.1:" + server.getPort();
+        try {
+            System.out.println(String.format("%,d parts, %d server threads, %.1f s per run", partCount,
+                    serverThreads, runNanos / 1e9));
+            System.out.println(String.format("%8s %12s %10s %10s %10s %10s %10s %8s", "Clients", "requests/s",
+                    "p50 ms", "p90 ms", "p99 ms", "max ms", "rejected", "errors"));
+            // One unreported run warms the JIT and the connections up, so the first client count is not measured cold
+            run(http, base, catalog, clientCounts[0], false);
+            for (int clients : clientCounts) {
+                run(http, base, catalog, clients, true);
+            }
+        }
+        finally {
+            server.stop();
+            clientThreads.shutdownNow();
+        }
+    }
+
+    private void run(HttpClient http, String base, Catalog catalog, int clients, boolean report)
+            throws InterruptedException {
+        Run run = new Run(http, base, catalog, System.nanoTime() + runNanos, clients);
+        long started = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            run.next(new SplittableRandom(c * 7919L + clients));
+        }
+        run.finished.await();
+        long elapsed = System.nanoTime() - started;
+        if (report) {
+            long requests = run.requests.sum();
+            System.out.println(String.format("%8d %12.0f %10.2f %10.2f %10.2f %10.2f %10d %8d", clients,
+                    requests * 1e9 / elapsed, run.percentile(0.50), run.percentile(0.90), run.percentile(0.99),
+                    run.percentile(1.0), run.rejected.sum(), run.errors.sum()));
+        }
+    }
+
+    private static int bucketOf(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) Math.max(0, micros);
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(micros);
+        int bucket = (magnitude - 2) * SUB_BUCKETS + (int) ((micros >> (magnitude - 3)) & (SUB_BUCKETS - 1));
+        return Math.min(bucket, BUCKETS - 1);
+    }
+
+    // The largest latency counted in a bucket, in microseconds
+    private static long upperBoundOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int magnitude = bucket / SUB_BUCKETS + 2;
+        long lower = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (magnitude - 3);
+        return lower + (1L << (magnitude - 3)) - 1;
+    }
+
+    /** This class is one run of the load test, which keeps each client sending requests until the run is over. */
+    private static final class Run {
+        final HttpClient http;
+        final String base;
+        final Catalog catalog;
+        final long deadline;
+        final CountDownLatch finished;
+        final AtomicLongArray latencies = new AtomicLongArray(BUCKETS);
+        final LongAdder requests = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder errors = new LongAdder();
+
+        Run(HttpClient http, String base, Catalog catalog, long deadline, int clients) {
+            this.http = http;
+            this.base = base;
+            this.catalog = catalog;
+            this.deadline = deadline;
+            this.finished = new CountDownLatch(clients);
+        }
+
+        // Sends a client's next request, and from its answer the one after that, until the run is over
+        void next(SplittableRandom random) {
+            if (System.nanoTime() - deadline >= 0) {
+                finished.countDown();
+                return;
+            }
+            int row = random.nextInt(catalog.partIds.length);
+            int pick = random.nextInt(10);
+            HttpRequest request;
+            if (pick < 8) {
+                request = HttpRequest.newBuilder(URI.create(base + "/parts/" + catalog.partIds[row])).build();
+            }
+            else if (pick == 8) {
+                String name = URLEncoder.encode(Catalog.partName(row), StandardCharsets.UTF_8);
+                request = HttpRequest.newBuilder(URI.create(base + "/parts?limit=10&name=" + name)).build();
+            }
+            else {
+                int delta = random.nextBoolean() ? 1 : -1;
+                request = HttpRequest.newBuilder(URI.create(base + "/parts/" + catalog.partIds[row]
+                        + "/stock?delta=" + delta)).POST(HttpRequest.BodyPublishers.noBody()).build();
+            }
+            long sent = System.nanoTime();
+            http.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray()).whenComplete((response, failure) -> {
+                latencies.incrementAndGet(bucketOf((System.nanoTime() - sent) / 1_000));
+                requests.increment();
+                if (failure != null || response.statusCode() >= 300 && response.statusCode() != 409) {
+                    errors.increment();
+                }
+                else if (response.statusCode() == 409) {
+                    rejected.increment();
+                }
+                next(random);
+            });
+        }
+
+        // The latency in milliseconds that the given fraction of requests took no longer than
+        double percentile(double fraction) {
+            long total = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                total += latencies.get(i);
+            }
+            long wanted = Math.max(1, (long) Math.ceil(total * fraction));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += latencies.get(i);
+                if (seen >= wanted) {
+                    return upperBoundOf(i) / 1_000.0;
+                }
+            }
+            return 0;
+        }
+    }
+}
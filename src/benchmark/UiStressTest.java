@@ -0,0 +1,260 @@
+package benchmark;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.stage.Stage;
+import model.InHouse;
+import model.Inventory;
+import model.Outsourced;
+import model.Part;
+import model.Versioned;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/** This class is a stress test of the main screen under a storm of changes, which measures how many frames the screen
+ * drops. It fills the Inventory with a generated catalog, opens the main screen as the application does, and has
+ * background threads change Parts at a steady rate: nearly all changes move one Part's stock up or down by one, and
+ * one in a hundred replaces a Part with a copy at a new price, which changes the TableView's list rather than a cell.
+ * An AnimationTimer times every frame, and a frame that takes longer than one and a half frame periods counts the
+ * frames that should have been drawn in it as dropped. Each second is reported with its frame rate, dropped frames,
+ * longest frame and the number of changes made, and a summary follows at the end. The first two seconds are a warm-up
+ * and are not counted.
+ * Run it once as it is, which applies changes to the screen once per pulse, and once with
+ * -Dinventory.fxUpdates=immediate to compare against applying them as soon as they arrive.
+ * Usage: UiStressTest [-parts partCount] [-rate changesPerSecond] [-threads writerThreads] [-t seconds]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class UiStressTest {
+
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+    private static final long WARMUP_NANOS = 2_000_000_000L;
+
+    private static int partCount = 100_000;
+    private static int rate = 50_000;
+    private static int threads = 2;
+    private static long runNanos = 10_000_000_000L;
+
+    private UiStressTest() { }
+
+    /** This is the main method that runs the stress test.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        try {
+            parse(args);
+            // Set before the Inventory class loads, since it reads them once when it starts
+            Path scratch = Files.createTempDirectory("inventory-ui-stress");
+            System.setProperty("inventory.persist", "false");
+            System.setProperty("inventory.dataDir", scratch.toString());
+            try {
+                // Launched through a nested class, since a main class that is itself an Application needs JavaFX as
+                // modules rather than on the class path
+                Application.launch(Screen.class);
+            }
+            finally {
+                Files.deleteIfExists(scratch.resolve("ids.properties"));
+                Files.deleteIfExists(scratch.resolve("ids.properties.lock"));
+                Files.deleteIfExists(scratch);
+            }
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException exception) {
+            System.out.println("The stress test could not be run: " + exception);
+            System.exit(1);
+        }
+    }
+
+    private static void parse(String[] args) {
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 == args.length) {
+                throw new IllegalArgumentException("Missing a value for " + args[i]);
+            }
+            String value = args[i + 1];
+            switch (args[i]) {
+                case "-parts":
+                    partCount = Integer.parseInt(value);
+                    break;
+                case "-rate":
+                    rate = Integer.parseInt(value);
+                    break;
+                case "-threads":
+                    threads = Integer.parseInt(value);
+                    break;
+                case "-t":
+                    runNanos = (long) (Double.parseDouble(value) * 1e9);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        if (partCount < 1 || rate < 1 || threads < 1 || runNanos <= 0) {
+            throw new IllegalArgumentException("-parts, -rate, -threads and -t must be positive");
+        }
+    }
+
+    /** This class is the application that shows the main screen and measures its frames. */
+    public static final class Screen extends Application {
+
+        private final LongAdder changes = new LongAdder();
+        private final List<Long> frameNanos = new ArrayList<>();
+        private volatile boolean writing = true;
+
+        /** This method opens the main screen and starts the writers and the frame timer.
+         * @param stage the initial stage
+         * @throws IOException if the main screen cannot be loaded
+         * */
+        @Override
+        public void start(Stage stage) throws IOException {
+            Catalog catalog = new Catalog(partCount);
+            Parent root = FXMLLoader.load(getClass().getResource("/view/InventoryMainScreen.fxml"));
+            stage.setTitle("Inventory Main Screen - stress test");
+            stage.setScene(new Scene(root, 800, 600));
+            stage.show();
+            System.out.println(String.format("%,d parts, %,d changes/s from %d threads, updates applied %s", partCount,
+                    rate, threads, "immediate".equals(System.getProperty("inventory.fxUpdates")) ? "immediately"
+                            : "once per pulse"));
+            System.out.println(String.format("%6s %8s %8s %10s %12s", "Second", "fps", "dropped", "longest ms",
+                    "changes"));
+            for (int t = 0; t < threads; t++) {
+                SplittableRandom random = new SplittableRandom(t * 7919L);
+                Thread writer = new Thread(() -> write(catalog, random), "stress-writer-" + t);
+                writer.setDaemon(true);
+                writer.start();
+            }
+            new FrameTimer().start();
+        }
+
+        // Makes this thread's share of the changes, a millisecond's worth at a time
+        private void write(Catalog catalog, SplittableRandom random) {
+            double perMilli = rate / 1000.0 / threads;
+            double owed = 0;
+            long next = System.nanoTime();
+            while (writing) {
+                owed += perMilli;
+                for (; owed >= 1; owed--) {
+                    int partId = catalog.partIds[random.nextInt(catalog.partIds.length)];
+                    if (random.nextInt(100) == 0) {
+                        reprice(partId, random);
+                    }
+                    else {
+                        Inventory.adjustStock(partId, random.nextBoolean() ? 1 : -1);
+                    }
+                    changes.increment();
+                }
+                next += 1_000_000;
+                long wait = next - System.nanoTime();
+                if (wait > 0) {
+                    try {
+                        Thread.sleep(wait / 1_000_000, (int) (wait % 1_000_000));
+                    }
+                    catch (InterruptedException exception) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        private static void reprice(int partId, SplittableRandom random) {
+            Versioned<Part> current = Inventory.lookupVersionedPart(partId);
+            if (current == null) {
+                return;
+            }
+            Part replacement = withNewPrice(current.getItem(), 1.99 + random.nextInt(100));
+            Inventory.updatePart(replacement, current.getVersion());
+        }
+
+        private static Part withNewPrice(Part current, double price) {
+            if (current instanceof InHouse) {
+                return new InHouse(current.getId(), current.getName(), price, current.getStock(), current.getMin(),
+                        current.getMax(), ((InHouse) current).getMachineId());
+            }
+            return new Outsourced(current.getId(), current.getName(), price, current.getStock(), current.getMin(),
+                    current.getMax(), ((Outsourced) current).getCompanyName());
+        }
+
+        private void report(List<Long> frames) {
+            long total = 0;
+            long dropped = 0;
+            for (long frame : frames) {
+                total += frame;
+                dropped += dropped(frame);
+            }
+            long[] sorted = frames.stream().mapToLong(Long::longValue).sorted().toArray();
+            System.out.println(String.format("%d frames in %.1f s, %.1f fps, %d dropped (%.1f%%),"
+                    + " frame time p50 %.1f ms, p99 %.1f ms, longest %.1f ms", frames.size(), total / 1e9,
+                    frames.size() * 1e9 / total, dropped, 100.0 * dropped / (frames.size() + dropped),
+                    percentile(sorted, 0.50) / 1e6, percentile(sorted, 0.99) / 1e6, sorted[sorted.length - 1] / 1e6));
+        }
+
+        private static long dropped(long frame) {
+            return frame > FRAME_NANOS * 3 / 2 ? Math.round((double) frame / FRAME_NANOS) - 1 : 0;
+        }
+
+        private static long percentile(long[] sorted, double fraction) {
+            return sorted[Math.min(sorted.length - 1, (int) Math.ceil(sorted.length * fraction) - 1)];
+        }
+
+        /** This class times every frame, reporting each second, and ends the test when the time is up. */
+        private final class FrameTimer extends AnimationTimer {
+            private long started;
+            private long last;
+            private long secondStarted;
+            private int second;
+            private int secondFrames;
+            private long secondDropped;
+            private long secondLongest;
+            private long secondChanges;
+
+            @Override
+            public void handle(long now) {
+                if (last == 0) {
+                    started = now;
+                    secondStarted = now;
+                    last = now;
+                    return;
+                }
+                long frame = now - last;
+                last = now;
+                boolean measuring = now - started >= WARMUP_NANOS;
+                if (measuring) {
+                    frameNanos.add(frame);
+                }
+                secondFrames++;
+                secondDropped += dropped(frame);
+                secondLongest = Math.max(secondLongest, frame);
+                if (now - secondStarted >= 1_000_000_000L) {
+                    long made = changes.sum();
+                    System.out.println(String.format("%6s %8.1f %8d %10.1f %12d", ++second + (measuring ? "" : "*"),
+                            secondFrames * 1e9 / (now - secondStarted), secondDropped, secondLongest / 1e6,
+                            made - secondChanges));
+                    secondChanges = made;
+                    secondStarted = now;
+                    secondFrames = 0;
+                    secondDropped = 0;
+                    secondLongest = 0;
+                }
+                if (now - started >= WARMUP_NANOS + runNanos) {
+                    stop();
+                    writing = false;
+                    System.out.println("* warm-up, not counted");
+                    report(frameNanos);
+                    Platform.exit();
+                }
+            }
+        }
+    }
+}
@@ -167,11 +167,11 @@ public class AddPartScreenController implements Initializable {
                 machineID = Integer.parseInt(maxTextField.getText());
 
                 Part newPart = new InHouse(id, name, price, stock, min, max, machineID);
-                Inventory.getAllParts().add(newPart);
+                Inventory.addPart(newPart);
 
             } else {
 
-                id = Inventory.getNextUniqueProductId();
+                id = Inventory.getNextUniquePartId();
                 name = nameTextField.getText();
                 price = Double.parseDouble(priceTextField.getText());
                 min = Integer.parseInt(minTextField.getText());
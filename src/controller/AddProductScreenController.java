@@ -1,5 +1,6 @@
 package controller;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
@@ -9,7 +10,6 @@ import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
 import model.*;
 
@@ -32,9 +32,9 @@ public class AddProductScreenController implements Initializable {
     /** Part name column */
     public TableColumn<Part, String> partNameCol;
     /** Part stock column */
-    public TableColumn<Part, Integer> partInventoryCol;
+    public TableColumn<Part, Number> partInventoryCol;
     /** Part price column */
-    public TableColumn<Part, Double> partPriceCol;
+    public TableColumn<Part, Number> partPriceCol;
     /** Associated part tableview */
     public TableView<Part> associatedPartsTable;
     /** Associated part ID column */
@@ -42,9 +42,9 @@ public class AddProductScreenController implements Initializable {
     /** Associated part name column */
     public TableColumn<Part, String> associatedPartNameCol;
     /** Associated part stock column */
-    public TableColumn<Part, Integer> associatedPartInventoryCol;
+    public TableColumn<Part, Number> associatedPartInventoryCol;
     /** Associated part price column */
-    public TableColumn<Part, Double> associatedPartPriceCol;
+    public TableColumn<Part, Number> associatedPartPriceCol;
 
     /** Name text field */
     public TextField nameTextField;
@@ -71,16 +71,16 @@ public class AddProductScreenController implements Initializable {
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
 
-        partIdCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        partInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partIdCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        partNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        partInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        partPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         partTable.setItems(Inventory.getAllParts());
 
-        associatedPartIDCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        associatedPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        associatedPartInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        associatedPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        associatedPartIDCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        associatedPartNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        associatedPartInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        associatedPartPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         associatedPartsTable.setItems(associatedParts);
     }
 
@@ -184,7 +184,7 @@ public class AddProductScreenController implements Initializable {
                 for (int i = 0; i < associatedParts.size(); i++) {
                     newProduct.addAssociatedPart((Part) associatedParts.get(i));
                 }
-                Inventory.getAllProducts().add(newProduct);
+                Inventory.addProduct(newProduct);
 
             // Redirect back to the main inventory screen
             Parent root = FXMLLoader.load(getClass().getResource("/view/InventoryMainScreen.fxml"));
@@ -206,8 +206,8 @@ public class AddProductScreenController implements Initializable {
     /** This method is an event handler for the Search text field above the Parts table.
      * The method grabs the input entered in the Search box and then calls the static overloaded method lookupPart()
      * from the Inventory class to search for matches within the Inventory class' static observable list of parts. If
-     * the input entered is text, a new observable list is populated with all matches containing the input and the list
-     * is used to repopulate the table with the search results. If no text matches are found, lookupPart() is called
+     * the input entered is text, a read-only observable list of all matches containing the input, ignoring case, is
+     * used to repopulate the table with the search results. If no text matches are found, lookupPart() is called
      * again to check to see if there is an exact int match with a Part ID and, if so, the Parts table is repopulated
      * with the one matching result. If no matches are found for either the text or the int searches then an alert is
      * created advising that no results were found. When the handler is called on a blank search box, the table will
@@ -226,7 +226,7 @@ public class AddProductScreenController implements Initializable {
                 Part tempPart = Inventory.lookupPart(tempInt);
 
                 if (tempPart != null) {
-                    foundParts.add(tempPart);
+                    foundParts = FXCollections.singletonObservableList(tempPart);
                 }
             }
             if (foundParts.isEmpty()) {
@@ -1,6 +1,7 @@
 package controller;
 
-import javafx.collections.ObservableList;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.concurrent.Task;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
 import javafx.fxml.Initializable;
@@ -8,14 +9,21 @@ import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
+import javafx.stage.DirectoryChooser;
 import javafx.stage.Stage;
 import model.Inventory;
+import model.InventoryExporter;
+import model.Mutation;
 import model.Part;
 import model.Product;
+import model.Versioned;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
 import java.util.Optional;
 import java.util.ResourceBundle;
 
@@ -38,42 +46,58 @@ public class InventoryMainScreenController implements Initializable {
     /** Parts Name column */
     public TableColumn<Part, String> partNameCol;
     /** Parts Stock column */
-    public TableColumn<Part, Integer> partInventoryCol;
+    public TableColumn<Part, Number> partInventoryCol;
     /** Parts Price column */
-    public TableColumn<Part, Double> partPriceCol;
+    public TableColumn<Part, Number> partPriceCol;
     /** Products ID column */
     public TableColumn<Product, Integer> productIDCol;
     /** Products Name column */
     public TableColumn<Product, String> productNameCol;
     /** Products Stock column */
-    public TableColumn<Product, Integer> productInventoryCol;
+    public TableColumn<Product, Number> productInventoryCol;
     /** Products Price column */
-    public TableColumn<Product, Double> productPriceCol;
+    public TableColumn<Product, Number> productPriceCol;
     /** Search parts text field */
     public TextField partSearchTextField;
     /** Search products text field */
     public TextField productSearchTextField;
+    /** Part totals label */
+    public Label partTotalsLabel;
+    /** Product totals label */
+    public Label productTotalsLabel;
+
+    private LiveSearch<Part> partSearch;
+    private LiveSearch<Product> productSearch;
+    private StatisticsPanel statisticsPanel;
 
     /** This method is called by the FXMLLoader.load() call contained in the start() method of the Main class. The
      * method initializes the TableViews and TableColumns and then populates them with the Parts and Products from
-     * their corresponding static observable lists in the Inventory class.
+     * their corresponding static observable lists in the Inventory class. It also hooks each search box up to a
+     * LiveSearch so its table is filtered as the user types, and starts the StatisticsPanel showing the inventory's
+     * running totals.
      * @param resourceBundle An unreferenced ResourceBundle object passed automatically
      * @param url An unreferenced URL object passed automatically
      * */
     @Override
     public void initialize(URL url, ResourceBundle resourceBundle) {
 
-        partIDCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        partInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partIDCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        partNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        partInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        partPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         partTable.setItems(Inventory.getAllParts());
 
-        productIDCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        productNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        productInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        productPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        productIDCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        productNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        productInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        productPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         productTable.setItems(Inventory.getAllProducts());
+
+        partSearch = new LiveSearch<>(partSearchTextField, partTable, Inventory::lookupPart, Inventory::lookupPart,
+                Inventory::getAllParts);
+        productSearch = new LiveSearch<>(productSearchTextField, productTable, Inventory::lookupProduct,
+                Inventory::lookupProduct, Inventory::getAllProducts);
+        statisticsPanel = new StatisticsPanel(partTotalsLabel, productTotalsLabel);
     }
 
     /** This method is an event handler for the Add button under the Parts table. Upon clicking the button
@@ -107,17 +131,22 @@ public class InventoryMainScreenController implements Initializable {
 
     /** This method is an event handler for the Modify button under the Parts table.
      * If a part is selected within the Parts table, clicking this button loads the ModifyPartScreen FXML document
-     * and redirects the stage to load the Modify Part screen. A reference to the selected part, along with its index
-     * in the static observable list in the Inventory class, are passed to static members within the
-     * ModifyPartScreenController so that the selected part can be manipulated. If no part is selected, the method
-     * catches the IOException so that the program doesn't crash.
+     * and redirects the stage to load the Modify Part screen. The selected part is looked up again by its ID, and the
+     * part and its current version are passed to static members within the ModifyPartScreenController so that the
+     * selected part can be manipulated and saved without overwriting a change made while it was open. If no part is
+     * selected, or it has just been deleted, the method returns without changing screens.
      * @see Inventory#getAllParts()
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
      * */
     public void toModifyPart(ActionEvent actionEvent) {
         try {
-            ModifyPartScreenController.tempPart = partTable.getSelectionModel().getSelectedItem();
-            ModifyPartScreenController.tempPartIndex = Inventory.getAllParts().indexOf(ModifyPartScreenController.tempPart);
+            Part selected = partTable.getSelectionModel().getSelectedItem();
+            Versioned<Part> current = selected == null ? null : Inventory.lookupVersionedPart(selected.getId());
+            if (current == null) {
+                return;
+            }
+            ModifyPartScreenController.tempPart = current.getItem();
+            ModifyPartScreenController.tempPartVersion = current.getVersion();
 
             Parent root = FXMLLoader.load(getClass().getResource("/view/ModifyPartScreen.fxml"));
             Stage stage = (Stage) ((Node) (actionEvent.getSource())).getScene().getWindow();
@@ -133,17 +162,31 @@ public class InventoryMainScreenController implements Initializable {
 
     /** This method is an event handler for the Modify button under the Products table.
      * If a product is selected within the Products table, clicking this button loads the ModifyProductScreen FXML
-     * document and redirects the stage to load the Modify Product screen. A reference to the selected product, along
-     * with its index in the static observable list in the Inventory class, are passed to static members within the
-     * ModifyProductScreenController so that the selected product can be manipulated. If no product is selected,
-     * the method catches the IOException so that the program doesn't crash.
+     * document and redirects the stage to load the Modify Product screen. The selected product is looked up again by
+     * its ID, and a copy of the product and its current version are passed to static members within the
+     * ModifyProductScreenController so that the copy can be manipulated and saved without overwriting a change made
+     * while it was open. If no product is selected, or it has just been deleted, the method returns
+     * without changing screens.
      * @see Inventory#getAllProducts()
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
      * */
     public void toModifyProduct(ActionEvent actionEvent) {
         try {
-        ModifyProductScreenController.tempProduct = productTable.getSelectionModel().getSelectedItem();
-        ModifyProductScreenController.tempProductIndex = Inventory.getAllProducts().indexOf(ModifyProductScreenController.tempProduct);
+        Product selected = productTable.getSelectionModel().getSelectedItem();
+        Versioned<Product> current = selected == null ? null : Inventory.lookupVersionedProduct(selected.getId());
+        if (current == null) {
+            return;
+        }
+        // The screen is given a copy, so adding and removing associated parts only changes the stored Product once it
+        // is saved, and a cancelled edit changes nothing
+        Product stored = current.getItem();
+        Product copy = new Product(stored.getId(), stored.getName(), stored.getPrice(), stored.getStock(),
+                stored.getMin(), stored.getMax());
+        for (Part part : stored.getAllAssociatedParts()) {
+            copy.addAssociatedPart(part);
+        }
+        ModifyProductScreenController.tempProduct = copy;
+        ModifyProductScreenController.tempProductVersion = current.getVersion();
 
         Parent root = FXMLLoader.load(getClass().getResource("/view/ModifyProductScreen.fxml"));
         Stage stage = (Stage) ((Node) (actionEvent.getSource())).getScene().getWindow();
@@ -158,11 +201,15 @@ public class InventoryMainScreenController implements Initializable {
     }
 
     /** This method is an event handler for the Delete button under the Parts table.
-     * If a part is selected within the Parts table, the method will first generate an alert window to confirm the
-     * user wishes to permanently delete the selected part and upon confirmation, the part will be removed from the static
-     * observable list within the Inventory class that contains all the parts.
+     * If a part is selected within the Parts table, the method will first check whether any product has the part as
+     * an associated part and if so, it will generate an alert window naming the products and indicating the part cannot
+     * be deleted. Otherwise an alert window is created to confirm the user wishes to permanently delete the selected
+     * part and upon confirmation, the part will be removed from the static observable list within the Inventory class
+     * that contains all the parts. The deletion checks again that no product uses the part, under the same locks as the
+     * deletion itself, so a product saved while the confirmation was showing cannot be left listing a deleted part.
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
-     * @see Inventory#deletePart(Part) 
+     * @see Inventory#isPartInUse(int)
+     * @see Mutation#deleteUnusedPart(int)
      * */
     public void toDeletePart(ActionEvent actionEvent) {
         Part part = partTable.getSelectionModel().getSelectedItem();
@@ -171,16 +218,41 @@ public class InventoryMainScreenController implements Initializable {
             return;
         }
 
+        if(Inventory.isPartInUse(part.getId())) {
+            List<Product> users = Inventory.lookupProductsUsingPart(part.getId());
+            StringBuilder names = new StringBuilder();
+            for(int i = 0; i < users.size() && i < 5; i++) {
+                Product user = users.get(i);
+                if(user != null) {
+                    names.append("\n").append(user.getId()).append(" ").append(user.getName());
+                }
+            }
+            if(users.size() > 5) {
+                names.append("\n...and ").append(users.size() - 5).append(" more");
+            }
+            Alert alert1 = new Alert(Alert.AlertType.ERROR);
+            alert1.setTitle("Cannot Delete");
+            alert1.setContentText("The selected part is associated with these products and cannot be deleted:" + names);
+            alert1.show();
+            return;
+        }
+
         Alert alert = new Alert(Alert.AlertType.CONFIRMATION, "Permanently delete selected part?");
         Optional<ButtonType> result = alert.showAndWait();
 
         if(result.isPresent()  && result.get() == ButtonType.OK) {
-            if(Inventory.deletePart(part)) {
+            if(Inventory.applyBatch(Collections.singletonList(Mutation.deleteUnusedPart(part.getId()))) == 1) {
                 Alert alert1 = new Alert(Alert.AlertType.INFORMATION);
                 alert1.setTitle("Deletion Confirmation");
                 alert1.setContentText("The selected part has been deleted.");
                 alert1.show();
-                }
+            }
+            else if(Inventory.isPartInUse(part.getId())) {
+                Alert alert1 = new Alert(Alert.AlertType.ERROR);
+                alert1.setTitle("Cannot Delete");
+                alert1.setContentText("The selected part is now associated with a product and cannot be deleted");
+                alert1.show();
+            }
         }
     }
 
@@ -189,9 +261,9 @@ public class InventoryMainScreenController implements Initializable {
      * associated parts and if so, it will generate an alert window indicating the product cannot be deleted. If the
      * product has no associated parts then an alert window is created to confirm the user wishes to permanently delete
      * the selected product. Upon confirmation, the product will be removed from the static observable list in the
-     * Inventory class that contains all the products.
+     * Inventory class that contains all the products, as long as it still has no associated parts at that moment.
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
-     * @see Inventory#deleteProduct(Product)
+     * @see Mutation#deleteEmptyProduct(int)
      * */
     public void toDeleteProduct(ActionEvent actionEvent) {
         Product product = productTable.getSelectionModel().getSelectedItem();
@@ -201,12 +273,18 @@ public class InventoryMainScreenController implements Initializable {
             Optional<ButtonType> result = alert.showAndWait();
 
             if(result.isPresent()  && (result.get() == ButtonType.OK)) {
-                if(Inventory.deleteProduct(product)) {
+                if(Inventory.applyBatch(Collections.singletonList(Mutation.deleteEmptyProduct(product.getId()))) == 1) {
                     Alert alert1 = new Alert(Alert.AlertType.INFORMATION);
                     alert1.setTitle("Deletion Confirmation");
                     alert1.setContentText("The selected product has been deleted");
                     alert1.show();
                 }
+                else if(Inventory.lookupProduct(product.getId()) != null) {
+                    Alert alert1 = new Alert(Alert.AlertType.ERROR);
+                    alert1.setTitle("Cannot Delete");
+                    alert1.setContentText("The selected product now has associated parts and cannot be deleted");
+                    alert1.show();
+                }
             }
         }
         else {
@@ -217,6 +295,51 @@ public class InventoryMainScreenController implements Initializable {
         }
     }
 
+    /** This method is an event handler for the Export button in the bottom corner of the UI.
+     * The user picks a folder, and every Part and Product is written to parts.csv and products.csv in it by the static
+     * method export() in the InventoryExporter class. The export runs on a background thread, so the screen can still
+     * be used while it is written, and it shows the inventory as it was when the button was clicked even if changes
+     * are saved meanwhile. An alert says when the export is finished or why it failed.
+     * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
+     * @see InventoryExporter#export(Path, Path)
+     * */
+    public void exportInventory(ActionEvent actionEvent) {
+        Button exportButton = (Button) actionEvent.getSource();
+        DirectoryChooser chooser = new DirectoryChooser();
+        chooser.setTitle("Export Inventory To");
+        File folder = chooser.showDialog(exportButton.getScene().getWindow());
+        if (folder == null) {
+            return;
+        }
+        Path partsFile = folder.toPath().resolve("parts.csv");
+        Path productsFile = folder.toPath().resolve("products.csv");
+        Task<Long> export = new Task<Long>() {
+            @Override
+            protected Long call() throws IOException {
+                return InventoryExporter.export(partsFile, productsFile);
+            }
+        };
+        export.setOnSucceeded(event -> {
+            exportButton.setDisable(false);
+            Alert alert = new Alert(Alert.AlertType.INFORMATION);
+            alert.setTitle("Export Complete");
+            alert.setContentText(String.format("%,d parts and products were exported to %s", export.getValue(),
+                    folder));
+            alert.show();
+        });
+        export.setOnFailed(event -> {
+            exportButton.setDisable(false);
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Export Failed");
+            alert.setContentText("The inventory could not be exported: " + export.getException().getMessage());
+            alert.show();
+        });
+        exportButton.setDisable(true);
+        Thread thread = new Thread(export, "inventory-export");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
     /** This method is an event handler for the Exit button in the bottom corner of the UI.
      * Upon clicking the button the stage gets grabbed and closed, exiting the program.
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
@@ -226,95 +349,32 @@ public class InventoryMainScreenController implements Initializable {
         stage.close();
     }
 
-    /** This method is an event handler for the Search text field above the Parts table.
-     * The method grabs the input entered in the Search box and then calls the static overloaded method lookupPart()
-     * from the Inventory class to search for matches within the Inventory class' static observable list of parts. If
-     * the input entered is text, a new observable list is populated with all matches containing the input and the list
-     * is used to repopulate the table with the search results. If no text matches are found, lookupPart() is called
-     * again to check to see if there is an exact int match with a Part ID and, if so, the Parts table is repopulated
-     * with the one matching result. If no matches are found for either the text or the int searches then an alert is
-     * created advising that no results were found. When the handler is called on a blank search box, the table will
-     * repopulate with the full list of Parts from the static observable list in the Inventory class.
+    /** This method is an event handler for the Search text field above the Parts table, called when Enter is pressed.
+     * The table already searches as the user types, through the LiveSearch set up in initialize(), so pressing Enter
+     * only skips the short pause before the search starts. The search runs on a background thread, looking the text up
+     * with the static overloaded method lookupPart() in the Inventory class both as part of a name, ignoring case, and
+     * as a Part ID, and the matches are added to the table as they are found. If nothing matches, the table says so in
+     * place of the rows, and a blank search box repopulates the table with the full list of Parts.
      * @see Inventory#lookupPart(String)
      * @see Inventory#lookupPart(int)
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
      * */
     public void searchParts(ActionEvent actionEvent) {
-        try {
-            String tempString = partSearchTextField.getText();
-            ObservableList<Part> foundParts = Inventory.lookupPart(tempString);
-
-            if (foundParts.size() == 0) {
-                int tempInt = Integer.parseInt(partSearchTextField.getText());
-                Part tempPart = Inventory.lookupPart(tempInt);
-
-                if (tempPart != null) {
-                    foundParts.add(tempPart);
-                }
-            }
-            if (foundParts.isEmpty()) {
-                partSearchTextField.setText("");
-                Alert alert1 = new Alert(Alert.AlertType.ERROR);
-                alert1.setTitle("Invalid Input");
-                alert1.setContentText("No results found!");
-                alert1.show();
-                return;
-            }
-            partTable.setItems(foundParts);
-            partSearchTextField.setText("");
-        }
-        catch (NumberFormatException exception) {
-            partSearchTextField.setText("");
-            Alert alert1 = new Alert(Alert.AlertType.ERROR);
-            alert1.setTitle("Invalid Input");
-            alert1.setContentText("No results found!");
-            alert1.show();
-        }
+        partSearch.searchNow();
     }
 
-    /** This method is an event handler for the Search text field above the Products table.
-     * The method grabs the input entered in the Search box and then passes that data to the static overloaded method
-     * lookupProduct() from the Inventory class to search for matches within the Inventory class' static observable list
-     * of products. If the input entered is text, a new observable list is populated with all matches containing the input
-     * and the list is used to repopulate the table with the search results. If no text matches are found, lookupProduct()
-     * is called again to check to see if there is an exact int match with a Product ID and if so, the Products table is
-     * repopulated with the one matching result. If no matches are found for either the text or the int searches then
-     * an alert is created advising that no results were found. When the handler is called on a blank Search box, the
-     * table will repopulate with the full static list of Products from Inventory class.
+    /** This method is an event handler for the Search text field above the Products table, called when Enter is
+     * pressed. Like searchParts(), it only skips the short pause before the live search starts. The search runs on a
+     * background thread, looking the text up with the static overloaded method lookupProduct() in the Inventory class
+     * both as part of a name, ignoring case, and as a Product ID, and the matches are added to the table as they are
+     * found. If nothing matches, the table says so in place of the rows, and a blank search box repopulates the table
+     * with the full list of Products.
      * @see Inventory#lookupProduct(String)
      * @see Inventory#lookupProduct(int)
      * @param actionEvent Passed from the On Action event listener in the InventoryMainScreen FXML document.
      * */
     public void searchProducts(ActionEvent actionEvent) {
-        try {
-            String tempString = productSearchTextField.getText();
-            ObservableList<Product> foundProducts = Inventory.lookupProduct(tempString);
-
-            if (foundProducts.size() == 0) {
-                int tempInt = Integer.parseInt(productSearchTextField.getText());
-                Product tempProduct = Inventory.lookupProduct(tempInt);
-                if (tempProduct != null) {
-                    foundProducts.add(tempProduct);
-                }
-                if (foundProducts.isEmpty()) {
-                    productSearchTextField.setText("");
-                    Alert alert1 = new Alert(Alert.AlertType.ERROR);
-                    alert1.setTitle("Invalid Input");
-                    alert1.setContentText("No results found!");
-                    alert1.show();
-                    return;
-                }
-            }
-            productTable.setItems(foundProducts);
-            productSearchTextField.setText("");
-        }
-        catch (NumberFormatException exception) {
-            productSearchTextField.setText("");
-            Alert alert1 = new Alert(Alert.AlertType.ERROR);
-            alert1.setTitle("Invalid Input");
-            alert1.setContentText("No results found!");
-            alert1.show();
-        }
+        productSearch.searchNow();
     }
 }
 
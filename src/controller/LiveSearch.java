@@ -0,0 +1,149 @@
+package controller;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.collections.FXCollections;
+import javafx.collections.ObservableList;
+import javafx.concurrent.Task;
+import javafx.scene.control.Label;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextField;
+import javafx.util.Duration;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/** This class runs the search-as-you-type behind a search box on the main screen. Each keystroke restarts a short
+ * pause, and only once typing stops for that long is the search sent to a background thread, so the JavaFX Application
+ * Thread never waits on the name index. Starting a new search cancels the one before it, and a cancelled search stops
+ * at its next chunk and never touches the table again. Matches are added to the table in chunks, with a small first
+ * chunk so the first screenful shows up straight away. Pressing Enter searches at once without waiting for the pause.
+ * A search made of digits also looks the text up as an ID, and a match is shown above the name matches. Instead of an
+ * alert, the table's placeholder says when nothing was found, and a blank search box shows the whole list again.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class LiveSearch<T> {
+
+    private static final Duration PAUSE = Duration.millis(200);
+    private static final int FIRST_CHUNK = 50;
+    private static final int CHUNK = 2_000;
+    // One thread is enough since a new search cancels the last one, and it is a daemon so it never holds up exiting
+    private static final ExecutorService SEARCHES = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "inventory-search");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final TextField searchField;
+    private final TableView<T> table;
+    private final Function<String, List<T>> nameSearch;
+    private final IntFunction<T> idSearch;
+    private final Supplier<ObservableList<T>> everything;
+    private final PauseTransition pause = new PauseTransition(PAUSE);
+    private final Label placeholder = new Label();
+    private Task<Void> running;
+
+    /** This is the LiveSearch class constructor, which starts listening to the search box.
+     * @param searchField the search box
+     * @param table the table showing the results
+     * @param nameSearch the Inventory search for names containing some text
+     * @param idSearch the Inventory lookup by ID, returning null when there is no match
+     * @param everything the Inventory list shown when the search box is blank
+     * */
+    LiveSearch(TextField searchField, TableView<T> table, Function<String, List<T>> nameSearch,
+               IntFunction<T> idSearch, Supplier<ObservableList<T>> everything) {
+        this.searchField = searchField;
+        this.table = table;
+        this.nameSearch = nameSearch;
+        this.idSearch = idSearch;
+        this.everything = everything;
+        table.setPlaceholder(placeholder);
+        pause.setOnFinished(event -> search(searchField.getText()));
+        searchField.textProperty().addListener((observable, oldText, newText) -> pause.playFromStart());
+    }
+
+    /** This method searches for the text in the search box straight away, skipping the pause. */
+    void searchNow() {
+        pause.stop();
+        search(searchField.getText());
+    }
+
+    private void search(String text) {
+        if (running != null) {
+            running.cancel();
+            running = null;
+        }
+        String query = text.trim();
+        if (query.isEmpty()) {
+            placeholder.setText("");
+            table.setItems(everything.get());
+            return;
+        }
+        ObservableList<T> shown = FXCollections.observableArrayList();
+        table.setItems(shown);
+        placeholder.setText("Searching...");
+        Task<Void> task = new Task<Void>() {
+            @Override
+            protected Void call() {
+                T idMatch = null;
+                if (query.chars().allMatch(Character::isDigit)) {
+                    try {
+                        idMatch = idSearch.apply(Integer.parseInt(query));
+                    }
+                    catch (NumberFormatException exception) {
+                        // Too long to be an ID, so it can only match names
+                    }
+                }
+                List<T> chunk = new ArrayList<>(FIRST_CHUNK);
+                if (idMatch != null) {
+                    chunk.add(idMatch);
+                }
+                List<T> matches = nameSearch.apply(query);
+                int chunkSize = FIRST_CHUNK;
+                for (int i = 0; i < matches.size(); i++) {
+                    if (isCancelled()) {
+                        return null;
+                    }
+                    T match = matches.get(i);
+                    // A row deleted since the search started comes back as null
+                    if (match != null && !match.equals(idMatch)) {
+                        chunk.add(match);
+                    }
+                    if (chunk.size() >= chunkSize) {
+                        publish(chunk);
+                        chunk = new ArrayList<>(CHUNK);
+                        chunkSize = CHUNK;
+                    }
+                }
+                publish(chunk);
+                return null;
+            }
+
+            // Cancelling happens on the JavaFX Application Thread too, so a chunk that arrives after its search was
+            // cancelled always sees it and is dropped
+            private void publish(List<T> chunk) {
+                if (!chunk.isEmpty()) {
+                    Platform.runLater(() -> {
+                        if (!isCancelled()) {
+                            shown.addAll(chunk);
+                        }
+                    });
+                }
+            }
+        };
+        task.setOnSucceeded(event -> placeholder.setText("No results found"));
+        task.setOnFailed(event -> {
+            placeholder.setText("The search could not be completed");
+            System.out.println("Search for \"" + query + "\" failed: " + task.getException());
+        });
+        running = task;
+        SEARCHES.execute(task);
+    }
+}
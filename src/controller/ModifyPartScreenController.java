@@ -12,15 +12,17 @@ import model.InHouse;
 import model.Inventory;
 import model.Outsourced;
 import model.Part;
+import model.UpdateResult;
 
 import java.io.IOException;
 import java.net.URL;
+import java.util.Optional;
 import java.util.ResourceBundle;
 
 /** This is the controller class for the ModifyPart FXML document and not meant to be instantiated.
  * The class is initially passed a Part object from the Inventory Main Screen and uses that to populate the text
  * fields with the object's associated data fields. The user can then update those values and create a new
- * Part object, which replaces the passed Part in the static observable list of Parts in the Inventory.
+ * Part object, which replaces the passed Part in the Inventory, as long as nobody else changed it while it was open.
  * @author Greg Farrell
  * @version 1.0
  * */
@@ -51,8 +53,8 @@ public class ModifyPartScreenController implements Initializable {
 
     /** Static Part member used to receive a Part object passed from the Inventory Main Screen */
     public static Part tempPart = null;
-    /** Static int member used to store the static Part member's index in the static observable list in the Inventory class */
-    public static int tempPartIndex;
+    /** Static int member used to store the version the static Part member had when it was passed from the Inventory Main Screen */
+    public static int tempPartVersion;
     private static boolean isInHouse;
     private static String radioInfo1;
     private static String radioInfo2;
@@ -199,7 +201,9 @@ public class ModifyPartScreenController implements Initializable {
                 //machineID = Integer.parseInt(radioButtonTextField.getText());
                 System.out.println(name.getClass());
                 Part newPart = new InHouse(id, name, price, stock, min, max, machineID);
-                Inventory.getAllParts().set(tempPartIndex, newPart);
+                if (!update(newPart)) {
+                    return;
+                }
 
             } else {
 
@@ -250,7 +254,9 @@ public class ModifyPartScreenController implements Initializable {
                 //companyName = radioButtonTextField.getText();
 
                 Part newPart = new Outsourced(id, name, price, stock, min, max, companyName);
-                Inventory.updatePart(tempPartIndex, newPart);
+                if (!update(newPart)) {
+                    return;
+                }
             }
 
             Parent root = FXMLLoader.load(getClass().getResource("/view/InventoryMainScreen.fxml"));
@@ -270,4 +276,29 @@ public class ModifyPartScreenController implements Initializable {
             System.out.println(exception.getMessage().getClass());
         }
     }
+
+    /** This method saves the new Part in place of the one this screen was opened with, by ID rather than by its position
+     * in the list. If the Part was changed by someone else while the screen was open, the user is asked whether to save
+     * over that change, and a Part that has been deleted in the meantime is never brought back.
+     * @param newPart the Part built from the text fields
+     * @return true if the Part was saved
+     * @see Inventory#updatePart(Part, int, java.util.function.BooleanSupplier)
+     * */
+    private static boolean update(Part newPart) {
+        UpdateResult result = Inventory.updatePart(newPart, tempPartVersion, () -> {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    "This part was changed while you were editing it. Save your changes over it anyway?");
+            alert.setTitle("Part Changed");
+            Optional<ButtonType> choice = alert.showAndWait();
+            return choice.isPresent() && choice.get() == ButtonType.OK;
+        });
+        if (result == UpdateResult.NOT_FOUND) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Part Deleted");
+            alert.setContentText("This part was deleted while you were editing it, so it cannot be saved.");
+            alert.show();
+            return false;
+        }
+        return result == UpdateResult.UPDATED;
+    }
 }
@@ -1,5 +1,7 @@
 package controller;
 
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.event.ActionEvent;
 import javafx.fxml.FXMLLoader;
@@ -8,11 +10,11 @@ import javafx.scene.Node;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.scene.control.*;
-import javafx.scene.control.cell.PropertyValueFactory;
 import javafx.stage.Stage;
 import model.Inventory;
 import model.Part;
 import model.Product;
+import model.UpdateResult;
 
 import java.io.IOException;
 import java.net.URL;
@@ -48,9 +50,9 @@ public class ModifyProductScreenController implements Initializable {
     /** Parts Name column */
     public TableColumn<Part, String> partNameCol;
     /** Parts Inventory column */
-    public TableColumn<Part, Integer> partInventoryCol;
+    public TableColumn<Part, Number> partInventoryCol;
     /** Parts price column */
-    public TableColumn<Part, Double> partPriceCol;
+    public TableColumn<Part, Number> partPriceCol;
     /** Associated parts tableview */
     public TableView<Part> associatedPartsTable;
     /** Associated parts ID column */
@@ -58,16 +60,16 @@ public class ModifyProductScreenController implements Initializable {
     /** Associated parts name column */
     public TableColumn<Part, String> associatedPartNameCol;
     /** Associated parts stock column */
-    public TableColumn<Part, Integer> associatedPartInventoryCol;
+    public TableColumn<Part, Number> associatedPartInventoryCol;
     /** Associated parts price column */
-    public TableColumn<Part, Double> associatedPartPriceCol;
+    public TableColumn<Part, Number> associatedPartPriceCol;
     /** Parts table search text field */
     public TextField partSearchTextField;
 
-    /** Static Product member used to receive a Product object passed from the Inventory Main Screen */
+    /** Static Product member used to receive a copy of the Product passed from the Inventory Main Screen */
     protected static Product tempProduct;
-    /** Static int member used to store the static Product member's index in the static observable list in the Inventory class */
-    protected static int tempProductIndex;
+    /** Static int member used to store the version the static Product member had when it was passed from the Inventory Main Screen */
+    protected static int tempProductVersion;
 
     /** This method is called by the FXMLLoader.load() call contained in the toModifyProduct() method of the InventoryMainScreeController class.
      * The method also takes the static Product that was passed from the Inventory Main Screen and uses it to populate
@@ -87,16 +89,16 @@ public class ModifyProductScreenController implements Initializable {
         minTextField.setText(String.valueOf(tempProduct.getMin()));
         maxTextField.setText(String.valueOf(tempProduct.getMax()));
 
-        partIdCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        partNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        partInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        partPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        partIdCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        partNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        partInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        partPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         partTable.setItems(Inventory.getAllParts());
 
-        associatedPartIdCol.setCellValueFactory(new PropertyValueFactory<>("id"));
-        associatedPartNameCol.setCellValueFactory(new PropertyValueFactory<>("name"));
-        associatedPartInventoryCol.setCellValueFactory(new PropertyValueFactory<>("stock"));
-        associatedPartPriceCol.setCellValueFactory(new PropertyValueFactory<>("price"));
+        associatedPartIdCol.setCellValueFactory(cell -> new ReadOnlyObjectWrapper<>(cell.getValue().getId()));
+        associatedPartNameCol.setCellValueFactory(cell -> cell.getValue().nameProperty());
+        associatedPartInventoryCol.setCellValueFactory(cell -> cell.getValue().stockProperty());
+        associatedPartPriceCol.setCellValueFactory(cell -> cell.getValue().priceProperty());
         associatedPartsTable.setItems(tempProduct.getAllAssociatedParts());
     }
 
@@ -153,8 +155,8 @@ public class ModifyProductScreenController implements Initializable {
      * handling for dealing with invalid input. The Product() constructor is then called to create a new Product object
      * using that data. The observable list used to populate the associated parts table is then looped through, calling
      * addAssociatedPart() method on the new Product, so that the associated parts are added to its own observable list.
-     * Finally, the Product is replaced in the static observable list of Products in the Inventory class using the static
-     * tempProductIndex that was passed from the Inventory Main Screen when initialize() method was called.
+     * Finally, the Product is replaced in the Inventory by its ID, as long as it is still at the static
+     * tempProductVersion that was passed from the Inventory Main Screen when initialize() method was called.
      * @param actionEvent Passed from the On Action event listener in the ModifyProductScreen FXML document
      * @see Product#Product(int, String, double, int, int, int)
      * @see Product#addAssociatedPart(Part)
@@ -195,7 +197,9 @@ public class ModifyProductScreenController implements Initializable {
             for(int i = 0; i < tempProduct.getAllAssociatedParts().size(); i++) {
                 newProduct.addAssociatedPart(tempProduct.getAllAssociatedParts().get(i));
             }
-            Inventory.updateProduct(tempProductIndex, newProduct);
+            if (!update(newProduct)) {
+                return;
+            }
 
             Parent root = FXMLLoader.load(getClass().getResource("/view/InventoryMainScreen.fxml"));
             Stage stage = (Stage) ((Node) actionEvent.getSource()).getScene().getWindow();
@@ -216,8 +220,8 @@ public class ModifyProductScreenController implements Initializable {
     /** This method is an event handler for the Search text field above the Parts table.
      * The method grabs the input entered in the Search box and then calls the static overloaded method lookupPart()
      * from the Inventory class to search for matches within the Inventory class' static observable list of parts. If
-     * the input entered is text, a new observable list is populated with all matches containing the input and the list
-     * is used to repopulate the table with the search results. If no text matches are found, lookupPart() is called
+     * the input entered is text, a read-only observable list of all matches containing the input, ignoring case, is
+     * used to repopulate the table with the search results. If no text matches are found, lookupPart() is called
      * again to check to see if there is an exact int match with a Part ID and, if so, the Parts table is repopulated
      * with the one matching result. If no matches are found for either the text or the int searches then an alert is
      * created advising that no results were found. When the handler is called on a blank search box, the table will
@@ -239,7 +243,7 @@ public class ModifyProductScreenController implements Initializable {
                 Part tempPart = Inventory.lookupPart(tempInt);
 
                 if (tempPart != null) {
-                    foundParts.add(tempPart);
+                    foundParts = FXCollections.singletonObservableList(tempPart);
                 }
             }
             if (foundParts.isEmpty()) {
@@ -261,4 +265,29 @@ public class ModifyProductScreenController implements Initializable {
             alert1.show();
         }
     }
+
+    /** This method saves the new Product in place of the one this screen was opened with, by ID rather than by its
+     * position in the list. If the Product was changed by someone else while the screen was open, the user is asked
+     * whether to save over that change, and a Product that has been deleted in the meantime is never brought back.
+     * @param newProduct the Product built from the text fields and associated parts
+     * @return true if the Product was saved
+     * @see Inventory#updateProduct(Product, int, java.util.function.BooleanSupplier)
+     * */
+    private static boolean update(Product newProduct) {
+        UpdateResult result = Inventory.updateProduct(newProduct, tempProductVersion, () -> {
+            Alert alert = new Alert(Alert.AlertType.CONFIRMATION,
+                    "This product was changed while you were editing it. Save your changes over it anyway?");
+            alert.setTitle("Product Changed");
+            Optional<ButtonType> choice = alert.showAndWait();
+            return choice.isPresent() && choice.get() == ButtonType.OK;
+        });
+        if (result == UpdateResult.NOT_FOUND) {
+            Alert alert = new Alert(Alert.AlertType.ERROR);
+            alert.setTitle("Product Deleted");
+            alert.setContentText("This product was deleted while you were editing it, so it cannot be saved.");
+            alert.show();
+            return false;
+        }
+        return result == UpdateResult.UPDATED;
+    }
 }
@@ -0,0 +1,69 @@
+package controller;
+
+import javafx.animation.Animation;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
+import javafx.scene.Scene;
+import javafx.scene.control.Label;
+import javafx.util.Duration;
+import model.Inventory;
+import model.InventoryStatistics;
+
+import java.text.NumberFormat;
+import java.util.Locale;
+
+/** This class runs the totals panel at the bottom of the main screen. A few times a second it reads the running totals
+ * the Inventory keeps, which never means looking at any Part or Product, and shows them in two labels, changing the
+ * text only when a total has changed. The main screen is loaded afresh each time it is shown, so a panel stops itself
+ * once the screen it belongs to has been replaced.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class StatisticsPanel {
+
+    private static final Duration REFRESH = Duration.millis(500);
+
+    private final Label partsLabel;
+    private final Label productsLabel;
+    private final Timeline refresher = new Timeline(new KeyFrame(REFRESH, event -> refresh()));
+    private final NumberFormat count = NumberFormat.getIntegerInstance(Locale.US);
+    private final NumberFormat money = NumberFormat.getCurrencyInstance(Locale.US);
+    private boolean shown;
+
+    /** This is the StatisticsPanel class constructor, which fills the labels and starts refreshing them.
+     * @param partsLabel the label showing the Part totals
+     * @param productsLabel the label showing the Product totals
+     * */
+    StatisticsPanel(Label partsLabel, Label productsLabel) {
+        this.partsLabel = partsLabel;
+        this.productsLabel = productsLabel;
+        refresh();
+        refresher.setCycleCount(Animation.INDEFINITE);
+        refresher.play();
+    }
+
+    private void refresh() {
+        Scene scene = partsLabel.getScene();
+        if (scene != null && scene.getWindow() != null) {
+            shown = true;
+        }
+        else if (shown) {
+            refresher.stop();
+            return;
+        }
+        InventoryStatistics statistics = Inventory.getStatistics();
+        show(partsLabel, "Parts: " + count.format(statistics.getPartCount()) + " ("
+                + count.format(statistics.getInHousePartCount()) + " in-house, "
+                + count.format(statistics.getOutsourcedPartCount()) + " outsourced)   Stock: "
+                + count.format(statistics.getPartStock()) + "   Value: " + money.format(statistics.getPartValue()));
+        show(productsLabel, "Products: " + count.format(statistics.getProductCount()) + "   Stock: "
+                + count.format(statistics.getProductStock()) + "   Value: "
+                + money.format(statistics.getProductValue()));
+    }
+
+    private static void show(Label label, String text) {
+        if (!text.equals(label.getText())) {
+            label.setText(text);
+        }
+    }
+}
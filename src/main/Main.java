@@ -5,11 +5,18 @@ import javafx.fxml.FXMLLoader;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
+import model.CommandServer;
+import model.InventoryServer;
+
+import java.util.Arrays;
 
 /** This class creates an inventory management application for keeping track of Parts and Products on hand
  * at a small manufacturing firm. The class contains the program's main() method and is not intended to be instantiated.
- * FUTURE ENHANCEMENTS: The inventory totals for products should have methods and logic implemented so that the amounts
- * correspond with the inventory totals for parts.
+ * The number of units of each product that can be built from the parts in stock is available from
+ * Inventory.getBuildableUnits(), and is kept up to date as part inventory totals change.
+ * Building a product with Inventory.buildProduct() takes its parts out of the inventory totals for parts.
+ * Started with --server as the first argument, it serves the inventory over HTTP with InventoryServer instead of
+ * showing the screens, and started with --commands it takes binary commands from scanners with CommandServer.
  * @author Greg Farrell
  * @version 1.0
  * */
@@ -28,9 +35,18 @@ public class Main extends Application {
     }
     /** The Javadoc folder is located in the main directory, "/C482 Assessment Project/Javadoc".
      *  This is the main method that begins the program.
-     * @param args command-line arguments.
+     * @param args command-line arguments, where --server followed by InventoryServer's options starts the HTTP server
+     * and --commands followed by CommandServer's options starts the command server.
      * */
     public static void main(String[] args) {
+        if (args.length > 0 && args[0].equals("--server")) {
+            InventoryServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--commands")) {
+            CommandServer.main(Arrays.copyOfRange(args, 1, args.length));
+            return;
+        }
         launch(args);
     }
 }
@@ -0,0 +1,258 @@
+package model;
+
+import java.util.Arrays;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+import java.util.stream.IntStream;
+
+/** This class works out how many units of each Product can be built from the Parts in stock. A Product needs one of
+ * each associated part per unit, or several of a Part it lists several times. Building may only use the stock a Part
+ * can spare, which is the same stock the StockLedger lets a transaction take: its stock, less what is reserved, less
+ * its Minimum. The number of units is the smallest of those amounts divided by the number of times the Product lists
+ * the Part, and never less than 0. A Product with no associated parts, or one whose associated part has been deleted,
+ * cannot be built at all.
+ * Counts are worked out incrementally. The engine follows the Part and Product stores and the ledger's reservations,
+ * and a change to a Part's stock, Minimum or reserved stock only marks the Products that use it, found through the
+ * where-used index, as out of date, as does a change to a Product. Nothing is counted while the stores hold their
+ * locks. An out of date count is worked out again the next time it is asked for, from the part IDs in the where-used
+ * index and the current stock of each Part, and a count worked out while its Product changed again is not kept.
+ * recomputeAll() works out every count at once, in parallel.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class BuildabilityEngine {
+
+    private final WhereUsedIndex whereUsed;
+    private final IntFunction<Part> partLookup;
+    private final IntUnaryOperator reservedLookup;
+    // Every known Product is in one or both maps. A count is only current while its Product is not marked out of date
+    private final IntIntIndex counts = new IntIntIndex();
+    // Out of date Products, each with the number of the mark made by its latest change, which is never 0
+    private final IntIntIndex outOfDate = new IntIntIndex();
+    private int marks;
+
+    /** This is the BuildabilityEngine class constructor.
+     * @param whereUsed the where-used index, which must be registered with the Product store before the engine is
+     * @param partLookup finds a Part by ID, returning null for a Part that does not exist
+     * @param reservedLookup finds how much of a Part's stock is reserved, by its ID
+     * */
+    BuildabilityEngine(WhereUsedIndex whereUsed, IntFunction<Part> partLookup, IntUnaryOperator reservedLookup) {
+        this.whereUsed = whereUsed;
+        this.partLookup = partLookup;
+        this.reservedLookup = reservedLookup;
+    }
+
+    /** This method returns the listener that follows the Part store.
+     * @return the Part listener
+     * */
+    StoreListener<Part> partListener() {
+        return new PartChanges();
+    }
+
+    /** This method returns the listener that follows the Product store.
+     * @return the Product listener
+     * */
+    StoreListener<Product> productListener() {
+        return new ProductChanges();
+    }
+
+    /** This method marks the Products that use some Parts as out of date because the stock reserved from the Parts
+     * changed. The ledger calls it after each reservation is made, committed or cancelled.
+     * @param partIds the IDs of the Parts
+     * */
+    void reservationsChanged(int[] partIds) {
+        for (int partId : partIds) {
+            markOutOfDate(whereUsed.productsUsing(partId));
+        }
+    }
+
+    /** This method returns how many units of a Product can be built from the Parts in stock, working the count out
+     * first if a change has made it out of date.
+     * @param productId the ID of the Product
+     * @return the number of units, or -1 if there is no such Product
+     * */
+    int buildableUnits(int productId) {
+        int mark;
+        synchronized (this) {
+            mark = outOfDate.get(productId);
+            if (mark < 0) {
+                return counts.get(productId);
+            }
+        }
+        int units = count(productId);
+        synchronized (this) {
+            keep(productId, mark, units);
+        }
+        return units;
+    }
+
+    /** This method works out the count of every Product again, spreading the work across all available processors.
+     * Changes made while the counts are worked out leave the Products they touch marked as out of date as usual.
+     * @return the number of Products counted
+     * */
+    int recomputeAll() {
+        int[] productIds;
+        int[] productMarks;
+        synchronized (this) {
+            int[] stale = outOfDate.keys();
+            int[] current = counts.keys();
+            productIds = new int[stale.length + current.length];
+            productMarks = new int[productIds.length];
+            int size = 0;
+            for (int productId : stale) {
+                productIds[size] = productId;
+                productMarks[size++] = outOfDate.get(productId);
+            }
+            for (int productId : current) {
+                if (outOfDate.get(productId) < 0) {
+                    productIds[size++] = productId;
+                }
+            }
+            if (size < productIds.length) {
+                productIds = Arrays.copyOf(productIds, size);
+            }
+        }
+        int[] units = new int[productIds.length];
+        int[] ids = productIds;
+        IntStream.range(0, ids.length).parallel().forEach(i -> units[i] = count(ids[i]));
+        synchronized (this) {
+            for (int i = 0; i < ids.length; i++) {
+                keep(ids[i], productMarks[i], units[i]);
+            }
+        }
+        return ids.length;
+    }
+
+    // Works out a Product's count without holding the engine's lock
+    private int count(int productId) {
+        int[] partIds = whereUsed.partsOf(productId);
+        if (partIds.length == 0) {
+            return 0;
+        }
+        int units = Integer.MAX_VALUE;
+        int i = 0;
+        while (i < partIds.length && units > 0) {
+            int partId = partIds[i];
+            int listings = 0;
+            while (i < partIds.length && partIds[i] == partId) {
+                listings++;
+                i++;
+            }
+            Part part = partLookup.apply(partId);
+            long spare = part == null ? 0
+                    : Math.max(0, (long) part.getStock() - reservedLookup.applyAsInt(partId) - part.getMin());
+            units = (int) Math.min(units, spare / listings);
+        }
+        return units;
+    }
+
+    // Keeps a count worked out when the Product was at a mark, or when it was up to date if the mark is 0 or less, as
+    // long as the Product has not changed since. Needs the engine's lock
+    private void keep(int productId, int mark, int units) {
+        int latest = outOfDate.get(productId);
+        if (mark > 0 ? latest != mark : latest >= 0 || counts.get(productId) < 0) {
+            return;
+        }
+        counts.put(productId, units);
+        outOfDate.remove(productId);
+    }
+
+    private synchronized void markOutOfDate(int productId) {
+        marks = marks == Integer.MAX_VALUE ? 1 : marks + 1;
+        outOfDate.put(productId, marks);
+    }
+
+    private synchronized void markOutOfDate(int[] productIds) {
+        for (int productId : productIds) {
+            markOutOfDate(productId);
+        }
+    }
+
+    private synchronized void forget(int productId) {
+        counts.remove(productId);
+        outOfDate.remove(productId);
+    }
+
+    /** This class marks the Products that use a Part as out of date when the Part's stock or Minimum may have changed.
+     * */
+    private final class PartChanges implements StoreListener<Part> {
+
+        @Override
+        public void added(Part item) {
+            // A Part added again under a deleted Part's ID can be built from once more
+            markOutOfDate(whereUsed.productsUsing(item.getId()));
+        }
+
+        @Override
+        public void replaced(Part oldItem, Part newItem) {
+            if (oldItem.getStock() != newItem.getStock() || oldItem.getMin() != newItem.getMin()) {
+                markOutOfDate(whereUsed.productsUsing(newItem.getId()));
+            }
+        }
+
+        @Override
+        public void patched(Part item) {
+            // The stock before the patch is not known, so any patch counts as a change of stock
+            markOutOfDate(whereUsed.productsUsing(item.getId()));
+        }
+
+        @Override
+        public void removed(Part item) {
+            markOutOfDate(whereUsed.productsUsing(item.getId()));
+        }
+
+        @Override
+        public void batchStarted() {
+            // Each change in a batch only marks Products, so nothing needs holding back
+        }
+
+        @Override
+        public void batchFinished() {
+            // Nothing was held back
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Part> rows) {
+            // Parts are attached before Products, so there is nothing to mark yet
+        }
+    }
+
+    /** This class marks a Product as out of date whenever it is stored or patched, and forgets it when removed. */
+    private final class ProductChanges implements StoreListener<Product> {
+
+        @Override
+        public void added(Product item) {
+            markOutOfDate(item.getId());
+        }
+
+        @Override
+        public void replaced(Product oldItem, Product newItem) {
+            markOutOfDate(newItem.getId());
+        }
+
+        @Override
+        public void patched(Product item) {
+            markOutOfDate(item.getId());
+        }
+
+        @Override
+        public void removed(Product item) {
+            forget(item.getId());
+        }
+
+        @Override
+        public void batchStarted() {
+            // Each change in a batch only marks its Product, so nothing needs holding back
+        }
+
+        @Override
+        public void batchFinished() {
+            // Nothing was held back
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Product> rows) {
+            markOutOfDate(ids);
+        }
+    }
+}
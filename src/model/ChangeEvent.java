@@ -0,0 +1,94 @@
+package model;
+
+/** This class is one change to the inventory, as sent to the subscribers added with Inventory.subscribeToChanges().
+ * Every event has a sequence number one higher than the event before it, so a subscriber that stops can carry on from
+ * the sequence number after the last event it handled. An edit that changes several fields of a Part or Product is
+ * sent as one event for each field, and the events of one change always have consecutive sequence numbers.
+ * Field values are Strings, Integers and Doubles, with null for a field the item does not have, such as the machine
+ * ID of an Outsourced Part. A created or deleted Part or Product carries the whole item as the JSON object
+ * InventoryExporter writes.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class ChangeEvent {
+
+    /** This enum is the kinds of change an event can describe. */
+    public enum Kind {
+        /** A Part was added. The new value is the Part as JSON. */
+        PART_CREATED,
+        /** A field of a Part changed, from the old value to the new value. */
+        PART_CHANGED,
+        /** A Part was deleted. The old value is the Part as JSON. */
+        PART_DELETED,
+        /** A Product was added. The new value is the Product, with its associated parts, as JSON. */
+        PRODUCT_CREATED,
+        /** A field of a Product changed, from the old value to the new value. */
+        PRODUCT_CHANGED,
+        /** A Product was deleted. The old value is the Product as JSON. */
+        PRODUCT_DELETED,
+        /** A Part was associated with a Product. The new value is the Part's ID. */
+        ASSOCIATED_PART_ADDED,
+        /** A Part was no longer associated with a Product. The old value is the Part's ID. */
+        ASSOCIATED_PART_REMOVED
+    }
+
+    private final Kind kind;
+    private final int id;
+    private final String field;
+    private final Object oldValue;
+    private final Object newValue;
+    // Given by the feed as the event is published, before any subscriber can see it
+    private long sequence;
+
+    ChangeEvent(Kind kind, int id, String field, Object oldValue, Object newValue) {
+        this.kind = kind;
+        this.id = id;
+        this.field = field;
+        this.oldValue = oldValue;
+        this.newValue = newValue;
+    }
+
+    /** This method numbers the event as it is published.
+     * @param sequence the event's sequence number
+     * */
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    /** Gets the sequence field.
+     * @return the event's sequence number as a long
+     */
+    public long getSequence() { return sequence; }
+
+    /** Gets the kind field.
+     * @return the kind of change
+     */
+    public Kind getKind() { return kind; }
+
+    /** Gets the ID field.
+     * @return the ID of the changed Part or Product, which for an associated part event is the Product, as an int
+     */
+    public int getId() { return id; }
+
+    /** Gets the field field.
+     * @return the name of the changed field, such as "stock" or "companyName", "parts" for an associated part event,
+     * or null for a created or deleted event
+     */
+    public String getField() { return field; }
+
+    /** Gets the old value field.
+     * @return the value before the change, or null if there was none
+     */
+    public Object getOldValue() { return oldValue; }
+
+    /** Gets the new value field.
+     * @return the value after the change, or null if there is none
+     */
+    public Object getNewValue() { return newValue; }
+
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + kind + " " + id + (field == null ? "" : " " + field) + ": " + oldValue + " -> "
+                + newValue;
+    }
+}
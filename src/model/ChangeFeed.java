@@ -0,0 +1,468 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/** This class turns the changes made to the Part and Product stores into a feed of numbered ChangeEvents, which any
+ * number of subscribers can follow from any point the feed still keeps. It follows both stores as a listener. A
+ * replacement is compared field by field with the item it replaced, and a patch with the field values saved just
+ * before it, through StoreListener.patching(), so subscribers hear which fields changed and from what to what, rather
+ * than which rows of a list moved. A Product's associated parts are compared with the part IDs the where-used index
+ * holds for it as last stored, so the feed has to hear about a Product change before the index does.
+ * The newest events are kept in one ring shared by every subscriber, and each subscriber only holds its place in it,
+ * so an event costs the same however many subscribers there are. A subscriber's buffer size is how far behind the
+ * newest event it may fall before it is dropped, which keeps a slow subscriber from holding up the changes being made.
+ * Lag is measured when events are published, from the events the subscriber had already been handed before them, so a
+ * single batch larger than the buffer does not drop a subscriber that had kept up. A subscriber that starts further
+ * behind than its buffer size, such as one carrying on after being dropped, is catching up: it is not dropped for
+ * its lag until it is back within its buffer size. A slot of the ring is never reused while a subscriber has still to
+ * be handed its event. A publish that would need such a slot, such as a batch larger than the ring, is written in
+ * pieces, and waits briefly for the subscribers to take the events in the way; one that does not take them in time is
+ * dropped.
+ * Events are numbered and put in the ring under the feed's own lock, while the changed entry's stripe is still locked,
+ * so the events of any one Part or Product are numbered in the order the changes were made. Events from one batch
+ * made with EntityStore.atomically() are held back until the batch finishes and published together with consecutive
+ * numbers. Nothing is recorded until the first
+ * subscription, so an inventory nobody follows pays for no events, and attached snapshot rows, which are loaded
+ * before anyone can subscribe, are not recorded at all.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class ChangeFeed {
+
+    /** The number of newest events kept for subscribers to catch up on. */
+    static final int HISTORY = 1 << 16;
+
+    // How long a publish waits for a subscriber to take events whose slots are needed before dropping it
+    private static final long ROOM_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(250);
+
+    private static final String[] PART_FIELDS = {"type", "name", "price", "stock", "min", "max", "machineId",
+            "companyName"};
+    private static final String[] PRODUCT_FIELDS = {"name", "price", "stock", "min", "max"};
+
+    private final WhereUsedIndex whereUsed;
+    private final ChangeEvent[] ring = new ChangeEvent[HISTORY];
+    private final List<ChangeSubscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final AtomicInteger subscriptionCount = new AtomicInteger();
+    // Events held back until a batch on a thread finishes, with how many batches deep the thread is
+    private final ThreadLocal<Held> held = ThreadLocal.withInitial(Held::new);
+    private volatile boolean recording;
+    // Guarded by this
+    private long nextSequence = 1;
+    // Set while a publish is waiting for room part way through, so no other publish is numbered inside it
+    private boolean publishing;
+
+    /** This is the ChangeFeed class constructor.
+     * @param whereUsed the where-used index, which holds each Product's associated part IDs as last stored
+     * */
+    ChangeFeed(WhereUsedIndex whereUsed) {
+        this.whereUsed = whereUsed;
+    }
+
+    /** This method returns the listener that follows the Part store.
+     * @return the Part listener
+     * */
+    StoreListener<Part> partListener() {
+        return new PartChanges();
+    }
+
+    /** This method returns the listener that follows the Product store.
+     * @return the Product listener
+     * */
+    StoreListener<Product> productListener() {
+        return new ProductChanges();
+    }
+
+    /** This method returns the sequence number of the newest event.
+     * @return the sequence number, or 0 if there has been no event
+     * */
+    synchronized long latestSequence() {
+        return nextSequence - 1;
+    }
+
+    /** This method adds a subscriber, which starts recording changes if it is the first.
+     * @param fromSequence the sequence number of the first event to hand over, or 0 for the next event to happen
+     * @param bufferSize the most events the subscriber may fall behind by, from 1 up to HISTORY. A subscriber that
+     * starts further behind may fall as far behind as the feed keeps events for until it has caught up to within it
+     * @param subscriber receives each group of events, in order
+     * @return the subscription
+     * @throws IllegalArgumentException if the buffer size is out of range, or the feed no longer keeps the event to
+     * start from
+     * */
+    ChangeSubscription subscribe(long fromSequence, int bufferSize, Consumer<? super List<ChangeEvent>> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (bufferSize < 1 || bufferSize > HISTORY) {
+            throw new IllegalArgumentException("The buffer size must be between 1 and " + HISTORY);
+        }
+        ChangeSubscription subscription;
+        synchronized (this) {
+            recording = true;
+            long start = fromSequence == 0 ? nextSequence : fromSequence;
+            long oldestKept = Math.max(1, nextSequence - HISTORY);
+            if (start < oldestKept || start > nextSequence) {
+                throw new IllegalArgumentException("Event " + fromSequence + " is not kept; events " + oldestKept
+                        + " to " + nextSequence + " can be followed");
+            }
+            subscription = new ChangeSubscription(this, start, bufferSize, nextSequence - start > bufferSize,
+                    subscriber, "inventory-changes-" + subscriptionCount.incrementAndGet());
+            subscriptions.add(subscription);
+        }
+        subscription.start();
+        return subscription;
+    }
+
+    /** This method removes a subscription and wakes its thread so it can finish.
+     * @param subscription the subscription
+     * */
+    synchronized void unsubscribe(ChangeSubscription subscription) {
+        subscriptions.remove(subscription);
+        notifyAll();
+    }
+
+    /** This method waits for events from a sequence number on, for the thread of a subscription.
+     * @param subscription the subscription
+     * @param from the sequence number of the first event wanted
+     * @return the events from that number to the newest, or none if the subscription has ended
+     * @throws InterruptedException if the thread is interrupted while waiting
+     * */
+    synchronized List<ChangeEvent> awaitAfter(ChangeSubscription subscription, long from)
+            throws InterruptedException {
+        while (from == nextSequence && subscription.isActive()) {
+            wait();
+        }
+        if (!subscription.isActive()) {
+            return Collections.emptyList();
+        }
+        List<ChangeEvent> events = new ArrayList<>((int) (nextSequence - from));
+        for (long sequence = from; sequence < nextSequence; sequence++) {
+            events.add(ring[(int) sequence & (HISTORY - 1)]);
+        }
+        subscription.handedOver(nextSequence);
+        // A publish may be waiting for the slots these events were in
+        notifyAll();
+        return events;
+    }
+
+    private synchronized void publish(List<ChangeEvent> events) {
+        if (events.isEmpty()) {
+            return;
+        }
+        boolean interrupted = false;
+        while (publishing) {
+            try {
+                wait();
+            }
+            catch (InterruptedException exception) {
+                interrupted = true;
+            }
+        }
+        publishing = true;
+        try {
+            publishInPieces(events);
+        }
+        finally {
+            publishing = false;
+            notifyAll();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void publishInPieces(List<ChangeEvent> events) {
+        for (ChangeSubscription subscription : subscriptions) {
+            long behind = nextSequence - subscription.getHandedOver();
+            if (behind <= subscription.getBufferSize()) {
+                subscription.caughtUp();
+            }
+            else if (!subscription.isCatchingUp()) {
+                drop(subscription);
+            }
+        }
+        int written = 0;
+        while (written < events.size()) {
+            long free = oldestNotHandedOver() + HISTORY - nextSequence;
+            if (free == 0) {
+                awaitRoom();
+                continue;
+            }
+            int count = (int) Math.min(events.size() - written, free);
+            for (int i = written; i < written + count; i++) {
+                ChangeEvent event = events.get(i);
+                event.setSequence(nextSequence);
+                ring[(int) nextSequence & (HISTORY - 1)] = event;
+                nextSequence++;
+            }
+            written += count;
+            notifyAll();
+        }
+    }
+
+    // Returns the sequence number of the oldest event a subscriber has still to be handed, which is the oldest whose
+    // slot may not be reused
+    private long oldestNotHandedOver() {
+        long oldest = nextSequence;
+        for (ChangeSubscription subscription : subscriptions) {
+            oldest = Math.min(oldest, subscription.getHandedOver());
+        }
+        return oldest;
+    }
+
+    // Waits for the subscribers furthest behind to take the events in the slots a publish needs, and drops those that
+    // do not take them in time
+    private void awaitRoom() {
+        long oldest = oldestNotHandedOver();
+        long deadline = System.nanoTime() + ROOM_WAIT_NANOS;
+        try {
+            for (long wait = ROOM_WAIT_NANOS; wait > 0 && oldestNotHandedOver() == oldest;
+                 wait = deadline - System.nanoTime()) {
+                TimeUnit.NANOSECONDS.timedWait(this, wait);
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        for (ChangeSubscription subscription : subscriptions) {
+            if (subscription.getHandedOver() == oldest) {
+                drop(subscription);
+            }
+        }
+    }
+
+    private void drop(ChangeSubscription subscription) {
+        subscription.overflow();
+        subscriptions.remove(subscription);
+    }
+
+    // Publishes the events of one change, or holds them back until the thread's batch finishes
+    private void send(List<ChangeEvent> events) {
+        Held thread = held.get();
+        if (thread.depth == 0) {
+            publish(events);
+            return;
+        }
+        if (thread.events == null) {
+            thread.events = new ArrayList<>();
+        }
+        thread.events.addAll(events);
+    }
+
+    private void startBatch() {
+        held.get().depth++;
+    }
+
+    private void finishBatch() {
+        Held thread = held.get();
+        thread.depth--;
+        // A batch on one store can sit inside a batch on the other, which may not hold the inner batch's locks, so
+        // everything held is published as soon as any batch finishes and while its locks are still held
+        if (thread.events != null) {
+            List<ChangeEvent> events = thread.events;
+            thread.events = null;
+            publish(events);
+        }
+    }
+
+    // Makes an event for each field whose value differs
+    private static List<ChangeEvent> compare(ChangeEvent.Kind kind, int id, String[] fields, Object[] oldValues,
+                                             Object[] newValues) {
+        List<ChangeEvent> events = new ArrayList<>(2);
+        for (int i = 0; i < fields.length; i++) {
+            if (!Objects.equals(oldValues[i], newValues[i])) {
+                events.add(new ChangeEvent(kind, id, fields[i], oldValues[i], newValues[i]));
+            }
+        }
+        return events;
+    }
+
+    private static Object[] values(Part part) {
+        boolean inHouse = part instanceof InHouse;
+        return new Object[] {inHouse ? "InHouse" : "Outsourced", part.getName(), part.getPrice(), part.getStock(),
+                part.getMin(), part.getMax(), inHouse ? ((InHouse) part).getMachineId() : null,
+                inHouse ? null : ((Outsourced) part).getCompanyName()};
+    }
+
+    private static Object[] values(Product product) {
+        return new Object[] {product.getName(), product.getPrice(), product.getStock(), product.getMin(),
+                product.getMax()};
+    }
+
+    private static int[] associatedIds(Product product) {
+        List<Part> associated = product.getAllAssociatedParts();
+        int[] ids = new int[associated.size()];
+        for (int i = 0; i < ids.length; i++) {
+            ids[i] = associated.get(i).getId();
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    // Makes an event for each Part that a Product has started or stopped listing, from two sorted lists of part IDs
+    private static void compareParts(int id, int[] oldParts, int[] newParts, List<ChangeEvent> events) {
+        int i = 0;
+        int j = 0;
+        while (i < oldParts.length || j < newParts.length) {
+            int partId = j == newParts.length || (i < oldParts.length && oldParts[i] < newParts[j])
+                    ? oldParts[i] : newParts[j];
+            boolean before = false;
+            while (i < oldParts.length && oldParts[i] == partId) {
+                before = true;
+                i++;
+            }
+            boolean after = false;
+            while (j < newParts.length && newParts[j] == partId) {
+                after = true;
+                j++;
+            }
+            if (before && !after) {
+                events.add(new ChangeEvent(ChangeEvent.Kind.ASSOCIATED_PART_REMOVED, id, "parts", partId, null));
+            }
+            else if (after && !before) {
+                events.add(new ChangeEvent(ChangeEvent.Kind.ASSOCIATED_PART_ADDED, id, "parts", null, partId));
+            }
+        }
+    }
+
+    /** This class is what one thread holds back while it makes a batch. */
+    private static final class Held {
+        int depth;
+        List<ChangeEvent> events;
+    }
+
+    /** This class turns the changes to the Part store into events. */
+    private final class PartChanges implements StoreListener<Part> {
+        // The field values of the Part being patched on each thread, saved just before the patch
+        private final ThreadLocal<Object[]> beforePatch = new ThreadLocal<>();
+
+        @Override
+        public void added(Part item) {
+            if (recording) {
+                send(Collections.singletonList(new ChangeEvent(ChangeEvent.Kind.PART_CREATED, item.getId(), null,
+                        null, InventoryExporter.toJson(item))));
+            }
+        }
+
+        @Override
+        public void replaced(Part oldItem, Part newItem) {
+            if (recording) {
+                send(compare(ChangeEvent.Kind.PART_CHANGED, newItem.getId(), PART_FIELDS, values(oldItem),
+                        values(newItem)));
+            }
+        }
+
+        @Override
+        public void patching(Part item) {
+            if (recording) {
+                beforePatch.set(values(item));
+            }
+        }
+
+        @Override
+        public void patched(Part item) {
+            Object[] before = beforePatch.get();
+            if (before != null) {
+                beforePatch.set(null);
+                send(compare(ChangeEvent.Kind.PART_CHANGED, item.getId(), PART_FIELDS, before, values(item)));
+            }
+        }
+
+        @Override
+        public void removed(Part item) {
+            if (recording) {
+                send(Collections.singletonList(new ChangeEvent(ChangeEvent.Kind.PART_DELETED, item.getId(), null,
+                        InventoryExporter.toJson(item), null)));
+            }
+        }
+
+        @Override
+        public void batchStarted() {
+            startBatch();
+        }
+
+        @Override
+        public void batchFinished() {
+            finishBatch();
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Part> rows) {
+            // Snapshot rows are attached while the inventory loads, before anything can be recorded
+        }
+    }
+
+    /** This class turns the changes to the Product store into events. */
+    private final class ProductChanges implements StoreListener<Product> {
+        private final ThreadLocal<Object[]> beforePatch = new ThreadLocal<>();
+
+        @Override
+        public void added(Product item) {
+            if (recording) {
+                send(Collections.singletonList(new ChangeEvent(ChangeEvent.Kind.PRODUCT_CREATED, item.getId(), null,
+                        null, InventoryExporter.toJson(item))));
+            }
+        }
+
+        @Override
+        public void replaced(Product oldItem, Product newItem) {
+            if (!recording) {
+                return;
+            }
+            int id = newItem.getId();
+            List<ChangeEvent> events = compare(ChangeEvent.Kind.PRODUCT_CHANGED, id, PRODUCT_FIELDS, values(oldItem),
+                    values(newItem));
+            // The old item's own list may have been changed in place before it was replaced, so the parts are compared
+            // with the IDs it was last stored with
+            compareParts(id, whereUsed.partsOf(id), associatedIds(newItem), events);
+            send(events);
+        }
+
+        @Override
+        public void patching(Product item) {
+            if (recording) {
+                beforePatch.set(values(item));
+            }
+        }
+
+        @Override
+        public void patched(Product item) {
+            Object[] before = beforePatch.get();
+            if (before != null) {
+                beforePatch.set(null);
+                List<ChangeEvent> events = compare(ChangeEvent.Kind.PRODUCT_CHANGED, item.getId(), PRODUCT_FIELDS,
+                        before, values(item));
+                compareParts(item.getId(), whereUsed.partsOf(item.getId()), associatedIds(item), events);
+                send(events);
+            }
+        }
+
+        @Override
+        public void removed(Product item) {
+            if (recording) {
+                send(Collections.singletonList(new ChangeEvent(ChangeEvent.Kind.PRODUCT_DELETED, item.getId(), null,
+                        InventoryExporter.toJson(item), null)));
+            }
+        }
+
+        @Override
+        public void batchStarted() {
+            startBatch();
+        }
+
+        @Override
+        public void batchFinished() {
+            finishBatch();
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Product> rows) {
+            // Snapshot rows are attached while the inventory loads, before anything can be recorded
+        }
+    }
+}
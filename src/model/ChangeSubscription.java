@@ -0,0 +1,134 @@
+package model;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/** This class is a subscriber's place in the change feed, as returned by Inventory.subscribeToChanges(). Events are
+ * handed to the subscriber in order, in groups, on a thread the subscription has to itself, so a slow subscriber holds
+ * up neither the changes being made nor any other subscriber. A subscriber may fall behind the newest event by no more
+ * than its buffer size, counting only events it had not been handed when more were published; one that falls further
+ * behind is dropped, and can subscribe again from getNextSequence() while the feed still keeps the events it missed. A
+ * subscription that starts further behind than its buffer size, as one carrying on after being dropped does, is
+ * allowed to catch up until it is back within it.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class ChangeSubscription implements AutoCloseable {
+
+    private final ChangeFeed feed;
+    private final int bufferSize;
+    private final Consumer<? super List<ChangeEvent>> subscriber;
+    private final Thread deliverer;
+    // The sequence number of the next event to hand over, only advanced by the delivering thread
+    private volatile long nextSequence;
+    private volatile boolean closed;
+    private volatile boolean overflowed;
+    // Set while the subscriber started further behind than its buffer size and has not yet caught up, guarded by the
+    // feed's lock
+    private boolean catchingUp;
+    // The sequence number of the first event the delivering thread has not yet taken from the feed, guarded by the
+    // feed's lock
+    private long handedOver;
+
+    ChangeSubscription(ChangeFeed feed, long nextSequence, int bufferSize, boolean catchingUp,
+                       Consumer<? super List<ChangeEvent>> subscriber, String threadName) {
+        this.feed = feed;
+        this.nextSequence = nextSequence;
+        this.bufferSize = bufferSize;
+        this.catchingUp = catchingUp;
+        handedOver = nextSequence;
+        this.subscriber = subscriber;
+        deliverer = new Thread(this::deliverLoop, threadName);
+        deliverer.setDaemon(true);
+    }
+
+    /** This method starts handing over events. */
+    void start() {
+        deliverer.start();
+    }
+
+    /** This method stops the subscription. Events already being handed over are still delivered. */
+    @Override
+    public void close() {
+        closed = true;
+        feed.unsubscribe(this);
+    }
+
+    /** Gets the next sequence field.
+     * @return the sequence number of the first event not yet handed to the subscriber, which is where a new
+     * subscription carries on from, as a long
+     */
+    public long getNextSequence() { return nextSequence; }
+
+    /** This method tells whether the subscription was dropped because the subscriber fell more than its buffer size
+     * behind the newest event.
+     * @return true if the subscription was dropped
+     * */
+    public boolean isOverflowed() { return overflowed; }
+
+    /** This method tells whether the subscription still receives events.
+     * @return true until the subscription is closed or dropped
+     * */
+    public boolean isActive() { return !closed && !overflowed; }
+
+    /** Gets the buffer size field.
+     * @return the most events the subscriber may fall behind by as an int
+     */
+    int getBufferSize() { return bufferSize; }
+
+    /** This method tells whether the subscriber started further behind than its buffer size and has not caught up
+     * yet. The feed calls it under its lock.
+     * @return true while the subscriber is catching up
+     * */
+    boolean isCatchingUp() { return catchingUp; }
+
+    /** Gets the handed over field. The feed calls it under its lock.
+     * @return the sequence number of the first event the subscription has not yet taken from the feed as a long
+     */
+    long getHandedOver() { return handedOver; }
+
+    /** This method records that the subscription has taken every event before a sequence number from the feed, whose
+     * slots the feed may then reuse. The feed calls it under its lock.
+     * @param sequence the sequence number of the first event not taken
+     * */
+    void handedOver(long sequence) {
+        handedOver = sequence;
+    }
+
+    /** This method records that the subscriber is within its buffer size of the newest event. The feed calls it under
+     * its lock.
+     * */
+    void caughtUp() {
+        catchingUp = false;
+    }
+
+    /** This method drops the subscription because its subscriber fell too far behind. The feed calls it under its
+     * lock.
+     * */
+    void overflow() {
+        overflowed = true;
+    }
+
+    private void deliverLoop() {
+        while (isActive()) {
+            List<ChangeEvent> events;
+            try {
+                events = feed.awaitAfter(this, nextSequence);
+            }
+            catch (InterruptedException exception) {
+                return;
+            }
+            if (events.isEmpty()) {
+                continue;
+            }
+            try {
+                subscriber.accept(Collections.unmodifiableList(events));
+            }
+            catch (RuntimeException exception) {
+                System.out.println("A change subscriber failed: " + exception);
+            }
+            nextSequence += events.size();
+        }
+    }
+}
@@ -0,0 +1,233 @@
+package model;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/** This class sends commands to a CommandServer, for programs that change the inventory many times a second. Commands
+ * are gathered in a buffer and sent together, without waiting for the answers to earlier ones, and the answers are read
+ * as they come back. Each command is given a sequence number, counting from 0 in the order the commands were sent, and
+ * its answer, with the sequence number, goes to the listener if one is set. At most a window of commands are left
+ * unanswered at once, so that neither side can run out of room while the other is not reading. A client is meant to
+ * be used by one thread at a time.
+ * For example, {@code client.adjustStock(partId, -1)} sends a stock change, and {@code client.sync()} returns once
+ * every command sent has been answered.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class CommandClient implements Closeable {
+
+    private static final int DEFAULT_WINDOW = 4_096;
+    private static final int BUFFER_BYTES = 64 * 1024;
+
+    private final SocketChannel channel;
+    private final int window;
+    private final ByteBuffer out = ByteBuffer.allocate(BUFFER_BYTES);
+    private final ByteBuffer in = ByteBuffer.allocate(BUFFER_BYTES);
+    private Listener listener;
+    private long sent;
+    private long answered;
+    private long applied;
+    private long rejected;
+    private long invalid;
+
+    private CommandClient(SocketChannel channel, int window) {
+        this.channel = channel;
+        this.window = window;
+    }
+
+    /** This method connects to a CommandServer, leaving up to 4096 commands unanswered at once.
+     * @param host the server's host name or address
+     * @param port the server's port
+     * @return the connected client
+     * @throws IOException if the server cannot be reached
+     * */
+    public static CommandClient connect(String host, int port) throws IOException {
+        return connect(host, port, DEFAULT_WINDOW);
+    }
+
+    /** This method connects to a CommandServer.
+     * @param host the server's host name or address
+     * @param port the server's port
+     * @param window the most commands to leave unanswered at once, where 1 waits for each answer before sending on
+     * @return the connected client
+     * @throws IOException if the server cannot be reached
+     * */
+    public static CommandClient connect(String host, int port, int window) throws IOException {
+        if (window < 1) {
+            throw new IllegalArgumentException("The window must be at least one command");
+        }
+        SocketChannel channel = SocketChannel.open(new InetSocketAddress(host, port));
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        return new CommandClient(channel, window);
+    }
+
+    /** This method sets the listener that receives the answer to each command.
+     * @param listener the listener, or null for none
+     * */
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /** This method sends a command that adds a Part, which is turned down if a Part is already stored under its ID.
+     * @param part the Part, with an ID of 0 to have the server give it the next free ID, which the answer carries
+     * @return the command's sequence number
+     * @throws IOException if the connection fails
+     * */
+    public long addPart(Part part) throws IOException {
+        return sendPart(CommandProtocol.ADD_PART, part);
+    }
+
+    /** This method sends a command that replaces the Part stored under a Part's ID, which is turned down if there is
+     * none.
+     * @param part the Part
+     * @return the command's sequence number
+     * @throws IOException if the connection fails
+     * */
+    public long updatePart(Part part) throws IOException {
+        return sendPart(CommandProtocol.UPDATE_PART, part);
+    }
+
+    /** This method sends a command that adds to a Part's stock, or takes from it for a negative change, which is turned
+     * down on the same terms as Inventory.adjustStock().
+     * @param partId the ID of the Part
+     * @param change the amount to add to the stock
+     * @return the command's sequence number
+     * @throws IOException if the connection fails
+     * */
+    public long adjustStock(int partId, int change) throws IOException {
+        makeRoom(13);
+        CommandProtocol.putStockChange(out, partId, change);
+        return sent++;
+    }
+
+    /** This method sends every command gathered so far, without waiting for the answers.
+     * @throws IOException if the connection fails
+     * */
+    public void flush() throws IOException {
+        out.flip();
+        while (out.hasRemaining()) {
+            channel.write(out);
+        }
+        out.clear();
+    }
+
+    /** This method sends every command gathered so far and waits until each command sent has been answered.
+     * @throws IOException if the connection fails
+     * */
+    public void sync() throws IOException {
+        flush();
+        readAnswers(sent);
+    }
+
+    /** Gets the sent count field.
+     * @return the number of commands sent as a long
+     */
+    public long getSentCount() { return sent; }
+
+    /** Gets the applied count field.
+     * @return the number of commands answered as made as a long
+     */
+    public long getAppliedCount() { return applied; }
+
+    /** Gets the rejected count field.
+     * @return the number of commands answered as turned down as a long
+     */
+    public long getRejectedCount() { return rejected; }
+
+    /** Gets the invalid count field.
+     * @return the number of commands answered as invalid as a long
+     */
+    public long getInvalidCount() { return invalid; }
+
+    /** This method waits for the answers to every command sent and closes the connection.
+     * @throws IOException if the connection fails
+     * */
+    @Override
+    public void close() throws IOException {
+        try {
+            if (channel.isOpen()) {
+                sync();
+            }
+        }
+        finally {
+            channel.close();
+        }
+    }
+
+    private long sendPart(byte opcode, Part part) throws IOException {
+        byte[] name = CommandProtocol.utf8(part.getName());
+        byte[] companyName = part instanceof Outsourced ? CommandProtocol.utf8(((Outsourced) part).getCompanyName())
+                : null;
+        makeRoom(CommandProtocol.partFrameSize(name, companyName));
+        CommandProtocol.putPart(out, opcode, part, name, companyName);
+        return sent++;
+    }
+
+    // Waits for answers while the window is full, and sends what is gathered if the next command does not fit
+    private void makeRoom(int frameBytes) throws IOException {
+        if (sent - answered >= window) {
+            flush();
+            readAnswers(sent - window + 1);
+        }
+        if (out.remaining() < frameBytes) {
+            flush();
+        }
+    }
+
+    private void readAnswers(long through) throws IOException {
+        while (answered < through) {
+            if (channel.read(in) < 0) {
+                throw new EOFException("The server closed the connection with " + (sent - answered)
+                        + " commands unanswered");
+            }
+            in.flip();
+            while (in.remaining() >= CommandProtocol.ACK_BYTES) {
+                byte outcome = in.get();
+                int partId = in.getInt();
+                Outcome answer = outcome == CommandProtocol.APPLIED ? Outcome.APPLIED
+                        : outcome == CommandProtocol.REJECTED ? Outcome.REJECTED : Outcome.INVALID;
+                if (answer == Outcome.APPLIED) {
+                    applied++;
+                }
+                else if (answer == Outcome.REJECTED) {
+                    rejected++;
+                }
+                else {
+                    invalid++;
+                }
+                if (listener != null) {
+                    listener.answered(answered, answer, partId);
+                }
+                answered++;
+            }
+            in.compact();
+        }
+    }
+
+    /** This enum is the server's answer to a command. */
+    public enum Outcome {
+        /** The command was made. */
+        APPLIED,
+        /** The command was turned down, such as a stock change that would break the Part's Minimum or an update of a
+         * Part that does not exist. */
+        REJECTED,
+        /** The command could not be read, such as a Part whose Minimum is above its Maximum. */
+        INVALID
+    }
+
+    /** This interface receives the answer to each command, on the thread that sent the commands. */
+    @FunctionalInterface
+    public interface Listener {
+        /** This method is called with the answer to a command.
+         * @param sequence the command's sequence number
+         * @param outcome the answer
+         * @param partId the ID of the Part the command was about, which for an added Part is the ID it was given
+         * */
+        void answered(long sequence, Outcome outcome, int partId);
+    }
+}
@@ -0,0 +1,134 @@
+package model;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/** This class holds the layout of the binary command protocol spoken between CommandClient and CommandServer. Every
+ * command is a frame made of its length as a four byte int, which does not count itself, then a one byte opcode and the
+ * command's fields. Numbers are big-endian, and text is written as its length in UTF-8 bytes, as an unsigned two byte
+ * number, followed by the bytes.
+ * ADD_PART and UPDATE_PART carry a whole Part: its ID, a type byte of 1 for InHouse or 2 for Outsourced, its price as
+ * a double, its stock, minimum and maximum as ints, its machine ID as an int or its company name as text, and last its
+ * name as text. An ADD_PART with an ID of 0 is given the next free ID. ADJUST_STOCK carries a Part ID and an int to add
+ * to its stock.
+ * The server answers each command, in the order they were sent, with a five byte acknowledgement made of an outcome
+ * byte and the ID of the Part the command was about, which for an added Part is the ID it was given.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class CommandProtocol {
+
+    static final byte ADD_PART = 1;
+    static final byte UPDATE_PART = 2;
+    static final byte ADJUST_STOCK = 3;
+
+    static final byte APPLIED = 0;
+    static final byte REJECTED = 1;
+    static final byte INVALID = 2;
+
+    /** The largest frame, not counting its length. */
+    static final int MAX_FRAME = 64 * 1024;
+    /** The size of an acknowledgement. */
+    static final int ACK_BYTES = 5;
+
+    private static final byte IN_HOUSE = 1;
+    private static final byte OUTSOURCED = 2;
+    // The length, opcode, ID, type, price, stock, minimum, maximum and the lengths of two texts
+    private static final int PART_FIXED_BYTES = 4 + 1 + 4 + 1 + 8 + 4 + 4 + 4 + 2 + 2;
+
+    private CommandProtocol() { }
+
+    /** This method works out how many bytes a Part's frame takes, counting its length.
+     * @param name the Part's name in UTF-8
+     * @param companyName the company name of an Outsourced Part in UTF-8, or null for an InHouse Part
+     * @return the size of the frame
+     * */
+    static int partFrameSize(byte[] name, byte[] companyName) {
+        return PART_FIXED_BYTES + name.length + (companyName == null ? 2 : companyName.length);
+    }
+
+    /** This method writes a frame that adds or updates a Part.
+     * @param frame the buffer to write to, which must have room for partFrameSize() bytes
+     * @param opcode ADD_PART or UPDATE_PART
+     * @param part the Part
+     * @param name the Part's name in UTF-8
+     * @param companyName the company name of an Outsourced Part in UTF-8, or null for an InHouse Part
+     * */
+    static void putPart(ByteBuffer frame, byte opcode, Part part, byte[] name, byte[] companyName) {
+        frame.putInt(partFrameSize(name, companyName) - 4).put(opcode).putInt(part.getId())
+                .put(part instanceof Outsourced ? OUTSOURCED : IN_HOUSE).putDouble(part.getPrice())
+                .putInt(part.getStock()).putInt(part.getMin()).putInt(part.getMax());
+        if (part instanceof Outsourced) {
+            putText(frame, companyName);
+        }
+        else {
+            frame.putInt(((InHouse) part).getMachineId());
+        }
+        putText(frame, name);
+    }
+
+    /** This method writes a frame that changes a Part's stock.
+     * @param frame the buffer to write to, which must have room for 13 bytes
+     * @param partId the ID of the Part
+     * @param change the amount to add to the stock
+     * */
+    static void putStockChange(ByteBuffer frame, int partId, int change) {
+        frame.putInt(9).put(ADJUST_STOCK).putInt(partId).putInt(change);
+    }
+
+    /** This method reads the Part in an ADD_PART or UPDATE_PART frame, positioned just after its opcode.
+     * @param frame the frame, limited to its own bytes
+     * @return the Part, or null if the frame does not hold a Part that keeps the rules every Part must keep
+     * */
+    static Part readPart(ByteBuffer frame) {
+        try {
+            int id = frame.getInt();
+            byte type = frame.get();
+            double price = frame.getDouble();
+            int stock = frame.getInt();
+            int min = frame.getInt();
+            int max = frame.getInt();
+            int machineId = type == IN_HOUSE ? frame.getInt() : 0;
+            String companyName = type == OUTSOURCED ? getText(frame) : null;
+            String name = getText(frame);
+            if (type != IN_HOUSE && type != OUTSOURCED || frame.hasRemaining() || id < 0 || name.trim().isEmpty()
+                    || min > max || stock < min || stock > max) {
+                return null;
+            }
+            return type == IN_HOUSE ? new InHouse(id, name, price, stock, min, max, machineId)
+                    : new Outsourced(id, name, price, stock, min, max, companyName);
+        }
+        catch (BufferUnderflowException exception) {
+            return null;
+        }
+    }
+
+    /** This method turns text into UTF-8, checking that it fits in a frame.
+     * @param text the text
+     * @return the UTF-8 bytes
+     * @throws IllegalArgumentException if the text takes more than 65535 bytes
+     * */
+    static byte[] utf8(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Text of " + bytes.length + " bytes is too long to send");
+        }
+        return bytes;
+    }
+
+    private static void putText(ByteBuffer frame, byte[] text) {
+        frame.putShort((short) text.length).put(text);
+    }
+
+    private static String getText(ByteBuffer frame) {
+        int length = frame.getShort() & 0xFFFF;
+        if (length > frame.remaining()) {
+            throw new BufferUnderflowException();
+        }
+        String text = new String(frame.array(), frame.arrayOffset() + frame.position(), length,
+                StandardCharsets.UTF_8);
+        frame.position(frame.position() + length);
+        return text;
+    }
+}
@@ -0,0 +1,467 @@
+package model;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** This class serves the binary command protocol described in CommandProtocol, for clients such as scanners that send
+ * Part additions, updates and stock changes far faster than one HTTP request each. A client sends commands one after
+ * another without waiting for their answers, and the server answers each of them, in order, as they are made.
+ * One thread watches every connection and reads whatever commands have arrived, and a pool of worker threads makes
+ * them. All the commands a connection has sent while its last batch was being made go to Inventory.applyBatch() as the
+ * next batch, so under load a single batch, one lock of each stripe it touches and one log record, covers many
+ * commands, while a client sending one command at a time still has it made at once. A connection only ever has one
+ * batch being made, which keeps its commands in order. A connection stops being read while too many of its commands
+ * are waiting or too many of its answers are unsent, so a client sending faster than the inventory can keep up, or
+ * not reading its answers, is slowed down by TCP rather than filling memory.
+ * Usage: CommandServer [-port 8081] [-threads 4]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class CommandServer {
+
+    // Commands read from one connection but not yet made, beyond which the connection is not read
+    private static final int MAX_WAITING = 16_384;
+    // Answers not yet sent to a connection, beyond which the connection is not read
+    private static final int MAX_UNSENT_BYTES = 1024 * 1024;
+    private static final int READ_BUFFER_BYTES = 16 * 1024;
+
+    private final Selector selector;
+    private final ServerSocketChannel listener;
+    private final ExecutorService workers;
+    // Connections whose interest in reading or writing may have changed since the selector last looked
+    private final ConcurrentLinkedQueue<Connection> changed = new ConcurrentLinkedQueue<>();
+    private final Thread selectorThread;
+    private volatile boolean running = true;
+
+    private CommandServer(Selector selector, ServerSocketChannel listener, ExecutorService workers) {
+        this.selector = selector;
+        this.listener = listener;
+        this.workers = workers;
+        selectorThread = new Thread(this::select, "inventory-commands");
+    }
+
+    /** This is the main method that runs the server until the process is stopped.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        int port = 8081;
+        int threads = 4;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing a value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "-port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            CommandServer server = start(port, threads);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "inventory-commands-stop"));
+            System.out.println("Taking inventory commands on port " + server.getPort() + " with " + threads
+                    + " threads");
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException exception) {
+            System.out.println("The server could not be started: " + exception);
+            System.exit(1);
+        }
+    }
+
+    /** This method starts taking commands.
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of batches that can be made at once, each for a different connection
+     * @return the running server
+     * @throws IOException if the port cannot be listened on
+     * */
+    public static CommandServer start(int port, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread");
+        }
+        Selector selector = Selector.open();
+        ServerSocketChannel listener = ServerSocketChannel.open();
+        listener.bind(new InetSocketAddress(port), 1024);
+        listener.configureBlocking(false);
+        listener.register(selector, SelectionKey.OP_ACCEPT);
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "inventory-commands-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        CommandServer server = new CommandServer(selector, listener, workers);
+        server.selectorThread.start();
+        return server;
+    }
+
+    /** This method returns the port the server listens on.
+     * @return the port
+     * */
+    public int getPort() {
+        return listener.socket().getLocalPort();
+    }
+
+    /** This method stops the server and closes every connection, giving batches already being made a second to
+     * finish.
+     * */
+    public void stop() {
+        running = false;
+        selector.wakeup();
+        try {
+            selectorThread.join(1_000);
+            workers.shutdown();
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void select() {
+        try {
+            while (running) {
+                selector.select();
+                Connection connection;
+                while ((connection = changed.poll()) != null) {
+                    updateInterest(connection);
+                }
+                for (SelectionKey key : selector.selectedKeys()) {
+                    if (key.isValid() && key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    connection = (Connection) key.attachment();
+                    try {
+                        if (key.isValid() && key.isReadable()) {
+                            read(connection);
+                        }
+                        if (key.isValid() && key.isWritable()) {
+                            write(connection);
+                        }
+                    }
+                    catch (IOException exception) {
+                        // The client went away, and whatever it had waiting is made but not answered
+                        close(connection);
+                    }
+                }
+                selector.selectedKeys().clear();
+            }
+        }
+        catch (IOException | ClosedSelectorException exception) {
+            System.out.println("The command server stopped: " + exception);
+        }
+        finally {
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key);
+            }
+            try {
+                listener.close();
+                selector.close();
+            }
+            catch (IOException exception) {
+                System.out.println("The command server did not close cleanly: " + exception);
+            }
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = listener.accept();
+        if (channel == null) {
+            return;
+        }
+        channel.configureBlocking(false);
+        // Acknowledgements are small and a client waiting in sync() needs them at once
+        channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        Connection connection = new Connection(channel);
+        connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+    }
+
+    private void read(Connection connection) throws IOException {
+        if (connection.channel.read(connection.in) < 0) {
+            synchronized (connection) {
+                connection.ended = true;
+            }
+            updateInterest(connection);
+            return;
+        }
+        List<Command> commands = new ArrayList<>();
+        ByteBuffer in = connection.in;
+        in.flip();
+        while (in.remaining() >= 4) {
+            int length = in.getInt(in.position());
+            if (length < 1 || length > CommandProtocol.MAX_FRAME) {
+                // Without a believable length the next frame cannot be found, so the connection is of no further use
+                throw new IOException("A frame of " + length + " bytes is not allowed");
+            }
+            if (in.remaining() < 4 + length) {
+                break;
+            }
+            ByteBuffer frame = in.slice();
+            frame.position(4).limit(4 + length);
+            commands.add(Command.read(frame));
+            in.position(in.position() + 4 + length);
+        }
+        if (in.remaining() >= 4 && in.capacity() < 4 + in.getInt(in.position())) {
+            // A frame larger than the buffer needs a larger one before it can be read whole
+            ByteBuffer larger = ByteBuffer.allocate(4 + in.getInt(in.position()));
+            connection.in = larger.put(in);
+        }
+        else {
+            in.compact();
+        }
+        if (!commands.isEmpty()) {
+            boolean startBatch;
+            synchronized (connection) {
+                connection.waiting.addAll(commands);
+                startBatch = !connection.applying;
+                connection.applying = true;
+            }
+            if (startBatch) {
+                workers.execute(() -> applyWaiting(connection));
+            }
+        }
+        updateInterest(connection);
+    }
+
+    private void write(Connection connection) throws IOException {
+        synchronized (connection) {
+            connection.out.flip();
+            connection.channel.write(connection.out);
+            connection.out.compact();
+        }
+        updateInterest(connection);
+    }
+
+    // Runs on the selector thread, which alone changes what a key is interested in
+    private void updateInterest(Connection connection) {
+        SelectionKey key = connection.key;
+        if (!key.isValid()) {
+            return;
+        }
+        int interest = 0;
+        boolean finished;
+        synchronized (connection) {
+            if (!connection.ended && connection.waiting.size() < MAX_WAITING
+                    && connection.out.position() < MAX_UNSENT_BYTES) {
+                interest |= SelectionKey.OP_READ;
+            }
+            if (connection.out.position() > 0) {
+                interest |= SelectionKey.OP_WRITE;
+            }
+            finished = connection.ended && !connection.applying && interest == 0;
+        }
+        if (finished) {
+            close(connection);
+        }
+        else {
+            key.interestOps(interest);
+        }
+    }
+
+    // Makes a connection's waiting commands in batches until none are left, on a worker thread
+    private void applyWaiting(Connection connection) {
+        boolean finished = false;
+        try {
+            while (true) {
+                List<Command> batch;
+                synchronized (connection) {
+                    if (connection.waiting.isEmpty()) {
+                        connection.applying = false;
+                        finished = true;
+                        break;
+                    }
+                    batch = connection.waiting;
+                    connection.waiting = new ArrayList<>();
+                }
+                ByteBuffer acks;
+                try {
+                    acks = apply(batch);
+                }
+                catch (RuntimeException exception) {
+                    // The client is still owed an answer to every command, and the connection is kept
+                    System.out.println("A batch of " + batch.size() + " commands failed: " + exception);
+                    acks = reject(batch);
+                }
+                synchronized (connection) {
+                    if (connection.out.remaining() < acks.remaining()) {
+                        ByteBuffer larger = ByteBuffer.allocate(connection.out.position() + acks.remaining() * 2);
+                        connection.out.flip();
+                        connection.out = larger.put(connection.out);
+                    }
+                    connection.out.put(acks);
+                }
+                changed.add(connection);
+                selector.wakeup();
+            }
+        }
+        finally {
+            if (!finished) {
+                // Otherwise the connection would never start another batch or be closed
+                synchronized (connection) {
+                    connection.applying = false;
+                }
+            }
+            // A connection that ended while its last batch was being made is closed once the selector sees it
+            changed.add(connection);
+            selector.wakeup();
+        }
+    }
+
+    private static ByteBuffer apply(List<Command> batch) {
+        List<Mutation> mutations = new ArrayList<>(batch.size());
+        for (Command command : batch) {
+            if (command.opcode == CommandProtocol.ADD_PART && command.valid && command.part.getId() == 0) {
+                command.part.setId(Inventory.getNextUniquePartId());
+            }
+            Mutation mutation = command.toMutation();
+            if (mutation != null) {
+                mutations.add(mutation);
+            }
+        }
+        boolean[] changed = new boolean[mutations.size()];
+        Inventory.applyBatch(mutations, changed);
+        ByteBuffer acks = ByteBuffer.allocate(batch.size() * CommandProtocol.ACK_BYTES);
+        int made = 0;
+        int highestGivenId = 0;
+        for (Command command : batch) {
+            byte outcome;
+            if (command.toMutation() == null) {
+                outcome = CommandProtocol.INVALID;
+            }
+            else {
+                outcome = changed[made++] ? CommandProtocol.APPLIED : CommandProtocol.REJECTED;
+            }
+            if (outcome == CommandProtocol.APPLIED && command.opcode == CommandProtocol.ADD_PART) {
+                highestGivenId = Math.max(highestGivenId, command.part.getId());
+            }
+            acks.put(outcome).putInt(command.valid && command.part != null ? command.part.getId() : command.partId);
+        }
+        // Only IDs that were added are reserved, so a turned down addition does not use up IDs. Reserving an ID the
+        // allocator handed out itself changes nothing
+        if (highestGivenId > 0) {
+            Inventory.reserveIdsThrough(IdAllocator.Namespace.PART, highestGivenId);
+        }
+        acks.flip();
+        return acks;
+    }
+
+    // Answers every command in a batch that could not be made as turned down
+    private static ByteBuffer reject(List<Command> batch) {
+        ByteBuffer acks = ByteBuffer.allocate(batch.size() * CommandProtocol.ACK_BYTES);
+        for (Command command : batch) {
+            acks.put(command.valid ? CommandProtocol.REJECTED : CommandProtocol.INVALID);
+            acks.putInt(command.valid && command.part != null ? command.part.getId() : command.partId);
+        }
+        acks.flip();
+        return acks;
+    }
+
+    private void close(Connection connection) {
+        closeQuietly(connection.key);
+    }
+
+    private static void closeQuietly(SelectionKey key) {
+        if (key == null) {
+            return;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        }
+        catch (IOException exception) {
+            // Nothing more can be sent on it either way
+        }
+    }
+
+    /** This class is one command read from a connection. */
+    private static final class Command {
+        final byte opcode;
+        final int partId;
+        // The Part to add or update, or null if the frame did not hold a valid one
+        final Part part;
+        final int stockChange;
+        private final boolean valid;
+        private Mutation mutation;
+
+        private Command(byte opcode, int partId, Part part, int stockChange, boolean valid) {
+            this.opcode = opcode;
+            this.partId = partId;
+            this.part = part;
+            this.stockChange = stockChange;
+            this.valid = valid;
+        }
+
+        static Command read(ByteBuffer frame) {
+            byte opcode = frame.get();
+            // The ID is read ahead so that even an invalid command is answered with the ID it was about
+            int partId = frame.remaining() >= 4 ? frame.getInt(frame.position()) : 0;
+            if (opcode == CommandProtocol.ADD_PART || opcode == CommandProtocol.UPDATE_PART) {
+                Part part = CommandProtocol.readPart(frame);
+                // An added Part either takes the next free ID or brings one from the Part range
+                boolean valid = part != null && (opcode == CommandProtocol.ADD_PART
+                        ? part.getId() == 0 || IdAllocator.Namespace.PART.accepts(part.getId()) : part.getId() > 0);
+                return new Command(opcode, partId, part, 0, valid);
+            }
+            if (opcode == CommandProtocol.ADJUST_STOCK && frame.remaining() == 8) {
+                return new Command(opcode, frame.getInt(), null, frame.getInt(), true);
+            }
+            return new Command(opcode, partId, null, 0, false);
+        }
+
+        // Returns null for a command that cannot be made at all, which is answered as invalid
+        Mutation toMutation() {
+            if (mutation == null && valid) {
+                if (opcode == CommandProtocol.ADD_PART) {
+                    mutation = Mutation.addPart(part);
+                }
+                else if (opcode == CommandProtocol.UPDATE_PART) {
+                    mutation = Mutation.updatePart(part);
+                }
+                else {
+                    mutation = Mutation.adjustPartStock(partId, stockChange);
+                }
+            }
+            return mutation;
+        }
+    }
+
+    /** This class is one client's connection, with the commands it has sent and the answers still to be sent back. */
+    private static final class Connection {
+        final SocketChannel channel;
+        SelectionKey key;
+        // Only used on the selector thread
+        ByteBuffer in = ByteBuffer.allocate(READ_BUFFER_BYTES);
+        // The rest are guarded by the connection's lock
+        List<Command> waiting = new ArrayList<>();
+        boolean applying;
+        boolean ended;
+        ByteBuffer out = ByteBuffer.allocate(READ_BUFFER_BYTES);
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+}
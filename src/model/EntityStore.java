@@ -0,0 +1,809 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/** This class is the thread safe store of Parts or Products that the Inventory class treats as its source of truth.
+ * Entries are spread by ID across a fixed number of stripes, and each stripe holds its own storage and name index
+ * behind its own read/write lock. Writers working on different IDs therefore rarely wait on one another, and readers
+ * only ever block on a writer that is changing the same stripe. Name searches visit every stripe and merge the
+ * results. Listeners are told about each change before the stripe lock is released.
+ * A store can also start out with rows attached from a mapped snapshot. Their names are indexed straight away, but
+ * the Part or Product in a row is only built the first time it is looked up, replaced or visited, and from then on it
+ * is held by the stripe like any other entry. Screens that only show rows can peek at them instead, which reads a copy
+ * of an unbuilt row without keeping it.
+ * Each ID also has a version number, which moves on every time the entry under that ID is replaced, patched or
+ * removed. A writer that read an entry along with its version can replace it with replace(), which only succeeds if the
+ * version has not moved since, so an edit made from a stale copy is turned away rather than overwriting a newer one.
+ * Changes to many IDs can be made as one batch with atomically(), which holds the locks of every stripe involved until
+ * the whole batch is made.
+ * A point-in-time view of the whole store can be opened with openView(). Rather than copying the store when it opens,
+ * the view is handed the old state of each ID the first time that ID changes afterwards, and only until the view has
+ * visited the ID's stripe, so it costs nothing for entries that are left alone.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class EntityStore<T> {
+
+    private final Stripe<T>[] stripes;
+    private final int stripeMask;
+    private final ToIntFunction<T> idOf;
+    private final Function<T, String> nameOf;
+    private final List<StoreListener<T>> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Boolean> inBatch = ThreadLocal.withInitial(() -> Boolean.FALSE);
+    private final List<View<?>> views = new CopyOnWriteArrayList<>();
+    private static final byte UNBUILT = 0;
+    private static final byte BUILT = 1;
+    private static final byte CHANGED = 2;
+
+    // The state of each attached row, only read or written under the lock of the stripe that owns the row's ID. A row
+    // is BUILT once its item is held by the stripe and CHANGED once that item has been replaced or removed
+    private byte[] rowStates;
+    private volatile LazyRows<T> lazyRows;
+    private volatile boolean allBuilt;
+
+    /** This is the EntityStore class constructor for a store that keeps each Part or Product object as it was stored.
+     * @param idOf returns the ID of a Part or Product
+     * @param nameOf returns the name of a Part or Product
+     * */
+    EntityStore(ToIntFunction<T> idOf, Function<T, String> nameOf) {
+        this(idOf, nameOf, ObjectStorage::new);
+    }
+
+    /** This is the EntityStore class constructor. The stripe count is sized from the number of available processors
+     * so that concurrent writers have enough stripes to spread across.
+     * @param idOf returns the ID of a Part or Product
+     * @param nameOf returns the name of a Part or Product
+     * @param storage creates the storage behind each stripe
+     * */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    EntityStore(ToIntFunction<T> idOf, Function<T, String> nameOf, Supplier<StripeStorage<T>> storage) {
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 8 - 1) << 1;
+        this.stripes = new Stripe[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Stripe<>(storage.get());
+        }
+        this.stripeMask = count - 1;
+        this.idOf = idOf;
+        this.nameOf = nameOf;
+    }
+
+    /** This method registers a listener to be told about every change made to the store from now on.
+     * @param listener the listener to add
+     * */
+    void addListener(StoreListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    /** This method attaches saved rows to an empty store without building their Parts or Products. Listeners are told
+     * about the attached IDs so they can show the rows before anything has been built. This must be done before the
+     * store is shared with other threads.
+     * @param rows the rows to attach
+     * @throws IllegalStateException if the store already holds anything
+     * @throws java.io.UncheckedIOException if a row cannot be read, in which case nothing is attached
+     * */
+    void attach(LazyRows<T> rows) {
+        if (lazyRows != null || size() > 0) {
+            throw new IllegalStateException("Rows can only be attached to an empty store");
+        }
+        // Every row is read before the store is touched, so a damaged row leaves the store empty
+        int[] ids = new int[rows.size()];
+        String[] names = new String[ids.length];
+        for (int row = 0; row < ids.length; row++) {
+            ids[row] = rows.idAt(row);
+            names[row] = rows.nameAt(row);
+        }
+        for (int row = 0; row < ids.length; row++) {
+            Stripe<T> stripe = stripeFor(ids[row]);
+            stripe.lock.writeLock().lock();
+            try {
+                stripe.names.add(ids[row], names[row]);
+                stripe.unbuilt++;
+            }
+            finally {
+                stripe.lock.writeLock().unlock();
+            }
+        }
+        rowStates = new byte[ids.length];
+        lazyRows = rows;
+        for (StoreListener<T> listener : listeners) {
+            listener.attached(ids, rows);
+        }
+    }
+
+    /** This method returns the Part or Product stored under an ID, building it first if it is still in an attached
+     * row.
+     * @param id the ID to search for
+     * @return the matching Part or Product or null if there is no match
+     * */
+    T get(int id) {
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.readLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item != null || unbuiltRow(id) < 0) {
+                return item;
+            }
+        }
+        finally {
+            stripe.lock.readLock().unlock();
+        }
+        // Building the row changes the stripe, so the read lock is traded for the write lock and the row checked again
+        stripe.lock.writeLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item == null) {
+                item = build(stripe, id);
+                if (item != null) {
+                    stripe.rows.put(id, item);
+                    item = stripe.rows.get(id);
+                }
+            }
+            return item;
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method returns the Part or Product stored under an ID like get() does, except that an attached row that
+     * has not been built yet is read into a new copy each time rather than being built and kept. This lets a screen
+     * scroll through millions of attached rows without holding on to every one it has shown. A copy of an attached row
+     * counts as current until the row is replaced or removed, even once the row has been built, so it can still be
+     * removed, and is replaced like any other item.
+     * @param id the ID to search for
+     * @return the matching Part or Product, a copy of its attached row, or null if there is no match
+     * */
+    T peek(int id) {
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.readLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item != null) {
+                return item;
+            }
+            int row = unbuiltRow(id);
+            return row < 0 ? null : lazyRows.materialize(row);
+        }
+        finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /** This method tells whether a Part or Product is the one currently stored under its ID, in the same way remove()
+     * decides whether to remove it.
+     * @param item the Part or Product to check
+     * @return true if the item is stored, or is a copy of an attached row that has not been replaced or removed
+     * */
+    boolean isCurrent(T item) {
+        int id = idOf.applyAsInt(item);
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.readLock().lock();
+        try {
+            return stripe.rows.isCurrent(id, item) || rowState(id) != CHANGED;
+        }
+        finally {
+            stripe.lock.readLock().unlock();
+        }
+    }
+
+    /** This method returns the Part or Product stored under an ID like get() does, along with its current version.
+     * Both are read under the same lock, so the version is the one the returned item was stored with.
+     * @param id the ID to search for
+     * @return the matching Part or Product and its version, or null if there is no match
+     * */
+    Versioned<T> getVersioned(int id) {
+        Stripe<T> stripe = stripeFor(id);
+        // Taking the write lock straight away lets an unbuilt row be built without reading the version twice
+        stripe.lock.writeLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item == null) {
+                item = build(stripe, id);
+                if (item == null) {
+                    return null;
+                }
+                stripe.rows.put(id, item);
+                item = stripe.rows.get(id);
+            }
+            return new Versioned<>(item, stripe.versionOf(id));
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method stores a Part or Product under its ID, replacing whatever was stored under that ID before.
+     * @param item the Part or Product to store
+     * @return the Part or Product that was replaced or null if the ID was not in use
+     * */
+    T put(T item) {
+        int id = idOf.applyAsInt(item);
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.writeLock().lock();
+        try {
+            return store(stripe, id, item);
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method replaces the Part or Product stored under an item's ID, but only if the stored entry is still at
+     * the version the caller read it at. Checking the version and storing the item happen under the same lock, so two
+     * writers that read the same version cannot both succeed.
+     * @param item the Part or Product to store
+     * @param expectedVersion the version the entry had when it was read
+     * @return UPDATED if the item was stored, CONFLICT if the entry has moved on to another version, or NOT_FOUND if
+     * nothing is stored under the ID
+     * */
+    UpdateResult replace(T item, int expectedVersion) {
+        int id = idOf.applyAsInt(item);
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.writeLock().lock();
+        try {
+            if (stripe.rows.get(id) == null && unbuiltRow(id) < 0) {
+                return UpdateResult.NOT_FOUND;
+            }
+            if (stripe.versionOf(id) != expectedVersion) {
+                return UpdateResult.CONFLICT;
+            }
+            store(stripe, id, item);
+            return UpdateResult.UPDATED;
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method changes fields of the Part or Product stored under an ID without replacing it. The change runs under
+     * the stripe's write lock, on the stored object itself when the store keeps objects, or on a copy that is written
+     * back when the store keeps columns, and listeners are told about it as a patch rather than a replacement. The
+     * change must not alter the ID, and should only set fields, since anything else it does also happens under the lock.
+     * @param id the ID of the Part or Product to change
+     * @param change sets the new field values
+     * @return the patched Part or Product or null if nothing is stored under the ID
+     * */
+    T patch(int id, Consumer<? super T> change) {
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.writeLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item == null) {
+                item = build(stripe, id);
+                if (item == null) {
+                    return null;
+                }
+            }
+            String oldName = nameOf.apply(item);
+            preserve(stripe, id, item);
+            for (StoreListener<T> listener : listeners) {
+                listener.patching(item);
+            }
+            change.accept(item);
+            stripe.rows.put(id, item);
+            item = stripe.rows.get(id);
+            markChanged(id);
+            stripe.nextVersion(id);
+            String newName = nameOf.apply(item);
+            // Re-indexing a name is the expensive part of a write, and most patches are to stock or price
+            if (!newName.equals(oldName)) {
+                stripe.names.add(id, newName);
+            }
+            for (StoreListener<T> listener : listeners) {
+                listener.patched(item);
+            }
+            return item;
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method makes a group of changes to the store as one batch. The write lock of every stripe holding one of the
+     * IDs is taken, always in stripe order so two batches cannot deadlock, and held until the body has made all of its
+     * changes through the store's own methods, whose locks are reentrant. No other thread can read a changed ID until
+     * the batch is finished, and listeners are told where the batch starts and ends so they can publish it as a whole.
+     * The body must only change the listed IDs. If it throws, the changes it made before throwing are kept. A batch
+     * started from inside another batch on the same store is simply run as part of the outer one.
+     * @param ids the IDs the body will change, in any order and possibly repeated
+     * @param body makes the changes
+     * */
+    void atomically(int[] ids, Runnable body) {
+        if (inBatch.get()) {
+            body.run();
+            return;
+        }
+        boolean[] touched = new boolean[stripes.length];
+        for (int id : ids) {
+            touched[stripeIndex(id)] = true;
+        }
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                if (touched[locked]) {
+                    stripes[locked].lock.writeLock().lock();
+                }
+            }
+            inBatch.set(Boolean.TRUE);
+            for (StoreListener<T> listener : listeners) {
+                listener.batchStarted();
+            }
+            try {
+                body.run();
+            }
+            finally {
+                inBatch.set(Boolean.FALSE);
+                for (StoreListener<T> listener : listeners) {
+                    listener.batchFinished();
+                }
+            }
+        }
+        finally {
+            while (--locked >= 0) {
+                if (touched[locked]) {
+                    stripes[locked].lock.writeLock().unlock();
+                }
+            }
+        }
+    }
+
+    /** This method removes a Part or Product, but only if it is still the one stored under its ID. This keeps a stale
+     * reference from removing a newer replacement that happens to share the same ID. An item whose ID is in an attached
+     * row that has never been replaced can only be a copy of that row, as peek() hands out, so it is always current.
+     * @param item the Part or Product to remove
+     * @return true if the item was stored and has been removed
+     * */
+    boolean remove(T item) {
+        int id = idOf.applyAsInt(item);
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.writeLock().lock();
+        try {
+            byte state = rowState(id);
+            boolean current = stripe.rows.isCurrent(id, item) || state == BUILT;
+            if (!current && state != UNBUILT) {
+                return false;
+            }
+            if (!views.isEmpty()) {
+                preserve(stripe, id, current(stripe, id));
+            }
+            if (current) {
+                stripe.rows.remove(id);
+            }
+            else {
+                // The row is dropped without ever being built
+                stripe.unbuilt--;
+            }
+            removed(stripe, id, item);
+            return true;
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method removes whatever Part or Product is stored under an ID, for callers that only know the ID. An
+     * attached row that has not been built is dropped without being kept, though listeners are still handed a copy of
+     * it.
+     * @param id the ID to remove
+     * @return the Part or Product that was removed or null if the ID was not in use
+     * */
+    T removeId(int id) {
+        Stripe<T> stripe = stripeFor(id);
+        stripe.lock.writeLock().lock();
+        try {
+            T item = stripe.rows.get(id);
+            if (item != null) {
+                stripe.rows.remove(id);
+            }
+            else {
+                int row = unbuiltRow(id);
+                if (row < 0) {
+                    return null;
+                }
+                item = lazyRows.materialize(row);
+                stripe.unbuilt--;
+            }
+            preserve(stripe, id, item);
+            removed(stripe, id, item);
+            return item;
+        }
+        finally {
+            stripe.lock.writeLock().unlock();
+        }
+    }
+
+    /** This method finds the ID of every Part or Product whose name contains the query, ignoring case.
+     * @param query a name or partial name to search for
+     * @return the matching IDs in ascending order
+     * @see NGramIndex#search(String)
+     * */
+    int[] searchNames(String query) {
+        int[][] found = new int[stripes.length][];
+        int total = 0;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe<T> stripe = stripes[i];
+            stripe.lock.readLock().lock();
+            try {
+                found[i] = stripe.names.search(query);
+            }
+            finally {
+                stripe.lock.readLock().unlock();
+            }
+            total += found[i].length;
+        }
+        int[] ids = new int[total];
+        int offset = 0;
+        for (int[] stripeIds : found) {
+            System.arraycopy(stripeIds, 0, ids, offset, stripeIds.length);
+            offset += stripeIds.length;
+        }
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    /** This method visits every Part or Product in the store, building any attached rows that have not been built yet.
+     * Each stripe is copied under its read lock and visited after the lock is released, so the action may safely call
+     * back into the store, but changes made on other threads during the visit may or may not be seen.
+     * @param action the action to run for each stored item
+     * */
+    void forEach(Consumer<? super T> action) {
+        buildAll();
+        List<T> batch = new ArrayList<>();
+        for (Stripe<T> stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                stripe.rows.forEach(batch::add);
+            }
+            finally {
+                stripe.lock.readLock().unlock();
+            }
+            batch.forEach(action);
+            batch.clear();
+        }
+    }
+
+    /** This method returns the number of Parts or Products in the store. Writers on other threads may change the
+     * count while the stripes are being added up.
+     * @return the number of stored items
+     * */
+    int size() {
+        int total = 0;
+        for (Stripe<T> stripe : stripes) {
+            stripe.lock.readLock().lock();
+            try {
+                total += stripe.rows.size() + stripe.unbuilt;
+            }
+            finally {
+                stripe.lock.readLock().unlock();
+            }
+        }
+        return total;
+    }
+
+    /** This method runs a body while holding the write lock of every stripe, so no change to the store can be in
+     * progress or start until the body is done. The locks are reentrant, so the body may use the store itself.
+     * @param body the code to run
+     * */
+    void exclusively(Runnable body) {
+        int locked = 0;
+        try {
+            for (; locked < stripes.length; locked++) {
+                stripes[locked].lock.writeLock().lock();
+            }
+            body.run();
+        }
+        finally {
+            while (--locked >= 0) {
+                stripes[locked].lock.writeLock().unlock();
+            }
+        }
+    }
+
+    /** This method opens a view of the store as it is at this moment, which can be visited later while changes carry
+     * on. Each entry is turned into a row by the capture function, which must return something that later changes to
+     * the entry cannot alter, and which runs under the entry's stripe lock, so it must be quick and must not change the
+     * store. The view must be closed once it has been visited, or the store keeps preserving old rows for it.
+     * @param capture turns a Part or Product into the row kept for the view
+     * @param <R> the type of row the view keeps
+     * @return the open view
+     * */
+    <R> View<R> openView(Function<? super T, ? extends R> capture) {
+        return openView(capture, (rows, row) -> capture.apply(rows.materialize(row)));
+    }
+
+    /** This method opens a view of the store as it is at this moment, in the same way as openView(Function), but
+     * takes attached rows that have never been built straight from the attached table, so visiting the view neither
+     * builds them nor creates a throwaway object for each one.
+     * @param capture turns a Part or Product into the row kept for the view
+     * @param captureUnbuilt turns an attached row that has not been built into the row kept for the view
+     * @param <R> the type of row the view keeps
+     * @return the open view
+     * */
+    <R> View<R> openView(Function<? super T, ? extends R> capture, UnbuiltCapture<T, ? extends R> captureUnbuilt) {
+        View<R> view = new View<>(capture, captureUnbuilt);
+        // The view starts at a moment when no stripe is part way through a change
+        exclusively(() -> views.add(view));
+        return view;
+    }
+
+    // Hands the state of an ID from before a change to every open view that still needs it. Needs the write lock
+    private void preserve(Stripe<T> stripe, int id, T current) {
+        if (views.isEmpty()) {
+            return;
+        }
+        int index = stripeIndex(id);
+        for (View<?> view : views) {
+            view.preserve(index, id, current);
+        }
+    }
+
+    // Returns what is stored under an ID without building it, or null. Needs the stripe lock
+    private T current(Stripe<T> stripe, int id) {
+        T item = stripe.rows.get(id);
+        if (item == null) {
+            int row = unbuiltRow(id);
+            item = row < 0 ? null : lazyRows.materialize(row);
+        }
+        return item;
+    }
+
+    // Stores an item under its ID and tells the listeners. Needs the write lock
+    private T store(Stripe<T> stripe, int id, T item) {
+        if (!views.isEmpty()) {
+            preserve(stripe, id, current(stripe, id));
+        }
+        T previous = stripe.rows.put(id, item);
+        if (previous == null) {
+            // Listeners are owed the item being replaced even if it was never built
+            previous = build(stripe, id);
+        }
+        markChanged(id);
+        if (previous != null) {
+            stripe.nextVersion(id);
+        }
+        stripe.names.add(id, nameOf.apply(item));
+        for (StoreListener<T> listener : listeners) {
+            if (previous == null) {
+                listener.added(item);
+            }
+            else {
+                listener.replaced(previous, item);
+            }
+        }
+        return previous;
+    }
+
+    // Drops the name of a removed ID and tells the listeners. Needs the write lock
+    private void removed(Stripe<T> stripe, int id, T item) {
+        markChanged(id);
+        stripe.nextVersion(id);
+        stripe.names.remove(id);
+        for (StoreListener<T> listener : listeners) {
+            listener.removed(item);
+        }
+    }
+
+    // Returns the attached row holding an ID that has been neither built nor replaced, or -1. Needs the stripe lock
+    private int unbuiltRow(int id) {
+        LazyRows<T> rows = lazyRows;
+        if (rows == null) {
+            return -1;
+        }
+        int row = rows.rowOf(id);
+        return row >= 0 && rowStates[row] == UNBUILT ? row : -1;
+    }
+
+    // Returns the state of the attached row holding an ID, or CHANGED if no attached row holds it. Needs the stripe lock
+    private byte rowState(int id) {
+        LazyRows<T> rows = lazyRows;
+        int row = rows == null ? -1 : rows.rowOf(id);
+        return row < 0 ? CHANGED : rowStates[row];
+    }
+
+    // Needs the write lock
+    private void markChanged(int id) {
+        LazyRows<T> rows = lazyRows;
+        int row = rows == null ? -1 : rows.rowOf(id);
+        if (row >= 0) {
+            rowStates[row] = CHANGED;
+        }
+    }
+
+    // Builds the item in an ID's attached row and marks the row as taken over by the stripe. Needs the write lock
+    private T build(Stripe<T> stripe, int id) {
+        int row = unbuiltRow(id);
+        if (row < 0) {
+            return null;
+        }
+        T item = lazyRows.materialize(row);
+        rowStates[row] = BUILT;
+        stripe.unbuilt--;
+        return item;
+    }
+
+    private void buildAll() {
+        LazyRows<T> rows = lazyRows;
+        if (rows == null || allBuilt) {
+            return;
+        }
+        for (int row = 0; row < rows.size(); row++) {
+            get(rows.idAt(row));
+        }
+        allBuilt = true;
+    }
+
+    private Stripe<T> stripeFor(int id) {
+        return stripes[stripeIndex(id)];
+    }
+
+    private int stripeIndex(int id) {
+        // The stripe is picked from the top bits of a different hash than the one IntIndex uses for its slots. Taking it
+        // from bits the slot hash also uses would leave every ID in a stripe sharing those slot bits, so once a stripe's
+        // table grew past 65536 slots, part of the table could never be used
+        int h = id * 0x85EBCA6B;
+        return (h >>> Integer.numberOfLeadingZeros(stripeMask)) & stripeMask;
+    }
+
+    /** This class is a view of the store as it was when the view was opened. The view visits the store one stripe at a
+     * time. Until it has visited a stripe, the first change to each ID in that stripe leaves the ID's old row with the
+     * view, so the view sees the old row in place of the current entry. That includes IDs that have been removed since,
+     * and IDs added since are left out. Once a stripe has been visited, its preserved rows are dropped, so a view only
+     * ever holds the old rows of entries that changed in the stripes it has not reached yet.
+     * @param <R> the type of row the view keeps
+     * */
+    final class View<R> implements AutoCloseable {
+        // Stands for an ID that was not in use when the view was opened
+        private final Object absent = new Object();
+        private final Function<? super T, ? extends R> capture;
+        private final UnbuiltCapture<T, ? extends R> captureUnbuilt;
+        // Each stripe's preserved rows and whether the view has visited it, both guarded by that stripe's lock
+        private final IntIndex<Object>[] preserved;
+        private final boolean[] visited;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        private View(Function<? super T, ? extends R> capture, UnbuiltCapture<T, ? extends R> captureUnbuilt) {
+            this.capture = capture;
+            this.captureUnbuilt = captureUnbuilt;
+            this.preserved = new IntIndex[stripes.length];
+            this.visited = new boolean[stripes.length];
+        }
+
+        // Needs the write lock of the stripe
+        private void preserve(int index, int id, T current) {
+            if (visited[index]) {
+                return;
+            }
+            if (preserved[index] == null) {
+                preserved[index] = new IntIndex<>();
+            }
+            if (!preserved[index].containsKey(id)) {
+                preserved[index].put(id, current == null ? absent : capture.apply(current));
+            }
+        }
+
+        /** This method visits the row of every Part or Product that was in the store when the view was opened, stripe by
+         * stripe, with no two rows sharing an ID. The rows of a stripe are gathered under its read lock and visited
+         * after the lock is released, so the action may take as long as it needs. A view can only be visited once.
+         * @param action the action to run for each row
+         * */
+        @SuppressWarnings("unchecked")
+        void forEach(Consumer<? super R> action) {
+            int[][] attachedRows = attachedRowsByStripe();
+            List<R> batch = new ArrayList<>();
+            for (int index = 0; index < stripes.length; index++) {
+                Stripe<T> stripe = stripes[index];
+                stripe.lock.readLock().lock();
+                try {
+                    if (visited[index]) {
+                        throw new IllegalStateException("A view can only be visited once");
+                    }
+                    IntIndex<Object> old = preserved[index];
+                    stripe.rows.forEach(item -> {
+                        Object row = old == null ? null : old.get(idOf.applyAsInt(item));
+                        if (row == null) {
+                            batch.add(capture.apply(item));
+                        }
+                        else if (row != absent) {
+                            batch.add((R) row);
+                        }
+                    });
+                    for (int row : attachedRows[index]) {
+                        if (rowStates[row] == UNBUILT) {
+                            batch.add(captureUnbuilt.capture(lazyRows, row));
+                        }
+                    }
+                    if (old != null) {
+                        // Entries removed since the view was opened are no longer in the stripe at all
+                        old.forEach((id, row) -> {
+                            if (row != absent && stripe.rows.get(id) == null && unbuiltRow(id) < 0) {
+                                batch.add((R) row);
+                            }
+                        });
+                    }
+                    visited[index] = true;
+                    preserved[index] = null;
+                }
+                finally {
+                    stripe.lock.readLock().unlock();
+                }
+                batch.forEach(action);
+                batch.clear();
+            }
+        }
+
+        // Lists the attached rows that belong to each stripe, so each stripe's unbuilt rows can be read under its lock
+        private int[][] attachedRowsByStripe() {
+            LazyRows<T> rows = lazyRows;
+            int[][] byStripe = new int[stripes.length][];
+            int[] counts = new int[stripes.length];
+            int total = rows == null ? 0 : rows.size();
+            for (int row = 0; row < total; row++) {
+                counts[stripeIndex(rows.idAt(row))]++;
+            }
+            for (int index = 0; index < stripes.length; index++) {
+                byStripe[index] = new int[counts[index]];
+                counts[index] = 0;
+            }
+            for (int row = 0; row < total; row++) {
+                int index = stripeIndex(rows.idAt(row));
+                byStripe[index][counts[index]++] = row;
+            }
+            return byStripe;
+        }
+
+        /** This method closes the view, so changes to the store no longer preserve anything for it. */
+        @Override
+        public void close() {
+            views.remove(this);
+        }
+    }
+
+    /** This interface turns an attached row into the row a view keeps for it, reading the attached table directly.
+     * @param <T> Part or Product
+     * @param <R> the type of row the view keeps
+     * */
+    interface UnbuiltCapture<T, R> {
+
+        /** This method captures one attached row.
+         * @param rows the attached table
+         * @param row the row number
+         * @return the row kept for the view
+         * */
+        R capture(LazyRows<T> rows, int row);
+    }
+
+    /** This class is one stripe of the store, holding the storage and name index for the IDs that hash to it. */
+    private static final class Stripe<T> {
+        final ReadWriteLock lock = new ReentrantReadWriteLock();
+        final StripeStorage<T> rows;
+        final NGramIndex names = new NGramIndex();
+        // Only IDs that have been replaced, patched or removed are listed, so a freshly added or attached entry costs
+        // nothing and is at version 0. A removed ID keeps its entry, so if the ID is added again it carries on from the
+        // version it was removed at and an edit read before the removal still conflicts
+        final IntIntIndex versions = new IntIntIndex();
+        // Attached rows belonging to this stripe that have been neither built nor replaced
+        int unbuilt;
+
+        Stripe(StripeStorage<T> rows) {
+            this.rows = rows;
+        }
+
+        int versionOf(int id) {
+            return Math.max(0, versions.get(id));
+        }
+
+        void nextVersion(int id) {
+            versions.put(id, versionOf(id) + 1);
+        }
+    }
+}
@@ -0,0 +1,525 @@
+package model;
+
+import javafx.animation.AnimationTimer;
+import javafx.application.Platform;
+import javafx.collections.ObservableList;
+import javafx.collections.ObservableListBase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.IntFunction;
+import java.util.function.Predicate;
+import java.util.function.ToIntFunction;
+
+/** This class keeps the observable list that TableViews bind to in step with an EntityStore, listening to the store
+ * for changes. The list itself is only
+ * ever changed on the JavaFX Application Thread. Changes made on any other thread are queued as deltas, and an
+ * AnimationTimer drains everything that has queued up once per animation pulse, just before the scene is laid out and
+ * drawn, folding repeated changes to the same ID into one. However fast background writes arrive, the TableViews see
+ * at most one list change per frame and lay out once, rather than once for every Platform.runLater() that got in
+ * between two frames. The timer only runs while deltas keep arriving, and stops after a pulse with nothing to drain.
+ * Setting the system property inventory.fxUpdates to "immediate" drains with Platform.runLater() as soon as deltas
+ * are queued instead, which is only useful to measure the difference. Changes made on the JavaFX thread are applied
+ * straight away, after anything already queued, so screens see their own edits immediately. When the
+ * JavaFX toolkit is not running there is no UI to protect, so deltas are left queued until the list is next requested
+ * or enough of them have built up to be worth applying in one batch on the calling thread.
+ * The deltas of a batch made with EntityStore.atomically() are held back until the batch finishes and then queued
+ * together, so however many rows a batch changes, it reaches the list as a single change and is never seen half done.
+ * The list keeps the ID of every row, but only keeps the items of the rows read most recently, fetched from the store
+ * a page at a time as a TableView scrolls. Rows attached from a mapped snapshot are listed by ID alone and peeked at
+ * rather than built, so a screen over millions of rows opens straight away and its memory use does not grow as it is
+ * scrolled.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class FxListProjection<T> implements StoreListener<T> {
+
+    private static final int HEADLESS_BATCH_SIZE = 4096;
+    private static final boolean DRAIN_EACH_PULSE = !"immediate".equals(System.getProperty("inventory.fxUpdates"));
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+    // 64 pages of 256 rows is several screens' worth either side of what a TableView is showing
+    private static final int MAX_PAGES = 64;
+
+    private final Rows items = new Rows();
+    private final ToIntFunction<T> idOf;
+    private final IntFunction<T> lookup;
+    private final Predicate<T> current;
+    private final BiConsumer<T, T> showValues;
+    private final ConcurrentLinkedQueue<Delta<T>> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicBoolean drainScheduled = new AtomicBoolean();
+    // The deltas of the batch the current thread is making, if it is making one
+    private final ThreadLocal<List<Delta<T>>> batched = new ThreadLocal<>();
+    private volatile boolean toolkitRunning;
+    // Only created, started and stopped on the JavaFX Application Thread
+    private AnimationTimer pulseDrain;
+    private volatile boolean pulsing;
+
+    /** This is the FxListProjection class constructor.
+     * @param idOf returns the ID of a Part or Product
+     * @param lookup fetches a Part or Product from the store by ID, used for rows that are not cached
+     * @param current tells whether a Part or Product is still the one stored under its ID
+     * @param showValues copies the fields of the latest version of a Part or Product into a shown one and updates the
+     * shown one's properties, given the shown item and then the latest, which may be the same object
+     * */
+    FxListProjection(ToIntFunction<T> idOf, IntFunction<T> lookup, Predicate<T> current,
+                     BiConsumer<T, T> showValues) {
+        this.idOf = idOf;
+        this.lookup = lookup;
+        this.current = current;
+        this.showValues = showValues;
+    }
+
+    /** This method returns the projected list. It must only be read or bound on the JavaFX Application Thread, or on
+     * a single thread of its own when the JavaFX toolkit is not running. The list cannot be added to or removed from
+     * directly, but it can be reordered, which is what a TableView does when a column is sorted.
+     * @return the observable list of Parts or Products
+     * */
+    ObservableList<T> items() {
+        if (pendingCount.get() > 0 && (!probeToolkit() || Platform.isFxApplicationThread())) {
+            drain();
+        }
+        return items;
+    }
+
+    /** This method queues the addition of a Part or Product to the list.
+     * @param item the item that was added to the store
+     * */
+    @Override
+    public void added(T item) {
+        publish(new Delta<>(Kind.ADD, null, item, null));
+    }
+
+    /** This method queues the replacement of a Part or Product in the list.
+     * @param oldItem the item that was replaced in the store
+     * @param newItem the item that took its place
+     * */
+    @Override
+    public void replaced(T oldItem, T newItem) {
+        publish(new Delta<>(Kind.REPLACE, oldItem, newItem, null));
+    }
+
+    /** This method queues a patch to the fields of a Part or Product in the list. Unlike a replacement, a patch does not
+     * change the list, so the TableView keeps its rows and only the cells bound to the patched fields repaint.
+     * @param item the item holding the patched fields
+     * */
+    @Override
+    public void patched(T item) {
+        publish(new Delta<>(Kind.PATCH, null, item, null));
+    }
+
+    /** This method queues the removal of a Part or Product from the list.
+     * @param item the item that was removed from the store
+     * */
+    @Override
+    public void removed(T item) {
+        publish(new Delta<>(Kind.REMOVE, item, null, null));
+    }
+
+    /** This method queues the addition of rows that were attached to the store without being built.
+     * @param ids the IDs of the attached rows
+     * @param rows the attached rows, which are left unbuilt
+     * */
+    @Override
+    public void attached(int[] ids, LazyRows<T> rows) {
+        publish(new Delta<>(Kind.ATTACH, null, null, ids));
+    }
+
+    /** This method starts holding back the deltas made by the current thread. */
+    @Override
+    public void batchStarted() {
+        batched.set(new ArrayList<>());
+    }
+
+    /** This method queues every delta held back since the batch started, all at once. */
+    @Override
+    public void batchFinished() {
+        List<Delta<T>> deltas = batched.get();
+        batched.remove();
+        if (deltas == null || deltas.isEmpty()) {
+            return;
+        }
+        // A drain holds the same monitor, so it runs either before the whole batch is queued or after it
+        synchronized (this) {
+            pending.addAll(deltas);
+        }
+        queued(pendingCount.addAndGet(deltas.size()));
+    }
+
+    private void publish(Delta<T> delta) {
+        List<Delta<T>> deltas = batched.get();
+        if (deltas != null) {
+            deltas.add(delta);
+            return;
+        }
+        pending.add(delta);
+        queued(pendingCount.incrementAndGet());
+    }
+
+    private void queued(int queued) {
+        if (!toolkitRunning && (queued < HEADLESS_BATCH_SIZE || !probeToolkit())) {
+            if (queued >= HEADLESS_BATCH_SIZE) {
+                drainIfBacklogged();
+            }
+            return;
+        }
+        if (Platform.isFxApplicationThread()) {
+            drain();
+        }
+        else if (!DRAIN_EACH_PULSE) {
+            if (drainScheduled.compareAndSet(false, true)) {
+                Platform.runLater(this::scheduledDrain);
+            }
+        }
+        // A timer that is already pulsing will find the flag set on its next pulse
+        else if (drainScheduled.compareAndSet(false, true) && !pulsing) {
+            Platform.runLater(this::startPulses);
+        }
+    }
+
+    private void startPulses() {
+        if (pulseDrain == null) {
+            pulseDrain = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    pulse();
+                }
+            };
+        }
+        if (!pulsing) {
+            pulsing = true;
+            pulseDrain.start();
+        }
+    }
+
+    private void pulse() {
+        if (drainScheduled.getAndSet(false)) {
+            drain();
+            return;
+        }
+        // A writer that sets the flag after seeing the timer still pulsing schedules no start, so the flag is checked
+        // again once pulsing is cleared, and the timer carries on if it was set in between
+        pulsing = false;
+        if (drainScheduled.get()) {
+            pulsing = true;
+            return;
+        }
+        pulseDrain.stop();
+    }
+
+    // Platform.isFxApplicationThread() would start loading the toolkit, so a no-op runLater() is used to check for it
+    private boolean probeToolkit() {
+        if (!toolkitRunning) {
+            try {
+                Platform.runLater(() -> { });
+                toolkitRunning = true;
+            }
+            catch (IllegalStateException toolkitNotRunning) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void scheduledDrain() {
+        // Clear the flag first so a delta queued while this drain runs schedules another one
+        drainScheduled.set(false);
+        drain();
+    }
+
+    private synchronized void drainIfBacklogged() {
+        // Another writer may have drained the backlog while this one was waiting for the lock
+        if (pendingCount.get() >= HEADLESS_BATCH_SIZE) {
+            drain();
+        }
+    }
+
+    // Folds the queued deltas by ID into one final change per row, so that a drain walks the list once no matter how
+    // many deltas of each kind were interleaved in the queue. Attached rows are appended in queue order
+    private synchronized void drain() {
+        Delta<T> delta = pending.poll();
+        while (delta != null) {
+            IntIndex<Change<T>> changes = new IntIndex<>();
+            List<Change<T>> appended = new ArrayList<>();
+            int inList = 0;
+            IntIndex<T> patched = new IntIndex<>();
+            for (; delta != null && delta.kind != Kind.ATTACH; delta = pending.poll()) {
+                pendingCount.decrementAndGet();
+                int id = idOf.applyAsInt(delta.kind == Kind.REMOVE ? delta.oldItem : delta.newItem);
+                Change<T> change = changes.get(id);
+                if (delta.kind == Kind.PATCH && change == null) {
+                    // A row that is only patched keeps its place and is updated cell by cell after the list changes
+                    patched.put(id, delta.newItem);
+                    continue;
+                }
+                if (patched.size() > 0) {
+                    patched.remove(id);
+                }
+                if (change == null) {
+                    // The first delta for an ID tells whether the row was in the list before this drain
+                    change = new Change<>(id, delta.oldItem);
+                    changes.put(id, change);
+                    if (delta.kind == Kind.ADD) {
+                        appended.add(change);
+                    }
+                    else {
+                        inList++;
+                    }
+                }
+                change.latest = delta.newItem;
+            }
+            items.apply(changes, inList, appended);
+            if (patched.size() > 0) {
+                items.show(patched);
+            }
+            if (delta != null) {
+                pendingCount.decrementAndGet();
+                items.append(delta.ids);
+                delta = pending.poll();
+            }
+        }
+    }
+
+    private enum Kind { ADD, REPLACE, PATCH, REMOVE, ATTACH }
+
+    /** This class is a single queued change to the list. */
+    private static final class Delta<T> {
+        final Kind kind;
+        final T oldItem;
+        final T newItem;
+        final int[] ids;
+
+        Delta(Kind kind, T oldItem, T newItem, int[] ids) {
+            this.kind = kind;
+            this.oldItem = oldItem;
+            this.newItem = newItem;
+            this.ids = ids;
+        }
+    }
+
+    /** This class is the net change to one row over a drain. */
+    private static final class Change<T> {
+        final int id;
+        // The item that was in the list before the drain, or null if the row is new
+        final T original;
+        // The item the row should end up holding, or null if the row should end up removed
+        T latest;
+
+        Change(int id, T original) {
+            this.id = id;
+            this.original = original;
+        }
+    }
+
+    /** This class is the observable list itself. It holds the ID of every row, and the items of recently read rows in
+     * a bounded cache of pages. Reading a row that is not cached fetches its whole page from the store, so a TableView
+     * scrolling through the list fetches a page at a time, and once the cache is full the page read longest ago is
+     * dropped. However long the list is, only the IDs and at most MAX_PAGES pages of items are held by the list.
+     * */
+    private final class Rows extends ObservableListBase<T> {
+        private int[] ids = new int[16];
+        private int size;
+        private final Map<Integer, Object[]> pages = new LinkedHashMap<Integer, Object[]>(MAX_PAGES, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Object[]> eldest) {
+                return size() > MAX_PAGES;
+            }
+        };
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public T get(int index) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+            }
+            Object[] page = pages.get(index >>> PAGE_BITS);
+            if (page == null) {
+                page = load(index >>> PAGE_BITS);
+            }
+            return (T) page[index & PAGE_MASK];
+        }
+
+        // A row whose removal from the store is still queued fetches as null until the removal is applied
+        private Object[] load(int pageNumber) {
+            int first = pageNumber << PAGE_BITS;
+            Object[] page = new Object[Math.min(PAGE_SIZE, size - first)];
+            for (int i = 0; i < page.length; i++) {
+                page[i] = lookup.apply(ids[first + i]);
+            }
+            pages.put(pageNumber, page);
+            return page;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        // Looks the row up by ID first so finding one row does not fetch every row before it. A row whose page has
+        // been dropped may be fetched again as a new copy, so an item that the store still counts as current matches
+        // its row even when it is not the same object
+        @Override
+        @SuppressWarnings("unchecked")
+        public int indexOf(Object item) {
+            if (item == null) {
+                return super.indexOf(null);
+            }
+            int id;
+            try {
+                id = idOf.applyAsInt((T) item);
+            }
+            catch (ClassCastException notAnItem) {
+                return -1;
+            }
+            for (int i = 0; i < size; i++) {
+                if (ids[i] == id && (item.equals(get(i)) || current.test((T) item))) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean contains(Object item) {
+            return indexOf(item) >= 0;
+        }
+
+        /** This method reorders the list, which is how a TableView sorts the items it is bound to. The new contents
+         * must hold exactly the same rows as the list.
+         * @param reordered the rows in their new order
+         * @return true since the list always changes
+         * @throws UnsupportedOperationException if the new contents are not a reordering of the list
+         * */
+        @Override
+        public boolean setAll(Collection<? extends T> reordered) {
+            if (reordered.size() != size) {
+                throw new UnsupportedOperationException("Rows can only be reordered, not added or removed");
+            }
+            IntIndex<T> byId = new IntIndex<>();
+            List<T> before = new ArrayList<>(size);
+            for (int row = 0; row < size; row++) {
+                T item = get(row);
+                if (item == null) {
+                    throw new UnsupportedOperationException("Rows cannot be reordered while a removal is queued");
+                }
+                byId.put(ids[row], item);
+                before.add(item);
+            }
+            int[] newIds = new int[ids.length];
+            int row = 0;
+            for (T item : reordered) {
+                int id = idOf.applyAsInt(item);
+                T previous = byId.remove(id);
+                // A row fetched twice may come back as two copies, so a current item matches as indexOf() allows
+                if (previous == null || !(previous.equals(item) || current.test(item))) {
+                    throw new UnsupportedOperationException("Rows can only be reordered, not added or removed");
+                }
+                newIds[row++] = id;
+            }
+            ids = newIds;
+            pages.clear();
+            beginChange();
+            nextReplace(0, size, before);
+            endChange();
+            return true;
+        }
+
+        void apply(IntIndex<Change<T>> changes, int inList, List<Change<T>> appended) {
+            beginChange();
+            try {
+                int kept = 0;
+                for (int row = 0; row < size; row++) {
+                    Change<T> change = inList > 0 ? changes.get(ids[row]) : null;
+                    if (change != null && change.original != null) {
+                        inList--;
+                        if (change.latest == null) {
+                            nextRemove(kept, change.original);
+                            continue;
+                        }
+                        if (kept == row) {
+                            // Rows after a removal move up, so their pages are dropped below rather than patched here
+                            Object[] page = pages.get(row >>> PAGE_BITS);
+                            if (page != null) {
+                                page[row & PAGE_MASK] = change.latest;
+                            }
+                        }
+                        nextSet(kept, change.original);
+                    }
+                    else if (kept == row && inList == 0) {
+                        // Nothing has been removed and nothing else changes, so the rest of the list stays put
+                        kept = size;
+                        break;
+                    }
+                    ids[kept++] = ids[row];
+                }
+                if (kept < size) {
+                    pages.clear();
+                }
+                size = kept;
+
+                int from = size;
+                for (Change<T> change : appended) {
+                    if (change.latest != null) {
+                        ensureCapacity(size + 1);
+                        ids[size++] = change.id;
+                    }
+                }
+                if (size > from) {
+                    // The last page was cut short at the old end of the list
+                    pages.remove(from >>> PAGE_BITS);
+                    nextAdd(from, size);
+                }
+            }
+            finally {
+                endChange();
+            }
+        }
+
+        // Brings patched rows up to date in place. A cached copy of a patched row may be what a TableView row is
+        // showing, so its fields and properties are updated from the latest version before the page switches to it
+        @SuppressWarnings("unchecked")
+        void show(IntIndex<T> patched) {
+            for (Object[] page : pages.values()) {
+                for (int i = 0; i < page.length; i++) {
+                    T shown = (T) page[i];
+                    T latest = shown == null ? null : patched.get(idOf.applyAsInt(shown));
+                    if (latest != null && latest != shown) {
+                        showValues.accept(shown, latest);
+                        page[i] = latest;
+                    }
+                }
+            }
+            patched.forEach((id, latest) -> showValues.accept(latest, latest));
+        }
+
+        void append(int[] attached) {
+            ensureCapacity(size + attached.length);
+            System.arraycopy(attached, 0, ids, size, attached.length);
+            int from = size;
+            size += attached.length;
+            if (size > from) {
+                pages.remove(from >>> PAGE_BITS);
+                beginChange();
+                nextAdd(from, size);
+                endChange();
+            }
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > ids.length) {
+                ids = Arrays.copyOf(ids, Math.max(capacity, ids.length + (ids.length >> 1)));
+            }
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package model;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.ref.Reference;
+import java.util.function.Supplier;
+
+/** This class is a command line tool that reports how much heap each Part and Product takes up in the object storage
+ * and in the columnar tables. It fills each kind of storage with the same generated inventory and measures the heap
+ * before and after, once for the bare storage and once for a whole EntityStore, which adds the name index. Run it
+ * with a fixed heap size such as -Xms2g -Xmx2g so garbage collection does not resize the heap while measuring.
+ * Usage: HeapFootprint [partCount]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class HeapFootprint {
+
+    private static final int COMPANIES = 50;
+    private static final int PARTS_PER_PRODUCT = 3;
+
+    private HeapFootprint() { }
+
+    /** This is the main method that runs the measurements and prints the report.
+     * @param args an optional part count, which defaults to one million
+     * */
+    public static void main(String[] args) {
+        int partCount = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int productCount = partCount / 10;
+        System.out.println("Heap used by " + partCount + " parts and " + productCount + " products");
+
+        long objectParts = measure(() -> fill(new ObjectStorage<>(), partCount));
+        long tableParts = measure(() -> fill(new PartTable(), partCount));
+        report("Part storage", partCount, objectParts, tableParts);
+
+        ObjectStorage<Part> partsForProducts = fill(new ObjectStorage<>(), partCount);
+        long objectProducts = measure(() -> fillProducts(new ObjectStorage<>(), partsForProducts, productCount));
+        long tableProducts = measure(() -> fillProducts(new ProductTable(partsForProducts::get), partsForProducts,
+                productCount));
+        Reference.reachabilityFence(partsForProducts);
+        report("Product storage", productCount, objectProducts, tableProducts);
+
+        long objectStore = measure(() -> fillStore(new EntityStore<>(Part::getId, Part::getName), partCount));
+        long tableStore = measure(() -> fillStore(new EntityStore<>(Part::getId, Part::getName, PartTable::new),
+                partCount));
+        report("Part store with name index", partCount, objectStore, tableStore);
+    }
+
+    private static <S extends StripeStorage<Part>> S fill(S storage, int count) {
+        for (int i = 0; i < count; i++) {
+            storage.put(1_000_000 + i, part(i));
+        }
+        return storage;
+    }
+
+    private static StripeStorage<Product> fillProducts(StripeStorage<Product> storage, ObjectStorage<Part> parts,
+                                                       int count) {
+        for (int i = 0; i < count; i++) {
+            Product product = new Product(5_004 + i, "Product " + i, 49.99, i % 50, 0, 100);
+            for (int j = 0; j < PARTS_PER_PRODUCT; j++) {
+                product.addAssociatedPart(parts.get(1_000_000 + (i * PARTS_PER_PRODUCT + j) % parts.size()));
+            }
+            storage.put(product.getId(), product);
+        }
+        return storage;
+    }
+
+    private static EntityStore<Part> fillStore(EntityStore<Part> store, int count) {
+        for (int i = 0; i < count; i++) {
+            store.put(part(i));
+        }
+        return store;
+    }
+
+    private static Part part(int i) {
+        int id = 1_000_000 + i;
+        if (i % 2 == 0) {
+            return new InHouse(id, "Part " + i, 1.99 + i % 100, i % 500, 0, 1000, i % 20);
+        }
+        // Company names are built fresh each time, as they would be when read from a file
+        return new Outsourced(id, "Part " + i, 1.99 + i % 100, i % 500, 0, 1000, "Supplier " + i % COMPANIES);
+    }
+
+    // Returns the heap still used once the filled storage is the only new thing reachable
+    private static long measure(Supplier<Object> filler) {
+        long before = usedAfterCollection();
+        Object filled = filler.get();
+        long after = usedAfterCollection();
+        Reference.reachabilityFence(filled);
+        return after - before;
+    }
+
+    private static long usedAfterCollection() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        long used = Long.MAX_VALUE;
+        // Collect until the figure settles, since one System.gc() call may not clear everything
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+            used = Math.min(used, memory.getHeapMemoryUsage().getUsed());
+        }
+        return used;
+    }
+
+    private static void report(String label, int count, long objects, long columns) {
+        System.out.println(String.format("%-28s objects %,8.1f MB (%5.1f B/row)   columns %,8.1f MB (%5.1f B/row)"
+                        + "   saved %4.1f%%", label, objects / 1e6, (double) objects / count, columns / 1e6,
+                (double) columns / count, 100.0 * (objects - columns) / objects));
+    }
+}
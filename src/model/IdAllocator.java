@@ -0,0 +1,219 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongUnaryOperator;
+
+/** This class hands out unique Part and Product IDs. Each namespace owns its own range of IDs so a Part can never be
+ * given an ID that is also used by a Product. IDs are leased from a small properties file in blocks: the file records
+ * the high-water mark of each namespace and is updated under an exclusive lock on a lock file beside it, so several
+ * processes sharing the same data directory each get their own blocks and never hand out the same ID. The marks are
+ * written to a temporary file which is forced to disk and then renamed over the old one, so a crash part way through
+ * leaves either the old marks or the new ones, never an empty or partial file. Within a block, IDs are taken with a
+ * single atomic increment and no locking. IDs left over in a block when the program exits are simply skipped, and
+ * because the high-water mark is written before a block is used, an ID is never reused after a restart. So that a
+ * program which only adds a few IDs does not skip a whole block, the first block each namespace leases is small and
+ * each block after it is twice the size of the one before, up to the full block size. IDs and high-water marks are
+ * tracked as longs, and each namespace's range decides how much of that space it may use.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class IdAllocator {
+
+    /** This enum lists the ID namespaces along with the range of IDs each one may use. */
+    enum Namespace {
+        /** Part IDs. The dummy parts 1001 - 1005 predate this range. */
+        PART("part", 1_000_000L, 1_000_000_000L, 1_001L, 1_006L),
+        /** Product IDs, above every Part ID. The dummy products 5001 - 5003 predate this range, as do Products given
+         * IDs from 5004 up by earlier versions, which used the space below the Part IDs. A high-water mark left below
+         * this range by an earlier version is moved up to its start. */
+        PRODUCT("product", 1_000_000_000L, Integer.MAX_VALUE + 1L, 5_001L, 1_000_000L);
+
+        private final String key;
+        private final long first;
+        private final long limit;
+        // The IDs used before the range, which are still accepted but never handed out
+        private final long legacyFirst;
+        private final long legacyLimit;
+
+        Namespace(String key, long first, long limit, long legacyFirst, long legacyLimit) {
+            this.key = key;
+            this.first = first;
+            this.limit = limit;
+            this.legacyFirst = legacyFirst;
+            this.legacyLimit = legacyLimit;
+        }
+
+        /** This method tells whether an ID lies in the namespace's range.
+         * @param id the ID
+         * @return true if the namespace may hand the ID out
+         * */
+        boolean contains(long id) {
+            return id >= first && id < limit;
+        }
+
+        /** This method tells whether a Part or Product brought in from elsewhere may keep an ID, which it may if the ID
+         * lies in the namespace's range or is one of the IDs used before the range.
+         * @param id the ID
+         * @return true if the ID belongs to the namespace
+         * */
+        boolean accepts(long id) {
+            return contains(id) || (id >= legacyFirst && id < legacyLimit);
+        }
+
+        /** This method describes the IDs the namespace accepts, for an error message.
+         * @return the accepted IDs as text
+         * */
+        String describeRange() {
+            return String.format("%d to %d, or %d to %d", legacyFirst, legacyLimit - 1, first, limit - 1);
+        }
+    }
+
+    private static final Lease EXHAUSTED = new Lease(0, 0);
+    private static final int FIRST_BLOCK_SIZE = 16;
+    // File locks are held on behalf of the whole JVM, so allocators in the same process also take turns on this monitor
+    private static final Object PROCESS_LOCK = new Object();
+
+    private final Path file;
+    private final int blockSize;
+    private final Map<Namespace, AtomicReference<Lease>> leases = new EnumMap<>(Namespace.class);
+    // The size of the next block each namespace leases, guarded by this
+    private final Map<Namespace, Integer> nextBlockSizes = new EnumMap<>(Namespace.class);
+
+    /** This is the IdAllocator class constructor. No file is read or written until the first ID is requested.
+     * @param file the properties file holding the high-water marks
+     * @param blockSize the largest number of IDs leased from the file at a time
+     * */
+    IdAllocator(Path file, int blockSize) {
+        this.file = file;
+        this.blockSize = blockSize;
+        for (Namespace namespace : Namespace.values()) {
+            leases.put(namespace, new AtomicReference<>(EXHAUSTED));
+            nextBlockSizes.put(namespace, Math.min(FIRST_BLOCK_SIZE, blockSize));
+        }
+    }
+
+    /** This method returns the next unused ID in a namespace. It is safe to call from any thread.
+     * @param namespace the namespace to take the ID from
+     * @return a new unique ID
+     * @throws IllegalStateException if the namespace has run out of IDs
+     * @throws UncheckedIOException if a new block could not be recorded in the high-water file
+     * */
+    long next(Namespace namespace) {
+        AtomicReference<Lease> current = leases.get(namespace);
+        while (true) {
+            Lease lease = current.get();
+            long id = lease.cursor.getAndIncrement();
+            if (id < lease.end) {
+                return id;
+            }
+            renew(namespace, lease);
+        }
+    }
+
+    /** This method makes sure IDs up to and including the given one are never handed out, which is needed after
+     * Parts or Products with IDs from a namespace's range are brought in from elsewhere, or recovered from the log.
+     * Blocks already leased by running programs are not affected. An ID outside the namespace's range was never handed
+     * out by it, so it is ignored.
+     * @param namespace the namespace the IDs belong to
+     * @param highest the highest ID in use
+     * @throws UncheckedIOException if the new high-water mark could not be recorded
+     * */
+    void reserveThrough(Namespace namespace, long highest) {
+        if (!namespace.contains(highest)) {
+            return;
+        }
+        synchronized (PROCESS_LOCK) {
+            updateMark(namespace, mark -> Math.max(mark, highest + 1));
+        }
+    }
+
+    // Only the thread that finds the lease exhausted first goes to the file, everyone else picks up its new lease
+    private synchronized void renew(Namespace namespace, Lease exhausted) {
+        AtomicReference<Lease> current = leases.get(namespace);
+        if (current.get() == exhausted) {
+            int size = nextBlockSizes.get(namespace);
+            current.set(leaseBlock(namespace, size));
+            nextBlockSizes.put(namespace, (int) Math.min(2L * size, blockSize));
+        }
+    }
+
+    private Lease leaseBlock(Namespace namespace, int size) {
+        long[] block = new long[2];
+        synchronized (PROCESS_LOCK) {
+            updateMark(namespace, start -> {
+                if (start >= namespace.limit) {
+                    throw new IllegalStateException("No " + namespace.key + " IDs are left to allocate");
+                }
+                block[0] = start;
+                block[1] = Math.min(start + size, namespace.limit);
+                return block[1];
+            });
+        }
+        return new Lease(block[0], block[1]);
+    }
+
+    @SuppressWarnings("try")
+    private void updateMark(Namespace namespace, LongUnaryOperator change) {
+        try {
+            Path parent = file.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            // The marks file itself is replaced on every update, so the lock is held on a file that never is
+            Path lockFile = file.resolveSibling(file.getFileName() + ".lock");
+            Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+            try (FileChannel lockChannel = FileChannel.open(lockFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE);
+                 FileLock ignored = lockChannel.lock()) {
+                Properties marks = new Properties();
+                if (Files.exists(file)) {
+                    try (InputStream in = Files.newInputStream(file)) {
+                        marks.load(in);
+                    }
+                }
+
+                long mark = Math.max(namespace.first,
+                        Long.parseLong(marks.getProperty(namespace.key, String.valueOf(namespace.first))));
+                marks.setProperty(namespace.key, String.valueOf(change.applyAsLong(mark)));
+
+                // The new high-water mark is on disk before any ID in the block is handed out
+                try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    OutputStream out = Channels.newOutputStream(channel);
+                    marks.store(out, "Inventory ID high-water marks");
+                    channel.force(true);
+                }
+                Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException("Could not update the IDs in " + file, exception);
+        }
+    }
+
+    /** This class is a block of IDs leased from the high-water file, handed out by an atomic cursor. */
+    private static final class Lease {
+        final AtomicLong cursor;
+        final long end;
+
+        Lease(long start, long end) {
+            this.cursor = new AtomicLong(start);
+            this.end = end;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** This class is the outcome of importing a file with InventoryImporter: how many rows were read, imported and
+ * rejected, how long it took, and why each rejected row was turned away. So that a file full of bad rows cannot use up
+ * the memory, only the first MAX_ERRORS reasons are kept, though every rejected row is counted.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class ImportReport {
+
+    /** The number of rejected rows whose reasons are kept. */
+    public static final int MAX_ERRORS = 10_000;
+
+    private final List<String> errors = new ArrayList<>();
+    private long rowsRead;
+    private long rowsImported;
+    private long rowsRejected;
+    private long nanos;
+
+    ImportReport() { }
+
+    void imported(int rows) {
+        rowsRead += rows;
+        rowsImported += rows;
+    }
+
+    void rejected(long line, String reason) {
+        rowsRead++;
+        rowsRejected++;
+        if (errors.size() < MAX_ERRORS) {
+            errors.add("Line " + line + ": " + reason);
+        }
+    }
+
+    void finished(long elapsedNanos) {
+        nanos = elapsedNanos;
+    }
+
+    /** Gets the number of rows read from the file, leaving out blank lines and the header.
+     * @return the rows read
+     */
+    public long getRowsRead() { return rowsRead; }
+
+    /** Gets the number of rows that passed validation. When only validating, none of them were added.
+     * @return the rows imported
+     */
+    public long getRowsImported() { return rowsImported; }
+
+    /** Gets the number of rows that were turned away.
+     * @return the rows rejected
+     */
+    public long getRowsRejected() { return rowsRejected; }
+
+    /** Gets the reason each rejected row was turned away, starting with its line number, in file order. Only the first
+     * MAX_ERRORS are kept.
+     * @return the reasons as a read-only list
+     */
+    public List<String> getErrors() { return Collections.unmodifiableList(errors); }
+
+    /** Gets how long the import took.
+     * @return the time in seconds
+     */
+    public double getSeconds() { return nanos / 1e9; }
+
+    /** This method sums the report up in one line.
+     * @return the summary
+     * */
+    @Override
+    public String toString() {
+        return String.format("%,d rows read, %,d imported, %,d rejected in %.2f s (%,.0f rows/s)", rowsRead,
+                rowsImported, rowsRejected, getSeconds(), rowsRead / Math.max(getSeconds(), 1e-9));
+    }
+}
@@ -6,7 +6,8 @@ package model;
  * */
 public class InHouse extends Part{
 
-    private int machineId;
+    // Patched and shown on different threads in the same way as the fields of a Part
+    private volatile int machineId;
 
     /** This is the InHouse class' constructor. It takes all the same parameters as the Part class and passes them
      * to the super() constructor and then also takes the machineId parameter and sets the machineId field equal to
@@ -39,4 +40,14 @@ public class InHouse extends Part{
         return this.machineId;
     }
 
+    /** This method also copies the machine ID when the newer version is an InHouse part.
+     * @param latest the Part holding the current field values
+     * */
+    @Override
+    void showValuesOf(Part latest) {
+        if (latest != this && latest instanceof InHouse) {
+            machineId = ((InHouse) latest).getMachineId();
+        }
+        super.showValuesOf(latest);
+    }
 }
@@ -0,0 +1,180 @@
+package model;
+
+import java.util.Arrays;
+
+/** This class is a hash index keyed by primitive int values, used by the Inventory class to find Parts and Products by
+ * their ID without walking the full observable lists. Keys are stored in a plain int array so no Integer boxing takes
+ * place on lookups or updates. The table uses open addressing with linear probing and backward shift deletion, which
+ * keeps every lookup at a constant number of probes regardless of how many entries have been added and removed.
+ * This class is not thread safe and is only meant to be used from inside the Inventory class.
+ * @param <V> the type of value stored against each key
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class IntIndex<V> {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private Object[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    /** This is the IntIndex class constructor, which creates an empty index with a small initial table. */
+    IntIndex() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /** This method returns the value stored against a key.
+     * @param key the key to search for
+     * @return the value stored against the key or null if the key is not in the index
+     * */
+    @SuppressWarnings("unchecked")
+    V get(int key) {
+        int slot = findSlot(key);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    /** This method checks whether a key is present in the index.
+     * @param key the key to search for
+     * @return true if the key is present
+     * */
+    boolean containsKey(int key) {
+        return findSlot(key) >= 0;
+    }
+
+    /** This method stores a value against a key, replacing any previous value for that key.
+     * @param key the key to store the value against
+     * @param value the value to store, which must not be null
+     * @return the previous value stored against the key or null if there was none
+     * */
+    @SuppressWarnings("unchecked")
+    V put(int key, V value) {
+        if (value == null) {
+            throw new IllegalArgumentException("IntIndex does not accept null values");
+        }
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+        return null;
+    }
+
+    /** This method removes a key and its value from the index. The entries following the removed slot are shifted
+     * back so that no tombstones are left behind to slow down later lookups.
+     * @param key the key to remove
+     * @return the value that was removed or null if the key was not present
+     * */
+    @SuppressWarnings("unchecked")
+    V remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        V removed = (V) values[slot];
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != null) {
+            int home = mix(keys[next]) & mask;
+            // Only move an entry back into the gap if its home slot does not lie between the gap and its position
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /** This method visits every key and value in the index in no particular order. The index must not be changed
+     * while the visit is in progress.
+     * @param visitor the callback receiving each key and value
+     * */
+    @SuppressWarnings("unchecked")
+    void forEach(EntryVisitor<? super V> visitor) {
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                visitor.visit(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    /** This method removes every entry from the index while keeping the current table allocated. */
+    void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /** This method returns the number of entries in the index.
+     * @return the number of keys currently stored
+     * */
+    int size() {
+        return size;
+    }
+
+    private int findSlot(int key) {
+        int slot = mix(key) & mask;
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        // Keep the table at most half full so probe sequences stay short
+        resizeThreshold = capacity >> 1;
+    }
+
+    /** This is a callback used by forEach() that receives a primitive key alongside its value.
+     * @param <V> the type of value stored against each key
+     * */
+    interface EntryVisitor<V> {
+        /** This method is called once for every entry in the index.
+         * @param key the entry's key
+         * @param value the entry's value
+         * */
+        void visit(int key, V value);
+    }
+
+    // Sequential IDs would otherwise cluster into neighbouring slots, so the bits are scrambled before masking
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,141 @@
+package model;
+
+/** This class is a hash index from primitive int keys to non-negative int values, used by the columnar tables to find
+ * the row holding an ID. It works the same way as IntIndex, with open addressing, linear probing and backward shift
+ * deletion, but keeps its values in an int array so no objects are allocated per entry. Values are stored plus one so
+ * that a zero marks an empty slot.
+ * This class is not thread safe and is only meant to be used from inside the Inventory class.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see IntIndex
+ * */
+final class IntIntIndex {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private int[] keys;
+    private int[] values;
+    private int size;
+    private int mask;
+    private int resizeThreshold;
+
+    /** This is the IntIntIndex class constructor, which creates an empty index with a small initial table. */
+    IntIntIndex() {
+        allocate(DEFAULT_CAPACITY);
+    }
+
+    /** This method returns the value stored against a key.
+     * @param key the key to search for
+     * @return the value stored against the key or -1 if the key is not in the index
+     * */
+    int get(int key) {
+        int slot = findSlot(key);
+        return slot < 0 ? -1 : values[slot] - 1;
+    }
+
+    /** This method stores a value against a key, replacing any previous value for that key.
+     * @param key the key to store the value against
+     * @param value the value to store, which must not be negative
+     * */
+    void put(int key, int value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("IntIntIndex does not accept negative values");
+        }
+        int slot = mix(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                values[slot] = value + 1;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value + 1;
+        if (++size > resizeThreshold) {
+            rehash(keys.length << 1);
+        }
+    }
+
+    /** This method removes a key and its value from the index, shifting the following entries back as IntIndex does.
+     * @param key the key to remove
+     * */
+    void remove(int key) {
+        int slot = findSlot(key);
+        if (slot < 0) {
+            return;
+        }
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (values[next] != 0) {
+            int home = mix(keys[next]) & mask;
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[gap] = 0;
+        size--;
+    }
+
+    /** This method returns the number of entries in the index.
+     * @return the number of keys currently stored
+     * */
+    int size() {
+        return size;
+    }
+
+    /** This method returns every key in the index in no particular order.
+     * @return a new array holding the keys
+     * */
+    int[] keys() {
+        int[] found = new int[size];
+        int count = 0;
+        for (int slot = 0; slot < values.length; slot++) {
+            if (values[slot] != 0) {
+                found[count++] = keys[slot];
+            }
+        }
+        return found;
+    }
+
+    private int findSlot(int key) {
+        int slot = mix(key) & mask;
+        while (values[slot] != 0) {
+            if (keys[slot] == key) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private void rehash(int newCapacity) {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(newCapacity);
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != 0) {
+                int slot = mix(oldKeys[i]) & mask;
+                while (values[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new int[capacity];
+        values = new int[capacity];
+        mask = capacity - 1;
+        resizeThreshold = capacity >> 1;
+    }
+
+    private static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
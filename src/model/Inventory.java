@@ -3,175 +3,770 @@ package model;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
 /** This is a static class containing static fields and methods used to keep track of all the inventory in the program.
- * This class is not meant to be instantiated.
+ * This class is not meant to be instantiated. Parts and Products are held in thread safe stores keyed by ID, so the
+ * methods that add, look up and delete them can be called from any thread. The observable lists returned by
+ * getAllParts() and getAllProducts() are projections of those stores that only change on the JavaFX Application
+ * Thread, which keeps TableViews bound to them safe while background threads are writing.
+ * When the program is started with -Dinventory.storage=columnar, Parts and Products are stored in columns rather than
+ * as objects, and every lookup returns a new copy. Changing a copy does not change the inventory, so changes must be
+ * saved with the add and update methods, which is how the screens already work.
  * @author Greg Farrell
  * @version 1.0
  * */
 public class Inventory {
 
-    private static ObservableList<Part> allParts = FXCollections.observableArrayList();
-    private static ObservableList<Product> allProducts = FXCollections.observableArrayList();
+    // Setting the inventory.storage system property to columnar keeps Parts and Products in columns instead of objects
+    private static final boolean COLUMNAR = "columnar".equals(System.getProperty("inventory.storage"));
+    private static final EntityStore<Part> parts = COLUMNAR
+            ? new EntityStore<>(Part::getId, Part::getName, PartTable::new)
+            : new EntityStore<>(Part::getId, Part::getName);
+    private static final EntityStore<Product> products = COLUMNAR
+            ? new EntityStore<>(Product::getId, Product::getName, () -> new ProductTable(parts::get))
+            : new EntityStore<>(Product::getId, Product::getName);
+    // The lists peek at rows rather than building them, so scrolling through a mapped snapshot does not load all of it
+    private static final FxListProjection<Part> allParts = new FxListProjection<>(Part::getId, parts::peek,
+            parts::isCurrent, Part::showValuesOf);
+    private static final FxListProjection<Product> allProducts = new FxListProjection<>(Product::getId,
+            products::peek, products::isCurrent, Product::showValuesOf);
+    private static final WhereUsedIndex whereUsed = new WhereUsedIndex();
+    private static final StockLedger ledger = new StockLedger(parts);
+    private static final BuildabilityEngine buildability = new BuildabilityEngine(whereUsed, parts::peek,
+            ledger::reserved);
+    private static final LowStockIndex lowStock = new LowStockIndex();
+    private static final Map<PartMeasure, SortedPartIndex> sortedParts = new EnumMap<>(PartMeasure.class);
+    private static final InventoryTotals totals = new InventoryTotals();
+    private static final ChangeFeed changes = new ChangeFeed(whereUsed);
+    private static final int DEFAULT_CHANGE_BUFFER = 8_192;
+
+    /** The directory holding the inventory's files, set with the inventory.dataDir system property. */
+    static final Path DATA_DIRECTORY = Paths.get(System.getProperty("inventory.dataDir", "data"));
+    // The high-water marks survive restarts, so IDs leased before a restart are never handed out again
+    private static final IdAllocator ids = new IdAllocator(DATA_DIRECTORY.resolve("ids.properties"), 1024);
+
+    static {
+        parts.addListener(allParts);
+        products.addListener(allProducts);
+        // The feed compares a Product's associated parts with the IDs the where-used index holds for it, so it has to
+        // hear about changes before the index
+        products.addListener(changes.productListener());
+        products.addListener(whereUsed);
+        parts.addListener(lowStock);
+        for (PartMeasure measure : PartMeasure.values()) {
+            SortedPartIndex index = new SortedPartIndex(measure);
+            sortedParts.put(measure, index);
+            parts.addListener(index);
+        }
+        parts.addListener(totals.partListener());
+        products.addListener(totals.productListener());
+        parts.addListener(changes.partListener());
+        // The engine finds the Products to mark through the where-used index, so it has to hear about changes after it
+        parts.addListener(buildability.partListener());
+        products.addListener(buildability.productListener());
+        ledger.addListener(buildability::reservationsChanged);
+    }
+
+    // Recovers the saved inventory before anything else touches the stores, and then logs every later change
+    private static final InventoryLog log = openLog();
 
-    /** This method is used to add Parts to the static observable list of Parts.
+    /** This method is used to add Parts to the inventory. A Part already stored under the same ID is replaced.
      * @param newPart Part to be added to the observable list.
      * */
     public static void addPart(Part newPart) {
-        allParts.add(newPart);
+        parts.put(newPart);
     }
-    /** This method is used to add Products to the static observable list of Products.
+    /** This method is used to add Products to the inventory. A Product already stored under the same ID is replaced.
      * @param newProduct Part to be added to the observable list.
      * */
     public static void addProduct(Product newProduct) {
-        allProducts.add(newProduct);
+        products.put(newProduct);
+    }
+
+    /** This method is used to add many Parts to the inventory as one batch. Parts already stored under the same IDs are
+     * replaced. No other thread sees some of the Parts without the rest, and the allParts list receives the whole batch
+     * as a single change, so a TableView bound to it is updated once rather than once per Part.
+     * @param newParts the Parts to be added
+     * @see Inventory#applyBatch(List)
+     * */
+    public static void addParts(Collection<? extends Part> newParts) {
+        parts.atomically(newParts.stream().mapToInt(Part::getId).toArray(), () -> newParts.forEach(parts::put));
     }
 
-    /** This method is used to get the static observable list of Parts.
+    /** This method is used to add many Products to the inventory as one batch, in the same way as addParts().
+     * @param newProducts the Products to be added
+     * @see Inventory#addParts(Collection)
+     * */
+    public static void addProducts(Collection<? extends Product> newProducts) {
+        products.atomically(newProducts.stream().mapToInt(Product::getId).toArray(),
+                () -> newProducts.forEach(products::put));
+    }
+
+    /** This method is used to get the static observable list of Parts. The list must only be used on the JavaFX
+     * Application Thread, and changes made on other threads show up in it on the next pass of that thread. Parts
+     * should be added, replaced and removed through the Inventory methods rather than directly on this list.
      * @return a list of all parts
      * */
     public static ObservableList<Part> getAllParts() {
-        return allParts;
+        return allParts.items();
     }
-    /** This method is used to get the static observable list of Products.
+    /** This method is used to get the static observable list of Products. The list must only be used on the JavaFX
+     * Application Thread, and changes made on other threads show up in it on the next pass of that thread. Products
+     * should be added, replaced and removed through the Inventory methods rather than directly on this list.
      * @return a list of all products
      * */
     public static ObservableList<Product> getAllProducts() {
-        return allProducts;
+        return allProducts.items();
     }
 
-    /** This method is used to traverse the allParts list to search for a matching ID.
+    /** This method is used to search the parts store for a matching ID. The lookup takes constant time no matter
+     * how many parts are in the inventory.
      * @param partId an int representing an ID to search for
-     * @return a Part that matches the ID being searched for
+     * @return a Part that matches the ID being searched for or null if there is no match
      * */
     public static Part lookupPart(int partId) {
-        for (Part thisPart : allParts) {
-            if (thisPart.getId() == partId) {
-                return thisPart;
-            }
-        }
-        return null;
+        return parts.get(partId);
     }
 
-    /** This method is used to traverse the allParts list to create a new ObservableList with all the matching results.
+    /** This method is used to search the part name index for every Part whose name contains the search text, ignoring
+     * case. The results come back as a read-only view over the matching IDs rather than a copied list, and a blank
+     * search returns a read-only view of the whole allParts list.
      * @param partName a String representing a name or partial name to search for
-     * @return an observable list that contains the search results
+     * @return a read-only observable list that contains the search results
      * @see Part#getName()
      * */
     public static ObservableList<Part> lookupPart(String partName) {
-        ObservableList<Part> tempList = FXCollections.observableArrayList();
-        for (Part thisPart : allParts) {
-            if (thisPart.getName().contains(partName)) {
-                tempList.add(thisPart);
-            }
+        if (partName.isEmpty()) {
+            return FXCollections.unmodifiableObservableList(getAllParts());
         }
-        return tempList;
+        return new SearchResults<>(parts.searchNames(partName), parts::peek);
     }
 
-    /** This method is used to traverse the allProducts list to search for a matching ID.
+    /** This method is used to search the products store for a matching ID. The lookup takes constant time no matter
+     * how many products are in the inventory.
      * @param productId an int representing an ID to search for
-     * @return a Product that matches the ID being searched for
+     * @return a Product that matches the ID being searched for or null if there is no match
      * */
     public static Product lookupProduct(int productId) {
-        Product product;
-        for (Product thisProduct : allProducts) {
-            if (thisProduct.getId() == productId) {
-                product = thisProduct;
-                return product;
-            }
-        }
-        return null;
+        return products.get(productId);
     }
 
-    /** This method is used to traverse the allProducts list to create a new ObservableList with all the matching results.
+    /** This method is used to search the product name index for every Product whose name contains the search text,
+     * ignoring case. The results come back as a read-only view over the matching IDs rather than a copied list, and a
+     * blank search returns a read-only view of the whole allProducts list.
      * @param productName a String representing a name or partial name to search for
-     * @return an observable list that contains the search results
+     * @return a read-only observable list that contains the search results
      * @see Product#getName()
      * */
     public static ObservableList<Product> lookupProduct(String productName) {
-        ObservableList<Product> tempList = FXCollections.observableArrayList();
-        for (Product thisProduct : allProducts) {
-            if (thisProduct.getName().contains(productName)) {
-                tempList.add(thisProduct);
+        if (productName.isEmpty()) {
+            return FXCollections.unmodifiableObservableList(getAllProducts());
+        }
+        return new SearchResults<>(products.searchNames(productName), products::peek);
+    }
+
+    /** This method is used to find every Product that has a Part as an associated part. The answer comes from an index
+     * kept from each Part to the Products using it, so it takes time in proportion to the number of Products found
+     * rather than to the size of the inventory.
+     * @param partId an int representing the ID of the Part
+     * @return a read-only observable list of the Products using the Part, in ascending order of ID
+     * */
+    public static ObservableList<Product> lookupProductsUsingPart(int partId) {
+        return new SearchResults<>(whereUsed.productsUsing(partId), products::peek);
+    }
+
+    /** This method is used to check whether any Product has a Part as an associated part, such as before the Part is
+     * deleted, without looking at any Product.
+     * @param partId an int representing the ID of the Part
+     * @return true if at least one Product uses the Part
+     * */
+    public static boolean isPartInUse(int partId) {
+        return whereUsed.isUsed(partId);
+    }
+
+    /** This method is used to read the running totals of the inventory, such as its total value and how many Parts
+     * are InHouse or Outsourced. The totals are kept up to date as each change is made, so reading them takes the same
+     * short time however big the inventory is.
+     * @return a copy of the totals as they are now
+     * */
+    public static InventoryStatistics getStatistics() {
+        return totals.statistics();
+    }
+
+    /** This method is used to read the running totals of the Outsourced Parts bought from one company.
+     * @param companyName a String representing the name of the company
+     * @return a copy of the company's totals as they are now, or null if no Part has come from the company
+     * */
+    public static SupplierTotals getSupplierTotals(String companyName) {
+        return totals.supplier(companyName);
+    }
+
+    /** This method is used to read the running totals of every company that Outsourced Parts come from. It takes time
+     * in proportion to the number of companies rather than the number of Parts.
+     * @return a list of each company's totals as they are now, in order of company name
+     * */
+    public static List<SupplierTotals> getAllSupplierTotals() {
+        return totals.allSuppliers();
+    }
+
+    /** This method is used to find every Part with a price, stock or headroom in a range, such as the Parts priced
+     * between two amounts. Parts are kept sorted by each of these fields as they change, so the search takes time in
+     * proportion to the logarithm of the inventory's size plus the number of Parts found.
+     * @param measure the field to search by
+     * @param low the lowest value to include. Stock and headroom are whole numbers, so a fraction is rounded up
+     * @param high the highest value to include. Stock and headroom are whole numbers, so a fraction is rounded down
+     * @return a read-only observable list of the Parts found, in ascending order of the field and then of ID
+     * */
+    public static ObservableList<Part> lookupPartsBetween(PartMeasure measure, double low, double high) {
+        return new SearchResults<>(sortedParts.get(measure).between(low, high), parts::peek);
+    }
+
+    /** This method is used to count the Parts with a price, stock or headroom in a range, in time in proportion to the
+     * logarithm of the inventory's size however many Parts are counted.
+     * @param measure the field to count by
+     * @param low the lowest value to include, rounded up for stock and headroom
+     * @param high the highest value to include, rounded down for stock and headroom
+     * @return the number of Parts with values from low to high
+     * */
+    public static int countPartsBetween(PartMeasure measure, double low, double high) {
+        return sortedParts.get(measure).count(low, high);
+    }
+
+    /** This method is used to find the Parts with the highest price, stock or headroom, such as the most expensive
+     * Parts.
+     * @param measure the field to rank Parts by
+     * @param count an int representing the number of Parts wanted
+     * @return a read-only observable list of up to count Parts, the highest first
+     * */
+    public static ObservableList<Part> lookupHighestParts(PartMeasure measure, int count) {
+        return new SearchResults<>(sortedParts.get(measure).highest(count), parts::peek);
+    }
+
+    /** This method is used to find the Parts with the lowest price, stock or headroom, such as the Parts closest to
+     * their maximum.
+     * @param measure the field to rank Parts by
+     * @param count an int representing the number of Parts wanted
+     * @return a read-only observable list of up to count Parts, the lowest first
+     * */
+    public static ObservableList<Part> lookupLowestParts(PartMeasure measure, int count) {
+        return new SearchResults<>(sortedParts.get(measure).lowest(count), parts::peek);
+    }
+
+    /** This method is used to find every Part whose stock is at or below its minimum. The answer comes from an index
+     * of the low Parts kept up to date as stock changes, so it takes time in proportion to the number of low Parts
+     * rather than to the size of the inventory.
+     * @return a read-only observable list of the low Parts, the furthest below its minimum first
+     * */
+    public static ObservableList<Part> getLowStockParts() {
+        return new SearchResults<>(lowStock.lowParts(), parts::peek);
+    }
+
+    /** This method is used to check whether a Part's stock is at or below its minimum, without looking at the Part.
+     * @param partId an int representing the ID of the Part
+     * @return true if the Part is low on stock
+     * */
+    public static boolean isLowOnStock(int partId) {
+        return lowStock.isLow(partId);
+    }
+
+    /** This method is used to be told whenever a Part's stock falls to or below its minimum, rises above it again, or
+     * a low Part is deleted. Events are sent on a background thread, never on the JavaFX Application Thread, so a
+     * listener that updates a screen must hand the update to Platform.runLater(). Events made together, such as by one
+     * batch of changes, arrive together in one list, in the order they happened.
+     * @param listener receives each list of events, which it must not change
+     * */
+    public static void addLowStockListener(Consumer<? super List<LowStockEvent>> listener) {
+        lowStock.addListener(listener);
+    }
+
+    /** This method is used to stop a listener added with addLowStockListener() from being told about low stock.
+     * @param listener the listener to remove
+     * */
+    public static void removeLowStockListener(Consumer<? super List<LowStockEvent>> listener) {
+        lowStock.removeListener(listener);
+    }
+
+    /** This method is used to follow every change made to the inventory as it happens, such as to keep another
+     * system up to date, starting with the next change. Each event says which Part or Product was created, deleted or
+     * changed, and for a change which field went from which value to which, and events are numbered in the order they
+     * happened. Events are handed over on a thread of the subscription's own, never on the JavaFX Application Thread,
+     * in lists of those that have happened since the last list. A subscriber that falls more than 8192 events behind is
+     * dropped.
+     * @param subscriber receives each list of events, which it must not change
+     * @return the subscription, which is closed to stop following the changes
+     * */
+    public static ChangeSubscription subscribeToChanges(Consumer<? super List<ChangeEvent>> subscriber) {
+        return changes.subscribe(0, DEFAULT_CHANGE_BUFFER, subscriber);
+    }
+
+    /** This method is used to follow every change made to the inventory from a given event on, such as to carry on
+     * from where an earlier subscription stopped, in the same way as subscribeToChanges(Consumer). The newest 65536
+     * events are kept for this. Nothing is kept before the first subscription.
+     * @param fromSequence the sequence number of the first event wanted, such as ChangeSubscription.getNextSequence()
+     * of an earlier subscription, or 0 for the next change to happen
+     * @param bufferSize the most events the subscriber may fall behind by before it is dropped, up to 65536. A
+     * subscriber that starts further behind is not dropped for it until it catches up, but is if it holds up newer
+     * events from being kept
+     * @param subscriber receives each list of events, which it must not change
+     * @return the subscription, which is closed to stop following the changes
+     * @throws IllegalArgumentException if the event to start from is no longer kept
+     * */
+    public static ChangeSubscription subscribeToChanges(long fromSequence, int bufferSize,
+                                                        Consumer<? super List<ChangeEvent>> subscriber) {
+        return changes.subscribe(fromSequence, bufferSize, subscriber);
+    }
+
+    /** This method is used to find the sequence number of the newest change event.
+     * @return the sequence number, or 0 if nothing has changed since the first subscription
+     * */
+    public static long getLatestChangeSequence() {
+        return changes.latestSequence();
+    }
+
+    /** This method is used to find how many units of a Product can be built from the Parts in stock. Each associated
+     * part can spare its stock less what is reserved and less its Minimum, never less than 0, which is the stock
+     * takeStock() would let a build take, and the count is the smallest of these divided by the number of times the
+     * Product lists each Part. Counts are kept up to date incrementally, so after a Part's stock, Minimum or reserved
+     * stock changes only the Products using that Part are counted again, and only when they are next asked for.
+     * @param productId an int representing the ID of the Product
+     * @return the number of units that can be built, 0 for a Product with no associated parts, or -1 if there is no
+     * such Product
+     * */
+    public static int getBuildableUnits(int productId) {
+        return buildability.buildableUnits(productId);
+    }
+
+    /** This method counts the buildable units of every Product again, in parallel across the available processors,
+     * such as after a large import. Counts are otherwise only worked out when asked for.
+     * @return the number of Products counted
+     * */
+    public static int recomputeBuildableUnits() {
+        return buildability.recomputeAll();
+    }
+
+    /** This method is used to find how much of a Part's stock is not held by an open reservation.
+     * @param partId an int representing the ID of the Part
+     * @return the stock that is not reserved, or -1 if there is no such Part
+     * */
+    public static int getAvailableStock(int partId) {
+        return ledger.available(partId);
+    }
+
+    /** This method is used to reserve stock from several Parts at once, such as before building a Product. Either every
+     * Part is reserved or none is, and the request is turned down if any Part would be left with less stock than its
+     * minimum once the stock other reservations hold is counted. Only the stripes holding the Parts are locked, so
+     * reservations of unrelated Parts do not wait for one another. The reserved stock stays in the Parts until the
+     * reservation is committed or cancelled, and reservations are not saved, so a restart cancels them.
+     * @param partIds an array of the IDs of the Parts, in which an ID may appear more than once
+     * @param quantities an array of the quantity to reserve from the Part at the same position in partIds
+     * @return the reservation, or null if it was turned down
+     * @throws IllegalArgumentException if the arrays differ in length or a quantity is not positive
+     * */
+    public static StockReservation reserveStock(int[] partIds, int[] quantities) {
+        return ledger.reserve(partIds, quantities);
+    }
+
+    /** This method is used to take stock from several Parts at once without reserving it first. Either the stock is
+     * taken from every Part or from none, on the same terms as reserveStock(int[], int[]).
+     * @param partIds an array of the IDs of the Parts, in which an ID may appear more than once
+     * @param quantities an array of the quantity to take from the Part at the same position in partIds
+     * @return true if the stock was taken, or false if the request was turned down
+     * @throws IllegalArgumentException if the arrays differ in length or a quantity is not positive
+     * */
+    public static boolean takeStock(int[] partIds, int[] quantities) {
+        return ledger.take(partIds, quantities);
+    }
+
+    /** This method is used to move a Part's stock up or down by a given amount, such as when a delivery arrives or
+     * stock is counted again. Stock added is turned down if it would take the stock above the Part's Maximum, and
+     * stock taken if it would leave the stock, leaving out what is reserved, below its Minimum. A Part already below
+     * its Minimum can still be restocked.
+     * @param partId the ID of the Part
+     * @param change the amount to add to the stock, which is negative to take stock away
+     * @return true if the stock was changed, or false if there is no such Part or the change was turned down
+     * */
+    public static boolean adjustStock(int partId, int change) {
+        return ledger.adjust(partId, change);
+    }
+
+    /** This method is used to build units of a Product, which takes one of each associated part per unit out of stock
+     * and adds the units to the Product's stock, all as one change. The Product is locked before its Parts, the same
+     * order every change to both follows.
+     * @param productId an int representing the ID of the Product
+     * @param units an int representing the number of units to build
+     * @return true if the units were built, or false if there is no such Product, it has no associated parts, the
+     * units would take it over its maximum, or a Part would fall below its minimum
+     * @throws IllegalArgumentException if units is not positive
+     * */
+    public static boolean buildProduct(int productId, int units) {
+        if (units <= 0) {
+            throw new IllegalArgumentException("Units must be positive, not " + units);
+        }
+        boolean[] built = new boolean[1];
+        products.atomically(new int[] {productId}, () -> {
+            Product product = products.get(productId);
+            int[] partIds = whereUsed.partsOf(productId);
+            if (product == null || partIds.length == 0 || product.getStock() > product.getMax() - units) {
+                return;
             }
+            int[] quantities = new int[partIds.length];
+            Arrays.fill(quantities, units);
+            if (ledger.take(partIds, quantities)) {
+                products.patch(productId, made -> made.setStock(made.getStock() + units));
+                built[0] = true;
+            }
+        });
+        return built[0];
+    }
+
+    /** This method is used to look up a Part by ID together with its current version, for a screen that edits the
+     * Part and later saves it with updatePart(Part, int).
+     * @param partId an int representing an ID to search for
+     * @return the matching Part and its version, or null if there is no match
+     * */
+    public static Versioned<Part> lookupVersionedPart(int partId) {
+        return parts.getVersioned(partId);
+    }
+
+    /** This method is used to look up a Product by ID together with its current version, for a screen that edits the
+     * Product and later saves it with updateProduct(Product, int).
+     * @param productId an int representing an ID to search for
+     * @return the matching Product and its version, or null if there is no match
+     * */
+    public static Versioned<Product> lookupVersionedProduct(int productId) {
+        return products.getVersioned(productId);
+    }
+
+    /** This method replaces the Part stored under the new Part's ID, but only if that Part is still at the version it
+     * was read at with lookupVersionedPart(). If it has been replaced, patched or deleted since, nothing is changed and
+     * the result says why, so an edit made on a screen can never overwrite a change it did not see. The Part is found
+     * by its ID rather than its position in the allParts list, so this method can be called from any thread and does
+     * not scan the list.
+     * @param selectedPart the new part, with the same ID as the one it replaces
+     * @param expectedVersion the version returned by lookupVersionedPart()
+     * @return UPDATED if the part was replaced, otherwise CONFLICT or NOT_FOUND
+     * */
+    public static UpdateResult updatePart(Part selectedPart, int expectedVersion) {
+        return parts.replace(selectedPart, expectedVersion);
+    }
+
+    /** This method replaces the Product stored under the new Product's ID, but only if that Product is still at the
+     * version it was read at with lookupVersionedProduct(), in the same way as updatePart(Part, int).
+     * @param selectedProduct the new product, with the same ID as the one it replaces
+     * @param expectedVersion the version returned by lookupVersionedProduct()
+     * @return UPDATED if the product was replaced, otherwise CONFLICT or NOT_FOUND
+     * @see Inventory#updatePart(Part, int)
+     * */
+    public static UpdateResult updateProduct(Product selectedProduct, int expectedVersion) {
+        return products.replace(selectedProduct, expectedVersion);
+    }
+
+    /** This method replaces a Part like updatePart(Part, int), except that when the Part has changed since the version
+     * given, the caller is asked whether to save over the change. If so, the replacement is tried again against the
+     * latest version, and asked about again should that have changed too by then. A Part deleted in the meantime is
+     * never brought back.
+     * @param selectedPart the new part, with the same ID as the one it replaces
+     * @param expectedVersion the version returned by lookupVersionedPart()
+     * @param overwrite asked each time the Part has changed, such as by showing a dialog, and returns true to save over
+     * the change
+     * @return UPDATED if the part was replaced, NOT_FOUND if it was deleted, or CONFLICT if saving over a change was
+     * turned down
+     * */
+    public static UpdateResult updatePart(Part selectedPart, int expectedVersion, BooleanSupplier overwrite) {
+        return updateOrOverwrite(parts, selectedPart, selectedPart.getId(), expectedVersion, overwrite);
+    }
+
+    /** This method replaces a Product like updateProduct(Product, int), asking whether to save over a change made since
+     * the version given in the same way as updatePart(Part, int, BooleanSupplier).
+     * @param selectedProduct the new product, with the same ID as the one it replaces
+     * @param expectedVersion the version returned by lookupVersionedProduct()
+     * @param overwrite asked each time the Product has changed, and returns true to save over the change
+     * @return UPDATED if the product was replaced, NOT_FOUND if it was deleted, or CONFLICT if saving over a change was
+     * turned down
+     * @see Inventory#updatePart(Part, int, BooleanSupplier)
+     * */
+    public static UpdateResult updateProduct(Product selectedProduct, int expectedVersion, BooleanSupplier overwrite) {
+        return updateOrOverwrite(products, selectedProduct, selectedProduct.getId(), expectedVersion, overwrite);
+    }
+
+    private static <T> UpdateResult updateOrOverwrite(EntityStore<T> store, T item, int id, int expectedVersion,
+                                                      BooleanSupplier overwrite) {
+        UpdateResult result = store.replace(item, expectedVersion);
+        while (result == UpdateResult.CONFLICT && overwrite.getAsBoolean()) {
+            Versioned<T> latest = store.getVersioned(id);
+            result = latest == null ? UpdateResult.NOT_FOUND : store.replace(item, latest.getVersion());
         }
-        return tempList;
+        return result;
     }
 
-    /** This method replaces a Part in the allParts list.
+    /** This method replaces a Part in the allParts list. Because the index refers to a position in the allParts list,
+     * this method must be called on the JavaFX Application Thread, and it overwrites whatever is at that position even
+     * if another thread changed the list since the index was found. Screens use updatePart(Part, int) instead.
      * @param index index of the part to be replaced
      * @param selectedPart the new part to be inserted
      * */
     public static void updatePart(int index, Part selectedPart) {
-        allParts.set(index, selectedPart);
+        Part oldPart = getAllParts().get(index);
+        if (oldPart.getId() != selectedPart.getId()) {
+            parts.remove(oldPart);
+        }
+        parts.put(selectedPart);
     }
 
-    /** This method replaces a Product in the allProducts list.
+    /** This method replaces a Product in the allProducts list. Because the index refers to a position in the
+     * allProducts list, this method must be called on the JavaFX Application Thread, and it overwrites whatever is at
+     * that position. Screens use updateProduct(Product, int) instead.
      * @param index index of the part to be replaced
      * @param selectedProduct the new part to be inserted
      * */
     public static void updateProduct(int index, Product selectedProduct) {
-        allProducts.set(index, selectedProduct);
+        Product oldProduct = getAllProducts().get(index);
+        if (oldProduct.getId() != selectedProduct.getId()) {
+            products.remove(oldProduct);
+        }
+        products.put(selectedProduct);
     }
 
-    /** This method deletes a Part from the allParts list.
+    /** This method changes fields of a Part in place, for updates such as stock movements that arrive far more often
+     * than a user edits a whole Part. Unlike updatePart(), it can be called from any thread and does not need the
+     * Part's index. The TableViews are not told that a row was replaced, only that the patched fields changed, so a
+     * stock patch repaints the one stock cell. The change should only call setters, and must not change the ID, for
+     * example {@code Inventory.patchPart(id, part -> part.setStock(part.getStock() - 1))}.
+     * @param partId the ID of the Part to change
+     * @param change sets the new field values on the Part
+     * @return true if a Part with the ID was found and patched
+     * */
+    public static boolean patchPart(int partId, Consumer<? super Part> change) {
+        return parts.patch(partId, change) != null;
+    }
+
+    /** This method changes fields of a Product in place, in the same way as patchPart(). The change should only set
+     * the Product's own fields rather than its associated parts.
+     * @param productId the ID of the Product to change
+     * @param change sets the new field values on the Product
+     * @return true if a Product with the ID was found and patched
+     * @see Inventory#patchPart(int, Consumer)
+     * */
+    public static boolean patchProduct(int productId, Consumer<? super Product> change) {
+        return products.patch(productId, change) != null;
+    }
+
+    /** This method deletes a Part from the inventory.
      * @param selectedPart Part to be deleted from the list
      * @return boolean returns true if the selected part was successfully removed from the list
      * */
     public static boolean deletePart(Part selectedPart){
-        return getAllParts().remove(selectedPart);
+        return parts.remove(selectedPart);
     }
-    /** This method deletes a Product from the allProducts list.
+    /** This method deletes a Product from the inventory.
      * @param selectedProduct Product to be deleted from the list
      * @return boolean returns true if the selected product was successfully removed from the list
      * */
     public static boolean deleteProduct(Product selectedProduct){
-        return getAllProducts().remove(selectedProduct);
+        return products.remove(selectedProduct);
+    }
+
+    /** This method deletes every Part stored under a set of IDs as one batch. Each Part is found by its ID rather than
+     * searched for in the allParts list, and the list drops them all in a single pass and a single change.
+     * @param partIds the IDs of the Parts to be deleted
+     * @return the number of Parts deleted, leaving out IDs that were not in use
+     * @see Inventory#applyBatch(List)
+     * */
+    public static int deleteParts(Collection<Integer> partIds) {
+        int[] ids = partIds.stream().mapToInt(Integer::intValue).toArray();
+        int[] deleted = new int[1];
+        parts.atomically(ids, () -> {
+            for (int id : ids) {
+                deleted[0] += parts.removeId(id) != null ? 1 : 0;
+            }
+        });
+        return deleted[0];
+    }
+
+    /** This method deletes every Product stored under a set of IDs as one batch, in the same way as deleteParts().
+     * @param productIds the IDs of the Products to be deleted
+     * @return the number of Products deleted, leaving out IDs that were not in use
+     * @see Inventory#deleteParts(Collection)
+     * */
+    public static int deleteProducts(Collection<Integer> productIds) {
+        int[] ids = productIds.stream().mapToInt(Integer::intValue).toArray();
+        int[] deleted = new int[1];
+        products.atomically(ids, () -> {
+            for (int id : ids) {
+                deleted[0] += products.removeId(id) != null ? 1 : 0;
+            }
+        });
+        return deleted[0];
+    }
+
+    /** This method makes a list of additions, replacements and deletions of Parts and Products, in order, as one batch.
+     * Every Part and Product the batch touches is locked until the whole batch has been made, so no other thread sees
+     * part of it, and each of the allParts and allProducts lists receives the batch as a single change. The write-ahead
+     * log saves the whole batch, Parts and Products together, as one record, so a crash while saving it never replays
+     * half of it. The exception is a batch whose records come to more than 64 MiB, which is saved across several.
+     * @param mutations the changes to make, created with the static methods of the Mutation class
+     * @return the number of mutations that changed something, leaving out deletions of IDs that were not in use
+     * */
+    public static int applyBatch(List<Mutation> mutations) {
+        boolean[] changed = new boolean[mutations.size()];
+        applyBatch(mutations, changed);
+        int applied = 0;
+        for (boolean change : changed) {
+            applied += change ? 1 : 0;
+        }
+        return applied;
+    }
+
+    /** This method makes a list of mutations as one batch in the same way as applyBatch(List), and reports which of
+     * them changed something, for callers that answer for each change separately.
+     * @param mutations the changes to make, created with the static methods of the Mutation class
+     * @param changed receives, at the position of each mutation, whether it changed something; a mutation that was
+     * turned down, such as a stock change that would break the Part's Minimum, leaves false
+     * @throws IllegalArgumentException if changed is shorter than the list of mutations
+     * */
+    public static void applyBatch(List<Mutation> mutations, boolean[] changed) {
+        if (changed.length < mutations.size()) {
+            throw new IllegalArgumentException("There is no room for the outcome of every mutation");
+        }
+        int[] productIds = mutations.stream().filter(Mutation::onProducts).mapToInt(Mutation::getId).toArray();
+        Runnable batch = () -> {
+            // Building a Product the batch replaces or deletes looks up its Parts, so they are locked along with the
+            // Parts the batch changes rather than waited for while holding the others. The Products are already
+            // locked, so the Parts they list cannot change before the Part locks are taken
+            int[] partIds = mutations.stream().flatMapToInt(mutation -> mutation.partIdsLocked(whereUsed)).toArray();
+            parts.atomically(partIds, () -> {
+                for (int i = 0; i < mutations.size(); i++) {
+                    changed[i] = mutations.get(i).applyTo(parts, products, ledger, whereUsed);
+                }
+            });
+        };
+        // Products are locked first because building a Product from a snapshot row looks up its Parts. Whether a Part
+        // is used can change with any Product, so a batch that asks holds every Product stripe
+        if (mutations.stream().anyMatch(Mutation::needsEveryProduct)) {
+            // Still made as a batch on the Product store, so its share is logged and published with the Parts'
+            products.exclusively(() -> products.atomically(productIds, batch));
+        }
+        else {
+            products.atomically(productIds, batch);
+        }
     }
 
-    // Dummy data to populate the tables on the Inventory Main Screen
+    /** This method visits every Part and then every Product as they all were at one moment, while changes made on
+     * other threads carry on. Both stores are viewed from the same moment, so a batch that changes Parts and Products
+     * together is either entirely in the visit or not in it at all. Each Part and Product is turned into a row under
+     * its stripe lock, and a row must be something later changes cannot alter, such as a String. Only the rows of
+     * entries changed during the visit are held in memory, never a copy of the whole inventory.
+     * @param partRow turns a Part into its row
+     * @param partAction receives the row of each Part
+     * @param productRow turns a Product into its row
+     * @param productAction receives the row of each Product
+     * @param <P> the type of a Part's row
+     * @param <Q> the type of a Product's row
+     * */
+    static <P, Q> void visitAsOfNow(Function<? super Part, ? extends P> partRow, Consumer<? super P> partAction,
+                                    Function<? super Product, ? extends Q> productRow,
+                                    Consumer<? super Q> productAction) {
+        List<EntityStore<Part>.View<P>> partView = new ArrayList<>(1);
+        List<EntityStore<Product>.View<Q>> productView = new ArrayList<>(1);
+        // Products are locked first because building a Product from a snapshot row looks up its Parts
+        products.exclusively(() -> {
+            productView.add(products.openView(productRow));
+            partView.add(parts.openView(partRow));
+        });
+        try (EntityStore<Part>.View<P> partsAsOfNow = partView.get(0);
+             EntityStore<Product>.View<Q> productsAsOfNow = productView.get(0)) {
+            partsAsOfNow.forEach(partAction);
+            productsAsOfNow.forEach(productAction);
+        }
+    }
+
+    /** This method opens the write-ahead log in the data directory, which first recovers the saved inventory into the
+     * stores. Persistence can be turned off by setting the inventory.persist system property to false, in which case
+     * the inventory only lives in memory as it did before. The ID high-water marks are then raised past every ID the
+     * log recovered, so a lost or out of date ID file can never hand out an ID that is already in use.
+     * @return the open log or null if the inventory is not being saved
+     * */
+    private static InventoryLog openLog() {
+        if (!Boolean.parseBoolean(System.getProperty("inventory.persist", "true"))) {
+            return null;
+        }
+        try {
+            InventoryLog opened = InventoryLog.open(DATA_DIRECTORY, 250_000, parts, products);
+            Runtime.getRuntime().addShutdownHook(new Thread(opened::close, "inventory-log-shutdown"));
+            try {
+                ids.reserveThrough(IdAllocator.Namespace.PART, opened.highestPartId());
+                ids.reserveThrough(IdAllocator.Namespace.PRODUCT, opened.highestProductId());
+            }
+            catch (UncheckedIOException exception) {
+                System.out.println("The ID high-water marks in " + DATA_DIRECTORY + " could not be checked: "
+                        + exception.getCause().getMessage());
+            }
+            return opened;
+        }
+        catch (IOException exception) {
+            System.out.println("Inventory could not be loaded from " + DATA_DIRECTORY + ": " + exception.getMessage());
+            return null;
+        }
+    }
+
+    // Dummy data to populate the tables on the Inventory Main Screen the first time the program runs
     static {
-        Part dummyData1 = new InHouse(1001,"Widgets", 10.99, 12, 1, 15, 2025);
-        Part dummyData2 = new InHouse(1002,"Lasers", 14.99, 27, 0, 35, 2035);
-        Part dummyData3 = new InHouse(1003,"Rocks", 2.99, 10000, 1000, 30000, 2030);
-        Part dummyData4 = new Outsourced(1004, "Space Dust", 99.99, 1200, 100, 15000, "Tesla");
-        Part dummyData5 = new Outsourced(1005, "Water", 5.99, 347, 20, 500, "SpaceX");
-        addPart(dummyData1);
-        addPart(dummyData2);
-        addPart(dummyData3);
-        addPart(dummyData4);
-        addPart(dummyData5);
-
-        Product dummyData6 = new Product(5001,"Stone Boats", 1.99, 8, 0, 20);
-        Product dummyData7 = new Product(5002,"X-Ray Visors", 999.99, 1, 0, 10);
-        Product dummyData8 = new Product(5003,"Ice Sculptures", 20.99, 215, 1, 1000);
-        addProduct(dummyData6);
-        addProduct(dummyData7);
-        addProduct(dummyData8);
-    }
-
-    // Initialize the part ID series at 1006, the 5 dummy parts took 1001 - 1005
-    private static int uniquePartId = 1006;
-    private static void incrementUniquePartId() { uniquePartId += 1; }
-
-    /** This method creates a new unique ID when a new Part is created.
+        if (log == null || !log.hasHistory()) {
+            Part dummyData1 = new InHouse(1001,"Widgets", 10.99, 12, 1, 15, 2025);
+            Part dummyData2 = new InHouse(1002,"Lasers", 14.99, 27, 0, 35, 2035);
+            Part dummyData3 = new InHouse(1003,"Rocks", 2.99, 10000, 1000, 30000, 2030);
+            Part dummyData4 = new Outsourced(1004, "Space Dust", 99.99, 1200, 100, 15000, "Tesla");
+            Part dummyData5 = new Outsourced(1005, "Water", 5.99, 347, 20, 500, "SpaceX");
+            addPart(dummyData1);
+            addPart(dummyData2);
+            addPart(dummyData3);
+            addPart(dummyData4);
+            addPart(dummyData5);
+
+            Product dummyData6 = new Product(5001,"Stone Boats", 1.99, 8, 0, 20);
+            Product dummyData7 = new Product(5002,"X-Ray Visors", 999.99, 1, 0, 10);
+            Product dummyData8 = new Product(5003,"Ice Sculptures", 20.99, 215, 1, 1000);
+            addProduct(dummyData6);
+            addProduct(dummyData7);
+            addProduct(dummyData8);
+        }
+    }
+
+    /** This method creates a new unique ID when a new Part is created. Part IDs come from their own namespace, so
+     * they never collide with Product IDs, and are safe to request from any thread.
      * @return int the newly created ID
      * */
     public static int getNextUniquePartId() {
-        int currId = uniquePartId;
-        incrementUniquePartId();
-        return currId;
+        return Math.toIntExact(ids.next(IdAllocator.Namespace.PART));
     }
 
-    // Initialize the product ID series at 5004, the 3 dummy parts took 5001 - 5004
-    private static int uniqueProductId = 5004;
-    private static void incrementUniqueProductId() { uniqueProductId += 1; }
-
-    /** This method creates a new unique ID when a new Product is created.
+    /** This method creates a new unique ID when a new Product is created. Product IDs come from their own namespace, so
+     * they never collide with Part IDs, and are safe to request from any thread.
      * @return int the newly created ID
      * */
     public static int getNextUniqueProductId() {
-        int currId = uniqueProductId;
-        incrementUniqueProductId();
-        return currId;
+        return Math.toIntExact(ids.next(IdAllocator.Namespace.PRODUCT));
+    }
+
+    /** This method makes sure IDs up to and including the given one are never handed out again, after Parts or
+     * Products were imported with IDs they brought with them.
+     * @param namespace the namespace the IDs belong to
+     * @param highest the highest ID imported
+     * */
+    static void reserveIdsThrough(IdAllocator.Namespace namespace, long highest) {
+        ids.reserveThrough(namespace, highest);
     }
 }
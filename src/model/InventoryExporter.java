@@ -0,0 +1,291 @@
+package model;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Locale;
+
+/** This class exports every Part and Product in the Inventory to CSV or JSON files for other systems to read. The
+ * export shows the Inventory as it was at the moment it started, even while changes carry on during it, and it reads
+ * the stores in place rather than copying them, so it can run on a background thread while the screens stay in use.
+ * Rows are written through a buffered file channel, each file is written under a temporary name and only renamed once
+ * it is complete, so a reader never sees half an export.
+ * CSV files use the same columns as the SnapshotConverter tool and InventoryImporter, so an export can be imported
+ * again. JSON files hold an array of objects with the keys InventoryImporter reads, or one object per line when the
+ * file name ends in .jsonl or .ndjson. A Product's associated parts are written as their IDs.
+ * Usage: InventoryExporter parts-file products-file
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class InventoryExporter {
+
+    private static final int BUFFER_BYTES = 1 << 18;
+
+    private InventoryExporter() { }
+
+    /** This is the main method that exports the Inventory in the usual data directory to the files named on the
+     * command line.
+     * @param args the parts file followed by the products file
+     * */
+    public static void main(String[] args) {
+        if (args.length != 2) {
+            System.out.println("Usage: InventoryExporter <parts file> <products file>");
+            System.exit(2);
+        }
+        try {
+            long started = System.nanoTime();
+            long rows = export(Paths.get(args[0]), Paths.get(args[1]));
+            System.out.printf("Exported %,d rows in %.2f s%n", rows, (System.nanoTime() - started) / 1e9);
+        }
+        catch (IOException exception) {
+            System.out.println("Export failed: " + exception.getMessage());
+            System.exit(1);
+        }
+        System.exit(0);
+    }
+
+    /** This method exports every Part and Product in the Inventory, as they all were when the method was called. It
+     * can be called from any thread.
+     * @param partsFile the file to write the Parts to, replaced if it exists
+     * @param productsFile the file to write the Products to, replaced if it exists
+     * @return the number of Parts and Products written
+     * @throws IOException if either file cannot be written, in which case neither is replaced
+     * */
+    public static long export(Path partsFile, Path productsFile) throws IOException {
+        Format partFormat = Format.of(partsFile);
+        Format productFormat = Format.of(productsFile);
+        Path partsTemporary = partsFile.resolveSibling(partsFile.getFileName() + ".tmp");
+        Path productsTemporary = productsFile.resolveSibling(productsFile.getFileName() + ".tmp");
+        try (RowWriter partsOut = new RowWriter(partsTemporary, partFormat, "id,name,price,stock,min,max,type,source");
+             RowWriter productsOut = new RowWriter(productsTemporary, productFormat,
+                     "id,name,price,stock,min,max,parts")) {
+            try {
+                Inventory.visitAsOfNow(part -> partFormat.row(part), partsOut::write,
+                        product -> productFormat.row(product), productsOut::write);
+            }
+            catch (UncheckedIOException exception) {
+                throw exception.getCause();
+            }
+            partsOut.finish();
+            productsOut.finish();
+            Files.move(partsTemporary, partsFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            Files.move(productsTemporary, productsFile, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return partsOut.rows + productsOut.rows;
+        }
+        finally {
+            Files.deleteIfExists(partsTemporary);
+            Files.deleteIfExists(productsTemporary);
+        }
+    }
+
+    /** This method writes a Part as a JSON object with the keys InventoryImporter reads.
+     * @param part the Part
+     * @return the JSON object
+     * */
+    static String toJson(Part part) {
+        return Format.JSON_LINES.row(part);
+    }
+
+    /** This method writes a Product as a JSON object with the keys InventoryImporter reads.
+     * @param product the Product
+     * @return the JSON object
+     * */
+    static String toJson(Product product) {
+        return Format.JSON_LINES.row(product);
+    }
+
+    /** This method writes text as a quoted JSON string.
+     * @param json the JSON being written
+     * @param text the text
+     * */
+    static void appendJsonText(StringBuilder json, String text) {
+        Format.jsonText(json, text);
+    }
+
+    /** This enum is a file format an export can be written in, picked from the file name. */
+    private enum Format {
+        CSV, JSON_ARRAY, JSON_LINES;
+
+        static Format of(Path file) {
+            String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+            if (name.endsWith(".json")) {
+                return JSON_ARRAY;
+            }
+            return name.endsWith(".jsonl") || name.endsWith(".ndjson") ? JSON_LINES : CSV;
+        }
+
+        String row(Part part) {
+            StringBuilder row = new StringBuilder(96);
+            boolean inHouse = part instanceof InHouse;
+            common(row, part.getId(), part.getName(), part.getPrice(), part.getStock(), part.getMin(), part.getMax());
+            if (this == CSV) {
+                row.append(inHouse ? ",InHouse," : ",Outsourced,");
+                if (inHouse) {
+                    row.append(((InHouse) part).getMachineId());
+                }
+                else {
+                    csvText(row, ((Outsourced) part).getCompanyName());
+                }
+            }
+            else {
+                if (inHouse) {
+                    row.append(",\"type\":\"InHouse\",\"machineId\":").append(((InHouse) part).getMachineId());
+                }
+                else {
+                    row.append(",\"type\":\"Outsourced\",\"companyName\":");
+                    jsonText(row, ((Outsourced) part).getCompanyName());
+                }
+                row.append('}');
+            }
+            return row.toString();
+        }
+
+        String row(Product product) {
+            StringBuilder row = new StringBuilder(96);
+            common(row, product.getId(), product.getName(), product.getPrice(), product.getStock(), product.getMin(),
+                    product.getMax());
+            List<Part> associated = product.getAllAssociatedParts();
+            row.append(this == CSV ? "," : ",\"parts\":[");
+            for (int i = 0; i < associated.size(); i++) {
+                if (i > 0) {
+                    row.append(this == CSV ? ';' : ',');
+                }
+                row.append(associated.get(i).getId());
+            }
+            if (this != CSV) {
+                row.append("]}");
+            }
+            return row.toString();
+        }
+
+        private void common(StringBuilder row, int id, String name, double price, int stock, int min, int max) {
+            if (this == CSV) {
+                row.append(id).append(',');
+                csvText(row, name);
+                row.append(',').append(price).append(',').append(stock).append(',').append(min).append(',')
+                        .append(max);
+            }
+            else {
+                row.append("{\"id\":").append(id).append(",\"name\":");
+                jsonText(row, name);
+                row.append(",\"price\":").append(price).append(",\"stock\":").append(stock).append(",\"min\":")
+                        .append(min).append(",\"max\":").append(max);
+            }
+        }
+
+        private static void csvText(StringBuilder row, String text) {
+            boolean quoted = false;
+            for (int i = 0; i < text.length() && !quoted; i++) {
+                char c = text.charAt(i);
+                quoted = c == ',' || c == '"' || c == '\n' || c == '\r';
+            }
+            if (!quoted) {
+                row.append(text);
+                return;
+            }
+            row.append('"').append(text.replace("\"", "\"\"")).append('"');
+        }
+
+        private static void jsonText(StringBuilder row, String text) {
+            row.append('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"' || c == '\\') {
+                    row.append('\\').append(c);
+                }
+                else if (c < 0x20) {
+                    row.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    row.append(c);
+                }
+            }
+            row.append('"');
+        }
+    }
+
+    /** This class writes the rows of one file through a buffered channel. Rows arrive from the store's visit, which
+     * cannot throw checked exceptions, so write failures are passed up as UncheckedIOExceptions.
+     * */
+    private static final class RowWriter implements AutoCloseable {
+        private final FileChannel channel;
+        private final Format format;
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+        long rows;
+
+        RowWriter(Path file, Format format, String csvHeader) throws IOException {
+            this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING);
+            this.format = format;
+            if (format == Format.CSV) {
+                put(csvHeader + "\n");
+            }
+            else if (format == Format.JSON_ARRAY) {
+                put("[");
+            }
+        }
+
+        void write(String row) {
+            try {
+                if (format == Format.JSON_ARRAY) {
+                    put(rows == 0 ? "\n" : ",\n");
+                }
+                put(row);
+                if (format != Format.JSON_ARRAY) {
+                    put("\n");
+                }
+                rows++;
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException(exception);
+            }
+        }
+
+        // Ends the file and makes sure it is on disk before it is renamed into place
+        void finish() throws IOException {
+            if (format == Format.JSON_ARRAY) {
+                put("\n]\n");
+            }
+            flush();
+            channel.force(false);
+        }
+
+        private void put(String text) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > buffer.remaining()) {
+                flush();
+                if (bytes.length > buffer.capacity()) {
+                    ByteBuffer large = ByteBuffer.wrap(bytes);
+                    while (large.hasRemaining()) {
+                        channel.write(large);
+                    }
+                    return;
+                }
+            }
+            buffer.put(bytes);
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package model;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static model.RecordParser.ID;
+import static model.RecordParser.IN_HOUSE;
+import static model.RecordParser.MAX;
+import static model.RecordParser.MIN;
+import static model.RecordParser.NAME;
+import static model.RecordParser.PARTS;
+import static model.RecordParser.PRICE;
+import static model.RecordParser.SOURCE;
+import static model.RecordParser.STOCK;
+import static model.RecordParser.TYPE;
+
+/** This class imports Parts and Products from CSV or JSON files into the Inventory. A file is read as a stream of
+ * chunks that each end on a whole record, and the chunks are parsed and validated on a pool of threads while the next
+ * ones are read. Validated rows are added in file order, one chunk at a time, through Inventory.addParts() and
+ * Inventory.addProducts(), so each chunk reaches the tables as a single change and a later row with the same ID
+ * replaces an earlier one. Only a few chunks per thread are in memory at once, however large the file is.
+ * Rows are held to the same rules as the Add Part screen: the name must not be blank, the minimum must not be more
+ * than the maximum, the stock must lie between them, and an InHouse part needs a whole number machine ID while an
+ * Outsourced part needs a company name. A Product's associated parts must already be in the Inventory, so Parts are
+ * imported before the Products that use them. A row that breaks a rule is left out and reported with its line number.
+ * CSV files use the same columns as the SnapshotConverter tool. JSON files hold an array of objects, or one object per
+ * line, with the keys id, name, price, stock, min and max, plus type and machineId or companyName for Parts, where the
+ * type can be left out, and parts, an array of part IDs, for Products. A file whose name ends in .json, .jsonl or
+ * .ndjson is read as JSON, and any other file as CSV.
+ * Usage: InventoryImporter [-parts file] [-products file] [-threads n] [-check] [-errors file]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class InventoryImporter {
+
+    private static final int CHUNK_BYTES = 1 << 20;
+    // Enough chunks in flight to keep every thread busy while the oldest one is being added
+    private static final int CHUNKS_PER_THREAD = 2;
+
+    private InventoryImporter() { }
+
+    /** This is the main method that imports the files named on the command line into the Inventory, saving them in
+     * the usual data directory, and prints a report for each.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        Path partsFile = null;
+        Path productsFile = null;
+        Path errorsFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        boolean validateOnly = false;
+        try {
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "-parts":
+                        partsFile = Paths.get(args[++i]);
+                        break;
+                    case "-products":
+                        productsFile = Paths.get(args[++i]);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[++i]);
+                        break;
+                    case "-errors":
+                        errorsFile = Paths.get(args[++i]);
+                        break;
+                    case "-check":
+                        validateOnly = true;
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+        }
+        catch (ArrayIndexOutOfBoundsException | IllegalArgumentException exception) {
+            System.out.println("Usage: InventoryImporter [-parts file] [-products file] [-threads n] [-check] "
+                    + "[-errors file]");
+            System.exit(2);
+        }
+        try (PrintWriter errors = errorsFile == null ? null
+                : new PrintWriter(Files.newBufferedWriter(errorsFile, StandardCharsets.UTF_8))) {
+            if (partsFile != null) {
+                report("Parts", importParts(partsFile, threads, validateOnly), errors);
+            }
+            if (productsFile != null) {
+                report("Products", importProducts(productsFile, threads, validateOnly), errors);
+            }
+        }
+        catch (IOException exception) {
+            System.out.println("Import failed: " + exception.getMessage());
+            System.exit(1);
+        }
+        // Exiting runs the Inventory's shutdown hook, which writes out everything still queued for the log
+        System.exit(0);
+    }
+
+    private static void report(String what, ImportReport report, PrintWriter errors) {
+        System.out.println(what + ": " + report);
+        List<String> reasons = report.getErrors();
+        if (errors != null) {
+            reasons.forEach(errors::println);
+        }
+        else {
+            reasons.stream().limit(20).forEach(reason -> System.out.println("  " + reason));
+            if (reasons.size() > 20) {
+                System.out.println("  ... and " + (report.getRowsRejected() - 20) + " more, use -errors to list them");
+            }
+        }
+    }
+
+    /** This method imports Parts from a CSV or JSON file.
+     * @param file the file to import
+     * @param threads the number of threads to parse on
+     * @param validateOnly true to check every row without adding any of them
+     * @return the report of what was imported and what was rejected
+     * @throws IOException if the file cannot be read
+     * */
+    public static ImportReport importParts(Path file, int threads, boolean validateOnly) throws IOException {
+        return importFile(file, false, threads, validateOnly);
+    }
+
+    /** This method imports Products from a CSV or JSON file. Their associated parts must already be in the Inventory.
+     * @param file the file to import
+     * @param threads the number of threads to parse on
+     * @param validateOnly true to check every row without adding any of them
+     * @return the report of what was imported and what was rejected
+     * @throws IOException if the file cannot be read
+     * */
+    public static ImportReport importProducts(Path file, int threads, boolean validateOnly) throws IOException {
+        return importFile(file, true, threads, validateOnly);
+    }
+
+    private static ImportReport importFile(Path file, boolean products, int threads, boolean validateOnly)
+            throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        boolean json = name.endsWith(".json") || name.endsWith(".jsonl") || name.endsWith(".ndjson");
+        ImportReport report = new ImportReport();
+        long started = System.nanoTime();
+        AtomicInteger threadCount = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads), runnable -> {
+            Thread thread = new Thread(runnable, "inventory-import-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ArrayDeque<Future<Chunk>> inFlight = new ArrayDeque<>();
+        int highestId = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            RecordParser cutter = RecordParser.create(json, products);
+            byte[] buffer = new byte[CHUNK_BYTES];
+            int filled = 0;
+            long line = 1;
+            boolean ended = false;
+            while (!ended) {
+                int read = in.read(buffer, filled, buffer.length - filled);
+                if (read < 0) {
+                    ended = true;
+                }
+                else {
+                    filled += read;
+                    if (filled < buffer.length) {
+                        continue;
+                    }
+                }
+                int cut = ended ? filled : cutter.lastBoundary(buffer, filled);
+                if (cut == 0 && !ended) {
+                    // A record longer than the buffer, so the buffer grows until the record fits
+                    buffer = Arrays.copyOf(buffer, buffer.length * 2);
+                    continue;
+                }
+                // The chunk keeps the buffer, and the bytes after the cut start a new one
+                Chunk chunk = new Chunk(buffer, cut, line, json, products, validateOnly);
+                for (int i = 0; i < cut; i++) {
+                    if (buffer[i] == '\n') {
+                        line++;
+                    }
+                }
+                byte[] next = new byte[Math.max(CHUNK_BYTES, filled - cut)];
+                System.arraycopy(buffer, cut, next, 0, filled - cut);
+                filled -= cut;
+                buffer = next;
+                inFlight.add(pool.submit(chunk::parse));
+                while (!inFlight.isEmpty() && (inFlight.size() >= threads * CHUNKS_PER_THREAD || inFlight.peek().isDone()
+                        || ended)) {
+                    highestId = Math.max(highestId, commit(inFlight.poll(), report));
+                }
+            }
+        }
+        finally {
+            pool.shutdownNow();
+        }
+        if (highestId > 0 && !validateOnly) {
+            Inventory.reserveIdsThrough(products ? IdAllocator.Namespace.PRODUCT : IdAllocator.Namespace.PART,
+                    highestId);
+        }
+        report.finished(System.nanoTime() - started);
+        return report;
+    }
+
+    // Adds a parsed chunk to the Inventory and the report, and returns the highest ID it held
+    private static int commit(Future<Chunk> parsing, ImportReport report) throws IOException {
+        Chunk chunk;
+        try {
+            chunk = parsing.get();
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+            throw new IOException("The import was interrupted", exception);
+        }
+        catch (ExecutionException exception) {
+            throw new IOException("A chunk could not be parsed: " + exception.getCause(), exception.getCause());
+        }
+        for (int i = 0; i < chunk.reasons.size(); i++) {
+            report.rejected(chunk.rejectedLines.get(i), chunk.reasons.get(i));
+        }
+        report.imported(chunk.parts.size() + chunk.products.size());
+        if (!chunk.validateOnly) {
+            if (!chunk.parts.isEmpty()) {
+                Inventory.addParts(chunk.parts);
+            }
+            if (!chunk.products.isEmpty()) {
+                Inventory.addProducts(chunk.products);
+            }
+        }
+        return chunk.highestId;
+    }
+
+    /** This class is one chunk of a file, which is parsed and validated on a pool thread into the Parts or Products
+     * it holds and the reasons any of its rows were rejected.
+     * */
+    private static final class Chunk {
+        private final byte[] data;
+        private final int length;
+        private final long firstLine;
+        private final boolean json;
+        private final boolean ofProducts;
+        final boolean validateOnly;
+        final List<Part> parts = new ArrayList<>();
+        final List<Product> products = new ArrayList<>();
+        final List<Long> rejectedLines = new ArrayList<>();
+        final List<String> reasons = new ArrayList<>();
+        int highestId;
+
+        Chunk(byte[] data, int length, long firstLine, boolean json, boolean products, boolean validateOnly) {
+            this.data = data;
+            this.length = length;
+            this.firstLine = firstLine;
+            this.json = json;
+            this.ofProducts = products;
+            this.validateOnly = validateOnly;
+        }
+
+        Chunk parse() {
+            RecordParser parser = RecordParser.create(json, ofProducts);
+            parser.startChunk(firstLine);
+            RecordParser.Fields fields = parser.fields;
+            int position = 0;
+            while (true) {
+                try {
+                    position = parser.next(data, position, length);
+                    if (position < 0) {
+                        break;
+                    }
+                    if (ofProducts) {
+                        Product product = product(fields, 0);
+                        products.add(product);
+                        highestId = Math.max(highestId, product.getId());
+                    }
+                    else {
+                        Part part = part(fields, 0);
+                        parts.add(part);
+                        highestId = Math.max(highestId, part.getId());
+                    }
+                }
+                catch (RecordParser.RowException exception) {
+                    rejectedLines.add(fields.line);
+                    reasons.add(exception.getMessage());
+                    if (exception.resumeAt >= 0) {
+                        position = exception.resumeAt;
+                    }
+                }
+            }
+            return this;
+        }
+    }
+
+    /** This method builds a Part from a record, checking it against the rules of the Add Part screen.
+     * @param fields the fields of the record
+     * @param missingId the ID to give the Part if the record has none, or 0 if the record must have one
+     * @return the Part
+     * @throws RecordParser.RowException if the record breaks a rule, with the reason as its message
+     * */
+    static Part part(RecordParser.Fields fields, int missingId) throws RecordParser.RowException {
+        int id = missingId > 0 && fields.isBlank(ID) ? missingId : fields.intValue(ID, "ID");
+        String name = fields.text(NAME);
+        double price = fields.doubleValue(PRICE, "Price");
+        int stock = fields.intValue(STOCK, "Inventory");
+        int min = fields.intValue(MIN, "Min");
+        int max = fields.intValue(MAX, "Max");
+        checkCommonRules(IdAllocator.Namespace.PART, id, name, stock, min, max);
+
+        boolean inHouse;
+        if (fields.matches(TYPE, "InHouse")) {
+            inHouse = true;
+        }
+        else if (fields.matches(TYPE, "Outsourced")) {
+            inHouse = false;
+        }
+        else if (!fields.isBlank(TYPE)) {
+            throw new RecordParser.RowException("Type \"" + fields.text(TYPE)
+                    + "\" is neither InHouse nor Outsourced");
+        }
+        else if (fields.typeHint != 0) {
+            inHouse = fields.typeHint == IN_HOUSE;
+        }
+        else {
+            // With no type given, a whole number source can only be a machine ID
+            inHouse = !fields.isBlank(SOURCE) && fields.text(SOURCE).matches("-?\\d{1,10}");
+        }
+        if (inHouse) {
+            if (fields.isBlank(SOURCE)) {
+                throw new RecordParser.RowException("A Machine ID must be entered.");
+            }
+            return new InHouse(id, name, price, stock, min, max, fields.intValue(SOURCE, "Machine ID"));
+        }
+        // A JSON machineId does not count as the company name of a Part typed as Outsourced
+        if (fields.isBlank(SOURCE) || fields.typeHint == IN_HOUSE) {
+            throw new RecordParser.RowException("A Company name must be entered.");
+        }
+        return new Outsourced(id, name, price, stock, min, max, fields.text(SOURCE));
+    }
+
+    /** This method builds a Product from a record, checking it against the same rules and that its associated parts
+     * exist.
+     * @param fields the fields of the record
+     * @param missingId the ID to give the Product if the record has none, or 0 if the record must have one
+     * @return the Product
+     * @throws RecordParser.RowException if the record breaks a rule, with the reason as its message
+     * */
+    static Product product(RecordParser.Fields fields, int missingId) throws RecordParser.RowException {
+        int id = missingId > 0 && fields.isBlank(ID) ? missingId : fields.intValue(ID, "ID");
+        String name = fields.text(NAME);
+        double price = fields.doubleValue(PRICE, "Price");
+        int stock = fields.intValue(STOCK, "Inventory");
+        int min = fields.intValue(MIN, "Min");
+        int max = fields.intValue(MAX, "Max");
+        checkCommonRules(IdAllocator.Namespace.PRODUCT, id, name, stock, min, max);
+        int[] partIds = fields.intList(PARTS, "Parts");
+        Product product = new Product(id, name, price, stock, min, max);
+        for (int partId : partIds) {
+            Part part = Inventory.lookupPart(partId);
+            if (part == null) {
+                throw new RecordParser.RowException("Associated part " + partId + " is not in the inventory");
+            }
+            product.addAssociatedPart(part);
+        }
+        return product;
+    }
+
+    private static void checkCommonRules(IdAllocator.Namespace namespace, int id, String name, int stock, int min,
+                                         int max) throws RecordParser.RowException {
+        // An ID from the other namespace would be shared with a Product, or a Part, and one from beyond the range would
+        // use up every ID left once it was reserved
+        if (!namespace.accepts(id)) {
+            throw new RecordParser.RowException("ID must be from " + namespace.describeRange());
+        }
+        if (name.trim().isEmpty()) {
+            throw new RecordParser.RowException("Name is blank");
+        }
+        if (min > max) {
+            throw new RecordParser.RowException("Minimum must be less than or equal to Maximum.");
+        }
+        if ((min > stock) || (stock > max)) {
+            throw new RecordParser.RowException("Inventory must be between Minimum and Maximum.");
+        }
+    }
+}
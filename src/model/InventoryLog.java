@@ -0,0 +1,607 @@
+package model;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.Stream;
+
+/** This class makes the inventory durable with a write-ahead log and periodic snapshots. Every change to the Part and
+ * Product stores is encoded on the thread that made it and queued for a single writer thread, which appends whatever
+ * has queued up as one batch and then forces the batch to disk with one fsync. This group commit means the JavaFX
+ * thread never waits on the disk, and many writers share the cost of each fsync.
+ * The log is split into segment files named after the first sequence number they hold. Once enough records have been
+ * written, the writer starts a new segment and a background thread writes a compacted snapshot holding one row per
+ * Part and Product. Snapshots use the memory-mapped format of the MappedSnapshot class, so the next start attaches
+ * the saved rows to the stores without building them. The snapshot is written while changes carry on, so it records
+ * the sequence number at which it started and recovery replays every record after that number on top of it. Because
+ * each record holds an entity's full state, the replay always ends with the latest state of each entity. Older
+ * segments and snapshots are deleted once the new snapshot is safely on disk, so a restart only replays the tail of
+ * the log.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class InventoryLog implements Closeable {
+
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".map";
+    // Snapshots were written as a stream of log records before the mapped format was introduced
+    private static final String LEGACY_SNAPSHOT_FILE = "snapshot.bin";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int SNAPSHOT_MAGIC = 0x494E5653;
+    private static final int SNAPSHOT_VERSION = 1;
+    private static final int MAX_BATCH = 8192;
+
+    private final Path directory;
+    private final long snapshotEvery;
+    private final EntityStore<Part> parts;
+    private final EntityStore<Product> products;
+    private final LinkedBlockingQueue<Pending> queue = new LinkedBlockingQueue<>();
+    private final AtomicBoolean snapshotRunning = new AtomicBoolean();
+    private final Pending closeMarker = new Pending(null);
+    // The records held back while a thread makes a batch, shared by both journals so a batch over both stores is one
+    // record
+    private final ThreadLocal<HeldRecords> held = ThreadLocal.withInitial(HeldRecords::new);
+    private final Thread writer;
+    private volatile Thread snapshotter;
+
+    // The fields below are only touched by the thread that opens the log and then by the writer thread
+    private FileChannel segment;
+    private long lastSequence;
+    private long sinceSnapshot;
+    private boolean hasHistory;
+    // The highest IDs found in the snapshot and log, including IDs that were deleted since
+    private int highestPartId;
+    private int highestProductId;
+    private volatile IOException failure;
+
+    private InventoryLog(Path directory, long snapshotEvery, EntityStore<Part> parts, EntityStore<Product> products) {
+        this.directory = directory;
+        this.snapshotEvery = snapshotEvery;
+        this.parts = parts;
+        this.products = products;
+        this.writer = new Thread(this::writeLoop, "inventory-log-writer");
+        this.writer.setDaemon(true);
+    }
+
+    /** This method recovers the Part and Product stores from the snapshot and log in a directory, then starts logging
+     * every further change made to the stores. The stores are expected to be empty when this method is called.
+     * @param directory the directory holding the snapshot and log segments, created if it does not exist
+     * @param snapshotEvery the number of records to write between snapshots
+     * @param parts the Part store to recover into and log changes from
+     * @param products the Product store to recover into and log changes from
+     * @return the open log
+     * @throws IOException if the directory or its files cannot be read, or a new segment cannot be created
+     * */
+    static InventoryLog open(Path directory, long snapshotEvery, EntityStore<Part> parts, EntityStore<Product> products)
+            throws IOException {
+        Files.createDirectories(directory);
+        InventoryLog log = new InventoryLog(directory, snapshotEvery, parts, products);
+        long replayed = log.recover();
+        log.segment = log.openSegment(log.lastSequence + 1);
+        parts.addListener(log.new Journal<>(LogRecords.DELETE_PART, LogRecords::putPart, Part::getId));
+        products.addListener(log.new Journal<>(LogRecords.DELETE_PRODUCT, LogRecords::putProduct, Product::getId));
+        log.sinceSnapshot = replayed;
+        log.writer.start();
+        return log;
+    }
+
+    /** This method rewrites everything saved in a directory as one mapped snapshot. The latest snapshot, whether
+     * mapped or in the older record format, is loaded and the log replayed on top of it, then the new snapshot is
+     * written and the files it replaces are deleted. The directory must not be in use by a running inventory.
+     * @param directory the directory holding the snapshot and log segments
+     * @return the last sequence number included in the new snapshot
+     * @throws IOException if the saved inventory cannot be read or the snapshot cannot be written
+     * */
+    static long compact(Path directory) throws IOException {
+        InventoryLog log = new InventoryLog(directory, Long.MAX_VALUE, new EntityStore<>(Part::getId, Part::getName),
+                new EntityStore<>(Product::getId, Product::getName));
+        log.recover();
+        log.writeSnapshot(log.lastSequence);
+        log.deleteSegmentsBefore(log.lastSequence + 1);
+        return log.lastSequence;
+    }
+
+    /** This method saves Parts and Products brought in from elsewhere as the first snapshot of a directory.
+     * @param directory the directory to save them in, created if it does not exist
+     * @param allParts the Parts to save
+     * @param allProducts the Products to save
+     * @throws IOException if the directory already holds a saved inventory or the snapshot cannot be written
+     * */
+    static void seed(Path directory, List<Part> allParts, List<Product> allProducts) throws IOException {
+        Files.createDirectories(directory);
+        if (!filesByNumber(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).isEmpty()
+                || !filesByNumber(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX).isEmpty()
+                || Files.exists(directory.resolve(LEGACY_SNAPSHOT_FILE))) {
+            throw new IOException(directory + " already holds a saved inventory");
+        }
+        MappedSnapshot.Writer writer = new MappedSnapshot.Writer();
+        for (Part part : allParts) {
+            writer.add(MappedSnapshot.Row.of(part));
+        }
+        for (Product product : allProducts) {
+            writer.add(MappedSnapshot.Row.of(product));
+        }
+        writeSnapshot(directory, 0, writer);
+    }
+
+    /** This method tells whether the directory held any snapshot or log records when the log was opened, even if
+     * replaying them left the stores empty.
+     * @return true if there was saved inventory to recover
+     * */
+    boolean hasHistory() {
+        return hasHistory;
+    }
+
+    /** This method returns the highest Part ID the snapshot and log held when the log was opened, counting Parts that
+     * were deleted, so IDs handed out later can be kept above every ID already used.
+     * @return the highest Part ID, or 0 if there were none
+     * */
+    int highestPartId() {
+        return highestPartId;
+    }
+
+    /** This method returns the highest Product ID the snapshot and log held when the log was opened, in the same way
+     * as highestPartId().
+     * @return the highest Product ID, or 0 if there were none
+     * */
+    int highestProductId() {
+        return highestProductId;
+    }
+
+    /** This method waits until every change queued before it was called has been forced to disk.
+     * @return a future completed with the last sequence number on disk once the queued changes are durable
+     * */
+    CompletableFuture<Long> sync() {
+        Pending marker = new Pending(null);
+        enqueue(marker);
+        return marker.done;
+    }
+
+    /** This method writes out every queued change, closes the current segment and stops the writer thread, then
+     * waits for any snapshot in progress to finish. Changes made to the stores afterwards are no longer logged.
+     * */
+    @Override
+    public void close() {
+        try {
+            if (writer.isAlive()) {
+                queue.add(closeMarker);
+                writer.join();
+            }
+            Thread running = snapshotter;
+            if (running != null) {
+                running.join();
+            }
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private CompletableFuture<Long> append(byte[] body) {
+        Pending pending = new Pending(body);
+        enqueue(pending);
+        return pending.done;
+    }
+
+    private void enqueue(Pending pending) {
+        IOException failed = failure;
+        if (failed != null) {
+            pending.done.completeExceptionally(failed);
+            return;
+        }
+        queue.add(pending);
+    }
+
+    private void writeLoop() {
+        List<Pending> batch = new ArrayList<>();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 16);
+        DataOutputStream out = new DataOutputStream(bytes);
+        boolean closing = false;
+        try {
+            // A long tail replayed at startup is compacted straight away rather than waiting for new changes
+            if (sinceSnapshot >= snapshotEvery) {
+                startSnapshot();
+            }
+        }
+        catch (IOException exception) {
+            System.out.println("Inventory snapshot could not be started: " + exception);
+        }
+        while (!closing) {
+            try {
+                batch.add(queue.take());
+                queue.drainTo(batch, MAX_BATCH - 1);
+                bytes.reset();
+                int written = 0;
+                for (Pending pending : batch) {
+                    if (pending == closeMarker) {
+                        closing = true;
+                    }
+                    else if (pending.body != null) {
+                        pending.sequence = ++lastSequence;
+                        LogRecords.writeFrame(out, pending.sequence, pending.body);
+                        written++;
+                    }
+                }
+                if (written > 0) {
+                    ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+                    while (buffer.hasRemaining()) {
+                        segment.write(buffer);
+                    }
+                    // One fsync covers every record in the batch
+                    segment.force(false);
+                }
+                for (Pending pending : batch) {
+                    pending.done.complete(pending.body != null ? pending.sequence : lastSequence);
+                }
+                sinceSnapshot += written;
+                if (sinceSnapshot >= snapshotEvery) {
+                    startSnapshot();
+                }
+            }
+            catch (InterruptedException exception) {
+                closing = true;
+            }
+            catch (IOException exception) {
+                System.out.println("Inventory log write failed, changes are no longer being saved: " + exception);
+                failure = exception;
+                closing = true;
+                batch.forEach(pending -> pending.done.completeExceptionally(exception));
+                queue.forEach(pending -> pending.done.completeExceptionally(exception));
+            }
+            batch.clear();
+        }
+        try {
+            segment.close();
+        }
+        catch (IOException exception) {
+            System.out.println("Inventory log could not be closed: " + exception);
+        }
+    }
+
+    // Runs on the writer thread, so no record can be written between closing the old segment and taking the sequence
+    private void startSnapshot() throws IOException {
+        if (!snapshotRunning.compareAndSet(false, true)) {
+            return;
+        }
+        segment.close();
+        long snapshotSequence = lastSequence;
+        segment = openSegment(snapshotSequence + 1);
+        sinceSnapshot = 0;
+
+        Thread thread = new Thread(() -> {
+            try {
+                writeSnapshot(snapshotSequence);
+                deleteSegmentsBefore(snapshotSequence + 1);
+            }
+            catch (IOException exception) {
+                System.out.println("Inventory snapshot failed, the log will be replayed in full: " + exception);
+            }
+            finally {
+                snapshotRunning.set(false);
+            }
+        }, "inventory-snapshot");
+        thread.setDaemon(true);
+        snapshotter = thread;
+        thread.start();
+    }
+
+    private void writeSnapshot(long snapshotSequence) throws IOException {
+        // The stores are read through views, as an export reads them, so rows attached from the last snapshot are
+        // copied across without being built, and everything else is encoded as it is visited rather than gathered
+        List<EntityStore<Part>.View<MappedSnapshot.Row>> partView = new ArrayList<>(1);
+        List<EntityStore<Product>.View<MappedSnapshot.Row>> productView = new ArrayList<>(1);
+        products.exclusively(() -> {
+            productView.add(products.openView(MappedSnapshot.Row::of, MappedSnapshot.Row::ofProduct));
+            partView.add(parts.openView(MappedSnapshot.Row::of, MappedSnapshot.Row::ofPart));
+        });
+        MappedSnapshot.Writer writer = new MappedSnapshot.Writer();
+        try (EntityStore<Part>.View<MappedSnapshot.Row> partsAsOfNow = partView.get(0);
+             EntityStore<Product>.View<MappedSnapshot.Row> productsAsOfNow = productView.get(0)) {
+            partsAsOfNow.forEach(writer::add);
+            productsAsOfNow.forEach(writer::add);
+        }
+        writeSnapshot(directory, snapshotSequence, writer);
+
+        List<Path> older = new ArrayList<>(filesByNumber(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX)
+                .headMap(snapshotSequence).values());
+        older.add(directory.resolve(LEGACY_SNAPSHOT_FILE));
+        for (Path file : older) {
+            try {
+                Files.deleteIfExists(file);
+            }
+            catch (IOException stillMapped) {
+                // Some systems refuse to delete a mapped file, so it is left for the next start to clear away
+            }
+        }
+    }
+
+    private static void writeSnapshot(Path directory, long snapshotSequence, MappedSnapshot.Writer writer)
+            throws IOException {
+        Path snapshot = directory.resolve(String.format("%s%019d%s", SNAPSHOT_PREFIX, snapshotSequence,
+                SNAPSHOT_SUFFIX));
+        Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        writer.write(temporary, snapshotSequence);
+        // The rename only happens once the snapshot is complete on disk, so a crash never leaves half a snapshot
+        Files.move(temporary, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private long recover() throws IOException {
+        Recovery recovery = new Recovery();
+        long snapshotSequence = 0;
+
+        Map.Entry<Long, Path> latest = filesByNumber(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).lastEntry();
+        Path legacy = directory.resolve(LEGACY_SNAPSHOT_FILE);
+        if (latest != null) {
+            hasHistory = true;
+            // Only the IDs and names are read here, and each Part and Product is built the first time it is needed
+            MappedSnapshot snapshot = MappedSnapshot.open(latest.getValue());
+            try {
+                LazyRows<Part> partRows = snapshot.parts();
+                LazyRows<Product> productRows = snapshot.products(parts::get);
+                parts.attach(partRows);
+                products.attach(productRows);
+                // Rows are sorted by ID, so the last row holds the highest
+                if (partRows.size() > 0) {
+                    highestPartId = partRows.idAt(partRows.size() - 1);
+                }
+                if (productRows.size() > 0) {
+                    highestProductId = productRows.idAt(productRows.size() - 1);
+                }
+            }
+            catch (UncheckedIOException damaged) {
+                throw damaged.getCause();
+            }
+            snapshotSequence = snapshot.sequence();
+        }
+        else if (Files.exists(legacy)) {
+            hasHistory = true;
+            try (DataInputStream in = openForReading(legacy)) {
+                if (in.readInt() != SNAPSHOT_MAGIC || in.readInt() != SNAPSHOT_VERSION) {
+                    throw new IOException(legacy + " is not an inventory snapshot");
+                }
+                snapshotSequence = in.readLong();
+                LogRecords.Frame frame;
+                while ((frame = LogRecords.readFrame(in)) != null) {
+                    LogRecords.decode(frame.body, recovery);
+                }
+            }
+        }
+        lastSequence = snapshotSequence;
+
+        long replayed = 0;
+        for (Path file : filesByNumber(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX).values()) {
+            if (Files.size(file) == 0) {
+                // Left behind by a run that made no changes
+                Files.delete(file);
+                continue;
+            }
+            try (DataInputStream in = openForReading(file)) {
+                LogRecords.Frame frame;
+                // A record that fails its checksum can only be the torn tail of a segment, so the replay stops there
+                while ((frame = LogRecords.readFrame(in)) != null) {
+                    hasHistory = true;
+                    if (frame.sequence > snapshotSequence) {
+                        LogRecords.decode(frame.body, recovery);
+                        lastSequence = Math.max(lastSequence, frame.sequence);
+                        replayed++;
+                    }
+                }
+            }
+        }
+        recovery.finish();
+        return replayed;
+    }
+
+    private DataInputStream openForReading(Path file) throws IOException {
+        InputStream in = Files.newInputStream(file);
+        return new DataInputStream(new BufferedInputStream(in, 1 << 16));
+    }
+
+    private FileChannel openSegment(long firstSequence) throws IOException {
+        // A segment with this name can only hold a torn record from a crash, since no complete record used its number
+        return FileChannel.open(directory.resolve(String.format("%s%019d%s", SEGMENT_PREFIX, firstSequence,
+                SEGMENT_SUFFIX)), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+    }
+
+    private static TreeMap<Long, Path> filesByNumber(Path directory, String prefix, String suffix) throws IOException {
+        TreeMap<Long, Path> numbered = new TreeMap<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.forEach(file -> {
+                String name = file.getFileName().toString();
+                if (name.startsWith(prefix) && name.endsWith(suffix)) {
+                    String number = name.substring(prefix.length(), name.length() - suffix.length());
+                    try {
+                        numbered.put(Long.parseLong(number), file);
+                    }
+                    catch (NumberFormatException exception) {
+                        // Not a file written by this class
+                    }
+                }
+            });
+        }
+        return numbered;
+    }
+
+    private void deleteSegmentsBefore(long firstKeptSequence) throws IOException {
+        for (Path file : filesByNumber(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX).headMap(firstKeptSequence).values()) {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /** This class is a change waiting for the writer thread, or a marker waiting for earlier changes to be synced. */
+    private static final class Pending {
+        final byte[] body;
+        final CompletableFuture<Long> done = new CompletableFuture<>();
+        long sequence;
+
+        Pending(byte[] body) {
+            this.body = body;
+        }
+    }
+
+    /** This class listens to a store and queues a record for every change. The record is encoded right away, while
+     * the store still holds the stripe lock, so it captures the entity exactly as it was stored. The records of a batch
+     * are queued together as one batch record when the batch finishes. Both journals hold a thread's records in the
+     * same place, and a batch on one store can sit inside a batch on the other, so a batch that changes both Parts and
+     * Products is logged as one record too. Everything held is queued as soon as any batch finishes, while that batch's
+     * locks are still held, because the outer batch may not hold the inner one's locks and the log must keep each
+     * ID's changes in order.
+     * */
+    private final class Journal<T> implements StoreListener<T> {
+        private final byte deleteType;
+        private final Function<T, byte[]> encoder;
+        private final ToIntFunction<T> idOf;
+
+        Journal(byte deleteType, Function<T, byte[]> encoder,
+                ToIntFunction<T> idOf) {
+            this.deleteType = deleteType;
+            this.encoder = encoder;
+            this.idOf = idOf;
+        }
+
+        @Override
+        public void added(T item) {
+            record(encoder.apply(item));
+        }
+
+        @Override
+        public void replaced(T oldItem, T newItem) {
+            record(encoder.apply(newItem));
+        }
+
+        @Override
+        public void patched(T item) {
+            // A patch is saved as the whole row, so recovery needs nothing new to replay it
+            record(encoder.apply(item));
+        }
+
+        @Override
+        public void removed(T item) {
+            record(LogRecords.delete(deleteType, idOf.applyAsInt(item)));
+        }
+
+        @Override
+        public void batchStarted() {
+            held.get().depth++;
+        }
+
+        @Override
+        public void batchFinished() {
+            HeldRecords thread = held.get();
+            thread.depth--;
+            List<byte[]> bodies = thread.bodies;
+            thread.bodies = null;
+            if (bodies == null) {
+                return;
+            }
+            // Queued before the batch's locks are released, so the log still holds every ID's changes in order
+            if (bodies.size() == 1) {
+                append(bodies.get(0));
+            }
+            else {
+                LogRecords.batch(bodies).forEach(InventoryLog.this::append);
+            }
+        }
+
+        private void record(byte[] body) {
+            HeldRecords thread = held.get();
+            if (thread.depth > 0) {
+                if (thread.bodies == null) {
+                    thread.bodies = new ArrayList<>();
+                }
+                thread.bodies.add(body);
+            }
+            else {
+                append(body);
+            }
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<T> rows) {
+            // Attached rows come from a snapshot, so they are already saved
+        }
+    }
+
+    /** This class is what one thread holds back while it makes a batch. */
+    private static final class HeldRecords {
+        int depth;
+        List<byte[]> bodies;
+    }
+
+    /** This class applies recovered records to the stores. Parts go straight into the Part store, while Products are
+     * held back until every record has been read so that their associated parts resolve to the latest Part with
+     * each ID.
+     * */
+    private final class Recovery implements LogRecords.Visitor {
+        private final Map<Integer, Product> pendingProducts = new LinkedHashMap<>();
+        private final Map<Integer, int[]> pendingPartIds = new LinkedHashMap<>();
+
+        @Override
+        public void part(Part part) {
+            highestPartId = Math.max(highestPartId, part.getId());
+            parts.put(part);
+        }
+
+        @Override
+        public void product(Product product, int[] partIds) {
+            highestProductId = Math.max(highestProductId, product.getId());
+            pendingProducts.put(product.getId(), product);
+            pendingPartIds.put(product.getId(), partIds);
+        }
+
+        @Override
+        public void partDeleted(int id) {
+            highestPartId = Math.max(highestPartId, id);
+            Part part = parts.get(id);
+            if (part != null) {
+                parts.remove(part);
+            }
+        }
+
+        @Override
+        public void productDeleted(int id) {
+            highestProductId = Math.max(highestProductId, id);
+            pendingProducts.remove(id);
+            pendingPartIds.remove(id);
+            Product product = products.get(id);
+            if (product != null) {
+                products.remove(product);
+            }
+        }
+
+        void finish() {
+            for (Product product : pendingProducts.values()) {
+                for (int partId : pendingPartIds.get(product.getId())) {
+                    Part part = parts.get(partId);
+                    if (part != null) {
+                        product.addAssociatedPart(part);
+                    }
+                }
+                products.put(product);
+            }
+        }
+    }
+}
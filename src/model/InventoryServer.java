@@ -0,0 +1,474 @@
+package model;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** This class serves the Inventory over HTTP as JSON, so that programs such as warehouse scanners can read and change
+ * it without the JavaFX screens. It runs on the HTTP server built into the JDK, which watches every connection from one
+ * thread and hands each request to a fixed pool of worker threads, so thousands of clients can stay connected while
+ * only as many requests as there are workers run at once. Requests go through the same Inventory methods and rules as
+ * the screens, so changes made over HTTP show up on the screens, are logged, and follow the same checks.
+ * Parts and Products are written as the JSON objects InventoryExporter writes and InventoryImporter reads. A new Part
+ * or Product without an "id" is given the next free ID. Every change answers with the item as it now is.
+ * GET /parts/{id} and GET /products/{id} return an item, with its version in the ETag header.
+ * GET /parts?name=text and GET /products?name=text search by name, or by ID for a number, returning at most limit items
+ * (100 unless a limit parameter is given).
+ * POST /parts and POST /products add an item. PUT /parts/{id} and PUT /products/{id} replace one, only if it is still
+ * at the version given in an If-Match header when there is one. DELETE /parts/{id} and DELETE /products/{id} delete
+ * one, unless a Part is used by a Product or a Product has associated parts.
+ * POST /parts/{id}/stock?delta=n adds n to a Part's stock, or takes it out for a negative n, refusing to go below the
+ * minimum or above the maximum. POST /products/{id}/build?units=n builds units of a Product from its associated parts.
+ * Usage: InventoryServer [-port 8080] [-threads 64]
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class InventoryServer {
+
+    private static final int DEFAULT_LIMIT = 100;
+    private static final int MAX_BODY_BYTES = 1 << 20;
+    // Connections waiting to be accepted. Load tests open thousands at once, and the default is only 50
+    private static final int BACKLOG = 4096;
+    private static final String NO_DELAY = "sun.net.httpserver.nodelay";
+
+    private final HttpServer server;
+    private final ExecutorService workers;
+
+    private InventoryServer(HttpServer server, ExecutorService workers) {
+        this.server = server;
+        this.workers = workers;
+    }
+
+    /** This is the main method that runs the server until the process is stopped.
+     * @param args the options described in the class comment
+     * */
+    public static void main(String[] args) {
+        int port = 8080;
+        int threads = 64;
+        try {
+            for (int i = 0; i < args.length; i += 2) {
+                if (i + 1 == args.length) {
+                    throw new IllegalArgumentException("Missing a value for " + args[i]);
+                }
+                switch (args[i]) {
+                    case "-port":
+                        port = Integer.parseInt(args[i + 1]);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(args[i + 1]);
+                        break;
+                    default:
+                        throw new IllegalArgumentException("Unknown option " + args[i]);
+                }
+            }
+            InventoryServer server = start(port, threads);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop, "inventory-http-stop"));
+            System.out.println("Serving the inventory on port " + server.getPort() + " with " + threads + " threads");
+        }
+        catch (IllegalArgumentException exception) {
+            System.out.println(exception.getMessage());
+            System.exit(2);
+        }
+        catch (IOException exception) {
+            System.out.println("The server could not be started: " + exception);
+            System.exit(1);
+        }
+    }
+
+    /** This method starts serving the Inventory.
+     * @param port the port to listen on, or 0 for any free port
+     * @param threads the number of requests that can be handled at once
+     * @return the running server
+     * @throws IOException if the port cannot be listened on
+     * */
+    public static InventoryServer start(int port, int threads) throws IOException {
+        if (threads < 1) {
+            throw new IllegalArgumentException("There must be at least one thread");
+        }
+        // The JDK server writes an answer's headers and body separately, and without TCP_NODELAY the body waits for
+        // the client's delayed acknowledgement of the headers, adding 40 ms to every request on a kept-alive connection
+        if (System.getProperty(NO_DELAY) == null) {
+            System.setProperty(NO_DELAY, "true");
+        }
+        HttpServer server = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        AtomicInteger threadCount = new AtomicInteger();
+        // The server's dispatcher thread keeps the process running, so the workers need not
+        ExecutorService workers = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "inventory-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.setExecutor(workers);
+        server.createContext("/parts", exchange -> handle(exchange, true));
+        server.createContext("/products", exchange -> handle(exchange, false));
+        server.start();
+        return new InventoryServer(server, workers);
+    }
+
+    /** This method returns the port the server listens on.
+     * @return the port
+     * */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /** This method stops the server, giving requests already being handled a second to finish. */
+    public void stop() {
+        server.stop(1);
+        workers.shutdown();
+        try {
+            workers.awaitTermination(1, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void handle(HttpExchange exchange, boolean ofParts) throws IOException {
+        try {
+            Response response = route(exchange, ofParts);
+            send(exchange, response);
+        }
+        catch (BadRequest exception) {
+            send(exchange, Response.error(400, exception.getMessage()));
+        }
+        catch (RuntimeException exception) {
+            // The details stay in the server's output rather than being handed to whoever made the request
+            System.out.println("A request for " + exchange.getRequestMethod() + " " + exchange.getRequestURI()
+                    + " failed: " + exception);
+            send(exchange, Response.error(500, "The request failed"));
+        }
+        finally {
+            exchange.close();
+        }
+    }
+
+    // Works out which request was made from the method and the path, which is /parts or /products and then at most an
+    // ID and an action
+    private static Response route(HttpExchange exchange, boolean ofParts) throws IOException {
+        String method = exchange.getRequestMethod();
+        String[] path = exchange.getRequestURI().getRawPath().split("/");
+        Map<String, String> query = query(exchange.getRequestURI().getRawQuery());
+        if (path.length == 2) {
+            if (method.equals("GET")) {
+                return search(ofParts, query);
+            }
+            if (method.equals("POST")) {
+                return add(ofParts, body(exchange));
+            }
+            return Response.error(405, "Use GET or POST");
+        }
+        int id;
+        try {
+            id = Integer.parseInt(path[2]);
+        }
+        catch (NumberFormatException exception) {
+            return Response.error(404, "\"" + path[2] + "\" is not an ID");
+        }
+        if (path.length == 3) {
+            switch (method) {
+                case "GET":
+                    return get(ofParts, id);
+                case "PUT":
+                    return replace(ofParts, id, body(exchange), exchange.getRequestHeaders().getFirst("If-Match"));
+                case "DELETE":
+                    return delete(ofParts, id);
+                default:
+                    return Response.error(405, "Use GET, PUT or DELETE");
+            }
+        }
+        if (path.length == 4 && method.equals("POST")) {
+            if (ofParts && path[3].equals("stock")) {
+                return adjustStock(id, number(query, "delta"));
+            }
+            if (!ofParts && path[3].equals("build")) {
+                return build(id, number(query, "units"));
+            }
+        }
+        return Response.error(404, "No such request");
+    }
+
+    private static Response get(boolean ofParts, int id) {
+        if (ofParts) {
+            Versioned<Part> found = Inventory.lookupVersionedPart(id);
+            return found == null ? notFound(true, id)
+                    : Response.ok(InventoryExporter.toJson(found.getItem()), found.getVersion());
+        }
+        Versioned<Product> found = Inventory.lookupVersionedProduct(id);
+        return found == null ? notFound(false, id)
+                : Response.ok(InventoryExporter.toJson(found.getItem()), found.getVersion());
+    }
+
+    private static Response search(boolean ofParts, Map<String, String> query) {
+        String text = query.getOrDefault("name", "");
+        int limit = query.containsKey("limit") ? number(query, "limit") : DEFAULT_LIMIT;
+        StringBuilder json = new StringBuilder("[");
+        int count = 0;
+        // A search made of digits is also an ID lookup, as in the search boxes on the main screen
+        if (text.matches("\\d{1,9}") && limit > 0) {
+            Object byId = ofParts ? Inventory.lookupPart(Integer.parseInt(text))
+                    : Inventory.lookupProduct(Integer.parseInt(text));
+            if (byId != null) {
+                json.append(ofParts ? InventoryExporter.toJson((Part) byId) : InventoryExporter.toJson((Product) byId));
+                count++;
+            }
+        }
+        List<?> matches = ofParts ? Inventory.lookupPart(text) : Inventory.lookupProduct(text);
+        for (int i = 0; i < matches.size() && count < limit; i++) {
+            Object match = matches.get(i);
+            // A match deleted since the search was made resolves to null
+            if (match != null) {
+                json.append(count++ == 0 ? "" : ",");
+                json.append(ofParts ? InventoryExporter.toJson((Part) match)
+                        : InventoryExporter.toJson((Product) match));
+            }
+        }
+        return Response.ok(json.append(']').toString(), -1);
+    }
+
+    private static Response add(boolean ofParts, byte[] body) {
+        RecordParser parser = RecordParser.create(true, !ofParts);
+        try {
+            readObject(parser, body);
+            boolean allocate = parser.fields.isBlank(RecordParser.ID);
+            int newId = !allocate ? 0 : ofParts ? Inventory.getNextUniquePartId()
+                    : Inventory.getNextUniqueProductId();
+            if (ofParts) {
+                // The importer has already turned down an explicit ID from outside the Part range
+                Part part = InventoryImporter.part(parser.fields, newId);
+                if (!allocate) {
+                    Inventory.reserveIdsThrough(IdAllocator.Namespace.PART, part.getId());
+                }
+                // Added only if the ID is still free when the Part is stored, so two requests for the same ID cannot
+                // both succeed
+                if (Inventory.applyBatch(Collections.singletonList(Mutation.addPart(part))) == 0) {
+                    return Response.error(409, "Part " + part.getId() + " already exists");
+                }
+                return Response.created(InventoryExporter.toJson(part));
+            }
+            Product product = InventoryImporter.product(parser.fields, newId);
+            if (!allocate) {
+                Inventory.reserveIdsThrough(IdAllocator.Namespace.PRODUCT, product.getId());
+            }
+            if (Inventory.applyBatch(Collections.singletonList(Mutation.addProduct(product))) == 0) {
+                return Response.error(409, "Product " + product.getId() + " already exists");
+            }
+            return Response.created(InventoryExporter.toJson(product));
+        }
+        catch (RecordParser.RowException exception) {
+            return Response.error(400, exception.getMessage());
+        }
+    }
+
+    private static Response replace(boolean ofParts, int id, byte[] body, String ifMatch) {
+        RecordParser parser = RecordParser.create(true, !ofParts);
+        try {
+            readObject(parser, body);
+            UpdateResult result;
+            if (ofParts) {
+                Part part = InventoryImporter.part(parser.fields, id);
+                Versioned<Part> current = Inventory.lookupVersionedPart(id);
+                if (part.getId() != id) {
+                    return Response.error(400, "The ID in the body does not match the path");
+                }
+                if (current == null) {
+                    return notFound(true, id);
+                }
+                result = Inventory.updatePart(part, ifMatch == null ? current.getVersion() : version(ifMatch));
+            }
+            else {
+                Product product = InventoryImporter.product(parser.fields, id);
+                Versioned<Product> current = Inventory.lookupVersionedProduct(id);
+                if (product.getId() != id) {
+                    return Response.error(400, "The ID in the body does not match the path");
+                }
+                if (current == null) {
+                    return notFound(false, id);
+                }
+                result = Inventory.updateProduct(product, ifMatch == null ? current.getVersion() : version(ifMatch));
+            }
+            if (result == UpdateResult.CONFLICT) {
+                return Response.error(412, "The item has changed since the version given in If-Match");
+            }
+            return result == UpdateResult.NOT_FOUND ? notFound(ofParts, id) : get(ofParts, id);
+        }
+        catch (RecordParser.RowException exception) {
+            return Response.error(400, exception.getMessage());
+        }
+    }
+
+    private static Response delete(boolean ofParts, int id) {
+        // The check that nothing depends on the item and the deletion are made as one, so a Product saved meanwhile
+        // cannot be left listing a deleted Part
+        if (ofParts) {
+            if (Inventory.applyBatch(Collections.singletonList(Mutation.deleteUnusedPart(id))) == 1) {
+                return Response.NO_CONTENT;
+            }
+            return Inventory.lookupPart(id) == null ? notFound(true, id)
+                    : Response.error(409, "Part " + id + " is an associated part of a product");
+        }
+        if (Inventory.applyBatch(Collections.singletonList(Mutation.deleteEmptyProduct(id))) == 1) {
+            return Response.NO_CONTENT;
+        }
+        return Inventory.lookupProduct(id) == null ? notFound(false, id)
+                : Response.error(409, "Product " + id + " has associated parts and cannot be deleted");
+    }
+
+    private static Response adjustStock(int id, int delta) {
+        if (Inventory.adjustStock(id, delta)) {
+            return get(true, id);
+        }
+        return Inventory.lookupPart(id) == null ? notFound(true, id)
+                : Response.error(409, "Inventory must stay between Minimum and Maximum.");
+    }
+
+    private static Response build(int id, int units) {
+        if (Inventory.lookupProduct(id) == null) {
+            return notFound(false, id);
+        }
+        if (units <= 0) {
+            return Response.error(400, "units must be positive");
+        }
+        return Inventory.buildProduct(id, units) ? get(false, id)
+                : Response.error(409, "Product " + id + " cannot be built " + units + " times from the parts in stock");
+    }
+
+    private static Response notFound(boolean ofParts, int id) {
+        return Response.error(404, (ofParts ? "Part " : "Product ") + id + " does not exist");
+    }
+
+    private static void readObject(RecordParser parser, byte[] body) throws RecordParser.RowException {
+        parser.startChunk(1);
+        if (parser.next(body, 0, body.length) < 0) {
+            throw new RecordParser.RowException("The body holds no JSON object");
+        }
+    }
+
+    private static int version(String ifMatch) throws RecordParser.RowException {
+        try {
+            return Integer.parseInt(ifMatch.replace("\"", "").trim());
+        }
+        catch (NumberFormatException exception) {
+            throw new RecordParser.RowException("If-Match must be a version returned in an ETag");
+        }
+    }
+
+    private static int number(Map<String, String> query, String name) {
+        try {
+            return Integer.parseInt(query.getOrDefault(name, ""));
+        }
+        catch (NumberFormatException exception) {
+            throw new BadRequest(name + " must be a whole number");
+        }
+    }
+
+    private static Map<String, String> query(String rawQuery) {
+        Map<String, String> parameters = new HashMap<>();
+        if (rawQuery == null) {
+            return parameters;
+        }
+        for (String pair : rawQuery.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            parameters.put(decode(name), decode(value));
+        }
+        return parameters;
+    }
+
+    private static String decode(String text) {
+        try {
+            return URLDecoder.decode(text, "UTF-8");
+        }
+        catch (UnsupportedEncodingException | IllegalArgumentException exception) {
+            throw new BadRequest("The query is not properly encoded");
+        }
+    }
+
+    private static byte[] body(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                body.write(buffer, 0, read);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new BadRequest("The body is larger than " + MAX_BODY_BYTES + " bytes");
+                }
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, Response response) throws IOException {
+        if (response.version >= 0) {
+            exchange.getResponseHeaders().set("ETag", "\"" + response.version + "\"");
+        }
+        if (response.json == null) {
+            exchange.sendResponseHeaders(response.status, -1);
+            return;
+        }
+        byte[] bytes = response.json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(response.status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /** This class is a request that cannot be carried out because of how it was made, such as a parameter that is not
+     * a number. It is thrown from deep in the handling of a request and turned into a 400 response.
+     * */
+    private static final class BadRequest extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BadRequest(String message) {
+            super(message, null, false, false);
+        }
+    }
+
+    /** This class is the status and JSON body to answer a request with. */
+    private static final class Response {
+        static final Response NO_CONTENT = new Response(204, null, -1);
+
+        final int status;
+        final String json;
+        final int version;
+
+        private Response(int status, String json, int version) {
+            this.status = status;
+            this.json = json;
+            this.version = version;
+        }
+
+        static Response ok(String json, int version) {
+            return new Response(200, json, version);
+        }
+
+        static Response created(String json) {
+            return new Response(201, json, -1);
+        }
+
+        static Response error(int status, String message) {
+            StringBuilder json = new StringBuilder("{\"error\":");
+            InventoryExporter.appendJsonText(json, message);
+            return new Response(status, json.append('}').toString(), -1);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package model;
+
+/** This class is the running totals of the whole inventory, as returned by Inventory.getStatistics(). It is a copy
+ * taken at one moment and does not change afterwards. The totals are read one after another while other threads may
+ * be changing the inventory, so a change made during the read can be counted in some totals and not yet in others.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class InventoryStatistics {
+
+    private final long inHousePartCount;
+    private final long outsourcedPartCount;
+    private final long partStock;
+    private final long partValueCents;
+    private final long productCount;
+    private final long productStock;
+    private final long productValueCents;
+
+    InventoryStatistics(long inHousePartCount, long outsourcedPartCount, long partStock, long partValueCents,
+                        long productCount, long productStock, long productValueCents) {
+        this.inHousePartCount = inHousePartCount;
+        this.outsourcedPartCount = outsourcedPartCount;
+        this.partStock = partStock;
+        this.partValueCents = partValueCents;
+        this.productCount = productCount;
+        this.productStock = productStock;
+        this.productValueCents = productValueCents;
+    }
+
+    /** Gets the part count field.
+     * @return the number of Parts as a long
+     */
+    public long getPartCount() { return inHousePartCount + outsourcedPartCount; }
+
+    /** Gets the in-house part count field.
+     * @return the number of InHouse Parts as a long
+     */
+    public long getInHousePartCount() { return inHousePartCount; }
+
+    /** Gets the outsourced part count field.
+     * @return the number of Outsourced Parts as a long
+     */
+    public long getOutsourcedPartCount() { return outsourcedPartCount; }
+
+    /** Gets the part stock field.
+     * @return the stock of every Part added together as a long
+     */
+    public long getPartStock() { return partStock; }
+
+    /** Gets the part value field.
+     * @return the price times the stock of every Part added together, as a double
+     */
+    public double getPartValue() { return partValueCents / 100.0; }
+
+    /** Gets the product count field.
+     * @return the number of Products as a long
+     */
+    public long getProductCount() { return productCount; }
+
+    /** Gets the product stock field.
+     * @return the stock of every Product added together as a long
+     */
+    public long getProductStock() { return productStock; }
+
+    /** Gets the product value field.
+     * @return the price times the stock of every Product added together, as a double
+     */
+    public double getProductValue() { return productValueCents / 100.0; }
+}
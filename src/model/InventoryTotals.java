@@ -0,0 +1,245 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/** This class keeps running totals of the inventory, such as its total value and the number of InHouse and Outsourced
+ * Parts, so they can be read at any time without looking at a single Part or Product. It follows the Part and Product
+ * stores as a listener, and every change takes out what the old item added to the totals and adds what the new one
+ * does, which costs the same however big the inventory is. A patch is taken out before it is made, through
+ * StoreListener.patching(), since afterwards only the patched item is known.
+ * Changes reach the totals under the locks of different stripes at once, so the totals are LongAdders, which spread
+ * the additions of different threads over separate cells rather than making them all compete for one value. Values
+ * are kept in whole cents rather than as doubles, so taking out exactly what was added always leaves the total where
+ * it was, however many changes are made. Attached snapshot rows are added up from the values saved in the rows,
+ * without building their Parts or Products.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class InventoryTotals {
+
+    private final LongAdder inHouseParts = new LongAdder();
+    private final LongAdder outsourcedParts = new LongAdder();
+    private final LongAdder partStock = new LongAdder();
+    private final LongAdder partValueCents = new LongAdder();
+    private final LongAdder products = new LongAdder();
+    private final LongAdder productStock = new LongAdder();
+    private final LongAdder productValueCents = new LongAdder();
+    private final ConcurrentHashMap<String, Supplier> suppliers = new ConcurrentHashMap<>();
+
+    /** This method returns the listener that follows the Part store.
+     * @return the Part listener
+     * */
+    StoreListener<Part> partListener() {
+        return new PartChanges();
+    }
+
+    /** This method returns the listener that follows the Product store.
+     * @return the Product listener
+     * */
+    StoreListener<Product> productListener() {
+        return new ProductChanges();
+    }
+
+    /** This method reads the totals.
+     * @return a copy of the totals
+     * */
+    InventoryStatistics statistics() {
+        return new InventoryStatistics(inHouseParts.sum(), outsourcedParts.sum(), partStock.sum(),
+                partValueCents.sum(), products.sum(), productStock.sum(), productValueCents.sum());
+    }
+
+    /** This method reads the totals of one company's Parts.
+     * @param companyName the company name
+     * @return a copy of the company's totals, or null if no Part has ever come from the company
+     * */
+    SupplierTotals supplier(String companyName) {
+        Supplier supplier = suppliers.get(companyName);
+        return supplier == null ? null : supplier.totals(companyName);
+    }
+
+    /** This method reads the totals of every company that Parts currently come from.
+     * @return a copy of each company's totals, in order of company name
+     * */
+    List<SupplierTotals> allSuppliers() {
+        List<SupplierTotals> totals = new ArrayList<>();
+        suppliers.forEach((companyName, supplier) -> {
+            SupplierTotals copy = supplier.totals(companyName);
+            if (copy.getPartCount() > 0) {
+                totals.add(copy);
+            }
+        });
+        totals.sort(Comparator.comparing(SupplierTotals::getCompanyName));
+        return totals;
+    }
+
+    private void count(Part part, int sign) {
+        long value = sign * valueCents(part.getPrice(), part.getStock());
+        partStock.add(sign * part.getStock());
+        partValueCents.add(value);
+        if (part instanceof Outsourced) {
+            outsourcedParts.add(sign);
+            String companyName = Objects.toString(((Outsourced) part).getCompanyName(), "");
+            Supplier supplier = suppliers.computeIfAbsent(companyName, name -> new Supplier());
+            supplier.parts.add(sign);
+            supplier.stock.add(sign * part.getStock());
+            supplier.valueCents.add(value);
+        }
+        else {
+            inHouseParts.add(sign);
+        }
+    }
+
+    private void count(Product product, int sign) {
+        products.add(sign);
+        productStock.add(sign * product.getStock());
+        productValueCents.add(sign * valueCents(product.getPrice(), product.getStock()));
+    }
+
+    private static long valueCents(double price, int stock) {
+        return Math.round(price * 100) * stock;
+    }
+
+    /** This class is the running totals of one company's Parts. */
+    private static final class Supplier {
+        final LongAdder parts = new LongAdder();
+        final LongAdder stock = new LongAdder();
+        final LongAdder valueCents = new LongAdder();
+
+        SupplierTotals totals(String companyName) {
+            return new SupplierTotals(companyName, parts.sum(), stock.sum(), valueCents.sum());
+        }
+    }
+
+    /** This class adds each Part to the totals and takes it out again when it changes or is removed. */
+    private final class PartChanges implements StoreListener<Part> {
+
+        @Override
+        public void added(Part item) {
+            count(item, 1);
+        }
+
+        @Override
+        public void replaced(Part oldItem, Part newItem) {
+            count(oldItem, -1);
+            count(newItem, 1);
+        }
+
+        @Override
+        public void patching(Part item) {
+            count(item, -1);
+        }
+
+        @Override
+        public void patched(Part item) {
+            count(item, 1);
+        }
+
+        @Override
+        public void removed(Part item) {
+            count(item, -1);
+        }
+
+        @Override
+        public void batchStarted() {
+            // Each change in a batch is counted as it is made
+        }
+
+        @Override
+        public void batchFinished() {
+            // Nothing was held back
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Part> rows) {
+            long inHouse = 0;
+            long stock = 0;
+            long value = 0;
+            Map<String, long[]> companies = new HashMap<>();
+            for (int row = 0; row < ids.length; row++) {
+                long rowValue = valueCents(rows.priceAt(row), rows.stockAt(row));
+                stock += rows.stockAt(row);
+                value += rowValue;
+                String companyName = rows.companyNameAt(row);
+                if (companyName == null) {
+                    inHouse++;
+                }
+                else {
+                    long[] company = companies.computeIfAbsent(companyName, name -> new long[3]);
+                    company[0]++;
+                    company[1] += rows.stockAt(row);
+                    company[2] += rowValue;
+                }
+            }
+            inHouseParts.add(inHouse);
+            outsourcedParts.add(ids.length - inHouse);
+            partStock.add(stock);
+            partValueCents.add(value);
+            companies.forEach((companyName, company) -> {
+                Supplier supplier = suppliers.computeIfAbsent(companyName, name -> new Supplier());
+                supplier.parts.add(company[0]);
+                supplier.stock.add(company[1]);
+                supplier.valueCents.add(company[2]);
+            });
+        }
+    }
+
+    /** This class adds each Product to the totals and takes it out again when it changes or is removed. */
+    private final class ProductChanges implements StoreListener<Product> {
+
+        @Override
+        public void added(Product item) {
+            count(item, 1);
+        }
+
+        @Override
+        public void replaced(Product oldItem, Product newItem) {
+            count(oldItem, -1);
+            count(newItem, 1);
+        }
+
+        @Override
+        public void patching(Product item) {
+            count(item, -1);
+        }
+
+        @Override
+        public void patched(Product item) {
+            count(item, 1);
+        }
+
+        @Override
+        public void removed(Product item) {
+            count(item, -1);
+        }
+
+        @Override
+        public void batchStarted() {
+            // Each change in a batch is counted as it is made
+        }
+
+        @Override
+        public void batchFinished() {
+            // Nothing was held back
+        }
+
+        @Override
+        public void attached(int[] ids, LazyRows<Product> rows) {
+            long stock = 0;
+            long value = 0;
+            for (int row = 0; row < ids.length; row++) {
+                stock += rows.stockAt(row);
+                value += valueCents(rows.priceAt(row), rows.stockAt(row));
+            }
+            products.add(ids.length);
+            productStock.add(stock);
+            productValueCents.add(value);
+        }
+    }
+}
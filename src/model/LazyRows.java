@@ -0,0 +1,89 @@
+package model;
+
+/** This interface is a table of Parts or Products that have been saved but not yet built as objects, such as the rows
+ * of a memory-mapped snapshot. An EntityStore that has rows attached only builds the object for a row the first time
+ * that row is asked for. Rows are kept in ascending ID order.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+interface LazyRows<T> {
+
+    /** This method returns the number of rows.
+     * @return the row count
+     * */
+    int size();
+
+    /** This method returns the ID stored in a row without building the row's object.
+     * @param row the row number
+     * @return the ID in that row
+     * */
+    int idAt(int row);
+
+    /** This method finds the row holding an ID.
+     * @param id the ID to search for
+     * @return the row number or a negative number if no row holds the ID
+     * */
+    int rowOf(int id);
+
+    /** This method returns the name stored in a row without building the row's object.
+     * @param row the row number
+     * @return the name in that row
+     * */
+    String nameAt(int row);
+
+    /** This method returns the price stored in a row without building the row's object.
+     * @param row the row number
+     * @return the price in that row
+     * */
+    double priceAt(int row);
+
+    /** This method returns the stock stored in a row without building the row's object.
+     * @param row the row number
+     * @return the stock in that row
+     * */
+    int stockAt(int row);
+
+    /** This method returns the minimum stock stored in a row without building the row's object.
+     * @param row the row number
+     * @return the minimum in that row
+     * */
+    int minAt(int row);
+
+    /** This method returns the maximum stock stored in a row without building the row's object.
+     * @param row the row number
+     * @return the maximum in that row
+     * */
+    int maxAt(int row);
+
+    /** This method builds a new Part or Product from a row. Each call returns a new object.
+     * @param row the row number
+     * @return the Part or Product held in that row
+     * */
+    T materialize(int row);
+
+    /** This method returns the company name stored in an Outsourced Part's row without building the row's object.
+     * @param row the row number
+     * @return the company name, or null for an InHouse Part or a Product
+     * */
+    default String companyNameAt(int row) {
+        return null;
+    }
+
+    /** This method returns the machine ID stored in an InHouse Part's row without building the row's object.
+     * @param row the row number
+     * @return the machine ID, or 0 for an Outsourced Part or a Product
+     * */
+    default int machineIdAt(int row) {
+        return 0;
+    }
+
+    /** This method returns the IDs of the Parts associated with a Product row without building the row's object. Part
+     * rows have no associated parts.
+     * @param row the row number
+     * @return the associated part IDs, in the order they were saved
+     * */
+    default int[] partIdsAt(int row) {
+        return new int[0];
+    }
+}
@@ -0,0 +1,274 @@
+package model;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/** This class holds the binary encoding shared by the write-ahead log and its snapshots. Every change to the inventory
+ * is written as a self-contained record holding the full new state of one Part or Product, or the ID of one that was
+ * deleted, so replaying records in order always rebuilds the same inventory. On disk each record is framed as its
+ * body length, a CRC32 checksum, a sequence number and the body, which lets a reader stop cleanly at a record that
+ * was only partly written when the program stopped. The records of a batch of changes are wrapped in one batch record,
+ * so a batch that was only partly written is dropped as a whole rather than replayed in part.
+ * This class is not meant to be instantiated.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class LogRecords {
+
+    /** Record type for an InHouse part. */
+    static final byte PUT_IN_HOUSE = 1;
+    /** Record type for an Outsourced part. */
+    static final byte PUT_OUTSOURCED = 2;
+    /** Record type for a deleted part. */
+    static final byte DELETE_PART = 3;
+    /** Record type for a product along with the IDs of its associated parts. */
+    static final byte PUT_PRODUCT = 4;
+    /** Record type for a deleted product. */
+    static final byte DELETE_PRODUCT = 5;
+    /** Record type for a batch of other records that are replayed together or not at all. */
+    static final byte BATCH = 6;
+
+    // A garbled length would otherwise have the reader try to allocate an enormous body
+    private static final int MAX_BODY_BYTES = 64 << 20;
+
+    private LogRecords() { }
+
+    /** This method encodes the current state of a Part.
+     * @param part the part to encode
+     * @return the record body
+     * */
+    static byte[] putPart(Part part) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(part instanceof InHouse ? PUT_IN_HOUSE : PUT_OUTSOURCED);
+            out.writeInt(part.getId());
+            writeString(out, part.getName());
+            out.writeDouble(part.getPrice());
+            out.writeInt(part.getStock());
+            out.writeInt(part.getMin());
+            out.writeInt(part.getMax());
+            if (part instanceof InHouse) {
+                out.writeInt(((InHouse) part).getMachineId());
+            }
+            else {
+                writeString(out, ((Outsourced) part).getCompanyName());
+            }
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** This method encodes the current state of a Product, recording its associated parts by ID.
+     * @param product the product to encode
+     * @return the record body
+     * */
+    static byte[] putProduct(Product product) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(PUT_PRODUCT);
+            out.writeInt(product.getId());
+            writeString(out, product.getName());
+            out.writeDouble(product.getPrice());
+            out.writeInt(product.getStock());
+            out.writeInt(product.getMin());
+            out.writeInt(product.getMax());
+            Part[] associated = product.getAllAssociatedParts().toArray(new Part[0]);
+            out.writeInt(associated.length);
+            for (Part part : associated) {
+                out.writeInt(part.getId());
+            }
+        }
+        catch (IOException exception) {
+            throw new UncheckedIOException(exception);
+        }
+        return bytes.toByteArray();
+    }
+
+    /** This method encodes the deletion of a Part or Product.
+     * @param type DELETE_PART or DELETE_PRODUCT
+     * @param id the ID that was deleted
+     * @return the record body
+     * */
+    static byte[] delete(byte type, int id) {
+        return ByteBuffer.allocate(1 + Integer.BYTES).put(type).putInt(id).array();
+    }
+
+    /** This method wraps the records of a batch of changes in batch records. A batch too big for one record is split
+     * across as few as it fits in, which only loses its all-or-nothing replay if the program stops while writing it.
+     * @param bodies the record bodies in the order they were made
+     * @return the batch record bodies
+     * */
+    static List<byte[]> batch(List<byte[]> bodies) {
+        List<byte[]> batches = new ArrayList<>();
+        int from = 0;
+        while (from < bodies.size()) {
+            int to = from;
+            long length = 1 + Integer.BYTES;
+            while (to < bodies.size() && (to == from
+                    || length + Integer.BYTES + bodies.get(to).length <= MAX_BODY_BYTES)) {
+                length += Integer.BYTES + bodies.get(to++).length;
+            }
+            ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(length)).put(BATCH).putInt(to - from);
+            for (int i = from; i < to; i++) {
+                out.putInt(bodies.get(i).length).put(bodies.get(i));
+            }
+            batches.add(out.array());
+            from = to;
+        }
+        return batches;
+    }
+
+    /** This method decodes a record body and hands the result to a visitor.
+     * @param body the record body
+     * @param visitor receives the decoded change
+     * @throws IOException if the record type is not recognised
+     * */
+    static void decode(byte[] body, Visitor visitor) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(body);
+        byte type = in.get();
+        switch (type) {
+            case PUT_IN_HOUSE:
+            case PUT_OUTSOURCED: {
+                int id = in.getInt();
+                String name = readString(in);
+                double price = in.getDouble();
+                int stock = in.getInt();
+                int min = in.getInt();
+                int max = in.getInt();
+                if (type == PUT_IN_HOUSE) {
+                    visitor.part(new InHouse(id, name, price, stock, min, max, in.getInt()));
+                }
+                else {
+                    visitor.part(new Outsourced(id, name, price, stock, min, max, readString(in)));
+                }
+                break;
+            }
+            case PUT_PRODUCT: {
+                Product product = new Product(in.getInt(), readString(in), in.getDouble(), in.getInt(), in.getInt(),
+                        in.getInt());
+                int[] partIds = new int[in.getInt()];
+                for (int i = 0; i < partIds.length; i++) {
+                    partIds[i] = in.getInt();
+                }
+                visitor.product(product, partIds);
+                break;
+            }
+            case DELETE_PART:
+                visitor.partDeleted(in.getInt());
+                break;
+            case DELETE_PRODUCT:
+                visitor.productDeleted(in.getInt());
+                break;
+            case BATCH:
+                for (int count = in.getInt(); count > 0; count--) {
+                    byte[] nested = new byte[in.getInt()];
+                    in.get(nested);
+                    decode(nested, visitor);
+                }
+                break;
+            default:
+                throw new IOException("Unknown record type " + type);
+        }
+    }
+
+    /** This method writes a framed record.
+     * @param out the stream to write to
+     * @param sequence the record's sequence number
+     * @param body the record body
+     * @throws IOException if the stream cannot be written
+     * */
+    static void writeFrame(DataOutputStream out, long sequence, byte[] body) throws IOException {
+        out.writeInt(body.length);
+        out.writeInt(checksum(sequence, body));
+        out.writeLong(sequence);
+        out.write(body);
+    }
+
+    /** This method reads the next framed record.
+     * @param in the stream to read from
+     * @return the record or null if the stream ended, either cleanly or part way through a record, or if the record
+     * fails its checksum
+     * @throws IOException if the stream cannot be read
+     * */
+    static Frame readFrame(DataInputStream in) throws IOException {
+        try {
+            int length = in.readInt();
+            int expected = in.readInt();
+            long sequence = in.readLong();
+            if (length < 1 || length > MAX_BODY_BYTES) {
+                return null;
+            }
+            byte[] body = new byte[length];
+            in.readFully(body);
+            return checksum(sequence, body) == expected ? new Frame(sequence, body) : null;
+        }
+        catch (EOFException tornRecord) {
+            return null;
+        }
+    }
+
+    private static int checksum(long sequence, byte[] body) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(Long.BYTES).putLong(0, sequence));
+        crc.update(body);
+        return (int) crc.getValue();
+    }
+
+    private static void writeString(DataOutputStream out, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        byte[] bytes = new byte[in.getInt()];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** This class is a record read back from disk. */
+    static final class Frame {
+        final long sequence;
+        final byte[] body;
+
+        Frame(long sequence, byte[] body) {
+            this.sequence = sequence;
+            this.body = body;
+        }
+    }
+
+    /** This interface receives the changes decoded from records. */
+    interface Visitor {
+        /** This method receives a Part that was added or replaced.
+         * @param part the part's state
+         * */
+        void part(Part part);
+
+        /** This method receives a Product that was added or replaced.
+         * @param product the product's state, without its associated parts
+         * @param partIds the IDs of the product's associated parts
+         * */
+        void product(Product product, int[] partIds);
+
+        /** This method receives the ID of a deleted Part.
+         * @param id the part ID
+         * */
+        void partDeleted(int id);
+
+        /** This method receives the ID of a deleted Product.
+         * @param id the product ID
+         * */
+        void productDeleted(int id);
+    }
+}
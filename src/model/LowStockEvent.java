@@ -0,0 +1,56 @@
+package model;
+
+/** This class is a notice that a Part's stock has crossed its minimum, sent to the listeners added with
+ * Inventory.addLowStockListener(). A Part is low once its stock is at or below its minimum.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class LowStockEvent {
+
+    /** This enum is the ways a Part can cross its minimum. */
+    public enum Kind {
+        /** The Part's stock fell to or below its minimum, or the Part was added that way. */
+        LOW,
+        /** The stock of a low Part rose above its minimum again, or its minimum was lowered under its stock. */
+        RESTOCKED,
+        /** A low Part was deleted. */
+        DELETED
+    }
+
+    private final Kind kind;
+    private final int partId;
+    private final int stock;
+    private final int min;
+
+    LowStockEvent(Kind kind, int partId, int stock, int min) {
+        this.kind = kind;
+        this.partId = partId;
+        this.stock = stock;
+        this.min = min;
+    }
+
+    /** Gets the kind field.
+     * @return the way the Part crossed its minimum
+     */
+    public Kind getKind() { return kind; }
+
+    /** Gets the part ID field.
+     * @return the ID of the Part as an int
+     */
+    public int getPartId() { return partId; }
+
+    /** Gets the stock field.
+     * @return the Part's stock after the change as an int
+     */
+    public int getStock() { return stock; }
+
+    /** Gets the minimum field.
+     * @return the Part's minimum after the change as an int
+     */
+    public int getMin() { return min; }
+
+    @Override
+    public String toString() {
+        return kind + " part " + partId + " (stock " + stock + ", min " + min + ")";
+    }
+}
@@ -0,0 +1,191 @@
+package model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Consumer;
+
+/** This class keeps every Part whose stock is at or below its minimum, together with how far short of the minimum it
+ * is, so the low Parts can be listed without scanning the inventory. It follows the Part store as a listener, and a
+ * change that moves a Part across its minimum, either way, is turned into a LowStockEvent straight away.
+ * Events are handed to listeners on a thread of their own rather than on the thread making the change or the JavaFX
+ * Application Thread, so a slow listener holds up neither. Events from one batch made with EntityStore.atomically()
+ * are held back until the batch finishes and sent together, and events that pile up while the listeners are busy are
+ * sent together on their next call. Events are only made while at least one listener is added. Attached snapshot rows
+ * are indexed from the stock and minimum saved in the rows, without building their Parts. Changes arrive under the
+ * locks of different stripes at once, so the index has its own lock.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class LowStockIndex implements StoreListener<Part> {
+
+    // Marks a batch that has made no events yet, so a batch that makes none allocates nothing
+    private static final List<LowStockEvent> HOLDING = Collections.emptyList();
+
+    // Each low Part's shortfall, which is its minimum less its stock and is never negative
+    private final IntIntIndex shortfalls = new IntIntIndex();
+    private final List<Consumer<? super List<LowStockEvent>>> listeners = new CopyOnWriteArrayList<>();
+    private final LinkedBlockingQueue<List<LowStockEvent>> pending = new LinkedBlockingQueue<>();
+    private final ThreadLocal<List<LowStockEvent>> batch = new ThreadLocal<>();
+    private Thread dispatcher;
+
+    /** This method returns the IDs of every low Part, the furthest below its minimum first and then in ascending order.
+     * @return the Part IDs, which may be none
+     * */
+    synchronized int[] lowParts() {
+        int[] partIds = shortfalls.keys();
+        long[] order = new long[partIds.length];
+        for (int i = 0; i < partIds.length; i++) {
+            order[i] = ((long) (Integer.MAX_VALUE - shortfalls.get(partIds[i])) << 32) | (partIds[i] & 0xFFFFFFFFL);
+        }
+        Arrays.sort(order);
+        for (int i = 0; i < order.length; i++) {
+            partIds[i] = (int) order[i];
+        }
+        return partIds;
+    }
+
+    /** This method tells whether a Part's stock is at or below its minimum.
+     * @param partId the ID of the Part
+     * @return true if the Part is low
+     * */
+    synchronized boolean isLow(int partId) {
+        return shortfalls.get(partId) >= 0;
+    }
+
+    /** This method adds a listener for low stock events, starting the thread that sends them if it is the first.
+     * @param listener receives each group of events, in the order they happened
+     * */
+    void addListener(Consumer<? super List<LowStockEvent>> listener) {
+        listeners.add(listener);
+        synchronized (this) {
+            if (dispatcher == null) {
+                dispatcher = new Thread(this::dispatchLoop, "inventory-low-stock");
+                dispatcher.setDaemon(true);
+                dispatcher.start();
+            }
+        }
+    }
+
+    /** This method removes a listener for low stock events. Events already on their way may still reach it.
+     * @param listener the listener to remove
+     * */
+    void removeListener(Consumer<? super List<LowStockEvent>> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public void added(Part item) {
+        check(item.getId(), item.getStock(), item.getMin());
+    }
+
+    @Override
+    public void replaced(Part oldItem, Part newItem) {
+        check(newItem.getId(), newItem.getStock(), newItem.getMin());
+    }
+
+    @Override
+    public void patched(Part item) {
+        check(item.getId(), item.getStock(), item.getMin());
+    }
+
+    @Override
+    public void removed(Part item) {
+        boolean wasLow;
+        synchronized (this) {
+            wasLow = shortfalls.get(item.getId()) >= 0;
+            shortfalls.remove(item.getId());
+        }
+        if (wasLow) {
+            send(new LowStockEvent(LowStockEvent.Kind.DELETED, item.getId(), item.getStock(), item.getMin()));
+        }
+    }
+
+    @Override
+    public void batchStarted() {
+        batch.set(HOLDING);
+    }
+
+    @Override
+    public void batchFinished() {
+        List<LowStockEvent> held = batch.get();
+        batch.set(null);
+        if (held != null && held != HOLDING) {
+            pending.add(held);
+        }
+    }
+
+    @Override
+    public synchronized void attached(int[] ids, LazyRows<Part> rows) {
+        for (int row = 0; row < ids.length; row++) {
+            long shortfall = (long) rows.minAt(row) - rows.stockAt(row);
+            if (shortfall >= 0) {
+                shortfalls.put(ids[row], (int) Math.min(Integer.MAX_VALUE, shortfall));
+            }
+        }
+    }
+
+    // Moves a Part into or out of the index after a change, and sends an event if it crossed its minimum
+    private void check(int partId, int stock, int min) {
+        long shortfall = (long) min - stock;
+        boolean wasLow;
+        synchronized (this) {
+            wasLow = shortfalls.get(partId) >= 0;
+            if (shortfall >= 0) {
+                shortfalls.put(partId, (int) Math.min(Integer.MAX_VALUE, shortfall));
+            }
+            else if (wasLow) {
+                shortfalls.remove(partId);
+            }
+        }
+        if (wasLow != shortfall >= 0) {
+            send(new LowStockEvent(wasLow ? LowStockEvent.Kind.RESTOCKED : LowStockEvent.Kind.LOW, partId, stock, min));
+        }
+    }
+
+    private void send(LowStockEvent event) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        List<LowStockEvent> held = batch.get();
+        if (held == null) {
+            pending.add(Collections.singletonList(event));
+            return;
+        }
+        if (held == HOLDING) {
+            held = new ArrayList<>();
+            batch.set(held);
+        }
+        held.add(event);
+    }
+
+    private void dispatchLoop() {
+        List<List<LowStockEvent>> groups = new ArrayList<>();
+        while (true) {
+            try {
+                groups.add(pending.take());
+            }
+            catch (InterruptedException exception) {
+                return;
+            }
+            pending.drainTo(groups);
+            List<LowStockEvent> events = groups.size() == 1 ? groups.get(0) : new ArrayList<>();
+            if (groups.size() > 1) {
+                groups.forEach(events::addAll);
+            }
+            groups.clear();
+            List<LowStockEvent> sent = Collections.unmodifiableList(events);
+            for (Consumer<? super List<LowStockEvent>> listener : listeners) {
+                try {
+                    listener.accept(sent);
+                }
+                catch (RuntimeException exception) {
+                    System.out.println("A low stock listener failed: " + exception);
+                }
+            }
+        }
+    }
+}
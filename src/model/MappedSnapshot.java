@@ -0,0 +1,631 @@
+package model;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.IntFunction;
+import java.util.zip.CRC32;
+
+/** This class reads and writes the memory-mapped snapshot format, which lets the inventory start up without building
+ * every Part and Product first. A snapshot file is a fixed-size header, a table of checksums and a data area. The
+ * data area holds one fixed-width row per Part and then one per Product, each sorted by ID, followed by the IDs of
+ * every Product's associated parts and finally every name and company name as UTF-8. Since every row is the same
+ * width, a row can be found by number or binary searched by ID straight from the mapped file, and a Part or Product
+ * is only built when its row is actually asked for.
+ * The data area is split into fixed-size segments that each carry their own CRC32 checksum. A segment is checked the
+ * first time any of its bytes are read, so damage is caught without reading the whole file up front. The header holds
+ * a format version, and files of any other version are refused rather than misread.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class MappedSnapshot {
+
+    /** The format version this class reads and writes. */
+    static final int VERSION = 2;
+
+    private static final int MAGIC = 0x494E564D;
+    private static final int HEADER_BYTES = 64;
+    private static final int HEADER_CHECKSUM_AT = 60;
+    private static final int SEGMENT_BYTES = 1 << 16;
+    private static final byte IN_HOUSE = 1;
+    private static final byte OUTSOURCED = 2;
+
+    // Every Part and Product row is ROW_BYTES wide, with its fields at these offsets. A string field is an offset into
+    // the string area followed by a length
+    private static final int ROW_BYTES = 48;
+    private static final int ID = 0;
+    private static final int TYPE = 4;
+    private static final int PRICE = 8;
+    private static final int STOCK = 16;
+    private static final int MIN = 20;
+    private static final int MAX = 24;
+    private static final int NAME = 28;
+    // The machine ID or company name of a Part, or the associated part IDs of a Product
+    private static final int EXTRA = 36;
+    private static final int EXTRA_LENGTH = 40;
+
+    private final Path file;
+    private final ByteBuffer buffer;
+    private final long sequence;
+    private final int partCount;
+    private final int productCount;
+    private final int dataStart;
+    private final int partsAt;
+    private final int productsAt;
+    private final int associationsAt;
+    private final int stringsAt;
+    private final int[] checksums;
+    // Racing threads may both check a segment, which is harmless, so the flags need no locking
+    private final boolean[] verified;
+
+    private MappedSnapshot(Path file, ByteBuffer buffer) throws IOException {
+        this.file = file;
+        this.buffer = buffer;
+        if (buffer.getInt(0) != MAGIC) {
+            throw new IOException(file + " is not an inventory snapshot");
+        }
+        int version = buffer.getInt(4);
+        if (version != VERSION) {
+            throw new IOException(file + " is snapshot version " + version + " but only version " + VERSION
+                    + " can be read");
+        }
+        sequence = buffer.getLong(8);
+        partCount = buffer.getInt(16);
+        productCount = buffer.getInt(20);
+        int associationCount = buffer.getInt(24);
+        int stringBytes = buffer.getInt(28);
+        int segmentCount = buffer.getInt(32);
+        if (partCount < 0 || productCount < 0 || associationCount < 0 || stringBytes < 0 || segmentCount < 0
+                || dataStart(segmentCount) > buffer.capacity()) {
+            throw new IOException(file + " has a damaged header");
+        }
+
+        dataStart = (int) dataStart(segmentCount);
+        long end = dataStart + ((long) partCount + productCount) * ROW_BYTES + 4L * associationCount + stringBytes;
+        if (end != buffer.capacity() || segmentCountFor(end - dataStart) != segmentCount) {
+            throw new IOException(file + " is truncated or has a damaged header");
+        }
+        partsAt = dataStart;
+        productsAt = partsAt + partCount * ROW_BYTES;
+        associationsAt = productsAt + productCount * ROW_BYTES;
+        stringsAt = associationsAt + 4 * associationCount;
+
+        checksums = new int[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            checksums[i] = buffer.getInt(HEADER_BYTES + 4 * i);
+        }
+        if (headerChecksum(buffer, segmentCount) != buffer.getInt(HEADER_CHECKSUM_AT)) {
+            throw new IOException(file + " has a damaged header");
+        }
+        verified = new boolean[segmentCount];
+    }
+
+    /** This method maps a snapshot file into memory. Only the header and checksum table are read here, and the rest
+     * of the file is read by the operating system as rows are touched. The mapping stays valid after this method
+     * returns and lasts for as long as the snapshot is reachable.
+     * @param file the snapshot file
+     * @return the mapped snapshot
+     * @throws IOException if the file cannot be mapped, is not a snapshot, is another version or has a damaged header
+     * */
+    static MappedSnapshot open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not an inventory snapshot that can be mapped");
+            }
+            return new MappedSnapshot(file, channel.map(FileChannel.MapMode.READ_ONLY, 0, length));
+        }
+    }
+
+    /** This method returns the last log sequence number included in the snapshot.
+     * @return the snapshot's sequence number
+     * */
+    long sequence() {
+        return sequence;
+    }
+
+    /** This method returns the snapshot's Parts as lazily built rows.
+     * @return the Part rows
+     * */
+    LazyRows<Part> parts() {
+        return new PartRows();
+    }
+
+    /** This method returns the snapshot's Products as lazily built rows. The associated parts of a Product are looked
+     * up by ID when the Product is built, so they resolve to whichever Part holds each ID at that time.
+     * @param partLookup finds a Part by ID, returning null for a Part that no longer exists
+     * @return the Product rows
+     * */
+    LazyRows<Product> products(IntFunction<Part> partLookup) {
+        return new ProductRows(partLookup);
+    }
+
+    private static long dataStart(int segmentCount) {
+        // Keeps the rows aligned to eight bytes so the prices are never split across a page
+        return (HEADER_BYTES + 4L * segmentCount + 7) & ~7L;
+    }
+
+    private static int segmentCountFor(long dataBytes) {
+        return (int) ((dataBytes + SEGMENT_BYTES - 1) / SEGMENT_BYTES);
+    }
+
+    private static int headerChecksum(ByteBuffer header, int segmentCount) {
+        CRC32 crc = new CRC32();
+        ByteBuffer fields = header.duplicate();
+        fields.position(0).limit(HEADER_CHECKSUM_AT);
+        crc.update(fields);
+        ByteBuffer table = header.duplicate();
+        table.position(HEADER_BYTES).limit(HEADER_BYTES + 4 * segmentCount);
+        crc.update(table);
+        return (int) crc.getValue();
+    }
+
+    // Makes sure every segment overlapping the given bytes has passed its checksum
+    private void check(int offset, int length) {
+        int last = (offset + length - 1 - dataStart) / SEGMENT_BYTES;
+        for (int segment = (offset - dataStart) / SEGMENT_BYTES; segment <= last; segment++) {
+            if (!verified[segment]) {
+                verify(segment);
+            }
+        }
+    }
+
+    private void verify(int segment) {
+        long from = dataStart + (long) segment * SEGMENT_BYTES;
+        ByteBuffer bytes = buffer.duplicate();
+        bytes.position((int) from).limit((int) Math.min(from + SEGMENT_BYTES, buffer.capacity()));
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if ((int) crc.getValue() != checksums[segment]) {
+            throw new UncheckedIOException(new IOException(file + " segment " + segment + " failed its checksum"));
+        }
+        verified[segment] = true;
+    }
+
+    private int row(int tableAt, int count, int row) {
+        int at = tableAt + Objects.checkIndex(row, count) * ROW_BYTES;
+        check(at, ROW_BYTES);
+        return at;
+    }
+
+    private int search(int tableAt, int count, int id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int found = buffer.getInt(row(tableAt, count, middle) + ID);
+            if (found < id) {
+                low = middle + 1;
+            }
+            else if (found > id) {
+                high = middle - 1;
+            }
+            else {
+                return middle;
+            }
+        }
+        return -(low + 1);
+    }
+
+    private String string(int rowAt, int field) {
+        int offset = stringsAt + buffer.getInt(rowAt + field);
+        int length = buffer.getInt(rowAt + field + 4);
+        check(offset, length);
+        byte[] bytes = new byte[length];
+        ByteBuffer text = buffer.duplicate();
+        text.position(offset);
+        text.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /** This class is one Part or Product as it is to be saved in a snapshot, copied out of the store so later
+     * changes cannot alter it. A row can be taken from a built Part or Product, or straight from an attached row
+     * that has never been built, so saving the inventory does not build it.
+     * */
+    static final class Row {
+        private final boolean product;
+        private final int id;
+        private final byte type;
+        private final String name;
+        private final double price;
+        private final int stock;
+        private final int min;
+        private final int max;
+        private final int machineId;
+        private final String companyName;
+        private final int[] partIds;
+
+        private Row(boolean product, int id, byte type, String name, double price, int stock, int min, int max,
+                    int machineId, String companyName, int[] partIds) {
+            this.product = product;
+            this.id = id;
+            this.type = type;
+            this.name = name;
+            this.price = price;
+            this.stock = stock;
+            this.min = min;
+            this.max = max;
+            this.machineId = machineId;
+            this.companyName = companyName;
+            this.partIds = partIds;
+        }
+
+        /** This method copies a Part into a row.
+         * @param part the Part
+         * @return the row
+         * */
+        static Row of(Part part) {
+            if (part instanceof InHouse) {
+                return new Row(false, part.getId(), IN_HOUSE, part.getName(), part.getPrice(), part.getStock(),
+                        part.getMin(), part.getMax(), ((InHouse) part).getMachineId(), null, null);
+            }
+            return new Row(false, part.getId(), OUTSOURCED, part.getName(), part.getPrice(), part.getStock(),
+                    part.getMin(), part.getMax(), 0, ((Outsourced) part).getCompanyName(), null);
+        }
+
+        /** This method copies a Product and the IDs of its associated parts into a row.
+         * @param product the Product
+         * @return the row
+         * */
+        static Row of(Product product) {
+            List<Part> associated = product.getAllAssociatedParts();
+            int[] partIds = new int[associated.size()];
+            for (int i = 0; i < partIds.length; i++) {
+                partIds[i] = associated.get(i).getId();
+            }
+            return new Row(true, product.getId(), (byte) 0, product.getName(), product.getPrice(),
+                    product.getStock(), product.getMin(), product.getMax(), 0, null, partIds);
+        }
+
+        /** This method copies an attached Part row without building its Part.
+         * @param rows the attached Part rows
+         * @param row the row number
+         * @return the row
+         * */
+        static Row ofPart(LazyRows<Part> rows, int row) {
+            String companyName = rows.companyNameAt(row);
+            return new Row(false, rows.idAt(row), companyName == null ? IN_HOUSE : OUTSOURCED, rows.nameAt(row),
+                    rows.priceAt(row), rows.stockAt(row), rows.minAt(row), rows.maxAt(row),
+                    companyName == null ? rows.machineIdAt(row) : 0, companyName, null);
+        }
+
+        /** This method copies an attached Product row without building its Product or looking up its Parts.
+         * @param rows the attached Product rows
+         * @param row the row number
+         * @return the row
+         * */
+        static Row ofProduct(LazyRows<Product> rows, int row) {
+            return new Row(true, rows.idAt(row), (byte) 0, rows.nameAt(row), rows.priceAt(row), rows.stockAt(row),
+                    rows.minAt(row), rows.maxAt(row), 0, null, rows.partIdsAt(row));
+        }
+    }
+
+    /** This class builds a snapshot file from rows handed to it one at a time, in any order. Each row is encoded as
+     * it arrives into the same fixed-width form the file holds, so the writer takes about as much memory as the file
+     * rather than a Part or Product object for every row, and the rows are only put in ID order as the file is written.
+     * */
+    static final class Writer {
+        private final Table parts = new Table();
+        private final Table products = new Table();
+        private final ByteArrayOutputStream strings = new ByteArrayOutputStream(1 << 16);
+        private int[] associations = new int[1024];
+        private int associationCount;
+
+        /** This method adds a Part or Product to the snapshot.
+         * @param row the row to save
+         * */
+        void add(Row row) {
+            ByteBuffer out = (row.product ? products : parts).next(row.id);
+            int nameAt = strings.size();
+            byte[] name = row.name.getBytes(StandardCharsets.UTF_8);
+            strings.write(name, 0, name.length);
+            out.putInt(row.id).put(row.type).put(new byte[3]).putDouble(row.price).putInt(row.stock)
+                    .putInt(row.min).putInt(row.max).putInt(nameAt).putInt(name.length);
+            if (row.product) {
+                if (associationCount + row.partIds.length > associations.length) {
+                    associations = Arrays.copyOf(associations,
+                            Math.max(associations.length * 2, associationCount + row.partIds.length));
+                }
+                System.arraycopy(row.partIds, 0, associations, associationCount, row.partIds.length);
+                out.putInt(associationCount).putInt(row.partIds.length);
+                associationCount += row.partIds.length;
+            }
+            else if (row.type == IN_HOUSE) {
+                out.putInt(row.machineId).putInt(0);
+            }
+            else {
+                byte[] companyName = row.companyName.getBytes(StandardCharsets.UTF_8);
+                out.putInt(strings.size()).putInt(companyName.length);
+                strings.write(companyName, 0, companyName.length);
+            }
+            out.putInt(0);
+        }
+
+        /** This method writes the rows added so far as a snapshot file, which is forced to disk before this method
+         * returns.
+         * @param file the file to write, replacing any file already there
+         * @param sequence the last log sequence number the snapshot includes
+         * @throws IOException if the file cannot be written or the inventory is too large to map as one file
+         * */
+        void write(Path file, long sequence) throws IOException {
+            long dataBytes = ((long) parts.count + products.count) * ROW_BYTES + 4L * associationCount
+                    + strings.size();
+            int segmentCount = segmentCountFor(dataBytes);
+            long dataStart = dataStart(segmentCount);
+            if (dataStart + dataBytes > Integer.MAX_VALUE) {
+                throw new IOException("The inventory is too large to write as one mapped snapshot");
+            }
+
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                channel.position(dataStart);
+                ChecksummedOutput data = new ChecksummedOutput(Channels.newOutputStream(channel), segmentCount);
+                DataOutputStream out = new DataOutputStream(new BufferedOutputStream(data, 1 << 16));
+                parts.writeSorted(out);
+                products.writeSorted(out);
+                for (int i = 0; i < associationCount; i++) {
+                    out.writeInt(associations[i]);
+                }
+                strings.writeTo(out);
+                // Closing the streams would close the channel, which is still needed for the header
+                out.flush();
+                data.finish();
+
+                ByteBuffer header = ByteBuffer.allocate((int) dataStart);
+                header.putInt(0, MAGIC)
+                        .putInt(4, VERSION)
+                        .putLong(8, sequence)
+                        .putInt(16, parts.count)
+                        .putInt(20, products.count)
+                        .putInt(24, associationCount)
+                        .putInt(28, strings.size())
+                        .putInt(32, segmentCount);
+                for (int i = 0; i < segmentCount; i++) {
+                    header.putInt(HEADER_BYTES + 4 * i, data.checksums[i]);
+                }
+                header.putInt(HEADER_CHECKSUM_AT, headerChecksum(header, segmentCount));
+                while (header.hasRemaining()) {
+                    channel.write(header, header.position());
+                }
+                channel.force(true);
+            }
+        }
+    }
+
+    /** This class is the encoded rows of one table in the order they were added, with each row's ID and position
+     * packed into a long so the table can be put in ID order without moving the rows.
+     * */
+    private static final class Table {
+        private ByteBuffer rows = ByteBuffer.allocate(ROW_BYTES * 1024);
+        private long[] order = new long[1024];
+        private int count;
+
+        // Returns the buffer positioned at a new row for the ID
+        ByteBuffer next(int id) {
+            if (count == order.length) {
+                order = Arrays.copyOf(order, count * 2);
+                ByteBuffer grown = ByteBuffer.allocate(rows.capacity() * 2);
+                rows.flip();
+                grown.put(rows);
+                rows = grown;
+            }
+            order[count] = (long) id << 32 | count;
+            count++;
+            return rows;
+        }
+
+        void writeSorted(DataOutputStream out) throws IOException {
+            long[] sorted = Arrays.copyOf(order, count);
+            Arrays.sort(sorted);
+            byte[] bytes = rows.array();
+            for (long entry : sorted) {
+                out.write(bytes, (int) entry * ROW_BYTES, ROW_BYTES);
+            }
+        }
+    }
+
+    /** This class is the Part table of a snapshot. */
+    private final class PartRows implements LazyRows<Part> {
+
+        @Override
+        public int size() {
+            return partCount;
+        }
+
+        @Override
+        public int idAt(int row) {
+            return buffer.getInt(row(partsAt, partCount, row) + ID);
+        }
+
+        @Override
+        public int rowOf(int id) {
+            return search(partsAt, partCount, id);
+        }
+
+        @Override
+        public String nameAt(int row) {
+            return string(row(partsAt, partCount, row), NAME);
+        }
+
+        @Override
+        public double priceAt(int row) {
+            return buffer.getDouble(row(partsAt, partCount, row) + PRICE);
+        }
+
+        @Override
+        public String companyNameAt(int row) {
+            int at = row(partsAt, partCount, row);
+            return buffer.get(at + TYPE) == IN_HOUSE ? null : string(at, EXTRA);
+        }
+
+        @Override
+        public int machineIdAt(int row) {
+            int at = row(partsAt, partCount, row);
+            return buffer.get(at + TYPE) == IN_HOUSE ? buffer.getInt(at + EXTRA) : 0;
+        }
+
+        @Override
+        public int stockAt(int row) {
+            return buffer.getInt(row(partsAt, partCount, row) + STOCK);
+        }
+
+        @Override
+        public int minAt(int row) {
+            return buffer.getInt(row(partsAt, partCount, row) + MIN);
+        }
+
+        @Override
+        public int maxAt(int row) {
+            return buffer.getInt(row(partsAt, partCount, row) + MAX);
+        }
+
+        @Override
+        public Part materialize(int row) {
+            int at = row(partsAt, partCount, row);
+            int id = buffer.getInt(at + ID);
+            String name = string(at, NAME);
+            double price = buffer.getDouble(at + PRICE);
+            int stock = buffer.getInt(at + STOCK);
+            int min = buffer.getInt(at + MIN);
+            int max = buffer.getInt(at + MAX);
+            if (buffer.get(at + TYPE) == IN_HOUSE) {
+                return new InHouse(id, name, price, stock, min, max, buffer.getInt(at + EXTRA));
+            }
+            return new Outsourced(id, name, price, stock, min, max, string(at, EXTRA));
+        }
+    }
+
+    /** This class is the Product table of a snapshot. */
+    private final class ProductRows implements LazyRows<Product> {
+        private final IntFunction<Part> partLookup;
+
+        ProductRows(IntFunction<Part> partLookup) {
+            this.partLookup = partLookup;
+        }
+
+        @Override
+        public int size() {
+            return productCount;
+        }
+
+        @Override
+        public int idAt(int row) {
+            return buffer.getInt(row(productsAt, productCount, row) + ID);
+        }
+
+        @Override
+        public int rowOf(int id) {
+            return search(productsAt, productCount, id);
+        }
+
+        @Override
+        public String nameAt(int row) {
+            return string(row(productsAt, productCount, row), NAME);
+        }
+
+        @Override
+        public double priceAt(int row) {
+            return buffer.getDouble(row(productsAt, productCount, row) + PRICE);
+        }
+
+        @Override
+        public int stockAt(int row) {
+            return buffer.getInt(row(productsAt, productCount, row) + STOCK);
+        }
+
+        @Override
+        public int minAt(int row) {
+            return buffer.getInt(row(productsAt, productCount, row) + MIN);
+        }
+
+        @Override
+        public int maxAt(int row) {
+            return buffer.getInt(row(productsAt, productCount, row) + MAX);
+        }
+
+        @Override
+        public Product materialize(int row) {
+            int at = row(productsAt, productCount, row);
+            Product product = new Product(buffer.getInt(at + ID), string(at, NAME), buffer.getDouble(at + PRICE),
+                    buffer.getInt(at + STOCK), buffer.getInt(at + MIN), buffer.getInt(at + MAX));
+            for (int partId : partIdsAt(row)) {
+                Part part = partLookup.apply(partId);
+                if (part != null) {
+                    product.addAssociatedPart(part);
+                }
+            }
+            return product;
+        }
+
+        @Override
+        public int[] partIdsAt(int row) {
+            int at = row(productsAt, productCount, row);
+            int first = associationsAt + 4 * buffer.getInt(at + EXTRA);
+            int count = buffer.getInt(at + EXTRA_LENGTH);
+            check(first, 4 * count);
+            int[] partIds = new int[count];
+            for (int i = 0; i < count; i++) {
+                partIds[i] = buffer.getInt(first + 4 * i);
+            }
+            return partIds;
+        }
+    }
+
+    /** This class passes bytes through to a stream while working out the checksum of each segment they fall in. */
+    private static final class ChecksummedOutput extends FilterOutputStream {
+        final int[] checksums;
+        private final CRC32 crc = new CRC32();
+        private int segment;
+        private int filled;
+
+        ChecksummedOutput(OutputStream out, int segmentCount) {
+            super(out);
+            this.checksums = new int[segmentCount];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            out.write(bytes, offset, length);
+            while (length > 0) {
+                int taken = Math.min(length, SEGMENT_BYTES - filled);
+                crc.update(bytes, offset, taken);
+                filled += taken;
+                offset += taken;
+                length -= taken;
+                if (filled == SEGMENT_BYTES) {
+                    finishSegment();
+                }
+            }
+        }
+
+        void finish() {
+            if (filled > 0) {
+                finishSegment();
+            }
+        }
+
+        private void finishSegment() {
+            checksums[segment++] = (int) crc.getValue();
+            crc.reset();
+            filled = 0;
+        }
+    }
+}
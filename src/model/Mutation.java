@@ -0,0 +1,199 @@
+package model;
+
+import java.util.stream.IntStream;
+
+/** This class is one change in a batch handed to Inventory.applyBatch(), which makes every change in the batch as one.
+ * A mutation either stores a Part or Product under its ID, adding it or replacing whatever was there, or deletes
+ * whatever is stored under an ID. A Part can also be stored only if its ID is free or only if it is taken, and its
+ * stock can be moved up or down within its Minimum and Maximum. A Product can be added only if its ID is free, and
+ * either can be deleted only while nothing depends on it: a Part no Product lists, or a Product that lists no Parts.
+ * Mutations are made with the static methods of this class.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class Mutation {
+
+    private final Kind kind;
+    private final boolean onProducts;
+    private final int id;
+    // The Part or Product to store, or null for a deletion or a stock change
+    private final Object item;
+    private final int stockChange;
+
+    private Mutation(Kind kind, boolean onProducts, int id, Object item, int stockChange) {
+        this.kind = kind;
+        this.onProducts = onProducts;
+        this.id = id;
+        this.item = item;
+        this.stockChange = stockChange;
+    }
+
+    /** This method creates a mutation that adds a Part, or replaces the Part stored under the same ID.
+     * @param part the Part to store
+     * @return the mutation
+     * */
+    public static Mutation putPart(Part part) {
+        return new Mutation(Kind.PUT, false, part.getId(), part, 0);
+    }
+
+    /** This method creates a mutation that adds a Part, but only if no Part is stored under its ID.
+     * @param part the Part to add
+     * @return the mutation
+     * */
+    public static Mutation addPart(Part part) {
+        return new Mutation(Kind.ADD, false, part.getId(), part, 0);
+    }
+
+    /** This method creates a mutation that replaces the Part stored under the same ID, but only if there is one.
+     * @param part the Part to store
+     * @return the mutation
+     * */
+    public static Mutation updatePart(Part part) {
+        return new Mutation(Kind.UPDATE, false, part.getId(), part, 0);
+    }
+
+    /** This method creates a mutation that adds to a Part's stock, or takes from it for a negative change, but only if
+     * the stock stays within the Part's Maximum and, leaving out what is reserved, its Minimum.
+     * @param partId the ID of the Part
+     * @param change the amount to add to the stock
+     * @return the mutation
+     * @see Inventory#adjustStock(int, int)
+     * */
+    public static Mutation adjustPartStock(int partId, int change) {
+        return new Mutation(Kind.ADJUST_STOCK, false, partId, null, change);
+    }
+
+    /** This method creates a mutation that deletes whatever Part is stored under an ID.
+     * @param partId the ID of the Part to delete
+     * @return the mutation
+     * */
+    public static Mutation deletePart(int partId) {
+        return new Mutation(Kind.DELETE, false, partId, null, 0);
+    }
+
+    /** This method creates a mutation that deletes the Part stored under an ID, but only if no Product lists it as an
+     * associated part. Every Product is locked while a batch holding one is made, so no Product can take the Part up
+     * between the check and the deletion.
+     * @param partId the ID of the Part to delete
+     * @return the mutation
+     * */
+    public static Mutation deleteUnusedPart(int partId) {
+        return new Mutation(Kind.DELETE_UNUSED, false, partId, null, 0);
+    }
+
+    /** This method creates a mutation that adds a Product, or replaces the Product stored under the same ID.
+     * @param product the Product to store
+     * @return the mutation
+     * */
+    public static Mutation putProduct(Product product) {
+        return new Mutation(Kind.PUT, true, product.getId(), product, 0);
+    }
+
+    /** This method creates a mutation that adds a Product, but only if no Product is stored under its ID.
+     * @param product the Product to add
+     * @return the mutation
+     * */
+    public static Mutation addProduct(Product product) {
+        return new Mutation(Kind.ADD, true, product.getId(), product, 0);
+    }
+
+    /** This method creates a mutation that deletes whatever Product is stored under an ID.
+     * @param productId the ID of the Product to delete
+     * @return the mutation
+     * */
+    public static Mutation deleteProduct(int productId) {
+        return new Mutation(Kind.DELETE, true, productId, null, 0);
+    }
+
+    /** This method creates a mutation that deletes the Product stored under an ID, but only if it has no associated
+     * parts.
+     * @param productId the ID of the Product to delete
+     * @return the mutation
+     * */
+    public static Mutation deleteEmptyProduct(int productId) {
+        return new Mutation(Kind.DELETE_UNUSED, true, productId, null, 0);
+    }
+
+    /** This method tells whether the mutation changes a Product rather than a Part.
+     * @return true for a Product mutation
+     * */
+    boolean onProducts() {
+        return onProducts;
+    }
+
+    /** This method tells whether the mutation looks up which Products use a Part, in which case every Product must be
+     * locked while it is made.
+     * @return true for a deletion of a Part only if it is unused
+     * */
+    boolean needsEveryProduct() {
+        return kind == Kind.DELETE_UNUSED && !onProducts;
+    }
+
+    /** This method lists the Part IDs whose stripes must be locked while the mutation is made: the Part it changes, or
+     * for a Product every Part it lists now and every Part it will list, which building it looks up.
+     * @param whereUsed the index of which Parts each Product lists
+     * @return the Part IDs, possibly repeated
+     * */
+    IntStream partIdsLocked(WhereUsedIndex whereUsed) {
+        if (!onProducts) {
+            return IntStream.of(id);
+        }
+        IntStream listed = IntStream.of(whereUsed.partsOf(id));
+        return item == null ? listed : IntStream.concat(listed,
+                ((Product) item).getAllAssociatedParts().stream().mapToInt(Part::getId));
+    }
+
+    /** Gets the ID the mutation changes.
+     * @return the Part or Product ID
+     */
+    int getId() { return id; }
+
+    /** This method makes the change to one of the stores, holding the write locks of the stripe it changes.
+     * @param parts the Part store
+     * @param products the Product store
+     * @param ledger the ledger of reserved Part stock
+     * @param whereUsed the index of which Products use each Part
+     * @return true if anything changed, which a deletion of an ID that is not in use or of an item something depends
+     * on, an addition under an ID that is, or a stock change that is turned down does not
+     * */
+    boolean applyTo(EntityStore<Part> parts, EntityStore<Product> products, StockLedger ledger,
+                    WhereUsedIndex whereUsed) {
+        EntityStore<?> store = onProducts ? products : parts;
+        switch (kind) {
+            case DELETE_UNUSED:
+                // The index is read rather than the Product itself, which could be a snapshot row still to be built
+                if (onProducts ? whereUsed.partsOf(id).length > 0 : whereUsed.isUsed(id)) {
+                    return false;
+                }
+                return (onProducts ? products.removeId(id) : parts.removeId(id)) != null;
+            case DELETE:
+                return (onProducts ? products.removeId(id) : parts.removeId(id)) != null;
+            case ADD:
+                if (store.get(id) != null) {
+                    return false;
+                }
+                break;
+            case UPDATE:
+                if (store.get(id) == null) {
+                    return false;
+                }
+                break;
+            case ADJUST_STOCK:
+                return ledger.adjust(id, stockChange);
+            default:
+                break;
+        }
+        if (onProducts) {
+            products.put((Product) item);
+        }
+        else {
+            parts.put((Part) item);
+        }
+        return true;
+    }
+
+    /** This enum is the kind of change a mutation makes. */
+    private enum Kind {
+        PUT, ADD, UPDATE, DELETE, DELETE_UNUSED, ADJUST_STOCK
+    }
+}
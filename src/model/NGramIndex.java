@@ -0,0 +1,175 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/** This class is an inverted index over Part and Product names, used by the Inventory class to answer partial name
+ * searches without calling contains() on every name. Each name is lower-cased and broken into overlapping three
+ * character grams, and each gram keeps a sorted posting list of the IDs whose names contain it. A search intersects
+ * the posting lists of the query's grams, starting with the shortest, and then confirms the few remaining candidates
+ * against the stored name. Queries shorter than a gram fall back to checking the stored names directly.
+ * This class is not thread safe and is only meant to be used from inside the Inventory class.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class NGramIndex {
+
+    private static final int GRAM_LENGTH = 3;
+    private static final int[] NO_IDS = new int[0];
+
+    private final Map<Long, Postings> postingsByGram = new HashMap<>();
+    private final IntIndex<String> namesById = new IntIndex<>();
+
+    /** This method adds a name to the index under the given ID, replacing any name the ID was indexed with before.
+     * @param id the ID of the Part or Product
+     * @param name the name to index
+     * */
+    void add(int id, String name) {
+        remove(id);
+        String key = normalize(name);
+        namesById.put(id, key);
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            postingsByGram.computeIfAbsent(gramAt(key, i), gram -> new Postings()).add(id);
+        }
+    }
+
+    /** This method removes an ID and all of its grams from the index.
+     * @param id the ID of the Part or Product to remove
+     * */
+    void remove(int id) {
+        String key = namesById.remove(id);
+        if (key == null) {
+            return;
+        }
+        for (int i = 0; i + GRAM_LENGTH <= key.length(); i++) {
+            Long gram = gramAt(key, i);
+            Postings postings = postingsByGram.get(gram);
+            if (postings != null && postings.remove(id) && postings.size == 0) {
+                postingsByGram.remove(gram);
+            }
+        }
+    }
+
+    /** This method finds every ID whose name contains the query, ignoring case.
+     * @param query a name or partial name to search for
+     * @return the matching IDs in ascending order
+     * */
+    int[] search(String query) {
+        String key = normalize(query);
+        if (key.length() < GRAM_LENGTH) {
+            return scan(key);
+        }
+
+        // Gather the posting list of each gram in the query, giving up early if any gram has never been indexed
+        int gramCount = key.length() - GRAM_LENGTH + 1;
+        Postings[] lists = new Postings[gramCount];
+        for (int i = 0; i < gramCount; i++) {
+            Postings postings = postingsByGram.get(gramAt(key, i));
+            if (postings == null) {
+                return NO_IDS;
+            }
+            lists[i] = postings;
+        }
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size, b.size));
+
+        int[] candidates = Arrays.copyOf(lists[0].ids, lists[0].size);
+        int count = candidates.length;
+        for (int i = 1; i < lists.length && count > 0; i++) {
+            if (lists[i] == lists[i - 1]) {
+                continue;
+            }
+            int kept = 0;
+            for (int c = 0; c < count; c++) {
+                if (lists[i].contains(candidates[c])) {
+                    candidates[kept++] = candidates[c];
+                }
+            }
+            count = kept;
+        }
+
+        // Sharing every gram does not guarantee the grams appear in the right order, so confirm each candidate
+        int matched = 0;
+        for (int c = 0; c < count; c++) {
+            if (namesById.get(candidates[c]).contains(key)) {
+                candidates[matched++] = candidates[c];
+            }
+        }
+        return matched == candidates.length ? candidates : Arrays.copyOf(candidates, matched);
+    }
+
+    /** This method returns the number of IDs in the index.
+     * @return the number of indexed names
+     * */
+    int size() {
+        return namesById.size();
+    }
+
+    private int[] scan(String key) {
+        int[][] found = {new int[16]};
+        int[] count = {0};
+        namesById.forEach((id, name) -> {
+            if (name.contains(key)) {
+                if (count[0] == found[0].length) {
+                    found[0] = Arrays.copyOf(found[0], count[0] << 1);
+                }
+                found[0][count[0]++] = id;
+            }
+        });
+        int[] ids = Arrays.copyOf(found[0], count[0]);
+        Arrays.sort(ids);
+        return ids;
+    }
+
+    private static String normalize(String text) {
+        return text.toLowerCase(Locale.ROOT);
+    }
+
+    // Packs three 16 bit chars into one long so a gram never needs its own String
+    private static Long gramAt(String key, int offset) {
+        return ((long) key.charAt(offset) << 32) | ((long) key.charAt(offset + 1) << 16) | key.charAt(offset + 2);
+    }
+
+    /** This class is a posting list of IDs kept in ascending order in a growable int array. */
+    private static final class Postings {
+        private int[] ids = new int[4];
+        private int size;
+
+        void add(int id) {
+            // IDs are handed out in increasing order, so the common case is a plain append
+            if (size > 0 && ids[size - 1] >= id) {
+                int position = Arrays.binarySearch(ids, 0, size, id);
+                if (position >= 0) {
+                    return;
+                }
+                insertAt(-position - 1, id);
+                return;
+            }
+            insertAt(size, id);
+        }
+
+        boolean remove(int id) {
+            int position = Arrays.binarySearch(ids, 0, size, id);
+            if (position < 0) {
+                return false;
+            }
+            System.arraycopy(ids, position + 1, ids, position, size - position - 1);
+            size--;
+            return true;
+        }
+
+        boolean contains(int id) {
+            return Arrays.binarySearch(ids, 0, size, id) >= 0;
+        }
+
+        private void insertAt(int position, int id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            System.arraycopy(ids, position, ids, position + 1, size - position);
+            ids[position] = id;
+            size++;
+        }
+    }
+}
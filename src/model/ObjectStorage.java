@@ -0,0 +1,44 @@
+package model;
+
+import java.util.function.Consumer;
+
+/** This class is the stripe storage that keeps each Part or Product object exactly as it was stored, in an IntIndex
+ * keyed by ID. Reads return the stored object itself.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class ObjectStorage<T> implements StripeStorage<T> {
+
+    private final IntIndex<T> byId = new IntIndex<>();
+
+    @Override
+    public T get(int id) {
+        return byId.get(id);
+    }
+
+    @Override
+    public T put(int id, T item) {
+        return byId.put(id, item);
+    }
+
+    @Override
+    public boolean isCurrent(int id, T item) {
+        return byId.get(id) == item;
+    }
+
+    @Override
+    public void remove(int id) {
+        byId.remove(id);
+    }
+
+    @Override
+    public void forEach(Consumer<? super T> action) {
+        byId.forEach((id, item) -> action.accept(item));
+    }
+
+    @Override
+    public int size() {
+        return byId.size();
+    }
+}
@@ -6,7 +6,8 @@ package model;
  * */
 public class Outsourced extends Part {
 
-    private String companyName;
+    // Patched and shown on different threads in the same way as the fields of a Part
+    private volatile String companyName;
 
     /** This is the Outsourced class' constructor. It takes all the same parameters as the Part class and passes them
      * to the super() constructor and then also takes the companyName parameter and sets the companyName field equal to
@@ -38,6 +39,16 @@ public class Outsourced extends Part {
     public String getCompanyName() {
         return companyName;
     }
+    /** This method also copies the company name when the newer version is an Outsourced part.
+     * @param latest the Part holding the current field values
+     * */
+    @Override
+    void showValuesOf(Part latest) {
+        if (latest != this && latest instanceof Outsourced) {
+            companyName = ((Outsourced) latest).getCompanyName();
+        }
+        super.showValuesOf(latest);
+    }
 }
 
 
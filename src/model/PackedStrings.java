@@ -0,0 +1,76 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** This class packs many strings into one growable byte array as UTF-8, so a column of names costs a few bytes per
+ * character plus one long per row instead of a String object and its backing array per row. Each string is referred
+ * to by a handle holding its offset and length. Space freed by released strings is only reclaimed when the owner
+ * calls compact() with every live handle, which it should do once needsCompacting() says enough space is wasted.
+ * This class is not thread safe and is only meant to be used from inside the Inventory class.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class PackedStrings {
+
+    private static final int MIN_COMPACT_BYTES = 1 << 16;
+
+    private byte[] bytes = new byte[256];
+    private int used;
+    private int garbage;
+
+    /** This method stores a string.
+     * @param text the string to store
+     * @return the handle of the stored string
+     * */
+    long add(String text) {
+        byte[] encoded = text.getBytes(StandardCharsets.UTF_8);
+        if (used + encoded.length > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(used + encoded.length, bytes.length + (bytes.length >> 1)));
+        }
+        System.arraycopy(encoded, 0, bytes, used, encoded.length);
+        long handle = (long) used << 32 | encoded.length;
+        used += encoded.length;
+        return handle;
+    }
+
+    /** This method decodes a stored string.
+     * @param handle the handle returned when the string was stored
+     * @return a new String holding the stored text
+     * */
+    String get(long handle) {
+        return new String(bytes, (int) (handle >>> 32), (int) handle, StandardCharsets.UTF_8);
+    }
+
+    /** This method marks a stored string as no longer used.
+     * @param handle the handle of the string
+     * */
+    void release(long handle) {
+        garbage += (int) handle;
+    }
+
+    /** This method tells whether released strings take up enough space to be worth compacting.
+     * @return true if at least half of the used space holds released strings
+     * */
+    boolean needsCompacting() {
+        return garbage >= MIN_COMPACT_BYTES && garbage >= used >> 1;
+    }
+
+    /** This method moves every live string to the front of a new array, dropping the released ones.
+     * @param handles the handles of every live string, which are updated in place
+     * @param count the number of handles in use
+     * */
+    void compact(long[] handles, int count) {
+        byte[] packed = new byte[Math.max(256, used - garbage + ((used - garbage) >> 2))];
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int length = (int) handles[i];
+            System.arraycopy(bytes, (int) (handles[i] >>> 32), packed, offset, length);
+            handles[i] = (long) offset << 32 | length;
+            offset += length;
+        }
+        bytes = packed;
+        used = offset;
+        garbage = 0;
+    }
+}
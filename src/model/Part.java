@@ -1,18 +1,33 @@
 package model;
+
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
+
 /**
  * This abstract class represents Part objects and each object contains a number of descriptive attribute fields. There are setter
  * and getter functions for each of the class' fields that must be utilized by subclasses in order to access these
- * fields.
+ * fields. The name, price and stock can also be read as JavaFX properties, which table cells bind to so that a patch
+ * to one field repaints one cell.
  * @author Greg Farrell
  * @version 1.0
  */
 public abstract class Part {
     private int id;
-    private String name;
-    private double price;
-    private int stock;
-    private int min;
-    private int max;
+    // Patches set these under the stripe lock on any thread, while the JavaFX Application Thread reads them without it
+    // to show them, so they are volatile for that thread to see each patched value
+    private volatile String name;
+    private volatile double price;
+    private volatile int stock;
+    private volatile int min;
+    private volatile int max;
+    // Created the first time a table cell asks for them, and only ever changed on the JavaFX Application Thread
+    private ReadOnlyStringWrapper nameProperty;
+    private ReadOnlyDoubleWrapper priceProperty;
+    private ReadOnlyIntegerWrapper stockProperty;
 
     /** This is the Part class constructor
      * @param id as an int
@@ -90,4 +105,65 @@ public abstract class Part {
      * @return the max as an int
      */
     public int getMax() { return max; }
+
+    /** Gets a read-only property holding the name, for binding a table cell to. The property starts out holding the
+     * name field, and is brought up to date when a patch made through the Inventory class reaches the JavaFX
+     * Application Thread. It must only be used on that thread.
+     * @return the name as a read-only property
+     * @see Inventory#patchPart(int, java.util.function.Consumer)
+     */
+    public ReadOnlyStringProperty nameProperty() {
+        if (nameProperty == null) {
+            nameProperty = new ReadOnlyStringWrapper(this, "name", name);
+        }
+        return nameProperty.getReadOnlyProperty();
+    }
+
+    /** Gets a read-only property holding the price, for binding a table cell to. It is kept up to date the same way as
+     * nameProperty().
+     * @return the price as a read-only property
+     */
+    public ReadOnlyDoubleProperty priceProperty() {
+        if (priceProperty == null) {
+            priceProperty = new ReadOnlyDoubleWrapper(this, "price", price);
+        }
+        return priceProperty.getReadOnlyProperty();
+    }
+
+    /** Gets a read-only property holding the stock, for binding a table cell to. It is kept up to date the same way as
+     * nameProperty().
+     * @return the stock as a read-only property
+     */
+    public ReadOnlyIntegerProperty stockProperty() {
+        if (stockProperty == null) {
+            stockProperty = new ReadOnlyIntegerWrapper(this, "stock", stock);
+        }
+        return stockProperty.getReadOnlyProperty();
+    }
+
+    /** This method copies the fields of a newer version of this Part into this one and brings any properties that
+     * have been created up to date, so a table cell bound to one of them repaints only if its own field changed. The two
+     * may be the same object, in which case only the properties are updated. It must be called on the JavaFX
+     * Application Thread.
+     * @param latest the Part holding the current field values
+     * */
+    void showValuesOf(Part latest) {
+        // The fields of the stored object may be patched on another thread, so they are never written back to it
+        if (latest != this) {
+            name = latest.getName();
+            price = latest.getPrice();
+            stock = latest.getStock();
+            min = latest.getMin();
+            max = latest.getMax();
+        }
+        if (nameProperty != null) {
+            nameProperty.set(name);
+        }
+        if (priceProperty != null) {
+            priceProperty.set(price);
+        }
+        if (stockProperty != null) {
+            stockProperty.set(stock);
+        }
+    }
 }
\ No newline at end of file
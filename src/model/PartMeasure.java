@@ -0,0 +1,94 @@
+package model;
+
+/** This enum is the fields of a Part that the Inventory keeps sorted, so Parts can be looked up and counted by a
+ * range of values of any of them.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see Inventory#lookupPartsBetween(PartMeasure, double, double)
+ * */
+public enum PartMeasure {
+
+    /** The price of a Part. */
+    PRICE {
+        @Override
+        long keyOf(Part part) {
+            return priceKey(part.getPrice());
+        }
+
+        @Override
+        long keyAt(LazyRows<Part> rows, int row) {
+            return priceKey(rows.priceAt(row));
+        }
+
+        @Override
+        long lowKey(double low) {
+            return priceKey(low);
+        }
+
+        @Override
+        long highKey(double high) {
+            return priceKey(high);
+        }
+    },
+
+    /** The stock of a Part. */
+    STOCK {
+        @Override
+        long keyOf(Part part) {
+            return part.getStock();
+        }
+
+        @Override
+        long keyAt(LazyRows<Part> rows, int row) {
+            return rows.stockAt(row);
+        }
+    },
+
+    /** How much more stock a Part can take before reaching its maximum, which is its maximum less its stock. */
+    HEADROOM {
+        @Override
+        long keyOf(Part part) {
+            return (long) part.getMax() - part.getStock();
+        }
+
+        @Override
+        long keyAt(LazyRows<Part> rows, int row) {
+            return (long) rows.maxAt(row) - rows.stockAt(row);
+        }
+    };
+
+    /** This method returns the key a Part is sorted by.
+     * @param part the Part
+     * @return the key
+     * */
+    abstract long keyOf(Part part);
+
+    /** This method returns the key a snapshot row is sorted by, without building its Part.
+     * @param rows the rows
+     * @param row the row number
+     * @return the key
+     * */
+    abstract long keyAt(LazyRows<Part> rows, int row);
+
+    /** This method returns the lowest key in a range starting at a value. Whole number fields round the value up.
+     * @param low the lowest value in the range
+     * @return the key
+     * */
+    long lowKey(double low) {
+        return (long) Math.ceil(low);
+    }
+
+    /** This method returns the highest key in a range ending at a value. Whole number fields round the value down.
+     * @param high the highest value in the range
+     * @return the key
+     * */
+    long highKey(double high) {
+        return (long) Math.floor(high);
+    }
+
+    // Orders the bits of a double the same way as the numbers, with -0.0 counted as 0.0
+    private static long priceKey(double price) {
+        long bits = Double.doubleToLongBits(price + 0.0);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
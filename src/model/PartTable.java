@@ -0,0 +1,270 @@
+package model;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/** This class is the columnar stripe storage for Parts. Rather than holding one object per Part, each field is kept in
+ * its own array with one entry per row, so a Part costs its field values and very little else. Names are packed into
+ * one UTF-8 array, and company names, which are shared by many Outsourced parts, are dictionary encoded so each one
+ * is stored once. Removing a row moves the last row into its place so the columns stay dense.
+ * Reads hand back a new InHouse or Outsourced view filled in from the row. A view is a copy, so changing it does not
+ * change the table, and it stays equal to any other view of the same row until the row is replaced.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class PartTable implements StripeStorage<Part> {
+
+    private static final byte IN_HOUSE = 1;
+    private static final byte OUTSOURCED = 2;
+
+    private final IntIntIndex rowOf = new IntIntIndex();
+    private final PackedStrings names = new PackedStrings();
+    private final Dictionary companies = new Dictionary();
+    private int[] ids = new int[16];
+    private byte[] kinds = new byte[16];
+    private double[] prices = new double[16];
+    private int[] stocks = new int[16];
+    private int[] mins = new int[16];
+    private int[] maxes = new int[16];
+    private long[] nameHandles = new long[16];
+    // The machine ID of an InHouse part or the company code of an Outsourced part
+    private int[] extras = new int[16];
+    private int[] versions = new int[16];
+    private int size;
+    private int lastVersion;
+
+    @Override
+    public Part get(int id) {
+        int row = rowOf.get(id);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public Part put(int id, Part part) {
+        int row = rowOf.get(id);
+        Part previous = null;
+        if (row >= 0) {
+            previous = view(row);
+            release(row);
+        }
+        else {
+            row = size++;
+            if (row == ids.length) {
+                grow();
+            }
+            rowOf.put(id, row);
+        }
+        ids[row] = id;
+        prices[row] = part.getPrice();
+        stocks[row] = part.getStock();
+        mins[row] = part.getMin();
+        maxes[row] = part.getMax();
+        nameHandles[row] = names.add(part.getName());
+        if (part instanceof InHouse) {
+            kinds[row] = IN_HOUSE;
+            extras[row] = ((InHouse) part).getMachineId();
+        }
+        else {
+            kinds[row] = OUTSOURCED;
+            extras[row] = companies.encode(((Outsourced) part).getCompanyName());
+        }
+        versions[row] = ++lastVersion;
+        return previous;
+    }
+
+    @Override
+    public boolean isCurrent(int id, Part part) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            return false;
+        }
+        if (part instanceof InHouseView || part instanceof OutsourcedView) {
+            return versionOf(part) == versions[row];
+        }
+        // A Part that was handed to put() is never itself stored, so it is current if it still matches the row
+        return part.getPrice() == prices[row] && part.getStock() == stocks[row] && part.getMin() == mins[row]
+                && part.getMax() == maxes[row] && part.getName().equals(names.get(nameHandles[row]))
+                && (part instanceof InHouse
+                        ? kinds[row] == IN_HOUSE && ((InHouse) part).getMachineId() == extras[row]
+                        : kinds[row] == OUTSOURCED
+                                && ((Outsourced) part).getCompanyName().equals(companies.decode(extras[row])));
+    }
+
+    @Override
+    public void remove(int id) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            return;
+        }
+        release(row);
+        rowOf.remove(id);
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            kinds[row] = kinds[last];
+            prices[row] = prices[last];
+            stocks[row] = stocks[last];
+            mins[row] = mins[last];
+            maxes[row] = maxes[last];
+            nameHandles[row] = nameHandles[last];
+            extras[row] = extras[last];
+            versions[row] = versions[last];
+            rowOf.put(ids[row], row);
+        }
+    }
+
+    @Override
+    public void forEach(Consumer<? super Part> action) {
+        for (int row = 0; row < size; row++) {
+            action.accept(view(row));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Part view(int row) {
+        String name = names.get(nameHandles[row]);
+        if (kinds[row] == IN_HOUSE) {
+            return new InHouseView(this, versions[row], ids[row], name, prices[row], stocks[row], mins[row],
+                    maxes[row], extras[row]);
+        }
+        return new OutsourcedView(this, versions[row], ids[row], name, prices[row], stocks[row], mins[row],
+                maxes[row], companies.decode(extras[row]));
+    }
+
+    private int versionOf(Part part) {
+        if (part instanceof InHouseView && ((InHouseView) part).table == this) {
+            return ((InHouseView) part).version;
+        }
+        if (part instanceof OutsourcedView && ((OutsourcedView) part).table == this) {
+            return ((OutsourcedView) part).version;
+        }
+        // Version numbers start at one, so a view of another table is never current
+        return 0;
+    }
+
+    private void release(int row) {
+        names.release(nameHandles[row]);
+        if (names.needsCompacting()) {
+            // The row being released is left out so its name is dropped along with the rest
+            long kept = nameHandles[row];
+            nameHandles[row] = nameHandles[size - 1];
+            names.compact(nameHandles, size - 1);
+            nameHandles[size - 1] = nameHandles[row];
+            nameHandles[row] = kept;
+        }
+        if (kinds[row] == OUTSOURCED) {
+            companies.release(extras[row]);
+        }
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        kinds = Arrays.copyOf(kinds, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        stocks = Arrays.copyOf(stocks, capacity);
+        mins = Arrays.copyOf(mins, capacity);
+        maxes = Arrays.copyOf(maxes, capacity);
+        nameHandles = Arrays.copyOf(nameHandles, capacity);
+        extras = Arrays.copyOf(extras, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    /** This class is a copy of an InHouse row, tagged with the row's version. */
+    private static final class InHouseView extends InHouse {
+        final PartTable table;
+        final int version;
+
+        InHouseView(PartTable table, int version, int id, String name, double price, int stock, int min, int max,
+                    int machineId) {
+            super(id, name, price, stock, min, max, machineId);
+            this.table = table;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof InHouseView && ((InHouseView) other).table == table
+                    && ((InHouseView) other).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(table) + version;
+        }
+    }
+
+    /** This class is a copy of an Outsourced row, tagged with the row's version. */
+    private static final class OutsourcedView extends Outsourced {
+        final PartTable table;
+        final int version;
+
+        OutsourcedView(PartTable table, int version, int id, String name, double price, int stock, int min, int max,
+                       String companyName) {
+            super(id, name, price, stock, min, max, companyName);
+            this.table = table;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof OutsourcedView && ((OutsourcedView) other).table == table
+                    && ((OutsourcedView) other).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(table) + version;
+        }
+    }
+
+    /** This class gives each distinct company name a small code and counts the rows using it, so the name can be
+     * dropped once no row uses it.
+     * */
+    private static final class Dictionary {
+        private final Map<String, Integer> codes = new HashMap<>();
+        private String[] values = new String[4];
+        private int[] uses = new int[4];
+        private int[] freeCodes = new int[4];
+        private int freeCount;
+        private int nextCode;
+
+        int encode(String value) {
+            Integer existing = codes.get(value);
+            if (existing != null) {
+                uses[existing]++;
+                return existing;
+            }
+            int code = freeCount > 0 ? freeCodes[--freeCount] : nextCode++;
+            if (code == values.length) {
+                values = Arrays.copyOf(values, code << 1);
+                uses = Arrays.copyOf(uses, code << 1);
+            }
+            values[code] = value;
+            uses[code] = 1;
+            codes.put(value, code);
+            return code;
+        }
+
+        String decode(int code) {
+            return values[code];
+        }
+
+        void release(int code) {
+            if (--uses[code] == 0) {
+                codes.remove(values[code]);
+                values[code] = null;
+                if (freeCount == freeCodes.length) {
+                    freeCodes = Arrays.copyOf(freeCodes, freeCount << 1);
+                }
+                freeCodes[freeCount++] = code;
+            }
+        }
+    }
+}
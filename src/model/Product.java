@@ -1,21 +1,34 @@
 package model;
 
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.ReadOnlyStringProperty;
+import javafx.beans.property.ReadOnlyStringWrapper;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 
 /** This is a concrete class and is intended to be instantiated.
  * The class is supposed to represent Product objects, which have a number of descriptive attributes, as well as
- * observable list of associated parts.
+ * observable list of associated parts. The name, price and stock can also be read as JavaFX properties, which table
+ * cells bind to so that a patch to one field repaints one cell.
  * */
 public class Product {
 
-    private ObservableList<Part> associatedParts = FXCollections.observableArrayList();
+    // Created the first time a part is associated or the list is asked for, since most Products are never opened
+    private ObservableList<Part> associatedParts;
     private int id;
-    private String name;
-    private double price;
-    private int stock;
-    private int min;
-    private int max;
+    // Patched and shown on different threads in the same way as the fields of a Part
+    private volatile String name;
+    private volatile double price;
+    private volatile int stock;
+    private volatile int min;
+    private volatile int max;
+    // Created the first time a table cell asks for them, and only ever changed on the JavaFX Application Thread
+    private ReadOnlyStringWrapper nameProperty;
+    private ReadOnlyDoubleWrapper priceProperty;
+    private ReadOnlyIntegerWrapper stockProperty;
 
     /** This is the Product class constructor
      * @param id as an int
@@ -100,7 +113,7 @@ public class Product {
      * @param part the part to be added
      * */
     public void addAssociatedPart(Part part) {
-        associatedParts.add(part);
+        getAllAssociatedParts().add(part);
     }
 
     /** This method deletes a part from the object's observable list of parts
@@ -108,7 +121,7 @@ public class Product {
      * @return boolean returns true of the remove() call was successful
      * */
     public boolean deleteAssociatedPart(Part selectedAssociated) {
-        boolean wasRemoved = associatedParts.remove(selectedAssociated);
+        boolean wasRemoved = associatedParts != null && associatedParts.remove(selectedAssociated);
         return wasRemoved;
     }
 
@@ -116,6 +129,70 @@ public class Product {
      * @return associated parts list
      * */
     public ObservableList<Part> getAllAssociatedParts() {
+        if (associatedParts == null) {
+            associatedParts = FXCollections.observableArrayList();
+        }
         return associatedParts;
     }
+
+    /** Gets a read-only property holding the name, for binding a table cell to. The property starts out holding the
+     * name field, and is brought up to date when a patch made through the Inventory class reaches the JavaFX
+     * Application Thread. It must only be used on that thread.
+     * @return the name as a read-only property
+     * @see Inventory#patchProduct(int, java.util.function.Consumer)
+     */
+    public ReadOnlyStringProperty nameProperty() {
+        if (nameProperty == null) {
+            nameProperty = new ReadOnlyStringWrapper(this, "name", name);
+        }
+        return nameProperty.getReadOnlyProperty();
+    }
+
+    /** Gets a read-only property holding the price, for binding a table cell to. It is kept up to date the same way as
+     * nameProperty().
+     * @return the price as a read-only property
+     */
+    public ReadOnlyDoubleProperty priceProperty() {
+        if (priceProperty == null) {
+            priceProperty = new ReadOnlyDoubleWrapper(this, "price", price);
+        }
+        return priceProperty.getReadOnlyProperty();
+    }
+
+    /** Gets a read-only property holding the stock, for binding a table cell to. It is kept up to date the same way as
+     * nameProperty().
+     * @return the stock as a read-only property
+     */
+    public ReadOnlyIntegerProperty stockProperty() {
+        if (stockProperty == null) {
+            stockProperty = new ReadOnlyIntegerWrapper(this, "stock", stock);
+        }
+        return stockProperty.getReadOnlyProperty();
+    }
+
+    /** This method copies the fields of a newer version of this Product into this one and brings any properties that
+     * have been created up to date, so a table cell bound to one of them repaints only if its own field changed. The two
+     * may be the same object, in which case only the properties are updated. It must be called on the JavaFX
+     * Application Thread.
+     * @param latest the Product holding the current field values
+     * */
+    void showValuesOf(Product latest) {
+        // The fields of the stored object may be patched on another thread, so they are never written back to it
+        if (latest != this) {
+            name = latest.getName();
+            price = latest.getPrice();
+            stock = latest.getStock();
+            min = latest.getMin();
+            max = latest.getMax();
+        }
+        if (nameProperty != null) {
+            nameProperty.set(name);
+        }
+        if (priceProperty != null) {
+            priceProperty.set(price);
+        }
+        if (stockProperty != null) {
+            stockProperty.set(stock);
+        }
+    }
 }
\ No newline at end of file
@@ -0,0 +1,195 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/** This class is the columnar stripe storage for Products, laid out the same way as PartTable. Each Product's
+ * associated parts are kept as an array of part IDs rather than an observable list of Parts, and are looked up again
+ * whenever a view of the Product is handed back, so they always resolve to the Parts currently stored under those
+ * IDs. Associated parts that no longer exist are left out of the view.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see PartTable
+ * */
+final class ProductTable implements StripeStorage<Product> {
+
+    private static final int[] NO_PARTS = new int[0];
+
+    private final IntFunction<Part> partLookup;
+    private final IntIntIndex rowOf = new IntIntIndex();
+    private final PackedStrings names = new PackedStrings();
+    private int[] ids = new int[16];
+    private double[] prices = new double[16];
+    private int[] stocks = new int[16];
+    private int[] mins = new int[16];
+    private int[] maxes = new int[16];
+    private long[] nameHandles = new long[16];
+    private int[][] partIds = new int[16][];
+    private int[] versions = new int[16];
+    private int size;
+    private int lastVersion;
+
+    /** This is the ProductTable class constructor.
+     * @param partLookup finds a Part by ID, returning null for a Part that no longer exists
+     * */
+    ProductTable(IntFunction<Part> partLookup) {
+        this.partLookup = partLookup;
+    }
+
+    @Override
+    public Product get(int id) {
+        int row = rowOf.get(id);
+        return row < 0 ? null : view(row);
+    }
+
+    @Override
+    public Product put(int id, Product product) {
+        int row = rowOf.get(id);
+        Product previous = null;
+        if (row >= 0) {
+            previous = view(row);
+            release(row);
+        }
+        else {
+            row = size++;
+            if (row == ids.length) {
+                grow();
+            }
+            rowOf.put(id, row);
+        }
+        ids[row] = id;
+        prices[row] = product.getPrice();
+        stocks[row] = product.getStock();
+        mins[row] = product.getMin();
+        maxes[row] = product.getMax();
+        nameHandles[row] = names.add(product.getName());
+        List<Part> associated = product.getAllAssociatedParts();
+        int[] associatedIds = associated.isEmpty() ? NO_PARTS : new int[associated.size()];
+        for (int i = 0; i < associatedIds.length; i++) {
+            associatedIds[i] = associated.get(i).getId();
+        }
+        partIds[row] = associatedIds;
+        versions[row] = ++lastVersion;
+        return previous;
+    }
+
+    @Override
+    public boolean isCurrent(int id, Product product) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            return false;
+        }
+        if (product instanceof ProductView) {
+            return ((ProductView) product).table == this && ((ProductView) product).version == versions[row];
+        }
+        // A Product that was handed to put() is never itself stored, so it is current if it still matches the row
+        List<Part> associated = product.getAllAssociatedParts();
+        if (product.getPrice() != prices[row] || product.getStock() != stocks[row] || product.getMin() != mins[row]
+                || product.getMax() != maxes[row] || !product.getName().equals(names.get(nameHandles[row]))
+                || associated.size() != partIds[row].length) {
+            return false;
+        }
+        for (int i = 0; i < partIds[row].length; i++) {
+            if (associated.get(i).getId() != partIds[row][i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void remove(int id) {
+        int row = rowOf.get(id);
+        if (row < 0) {
+            return;
+        }
+        release(row);
+        rowOf.remove(id);
+        int last = --size;
+        if (row != last) {
+            ids[row] = ids[last];
+            prices[row] = prices[last];
+            stocks[row] = stocks[last];
+            mins[row] = mins[last];
+            maxes[row] = maxes[last];
+            nameHandles[row] = nameHandles[last];
+            partIds[row] = partIds[last];
+            versions[row] = versions[last];
+            rowOf.put(ids[row], row);
+        }
+        partIds[last] = null;
+    }
+
+    @Override
+    public void forEach(Consumer<? super Product> action) {
+        for (int row = 0; row < size; row++) {
+            action.accept(view(row));
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    private Product view(int row) {
+        Product product = new ProductView(this, versions[row], ids[row], names.get(nameHandles[row]), prices[row],
+                stocks[row], mins[row], maxes[row]);
+        for (int partId : partIds[row]) {
+            Part part = partLookup.apply(partId);
+            if (part != null) {
+                product.addAssociatedPart(part);
+            }
+        }
+        return product;
+    }
+
+    private void release(int row) {
+        names.release(nameHandles[row]);
+        if (names.needsCompacting()) {
+            // The row being released is left out so its name is dropped along with the rest
+            long kept = nameHandles[row];
+            nameHandles[row] = nameHandles[size - 1];
+            names.compact(nameHandles, size - 1);
+            nameHandles[size - 1] = nameHandles[row];
+            nameHandles[row] = kept;
+        }
+    }
+
+    private void grow() {
+        int capacity = ids.length + (ids.length >> 1);
+        ids = Arrays.copyOf(ids, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        stocks = Arrays.copyOf(stocks, capacity);
+        mins = Arrays.copyOf(mins, capacity);
+        maxes = Arrays.copyOf(maxes, capacity);
+        nameHandles = Arrays.copyOf(nameHandles, capacity);
+        partIds = Arrays.copyOf(partIds, capacity);
+        versions = Arrays.copyOf(versions, capacity);
+    }
+
+    /** This class is a copy of a Product row, tagged with the row's version. */
+    private static final class ProductView extends Product {
+        final ProductTable table;
+        final int version;
+
+        ProductView(ProductTable table, int version, int id, String name, double price, int stock, int min, int max) {
+            super(id, name, price, stock, min, max);
+            this.table = table;
+            this.version = version;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ProductView && ((ProductView) other).table == table
+                    && ((ProductView) other).version == version;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * System.identityHashCode(table) + version;
+        }
+    }
+}
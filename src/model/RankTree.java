@@ -0,0 +1,342 @@
+package model;
+
+import java.util.Arrays;
+
+/** This class keeps IDs sorted by a long key, with ties broken by ID, and answers how many keys fall in a range, and
+ * which IDs they belong to, in logarithmic time. It is a treap, a binary search tree kept balanced by giving each node a
+ * random priority that must never be higher than its parent's, and every node also holds the size of its subtree, so
+ * the number of entries before any key is found on one walk down the tree. Nodes are kept in parallel primitive arrays
+ * rather than as objects, with node 0 standing for an empty subtree, and an IntIntIndex finds the node holding each ID.
+ * This class is not thread safe and is only meant to be used from inside the Inventory class.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see IntIntIndex
+ * */
+final class RankTree {
+
+    private static final int NIL = 0;
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private long[] keys = new long[DEFAULT_CAPACITY];
+    private int[] ids = new int[DEFAULT_CAPACITY];
+    private int[] left = new int[DEFAULT_CAPACITY];
+    private int[] right = new int[DEFAULT_CAPACITY];
+    private int[] sizes = new int[DEFAULT_CAPACITY];
+    private int[] priorities = new int[DEFAULT_CAPACITY];
+    private final IntIntIndex nodeOf = new IntIntIndex();
+    private int root = NIL;
+    // Nodes below this have been used. Removed nodes are chained through left[] for reuse
+    private int used = 1;
+    private int freeList = NIL;
+    private int seed = 0x2545F491;
+    // The two halves handed back by split()
+    private int splitLeft;
+    private int splitRight;
+
+    /** This method returns the number of IDs in the tree.
+     * @return the number of entries
+     * */
+    int size() {
+        return sizes[root];
+    }
+
+    /** This method stores an ID under a key, moving it if it was stored under another key.
+     * @param id the ID to store
+     * @param key the key to sort the ID by
+     * */
+    void put(int id, long key) {
+        int node = nodeOf.get(id);
+        if (node > 0) {
+            if (keys[node] == key) {
+                return;
+            }
+            remove(id);
+        }
+        node = allocate(id, key);
+        nodeOf.put(id, node);
+        split(root, key, id);
+        int greater = splitRight;
+        root = merge(merge(splitLeft, node), greater);
+    }
+
+    /** This method fills an empty tree with many IDs at once, such as from a snapshot, which is much quicker than
+     * putting them one at a time. The entries are sorted with a radix sort and the tree is built balanced, with
+     * priorities spread evenly over the whole range of an int and handed out from the highest down a level at a time,
+     * so that every parent outranks its children.
+     * @param newIds the IDs to store, in ascending order with no repeats
+     * @param newKeys the key to sort the ID at the same position by
+     * */
+    void load(int[] newIds, long[] newKeys) {
+        if (size() > 0) {
+            for (int i = 0; i < newIds.length; i++) {
+                put(newIds[i], newKeys[i]);
+            }
+            return;
+        }
+        int count = newIds.length;
+        if (count == 0) {
+            return;
+        }
+        if (keys.length <= count) {
+            grow(Integer.highestOneBit(count) << 1);
+        }
+        int[] order = sortedOrder(newKeys);
+        for (int i = 0; i < count; i++) {
+            int node = i + 1;
+            keys[node] = newKeys[order[i]];
+            ids[node] = newIds[order[i]];
+            nodeOf.put(ids[node], node);
+        }
+        used = count + 1;
+        root = build(1, count);
+        int[] queue = new int[count];
+        queue[0] = root;
+        for (int head = 0, tail = 1; head < count; head++) {
+            int node = queue[head];
+            priorities[node] = (int) (Integer.MAX_VALUE - ((long) head << 32) / count);
+            if (left[node] != NIL) {
+                queue[tail++] = left[node];
+            }
+            if (right[node] != NIL) {
+                queue[tail++] = right[node];
+            }
+        }
+    }
+
+    /** This method removes an ID from the tree.
+     * @param id the ID to remove
+     * */
+    void remove(int id) {
+        int node = nodeOf.get(id);
+        if (node <= 0) {
+            return;
+        }
+        nodeOf.remove(id);
+        split(root, keys[node], id);
+        int less = splitLeft;
+        // The node is the first entry of the right half, since nothing else shares both its key and its ID
+        root = merge(less, removeFirst(splitRight));
+        left[node] = freeList;
+        freeList = node;
+    }
+
+    /** This method counts the IDs stored under keys in a range.
+     * @param low the lowest key in the range
+     * @param high the highest key in the range
+     * @return the number of IDs with keys from low to high inclusive
+     * */
+    int count(long low, long high) {
+        return low > high ? 0 : countBelow(high, true) - countBelow(low, false);
+    }
+
+    /** This method returns the IDs stored under keys in a range.
+     * @param low the lowest key in the range
+     * @param high the highest key in the range
+     * @param limit the most IDs to return
+     * @return the IDs with keys from low to high inclusive, in ascending order of key and then ID
+     * */
+    int[] between(long low, long high, int limit) {
+        if (low > high) {
+            return new int[0];
+        }
+        int from = countBelow(low, false);
+        int to = countBelow(high, true);
+        return collect(from, to - from > limit ? from + Math.max(0, limit) : to);
+    }
+
+    /** This method returns the IDs with the lowest keys.
+     * @param count the number of IDs to return
+     * @return up to count IDs in ascending order of key and then ID
+     * */
+    int[] lowest(int count) {
+        return collect(0, Math.min(size(), Math.max(0, count)));
+    }
+
+    /** This method returns the IDs with the highest keys.
+     * @param count the number of IDs to return
+     * @return up to count IDs in descending order of key and then ID
+     * */
+    int[] highest(int count) {
+        int[] found = collect(Math.max(0, size() - Math.max(0, count)), size());
+        for (int i = 0, j = found.length - 1; i < j; i++, j--) {
+            int swap = found[i];
+            found[i] = found[j];
+            found[j] = swap;
+        }
+        return found;
+    }
+
+    // Counts the entries with keys below a key, or at or below it if inclusive is set
+    private int countBelow(long key, boolean inclusive) {
+        int count = 0;
+        int node = root;
+        while (node != NIL) {
+            if (keys[node] < key || (inclusive && keys[node] == key)) {
+                count += sizes[left[node]] + 1;
+                node = right[node];
+            }
+            else {
+                node = left[node];
+            }
+        }
+        return count;
+    }
+
+    // Returns the IDs ranked from (inclusive) to to (exclusive), visiting only the nodes on the way
+    private int[] collect(int from, int to) {
+        int[] found = new int[Math.max(0, to - from)];
+        if (found.length > 0) {
+            collect(root, 0, from, to, found);
+        }
+        return found;
+    }
+
+    private void collect(int node, int offset, int from, int to, int[] found) {
+        if (node == NIL || offset >= to || offset + sizes[node] <= from) {
+            return;
+        }
+        int rank = offset + sizes[left[node]];
+        collect(left[node], offset, from, to, found);
+        if (rank >= from && rank < to) {
+            found[rank - from] = ids[node];
+        }
+        collect(right[node], rank + 1, from, to, found);
+    }
+
+    // Links the sorted nodes first to last into a balanced subtree and returns its root
+    private int build(int first, int last) {
+        if (first > last) {
+            return NIL;
+        }
+        int middle = (first + last) >>> 1;
+        left[middle] = build(first, middle - 1);
+        right[middle] = build(middle + 1, last);
+        resize(middle);
+        return middle;
+    }
+
+    // Sorts positions by key, 16 bits at a time from the lowest, skipping the digits every key shares. Each pass is
+    // stable, so positions with the same key stay in ascending order
+    private static int[] sortedOrder(long[] sortKeys) {
+        int count = sortKeys.length;
+        int[] order = new int[count];
+        int[] sorted = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        int[] starts = new int[(1 << 16) + 1];
+        for (int shift = 0; shift < 64; shift += 16) {
+            Arrays.fill(starts, 0);
+            for (long key : sortKeys) {
+                starts[digit(key, shift) + 1]++;
+            }
+            if (starts[digit(sortKeys[0], shift) + 1] == count) {
+                continue;
+            }
+            for (int digit = 0; digit < 1 << 16; digit++) {
+                starts[digit + 1] += starts[digit];
+            }
+            for (int position : order) {
+                sorted[starts[digit(sortKeys[position], shift)]++] = position;
+            }
+            int[] swap = order;
+            order = sorted;
+            sorted = swap;
+        }
+        return order;
+    }
+
+    // Flipping the sign bit makes the keys sort as unsigned numbers in the same order as they do signed
+    private static int digit(long key, int shift) {
+        return (int) ((key ^ Long.MIN_VALUE) >>> shift) & 0xFFFF;
+    }
+
+    // Splits a subtree into the entries before (key, id), left in splitLeft, and the rest, left in splitRight
+    private void split(int node, long key, int id) {
+        if (node == NIL) {
+            splitLeft = NIL;
+            splitRight = NIL;
+            return;
+        }
+        if (keys[node] < key || (keys[node] == key && ids[node] < id)) {
+            split(right[node], key, id);
+            right[node] = splitLeft;
+            resize(node);
+            splitLeft = node;
+        }
+        else {
+            split(left[node], key, id);
+            left[node] = splitRight;
+            resize(node);
+            splitRight = node;
+        }
+    }
+
+    // Joins two subtrees where every entry of the first comes before every entry of the second
+    private int merge(int first, int second) {
+        if (first == NIL) {
+            return second;
+        }
+        if (second == NIL) {
+            return first;
+        }
+        if (priorities[first] > priorities[second]) {
+            right[first] = merge(right[first], second);
+            resize(first);
+            return first;
+        }
+        left[second] = merge(first, left[second]);
+        resize(second);
+        return second;
+    }
+
+    private int removeFirst(int node) {
+        if (left[node] == NIL) {
+            return right[node];
+        }
+        left[node] = removeFirst(left[node]);
+        resize(node);
+        return node;
+    }
+
+    private void resize(int node) {
+        sizes[node] = sizes[left[node]] + sizes[right[node]] + 1;
+    }
+
+    private int allocate(int id, long key) {
+        int node = freeList;
+        if (node != NIL) {
+            freeList = left[node];
+        }
+        else {
+            if (used == keys.length) {
+                grow(keys.length << 1);
+            }
+            node = used++;
+        }
+        keys[node] = key;
+        ids[node] = id;
+        left[node] = NIL;
+        right[node] = NIL;
+        sizes[node] = 1;
+        priorities[node] = nextPriority();
+        return node;
+    }
+
+    // Xorshift gives each node a random priority without sharing a Random between trees
+    private int nextPriority() {
+        seed ^= seed << 13;
+        seed ^= seed >>> 17;
+        seed ^= seed << 5;
+        return seed;
+    }
+
+    private void grow(int capacity) {
+        keys = Arrays.copyOf(keys, capacity);
+        ids = Arrays.copyOf(ids, capacity);
+        left = Arrays.copyOf(left, capacity);
+        right = Arrays.copyOf(right, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        priorities = Arrays.copyOf(priorities, capacity);
+    }
+}
@@ -0,0 +1,681 @@
+package model;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/** This class splits the raw bytes of an import file into records and each record into fields, without turning the
+ * bytes into Strings until a field is actually read as text. Numbers are read straight from the bytes. There is one
+ * parser for CSV, which uses the same columns as the SnapshotConverter CSV files, and one for JSON, which reads an array
+ * of flat objects or one object per line and maps each key onto the same columns.
+ * A parser also finds where a buffer can be cut so that no record is split between two chunks, which lets chunks be
+ * parsed on different threads. A parser is not thread safe, so each thread uses its own.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see InventoryImporter
+ * */
+abstract class RecordParser {
+
+    /** Part and Product column holding the ID. */
+    static final int ID = 0;
+    /** Part and Product column holding the name. */
+    static final int NAME = 1;
+    /** Part and Product column holding the price. */
+    static final int PRICE = 2;
+    /** Part and Product column holding the stock. */
+    static final int STOCK = 3;
+    /** Part and Product column holding the minimum. */
+    static final int MIN = 4;
+    /** Part and Product column holding the maximum. */
+    static final int MAX = 5;
+    /** Part column holding InHouse or Outsourced, and Product column holding the associated part IDs. */
+    static final int TYPE = 6;
+    /** Product column holding the associated part IDs. */
+    static final int PARTS = 6;
+    /** Part column holding the machine ID or company name. */
+    static final int SOURCE = 7;
+
+    /** Type hint for a Part whose source was given as a machine ID. */
+    static final byte IN_HOUSE = 1;
+    /** Type hint for a Part whose source was given as a company name. */
+    static final byte OUTSOURCED = 2;
+
+    private static final double[] POWERS_OF_TEN = new double[23];
+
+    static {
+        POWERS_OF_TEN[0] = 1;
+        for (int i = 1; i < POWERS_OF_TEN.length; i++) {
+            POWERS_OF_TEN[i] = POWERS_OF_TEN[i - 1] * 10;
+        }
+    }
+
+    final Fields fields;
+    // The line of the file at the position the parser has reached
+    long line;
+
+    RecordParser(int columns) {
+        fields = new Fields(columns);
+    }
+
+    /** This method gets the parser ready to read a new chunk.
+     * @param firstLine the line of the file the chunk starts on, counting from 1
+     * */
+    void startChunk(long firstLine) {
+        line = firstLine;
+    }
+
+    /** This method creates a parser for a file format.
+     * @param json true for JSON, false for CSV
+     * @param products true if the records are Products rather than Parts
+     * @return the new parser
+     * */
+    static RecordParser create(boolean json, boolean products) {
+        return json ? new Json(products) : new Csv(products ? 7 : 8);
+    }
+
+    /** This method returns the end of the last complete record in a buffer, so the buffer can be cut there. It is
+     * called on buffers in file order, and each call starts where the previous cut was made.
+     * @param data the buffer
+     * @param length the number of bytes in the buffer
+     * @return the position just after the last complete record, or 0 if the buffer holds no complete record
+     * */
+    abstract int lastBoundary(byte[] data, int length);
+
+    /** This method finds the next record in a chunk and splits it into the fields.
+     * @param data the chunk
+     * @param from the position to start looking from
+     * @param length the number of bytes in the chunk
+     * @return the position after the record, or -1 if the chunk holds no more records
+     * @throws RowException if the record cannot be split into fields, in which case the fields still hold its line and
+     * the exception holds the position after it, so the caller can carry on from there
+     * */
+    abstract int next(byte[] data, int from, int length) throws RowException;
+
+    /** This class is a record that could not be imported, with a reason meant to be shown to the user. */
+    static final class RowException extends Exception {
+        private static final long serialVersionUID = 1L;
+        final int resumeAt;
+
+        RowException(String message) {
+            this(message, -1);
+        }
+
+        RowException(String message, int resumeAt) {
+            // Bad rows can be common in a large file, so no stack trace is filled in
+            super(message, null, false, false);
+            this.resumeAt = resumeAt;
+        }
+    }
+
+    /** This class holds the fields of the current record as positions in the chunk, and reads them as text or
+     * numbers on request.
+     * */
+    static final class Fields {
+        private final int[] starts;
+        private final int[] ends;
+        private final boolean[] escaped;
+        private byte[] data;
+        private boolean json;
+        /** The line of the file the current record starts on. */
+        long line;
+        /** The IN_HOUSE or OUTSOURCED hint given by the key a JSON source was stored under, or 0. */
+        byte typeHint;
+
+        Fields(int columns) {
+            starts = new int[columns];
+            ends = new int[columns];
+            escaped = new boolean[columns];
+        }
+
+        void start(byte[] data, boolean json) {
+            this.data = data;
+            this.json = json;
+            for (int i = 0; i < starts.length; i++) {
+                starts[i] = -1;
+            }
+            typeHint = 0;
+        }
+
+        void set(int column, int start, int end, boolean needsUnescaping) {
+            while (start < end && data[start] == ' ') {
+                start++;
+            }
+            while (end > start && data[end - 1] == ' ') {
+                end--;
+            }
+            starts[column] = start;
+            ends[column] = end;
+            escaped[column] = needsUnescaping;
+        }
+
+        /** This method tells whether a field is missing or empty.
+         * @param column the field's column
+         * @return true if there is nothing in the field
+         * */
+        boolean isBlank(int column) {
+            return starts[column] < 0 || starts[column] == ends[column];
+        }
+
+        /** This method reads a field as text.
+         * @param column the field's column
+         * @return the text, or an empty String if the field is missing
+         * */
+        String text(int column) {
+            if (starts[column] < 0) {
+                return "";
+            }
+            if (!escaped[column]) {
+                return new String(data, starts[column], ends[column] - starts[column], StandardCharsets.UTF_8);
+            }
+            return json ? unescapeJson(starts[column], ends[column]) : unescapeCsv(starts[column], ends[column]);
+        }
+
+        /** This method tells whether a field holds a word, ignoring case, without turning the field into a String.
+         * @param column the field's column
+         * @param word the word, in ASCII
+         * @return true if the field holds exactly that word
+         * */
+        boolean matches(int column, String word) {
+            int start = starts[column];
+            if (start < 0 || ends[column] - start != word.length()) {
+                return false;
+            }
+            for (int i = 0; i < word.length(); i++) {
+                if (Character.toLowerCase((char) data[start + i]) != Character.toLowerCase(word.charAt(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /** This method reads a field as a whole number.
+         * @param column the field's column
+         * @param label the field's name for the error message
+         * @return the number
+         * @throws RowException if the field is not a whole number
+         * */
+        int intValue(int column, String label) throws RowException {
+            int start = starts[column];
+            int end = ends[column];
+            if (start < 0 || start == end) {
+                throw new RowException(label + " is blank");
+            }
+            boolean negative = data[start] == '-';
+            int i = negative ? start + 1 : start;
+            if (i == end || end - i > 10) {
+                throw notA(label, "whole number", column);
+            }
+            long value = 0;
+            for (; i < end; i++) {
+                int digit = data[i] - '0';
+                if (digit < 0 || digit > 9) {
+                    throw notA(label, "whole number", column);
+                }
+                value = value * 10 + digit;
+            }
+            value = negative ? -value : value;
+            if (value != (int) value) {
+                throw notA(label, "whole number", column);
+            }
+            return (int) value;
+        }
+
+        /** This method reads a field as a number.
+         * @param column the field's column
+         * @param label the field's name for the error message
+         * @return the number
+         * @throws RowException if the field is not a number
+         * */
+        double doubleValue(int column, String label) throws RowException {
+            int start = starts[column];
+            int end = ends[column];
+            if (start < 0 || start == end) {
+                throw new RowException(label + " is blank");
+            }
+            // Plain decimals with up to 15 digits are exact as a long and a power of ten, so one division rounds them
+            // exactly as Double.parseDouble() would. Anything else goes to Double.parseDouble()
+            int i = data[start] == '-' ? start + 1 : start;
+            long mantissa = 0;
+            int digits = 0;
+            int decimals = -1;
+            for (; i < end; i++) {
+                byte b = data[i];
+                if (b >= '0' && b <= '9') {
+                    mantissa = mantissa * 10 + (b - '0');
+                    digits++;
+                    if (decimals >= 0) {
+                        decimals++;
+                    }
+                }
+                else if (b == '.' && decimals < 0) {
+                    decimals = 0;
+                }
+                else {
+                    break;
+                }
+            }
+            if (i == end && digits > 0 && digits <= 15) {
+                double value = decimals > 0 ? mantissa / POWERS_OF_TEN[decimals] : mantissa;
+                return data[start] == '-' ? -value : value;
+            }
+            try {
+                double value = Double.parseDouble(text(column));
+                if (Double.isNaN(value) || Double.isInfinite(value)) {
+                    throw notA(label, "number", column);
+                }
+                return value;
+            }
+            catch (NumberFormatException exception) {
+                throw notA(label, "number", column);
+            }
+        }
+
+        /** This method reads a field as a list of whole numbers, separated by semicolons, commas or spaces and
+         * optionally wrapped in square brackets.
+         * @param column the field's column
+         * @param label the field's name for the error message
+         * @return the numbers, which may be none
+         * @throws RowException if the field holds anything else
+         * */
+        int[] intList(int column, String label) throws RowException {
+            int start = starts[column];
+            int end = ends[column];
+            if (start < 0) {
+                return new int[0];
+            }
+            int[] values = new int[4];
+            int count = 0;
+            long value = -1;
+            for (int i = start; i <= end; i++) {
+                byte b = i < end ? data[i] : (byte) ';';
+                if (b >= '0' && b <= '9') {
+                    value = (value < 0 ? 0 : value * 10) + (b - '0');
+                    if (value > Integer.MAX_VALUE) {
+                        throw notA(label, "list of IDs", column);
+                    }
+                }
+                else if (b == ';' || b == ',' || b == ' ' || b == '[' || b == ']') {
+                    if (value >= 0) {
+                        if (count == values.length) {
+                            values = Arrays.copyOf(values, count * 2);
+                        }
+                        values[count++] = (int) value;
+                        value = -1;
+                    }
+                }
+                else {
+                    throw notA(label, "list of IDs", column);
+                }
+            }
+            return Arrays.copyOf(values, count);
+        }
+
+        private RowException notA(String label, String kind, int column) {
+            return new RowException(label + " \"" + text(column) + "\" is not a " + kind);
+        }
+
+        private String unescapeCsv(int start, int end) {
+            String raw = new String(data, start, end - start, StandardCharsets.UTF_8);
+            return raw.replace("\"\"", "\"");
+        }
+
+        private String unescapeJson(int start, int end) {
+            String raw = new String(data, start, end - start, StandardCharsets.UTF_8);
+            StringBuilder text = new StringBuilder(raw.length());
+            for (int i = 0; i < raw.length(); i++) {
+                char c = raw.charAt(i);
+                if (c != '\\' || i + 1 == raw.length()) {
+                    text.append(c);
+                    continue;
+                }
+                char escape = raw.charAt(++i);
+                switch (escape) {
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'u':
+                        if (i + 4 < raw.length()) {
+                            try {
+                                text.append((char) Integer.parseInt(raw.substring(i + 1, i + 5), 16));
+                                i += 4;
+                                break;
+                            }
+                            catch (NumberFormatException exception) {
+                                // Kept as it was written
+                            }
+                        }
+                        text.append("\\u");
+                        break;
+                    default:
+                        text.append(escape);
+                }
+            }
+            return text.toString();
+        }
+    }
+
+    /** This class parses CSV records, one per line, with fields quoted as usual when they hold commas or quotes. A
+     * first line starting with "id" is taken to be a header.
+     * */
+    private static final class Csv extends RecordParser {
+        private final int columns;
+
+        Csv(int columns) {
+            super(columns);
+            this.columns = columns;
+        }
+
+        @Override
+        int lastBoundary(byte[] data, int length) {
+            for (int i = length - 1; i >= 0; i--) {
+                if (data[i] == '\n') {
+                    return i + 1;
+                }
+            }
+            return 0;
+        }
+
+        @Override
+        int next(byte[] data, int from, int length) throws RowException {
+            int lineEnd = from;
+            // Blank lines and the header are skipped
+            while (true) {
+                if (from >= length) {
+                    return -1;
+                }
+                lineEnd = from;
+                while (lineEnd < length && data[lineEnd] != '\n') {
+                    lineEnd++;
+                }
+                int end = lineEnd > from && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+                boolean blank = true;
+                for (int i = from; i < end && blank; i++) {
+                    blank = data[i] == ' ' || data[i] == '\t';
+                }
+                boolean header = line == 1 && end - from >= 2 && (data[from] | 0x20) == 'i'
+                        && (data[from + 1] | 0x20) == 'd';
+                if (!blank && !header) {
+                    break;
+                }
+                line++;
+                from = lineEnd + 1;
+            }
+            int end = lineEnd > from && data[lineEnd - 1] == '\r' ? lineEnd - 1 : lineEnd;
+            int resumeAt = lineEnd + 1;
+            fields.line = line++;
+            fields.start(data, false);
+            int column = 0;
+            int i = from;
+            while (true) {
+                if (column == columns) {
+                    throw new RowException("There are more than " + columns + " fields", resumeAt);
+                }
+                if (i < end && data[i] == '"') {
+                    int start = ++i;
+                    boolean escaped = false;
+                    while (true) {
+                        if (i >= end) {
+                            throw new RowException("A quoted field is not closed", resumeAt);
+                        }
+                        if (data[i] == '"') {
+                            if (i + 1 < end && data[i + 1] == '"') {
+                                escaped = true;
+                                i += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        i++;
+                    }
+                    fields.set(column++, start, i, escaped);
+                    i++;
+                    if (i < end && data[i] != ',') {
+                        throw new RowException("A quoted field is followed by more text", resumeAt);
+                    }
+                }
+                else {
+                    int start = i;
+                    while (i < end && data[i] != ',') {
+                        i++;
+                    }
+                    fields.set(column++, start, i, false);
+                }
+                if (i >= end) {
+                    break;
+                }
+                i++;
+            }
+            if (column != columns) {
+                throw new RowException("There are " + column + " fields but " + columns + " were expected", resumeAt);
+            }
+            return resumeAt;
+        }
+    }
+
+    /** This class parses JSON records, which are flat objects either inside one top-level array or written one after
+     * another. Keys it does not know are ignored, and a Part's source may be given as machineId or companyName, which
+     * also tells its type when no type is given.
+     * */
+    private static final class Json extends RecordParser {
+        private static final byte[][] KEYS = {bytes("id"), bytes("name"), bytes("price"), bytes("stock"),
+                bytes("min"), bytes("max"), bytes("type"), bytes("machineId"), bytes("companyName"), bytes("source"),
+                bytes("parts")};
+        private static final int MACHINE_ID_KEY = 7;
+        private static final int COMPANY_NAME_KEY = 8;
+        private static final int[] PART_COLUMNS = {ID, NAME, PRICE, STOCK, MIN, MAX, TYPE, SOURCE, SOURCE, SOURCE, -1};
+        private static final int[] PRODUCT_COLUMNS = {ID, NAME, PRICE, STOCK, MIN, MAX, -1, -1, -1, -1, PARTS};
+
+        private final int[] columnsByKey;
+        // Where lastBoundary() has scanned up to, carried from one buffer to the next
+        private int depth;
+        private boolean inString;
+        private boolean escape;
+
+        Json(boolean products) {
+            super(products ? 7 : 8);
+            columnsByKey = products ? PRODUCT_COLUMNS : PART_COLUMNS;
+        }
+
+        private static byte[] bytes(String key) {
+            return key.getBytes(StandardCharsets.US_ASCII);
+        }
+
+        // An object ends a record when its closing brace brings the nesting back to the top-level array or below
+        @Override
+        int lastBoundary(byte[] data, int length) {
+            int cut = 0;
+            int depthAtCut = depth;
+            for (int i = 0; i < length; i++) {
+                byte b = data[i];
+                if (inString) {
+                    if (escape) {
+                        escape = false;
+                    }
+                    else if (b == '\\') {
+                        escape = true;
+                    }
+                    else if (b == '"') {
+                        inString = false;
+                    }
+                }
+                else if (b == '"') {
+                    inString = true;
+                }
+                else if (b == '{' || b == '[') {
+                    depth++;
+                }
+                else if (b == '}' || b == ']') {
+                    depth--;
+                    if (b == '}' && depth <= 1) {
+                        cut = i + 1;
+                        depthAtCut = depth;
+                    }
+                }
+            }
+            // The bytes after the cut are scanned again at the start of the next buffer
+            depth = depthAtCut;
+            inString = false;
+            escape = false;
+            return cut;
+        }
+
+        @Override
+        int next(byte[] data, int from, int length) throws RowException {
+            int i = from;
+            while (i < length && data[i] != '{') {
+                byte b = data[i];
+                if (b == '\n') {
+                    line++;
+                }
+                else if (b != ' ' && b != '\t' && b != '\r' && b != ',' && b != '[' && b != ']') {
+                    fields.line = line;
+                    int resumeAt = i;
+                    while (resumeAt < length && data[resumeAt] != '{' && data[resumeAt] != '\n') {
+                        resumeAt++;
+                    }
+                    throw new RowException("Expected an object but found '" + (char) b + "'", resumeAt);
+                }
+                i++;
+            }
+            if (i >= length) {
+                return -1;
+            }
+            fields.line = line;
+            int objectEnd = closingBrace(data, i + 1, length);
+            fields.start(data, true);
+            i++;
+            while (true) {
+                i = skipSpace(data, i, objectEnd);
+                if (i < objectEnd && data[i] == '}') {
+                    return objectEnd;
+                }
+                if (i >= objectEnd || data[i] != '"') {
+                    throw new RowException("Expected a key", objectEnd);
+                }
+                int keyStart = ++i;
+                while (i < objectEnd && data[i] != '"') {
+                    i++;
+                }
+                int key = keyIndex(data, keyStart, i);
+                i = skipSpace(data, i + 1, objectEnd);
+                if (i >= objectEnd || data[i] != ':') {
+                    throw new RowException("Expected ':' after a key", objectEnd);
+                }
+                i = skipSpace(data, i + 1, objectEnd);
+                int valueStart;
+                int valueEnd;
+                boolean escaped = false;
+                if (i < objectEnd && data[i] == '"') {
+                    valueStart = ++i;
+                    while (i < objectEnd && data[i] != '"') {
+                        if (data[i] == '\\') {
+                            escaped = true;
+                            i++;
+                        }
+                        i++;
+                    }
+                    valueEnd = i++;
+                }
+                else if (i < objectEnd && data[i] == '[') {
+                    valueStart = i;
+                    while (i < objectEnd && data[i] != ']') {
+                        i++;
+                    }
+                    valueEnd = ++i;
+                }
+                else {
+                    valueStart = i;
+                    while (i < objectEnd && data[i] != ',' && data[i] != '}' && data[i] != ' ' && data[i] != '\n'
+                            && data[i] != '\r' && data[i] != '\t') {
+                        i++;
+                    }
+                    valueEnd = i;
+                    if (valueEnd - valueStart == 4 && data[valueStart] == 'n' && data[valueStart + 1] == 'u') {
+                        // A null is the same as leaving the key out
+                        key = -1;
+                    }
+                }
+                int column = key < 0 ? -1 : columnsByKey[key];
+                if (column >= 0) {
+                    fields.set(column, valueStart, valueEnd, escaped);
+                    if (key == MACHINE_ID_KEY) {
+                        fields.typeHint = IN_HOUSE;
+                    }
+                    else if (key == COMPANY_NAME_KEY) {
+                        fields.typeHint = OUTSOURCED;
+                    }
+                }
+                i = skipSpace(data, i, objectEnd);
+                if (i < objectEnd && data[i] == ',') {
+                    i++;
+                }
+            }
+        }
+
+        // Returns the position after the brace that closes the object opened just before from, counting the lines the
+        // object spans so the next record knows its line
+        private int closingBrace(byte[] data, int from, int length) {
+            int nesting = 1;
+            boolean quoted = false;
+            int i = from;
+            for (; i < length && nesting > 0; i++) {
+                byte b = data[i];
+                if (b == '\n') {
+                    line++;
+                }
+                if (quoted) {
+                    if (b == '\\') {
+                        i++;
+                    }
+                    else if (b == '"') {
+                        quoted = false;
+                    }
+                }
+                else if (b == '"') {
+                    quoted = true;
+                }
+                else if (b == '{') {
+                    nesting++;
+                }
+                else if (b == '}') {
+                    nesting--;
+                }
+            }
+            return i;
+        }
+
+        private int skipSpace(byte[] data, int i, int end) {
+            while (i < end && (data[i] == ' ' || data[i] == '\n' || data[i] == '\r' || data[i] == '\t')) {
+                i++;
+            }
+            return i;
+        }
+
+        private static int keyIndex(byte[] data, int start, int end) {
+            for (int key = 0; key < KEYS.length; key++) {
+                byte[] name = KEYS[key];
+                if (name.length == end - start) {
+                    int i = 0;
+                    while (i < name.length && name[i] == data[start + i]) {
+                        i++;
+                    }
+                    if (i == name.length) {
+                        return key;
+                    }
+                }
+            }
+            return -1;
+        }
+    }
+}
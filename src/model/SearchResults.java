@@ -0,0 +1,48 @@
+package model;
+
+import javafx.collections.ObservableListBase;
+
+import java.util.function.IntFunction;
+
+/** This class is the read-only observable list returned by the Inventory name searches. Rather than copying matches
+ * into a new ObservableArrayList, it wraps the array of matching IDs handed back by the name index and resolves each
+ * row through the Inventory ID index when a TableView asks for it. Rows whose Part or Product has since been removed
+ * from the Inventory resolve to null. Attempts to add or remove elements throw an UnsupportedOperationException.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class SearchResults<T> extends ObservableListBase<T> {
+
+    private final int[] ids;
+    private final IntFunction<T> resolver;
+
+    /** This is the SearchResults class constructor.
+     * @param ids the matching IDs in the order they should be shown
+     * @param resolver the ID lookup used to turn each ID into its Part or Product
+     * */
+    SearchResults(int[] ids, IntFunction<T> resolver) {
+        this.ids = ids;
+        this.resolver = resolver;
+    }
+
+    /** This method returns the Part or Product at a position in the results.
+     * @param index the position of the row
+     * @return the Part or Product with the ID at that position
+     * */
+    @Override
+    public T get(int index) {
+        if (index < 0 || index >= ids.length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + ids.length);
+        }
+        return resolver.apply(ids[index]);
+    }
+
+    /** This method returns the number of matches.
+     * @return the number of rows in the results
+     * */
+    @Override
+    public int size() {
+        return ids.length;
+    }
+}
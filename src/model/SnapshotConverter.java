@@ -0,0 +1,159 @@
+package model;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** This class is a command line tool that converts saved inventory into the memory-mapped snapshot format. It has two
+ * modes:
+ * <ul>
+ *     <li>{@code log <dataDir>} replays the snapshot and write-ahead log in a data directory, whether the snapshot is
+ *     mapped or in the older record format, and rewrites everything as one mapped snapshot.</li>
+ *     <li>{@code csv <parts.csv> <products.csv> <dataDir>} reads Parts and Products from CSV files and saves them as
+ *     the first snapshot of an empty data directory.</li>
+ * </ul>
+ * The parts file has the columns id, name, price, stock, min, max, type and source, where type is InHouse or
+ * Outsourced and source is the machine ID or company name. The products file has the columns id, name, price, stock,
+ * min, max and parts, where parts lists the IDs of the associated parts separated by semicolons. Fields holding commas
+ * or quotes are quoted as usual for CSV, and a first line starting with "id" is taken to be a header.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class SnapshotConverter {
+
+    private SnapshotConverter() { }
+
+    /** This is the main method that runs the conversion.
+     * @param args the mode followed by its paths
+     * */
+    public static void main(String[] args) {
+        try {
+            if (args.length == 2 && args[0].equals("log")) {
+                long sequence = InventoryLog.compact(Paths.get(args[1]));
+                System.out.println("Wrote a snapshot of " + args[1] + " up to record " + sequence);
+            }
+            else if (args.length == 4 && args[0].equals("csv")) {
+                convertCsv(Paths.get(args[1]), Paths.get(args[2]), Paths.get(args[3]));
+            }
+            else {
+                System.out.println("Usage: SnapshotConverter log <dataDir>");
+                System.out.println("       SnapshotConverter csv <parts.csv> <products.csv> <dataDir>");
+                System.exit(2);
+            }
+        }
+        catch (IOException | RuntimeException exception) {
+            System.out.println("Conversion failed: " + exception.getMessage());
+            System.exit(1);
+        }
+    }
+
+    private static void convertCsv(Path partsFile, Path productsFile, Path directory) throws IOException {
+        List<Part> parts = new ArrayList<>();
+        Map<Integer, Part> partsById = new HashMap<>();
+        for (String[] row : readCsv(partsFile, 8)) {
+            Part part;
+            if (row[6].equalsIgnoreCase("InHouse")) {
+                part = new InHouse(Integer.parseInt(row[0]), row[1], Double.parseDouble(row[2]),
+                        Integer.parseInt(row[3]), Integer.parseInt(row[4]), Integer.parseInt(row[5]),
+                        Integer.parseInt(row[7]));
+            }
+            else if (row[6].equalsIgnoreCase("Outsourced")) {
+                part = new Outsourced(Integer.parseInt(row[0]), row[1], Double.parseDouble(row[2]),
+                        Integer.parseInt(row[3]), Integer.parseInt(row[4]), Integer.parseInt(row[5]), row[7]);
+            }
+            else {
+                throw new IOException(partsFile + " has a part of unknown type " + row[6]);
+            }
+            parts.add(part);
+            partsById.put(part.getId(), part);
+        }
+
+        List<Product> products = new ArrayList<>();
+        for (String[] row : readCsv(productsFile, 7)) {
+            Product product = new Product(Integer.parseInt(row[0]), row[1], Double.parseDouble(row[2]),
+                    Integer.parseInt(row[3]), Integer.parseInt(row[4]), Integer.parseInt(row[5]));
+            for (String partId : row[6].split(";")) {
+                if (!partId.trim().isEmpty()) {
+                    Part part = partsById.get(Integer.parseInt(partId.trim()));
+                    if (part == null) {
+                        throw new IOException("Product " + product.getId() + " lists part " + partId.trim()
+                                + " which is not in " + partsFile);
+                    }
+                    product.addAssociatedPart(part);
+                }
+            }
+            products.add(product);
+        }
+
+        InventoryLog.seed(directory, parts, products);
+        // The imported IDs may fall inside the ranges new IDs are drawn from, so those are moved past them
+        IdAllocator ids = new IdAllocator(directory.resolve("ids.properties"), 1);
+        parts.stream().mapToLong(Part::getId).max()
+                .ifPresent(highest -> ids.reserveThrough(IdAllocator.Namespace.PART, highest));
+        products.stream().mapToLong(Product::getId).max()
+                .ifPresent(highest -> ids.reserveThrough(IdAllocator.Namespace.PRODUCT, highest));
+        System.out.println("Wrote a snapshot of " + parts.size() + " parts and " + products.size() + " products to "
+                + directory);
+    }
+
+    private static List<String[]> readCsv(Path file, int columns) throws IOException {
+        List<String[]> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && line.regionMatches(true, 0, "id", 0, 2))) {
+                    continue;
+                }
+                String[] row = splitCsvLine(line);
+                if (row.length != columns) {
+                    throw new IOException(file + " line " + lineNumber + " has " + row.length + " fields but "
+                            + columns + " were expected");
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static String[] splitCsvLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                }
+                else if (c == '"') {
+                    quoted = false;
+                }
+                else {
+                    field.append(c);
+                }
+            }
+            else if (c == '"') {
+                quoted = true;
+            }
+            else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+}
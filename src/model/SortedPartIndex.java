@@ -0,0 +1,119 @@
+package model;
+
+/** This class keeps every Part sorted by one of its fields, so the Parts with values in a range, and the Parts with
+ * the highest or lowest values, are found and counted in logarithmic time rather than by scanning the inventory. It
+ * follows the Part store as a listener and moves a Part in the sort order each time the field changes. Attached
+ * snapshot rows are indexed from the values saved in the rows, without building their Parts, and not until the index
+ * is first used, so they do not slow down starting the application. Changes arrive under the locks of different
+ * stripes at once, so the index has its own lock.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see RankTree
+ * */
+final class SortedPartIndex implements StoreListener<Part> {
+
+    private final PartMeasure measure;
+    private final RankTree tree = new RankTree();
+    // Rows attached but not yet indexed, which are indexed before anything else touches the tree
+    private int[] attachedIds;
+    private LazyRows<Part> attachedRows;
+
+    /** This is the SortedPartIndex class constructor.
+     * @param measure the field to sort Parts by
+     * */
+    SortedPartIndex(PartMeasure measure) {
+        this.measure = measure;
+    }
+
+    /** This method returns the IDs of the Parts with values in a range.
+     * @param low the lowest value in the range
+     * @param high the highest value in the range
+     * @return the Part IDs in ascending order of value and then ID
+     * */
+    synchronized int[] between(double low, double high) {
+        loadAttached();
+        return tree.between(measure.lowKey(low), measure.highKey(high), Integer.MAX_VALUE);
+    }
+
+    /** This method counts the Parts with values in a range.
+     * @param low the lowest value in the range
+     * @param high the highest value in the range
+     * @return the number of Parts
+     * */
+    synchronized int count(double low, double high) {
+        loadAttached();
+        return tree.count(measure.lowKey(low), measure.highKey(high));
+    }
+
+    /** This method returns the IDs of the Parts with the highest values.
+     * @param count the number of Parts to return
+     * @return up to count Part IDs, the highest value first
+     * */
+    synchronized int[] highest(int count) {
+        loadAttached();
+        return tree.highest(count);
+    }
+
+    /** This method returns the IDs of the Parts with the lowest values.
+     * @param count the number of Parts to return
+     * @return up to count Part IDs, the lowest value first
+     * */
+    synchronized int[] lowest(int count) {
+        loadAttached();
+        return tree.lowest(count);
+    }
+
+    @Override
+    public synchronized void added(Part item) {
+        loadAttached();
+        tree.put(item.getId(), measure.keyOf(item));
+    }
+
+    @Override
+    public synchronized void replaced(Part oldItem, Part newItem) {
+        loadAttached();
+        tree.put(newItem.getId(), measure.keyOf(newItem));
+    }
+
+    @Override
+    public synchronized void patched(Part item) {
+        loadAttached();
+        tree.put(item.getId(), measure.keyOf(item));
+    }
+
+    @Override
+    public synchronized void removed(Part item) {
+        loadAttached();
+        tree.remove(item.getId());
+    }
+
+    @Override
+    public void batchStarted() {
+        // Changes in a batch are indexed as they are made
+    }
+
+    @Override
+    public void batchFinished() {
+        // Nothing was held back
+    }
+
+    @Override
+    public synchronized void attached(int[] ids, LazyRows<Part> rows) {
+        attachedIds = ids;
+        attachedRows = rows;
+    }
+
+    // Needs the index's lock
+    private void loadAttached() {
+        if (attachedRows == null) {
+            return;
+        }
+        long[] keys = new long[attachedIds.length];
+        for (int row = 0; row < keys.length; row++) {
+            keys[row] = measure.keyAt(attachedRows, row);
+        }
+        tree.load(attachedIds, keys);
+        attachedIds = null;
+        attachedRows = null;
+    }
+}
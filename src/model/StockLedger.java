@@ -0,0 +1,209 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/** This class takes stock from several Parts at once as one transaction, which is what building a Product needs. A
+ * transaction locks the stripes of the Part store holding its Parts, in stripe order so that two transactions can never
+ * deadlock, checks every Part and then changes every Part before letting go, so other threads see either all of the
+ * change or none of it. No lock covers the whole store, so transactions on Parts in different stripes run side by side
+ * and only those sharing a stripe wait for one another.
+ * Stock can be taken straight away, or reserved first and taken later when the reservation is committed. Reserved stock
+ * stays in the Part until then, but no other reservation or transaction can have it, so a reservation that was granted
+ * can always be committed unless the Part is edited directly in the meantime. Either way a transaction is turned down
+ * if it would leave any of its Parts with less stock than the Part's minimum, counting the stock already reserved.
+ * Reservations are only held in memory, so a restart cancels any that were still open.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class StockLedger {
+
+    private final EntityStore<Part> parts;
+    // Stock reserved from each Part. An entry only changes under the write lock of its Part's stripe, and different
+    // stripes change their entries at the same time, which is why the map is a concurrent one
+    private final ConcurrentHashMap<Integer, Integer> reserved = new ConcurrentHashMap<>();
+    // Told the IDs of the Parts whose reserved stock changed, while their stripes are still locked
+    private final List<Consumer<? super int[]>> listeners = new CopyOnWriteArrayList<>();
+
+    /** This is the StockLedger class constructor.
+     * @param parts the Part store to take stock from
+     * */
+    StockLedger(EntityStore<Part> parts) {
+        this.parts = parts;
+    }
+
+    /** This method adds a listener that is told whenever the stock reserved from some Parts changes.
+     * @param listener receives the IDs of the Parts, which it must not change
+     * */
+    void addListener(Consumer<? super int[]> listener) {
+        listeners.add(listener);
+    }
+
+    /** This method returns how much of a Part's stock is reserved.
+     * @param partId the ID of the Part
+     * @return the reserved stock, which is 0 for a Part with no open reservation
+     * */
+    int reserved(int partId) {
+        return reservedOf(partId);
+    }
+
+    /** This method returns how much of a Part's stock is not reserved.
+     * @param partId the ID of the Part
+     * @return the stock that is not reserved, or -1 if there is no such Part
+     * */
+    int available(int partId) {
+        Part part = parts.get(partId);
+        return part == null ? -1 : part.getStock() - reservedOf(partId);
+    }
+
+    /** This method reserves stock from several Parts as one transaction.
+     * @param partIds the IDs of the Parts, which may repeat, in which case their quantities are added together
+     * @param quantities the quantity to reserve from each Part
+     * @return the reservation, or null if a Part does not exist or would fall below its minimum
+     * @throws IllegalArgumentException if the arrays differ in length or a quantity is not positive
+     * */
+    StockReservation reserve(int[] partIds, int[] quantities) {
+        int[][] totals = totals(partIds, quantities);
+        boolean[] granted = new boolean[1];
+        parts.atomically(totals[0], () -> {
+            if (enough(totals[0], totals[1])) {
+                for (int i = 0; i < totals[0].length; i++) {
+                    reserved.merge(totals[0][i], totals[1][i], Integer::sum);
+                }
+                reservationsChanged(totals[0]);
+                granted[0] = true;
+            }
+        });
+        return granted[0] ? new StockReservation(this, totals[0], totals[1]) : null;
+    }
+
+    /** This method takes stock from several Parts as one transaction, without reserving it first.
+     * @param partIds the IDs of the Parts, which may repeat, in which case their quantities are added together
+     * @param quantities the quantity to take from each Part
+     * @return true if the stock was taken, or false if a Part does not exist or would fall below its minimum, in which
+     * case nothing was taken
+     * @throws IllegalArgumentException if the arrays differ in length or a quantity is not positive
+     * */
+    boolean take(int[] partIds, int[] quantities) {
+        int[][] totals = totals(partIds, quantities);
+        boolean[] taken = new boolean[1];
+        parts.atomically(totals[0], () -> {
+            if (enough(totals[0], totals[1])) {
+                takeChecked(totals[0], totals[1]);
+                taken[0] = true;
+            }
+        });
+        return taken[0];
+    }
+
+    /** This method adds to a Part's stock, or takes from it for a negative change. Stock taken must leave the Part at
+     * or above its Minimum, leaving out what is reserved, and stock added must leave it at or below its Maximum. Each
+     * limit only applies to the direction it guards, so a Part already short of its Minimum can still be restocked.
+     * @param partId the ID of the Part
+     * @param change the amount to add to the stock
+     * @return true if the stock was changed, or false if there is no such Part or the change was turned down
+     * */
+    boolean adjust(int partId, int change) {
+        boolean[] adjusted = new boolean[1];
+        parts.atomically(new int[] {partId}, () -> {
+            Part part = parts.get(partId);
+            long stock = part == null ? 0 : (long) part.getStock() + change;
+            if (part != null && (change <= 0 || stock <= part.getMax())
+                    && (change >= 0 || stock - reservedOf(partId) >= part.getMin())) {
+                parts.patch(partId, patched -> patched.setStock((int) stock));
+                adjusted[0] = true;
+            }
+        });
+        return adjusted[0];
+    }
+
+    // Takes a reservation's stock, or gives it back if a Part was edited down since it was reserved
+    boolean commit(int[] partIds, int[] quantities) {
+        boolean[] taken = new boolean[1];
+        parts.atomically(partIds, () -> {
+            release(partIds, quantities);
+            if (enough(partIds, quantities)) {
+                takeChecked(partIds, quantities);
+                taken[0] = true;
+            }
+        });
+        return taken[0];
+    }
+
+    // Gives a reservation's stock back
+    void cancel(int[] partIds, int[] quantities) {
+        parts.atomically(partIds, () -> release(partIds, quantities));
+    }
+
+    // Needs the write locks of the Parts' stripes
+    private boolean enough(int[] partIds, int[] quantities) {
+        for (int i = 0; i < partIds.length; i++) {
+            Part part = parts.get(partIds[i]);
+            if (part == null || part.getStock() - reservedOf(partIds[i]) - quantities[i] < part.getMin()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Needs the write locks of the Parts' stripes
+    private void takeChecked(int[] partIds, int[] quantities) {
+        for (int i = 0; i < partIds.length; i++) {
+            int quantity = quantities[i];
+            parts.patch(partIds[i], part -> part.setStock(part.getStock() - quantity));
+        }
+    }
+
+    // Needs the write locks of the Parts' stripes
+    private void release(int[] partIds, int[] quantities) {
+        for (int i = 0; i < partIds.length; i++) {
+            int quantity = quantities[i];
+            reserved.computeIfPresent(partIds[i], (partId, amount) -> amount > quantity ? amount - quantity : null);
+        }
+        reservationsChanged(partIds);
+    }
+
+    private void reservationsChanged(int[] partIds) {
+        for (Consumer<? super int[]> listener : listeners) {
+            listener.accept(partIds);
+        }
+    }
+
+    private int reservedOf(int partId) {
+        Integer amount = reserved.get(partId);
+        return amount == null ? 0 : amount;
+    }
+
+    // Adds up the quantities of repeated Part IDs and returns the distinct IDs in ascending order with their totals
+    private static int[][] totals(int[] partIds, int[] quantities) {
+        if (partIds.length != quantities.length) {
+            throw new IllegalArgumentException("There must be one quantity for each Part ID");
+        }
+        long[] pairs = new long[partIds.length];
+        for (int i = 0; i < partIds.length; i++) {
+            if (quantities[i] <= 0) {
+                throw new IllegalArgumentException("Quantities must be positive, not " + quantities[i]);
+            }
+            pairs[i] = ((long) partIds[i] << 32) | i;
+        }
+        Arrays.sort(pairs);
+        int[] ids = new int[partIds.length];
+        int[] totals = new int[partIds.length];
+        int size = 0;
+        for (long pair : pairs) {
+            int id = (int) (pair >> 32);
+            int quantity = quantities[(int) pair];
+            if (size > 0 && ids[size - 1] == id) {
+                totals[size - 1] = Math.addExact(totals[size - 1], quantity);
+            }
+            else {
+                ids[size] = id;
+                totals[size++] = quantity;
+            }
+        }
+        return new int[][] {Arrays.copyOf(ids, size), Arrays.copyOf(totals, size)};
+    }
+}
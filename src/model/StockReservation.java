@@ -0,0 +1,59 @@
+package model;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/** This class is stock reserved from several Parts by Inventory.reserveStock(), which stays in the Parts but cannot be
+ * reserved or taken by anyone else until the reservation is committed, which takes the stock, or cancelled, which
+ * gives it back. A reservation can only be finished once, and closing one that has not been committed cancels it, so
+ * it can be held in a try-with-resources block.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see Inventory#reserveStock(int[], int[])
+ * */
+public final class StockReservation implements AutoCloseable {
+
+    private final StockLedger ledger;
+    private final int[] partIds;
+    private final int[] quantities;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    StockReservation(StockLedger ledger, int[] partIds, int[] quantities) {
+        this.ledger = ledger;
+        this.partIds = partIds;
+        this.quantities = quantities;
+    }
+
+    /** This method returns the quantity reserved from a Part.
+     * @param partId the ID of the Part
+     * @return the quantity, or 0 if nothing was reserved from the Part
+     * */
+    public int getQuantity(int partId) {
+        for (int i = 0; i < partIds.length; i++) {
+            if (partIds[i] == partId) {
+                return quantities[i];
+            }
+        }
+        return 0;
+    }
+
+    /** This method takes the reserved stock from every Part at once.
+     * @return true if the stock was taken, or false if the reservation was already finished, or a Part was deleted or
+     * edited below what the reservation needs since it was made, in which case the reservation is cancelled instead
+     * */
+    public boolean commit() {
+        return finished.compareAndSet(false, true) && ledger.commit(partIds, quantities);
+    }
+
+    /** This method gives the reserved stock back, unless the reservation was already finished. */
+    public void cancel() {
+        if (finished.compareAndSet(false, true)) {
+            ledger.cancel(partIds, quantities);
+        }
+    }
+
+    /** This method cancels the reservation if it has not been committed. */
+    @Override
+    public void close() {
+        cancel();
+    }
+}
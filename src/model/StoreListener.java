@@ -0,0 +1,63 @@
+package model;
+
+/** This interface is implemented by anything that needs to follow the changes made to an EntityStore, such as the
+ * observable list projections and the write-ahead log. The store calls these methods while it still holds the lock
+ * on the changed entry's stripe, so every listener sees the changes to any one ID in the order they were made.
+ * Implementations must therefore be quick and must not call back into the store.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+interface StoreListener<T> {
+
+    /** This method is called after a Part or Product is stored under an ID that was not in use.
+     * @param item the item that was added
+     * */
+    void added(T item);
+
+    /** This method is called after a Part or Product replaces the one stored under the same ID.
+     * @param oldItem the item that was replaced
+     * @param newItem the item that took its place
+     * */
+    void replaced(T oldItem, T newItem);
+
+    /** This method is called just before fields of the Part or Product stored under an ID are changed in place by a
+     * patch, under the same lock as the call to patched() that follows, so a listener keeping running totals can take
+     * out what the item added to them. Most listeners only need patched(), so this does nothing unless overridden.
+     * @param item the item holding the fields as they are before the patch
+     * */
+    default void patching(T item) {
+        // Nothing to do before a patch
+    }
+
+    /** This method is called after fields of the Part or Product stored under an ID are changed in place by a patch.
+     * Over a store that keeps the objects themselves, the item is the same object as before, and over a columnar store
+     * it is a new copy of the changed row.
+     * @param item the item holding the patched fields
+     * */
+    void patched(T item);
+
+    /** This method is called after a Part or Product is removed from the store.
+     * @param item the item that was removed
+     * */
+    void removed(T item);
+
+    /** This method is called before a batch of changes made with EntityStore.atomically(), on the thread making them
+     * and while it holds the lock of every stripe the batch touches. The changes in the batch follow on the same thread,
+     * and a listener may hold on to them until the batch finishes so that it can publish them together.
+     * */
+    void batchStarted();
+
+    /** This method is called after the last change in a batch, on the same thread and still under the same locks, and
+     * also when the batch stops part way because a change failed, since the changes made before that are kept.
+     * */
+    void batchFinished();
+
+    /** This method is called after rows from a saved snapshot are attached to an empty store. The Parts or Products in
+     * those rows are only built when the store is first asked for them, so only their IDs and the rows themselves are
+     * passed on, and a listener that reads the rows must not build them.
+     * @param ids the IDs of the attached rows in ascending order
+     * @param rows the attached rows
+     * */
+    void attached(int[] ids, LazyRows<T> rows);
+}
@@ -0,0 +1,50 @@
+package model;
+
+import java.util.function.Consumer;
+
+/** This interface is the storage behind one stripe of an EntityStore. The store guards every call with the stripe's
+ * lock, so implementations need no locking of their own. ObjectStorage keeps the stored Parts and Products as they
+ * are, while PartTable and ProductTable copy them into columns and hand back a new view object on every read.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+interface StripeStorage<T> {
+
+    /** This method returns the Part or Product stored under an ID.
+     * @param id the ID to search for
+     * @return the stored item or null if the ID is not in use
+     * */
+    T get(int id);
+
+    /** This method stores a Part or Product under an ID, replacing whatever was stored under that ID before.
+     * @param id the item's ID
+     * @param item the item to store
+     * @return the item that was replaced, as it was before being replaced, or null if the ID was not in use
+     * */
+    T put(int id, T item);
+
+    /** This method tells whether an item is the one currently stored under an ID, rather than a stale reference to
+     * one that has since been replaced. Storage that keeps copies rather than the items themselves also treats an item
+     * as current while its fields still match the stored row.
+     * @param id the item's ID
+     * @param item the item to check
+     * @return true if the item is current
+     * */
+    boolean isCurrent(int id, T item);
+
+    /** This method removes whatever is stored under an ID.
+     * @param id the ID to remove
+     * */
+    void remove(int id);
+
+    /** This method visits every stored item.
+     * @param action the action to run for each item
+     * */
+    void forEach(Consumer<? super T> action);
+
+    /** This method returns the number of stored items.
+     * @return the item count
+     * */
+    int size();
+}
@@ -0,0 +1,41 @@
+package model;
+
+/** This class is the totals of the Outsourced Parts bought from one company, as returned by
+ * Inventory.getSupplierTotals(). It is a copy taken at one moment and does not change afterwards.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class SupplierTotals {
+
+    private final String companyName;
+    private final long partCount;
+    private final long stock;
+    private final long valueCents;
+
+    SupplierTotals(String companyName, long partCount, long stock, long valueCents) {
+        this.companyName = companyName;
+        this.partCount = partCount;
+        this.stock = stock;
+        this.valueCents = valueCents;
+    }
+
+    /** Gets the company name field.
+     * @return the company name as a String
+     */
+    public String getCompanyName() { return companyName; }
+
+    /** Gets the part count field.
+     * @return the number of Parts from the company as a long
+     */
+    public long getPartCount() { return partCount; }
+
+    /** Gets the stock field.
+     * @return the stock of every Part from the company added together as a long
+     */
+    public long getStock() { return stock; }
+
+    /** Gets the value field.
+     * @return the price times the stock of every Part from the company added together, as a double
+     */
+    public double getValue() { return valueCents / 100.0; }
+}
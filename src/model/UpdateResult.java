@@ -0,0 +1,20 @@
+package model;
+
+/** This enum is the outcome of an update made with Inventory.updatePart(Part, int) or
+ * Inventory.updateProduct(Product, int), which only replace a Part or Product if nobody has changed it since its version
+ * was read.
+ * @author Greg Farrell
+ * @version 1.0
+ * @see Versioned
+ * */
+public enum UpdateResult {
+
+    /** The Part or Product was replaced. */
+    UPDATED,
+
+    /** The Part or Product was changed after its version was read, so it was left as it is. */
+    CONFLICT,
+
+    /** Nothing is stored under the ID any more, so nothing was replaced. */
+    NOT_FOUND
+}
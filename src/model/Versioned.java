@@ -0,0 +1,34 @@
+package model;
+
+/** This class pairs a Part or Product with the version it had when it was looked up. Every change made through the
+ * Inventory class, whether a replacement, a patch or a deletion, moves an ID on to a new version, so handing the
+ * version back to Inventory.updatePart(Part, int) or Inventory.updateProduct(Product, int) only succeeds if nothing has
+ * changed in between.
+ * @param <T> Part or Product
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+public final class Versioned<T> {
+
+    private final T item;
+    private final int version;
+
+    /** This is the Versioned class constructor
+     * @param item the Part or Product
+     * @param version the version it had when it was read
+     * */
+    Versioned(T item, int version) {
+        this.item = item;
+        this.version = version;
+    }
+
+    /** Gets the Part or Product.
+     * @return the item as it was when it was looked up
+     */
+    public T getItem() { return item; }
+
+    /** Gets the version.
+     * @return the version the item had when it was looked up
+     */
+    public int getVersion() { return version; }
+}
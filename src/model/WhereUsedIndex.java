@@ -0,0 +1,193 @@
+package model;
+
+import java.util.Arrays;
+import java.util.List;
+
+/** This class is a reverse index from each Part ID to the IDs of the Products that have it as an associated part, so
+ * the question of where a Part is used is answered in time proportional to the answer rather than by scanning every
+ * Product. It follows the Product store as a listener, so the index changes when a Product with different associated
+ * parts is stored, patched or removed, not on each call to addAssociatedPart() or deleteAssociatedPart(). A Product
+ * that has been stored must not have its associated parts changed in place, since the store would not hear of it; the
+ * Modify Product screen edits a copy and stores it on saving for this reason. Each Product's associated part IDs are
+ * remembered as they were last stored, which is what every change is compared against, and a Product that lists the
+ * same Part more than once is counted once per listing, so removing one listing leaves it using the Part.
+ * Attached snapshot rows are indexed from the IDs saved in the rows, without building their Products. Changes arrive
+ * under the locks of different stripes at once, so the index has its own lock.
+ * @author Greg Farrell
+ * @version 1.0
+ * */
+final class WhereUsedIndex implements StoreListener<Product> {
+
+    private static final int[] NONE = new int[0];
+
+    // Each Product's associated part IDs as last stored, sorted
+    private final IntIndex<int[]> partsOf = new IntIndex<>();
+    private final IntIndex<Users> usersOf = new IntIndex<>();
+
+    /** This method returns the IDs of every Product that has a Part as an associated part.
+     * @param partId the ID of the Part
+     * @return the Product IDs in ascending order, which may be none
+     * */
+    synchronized int[] productsUsing(int partId) {
+        Users users = usersOf.get(partId);
+        return users == null ? NONE : Arrays.copyOf(users.productIds, users.size);
+    }
+
+    /** This method returns the IDs of a Product's associated parts as they were last stored.
+     * @param productId the ID of the Product
+     * @return the part IDs in ascending order, with a Part listed more than once repeated, which may be none. The array
+     * must not be changed
+     * */
+    synchronized int[] partsOf(int productId) {
+        int[] partIds = partsOf.get(productId);
+        return partIds == null ? NONE : partIds;
+    }
+
+    /** This method tells whether any Product has a Part as an associated part.
+     * @param partId the ID of the Part
+     * @return true if at least one Product uses the Part
+     * */
+    synchronized boolean isUsed(int partId) {
+        return usersOf.get(partId) != null;
+    }
+
+    @Override
+    public void added(Product item) {
+        associate(item.getId(), partIdsOf(item));
+    }
+
+    @Override
+    public void replaced(Product oldItem, Product newItem) {
+        associate(newItem.getId(), partIdsOf(newItem));
+    }
+
+    @Override
+    public void patched(Product item) {
+        associate(item.getId(), partIdsOf(item));
+    }
+
+    @Override
+    public void removed(Product item) {
+        associate(item.getId(), NONE);
+    }
+
+    @Override
+    public void batchStarted() {
+        // Changes in a batch are indexed as they are made
+    }
+
+    @Override
+    public void batchFinished() {
+        // Nothing was held back
+    }
+
+    @Override
+    public synchronized void attached(int[] ids, LazyRows<Product> rows) {
+        for (int row = 0; row < ids.length; row++) {
+            int[] partIds = rows.partIdsAt(row);
+            Arrays.sort(partIds);
+            associate(ids[row], partIds);
+        }
+    }
+
+    private static int[] partIdsOf(Product product) {
+        List<Part> associated = product.getAllAssociatedParts();
+        if (associated.isEmpty()) {
+            return NONE;
+        }
+        int[] partIds = new int[associated.size()];
+        for (int i = 0; i < partIds.length; i++) {
+            partIds[i] = associated.get(i).getId();
+        }
+        Arrays.sort(partIds);
+        return partIds;
+    }
+
+    // Moves a Product from the part IDs it was stored with last time to a new sorted set, touching only the Parts
+    // whose counts change
+    private synchronized void associate(int productId, int[] newPartIds) {
+        int[] oldPartIds = partsOf.get(productId);
+        if (oldPartIds == null) {
+            oldPartIds = NONE;
+        }
+        if (Arrays.equals(oldPartIds, newPartIds)) {
+            return;
+        }
+        // Both lists are sorted, so one merge finds every Part listed a different number of times
+        int i = 0;
+        int j = 0;
+        while (i < oldPartIds.length || j < newPartIds.length) {
+            int partId = j == newPartIds.length || (i < oldPartIds.length && oldPartIds[i] < newPartIds[j])
+                    ? oldPartIds[i] : newPartIds[j];
+            int before = 0;
+            while (i < oldPartIds.length && oldPartIds[i] == partId) {
+                before++;
+                i++;
+            }
+            int after = 0;
+            while (j < newPartIds.length && newPartIds[j] == partId) {
+                after++;
+                j++;
+            }
+            if (before != after) {
+                count(partId, productId, after);
+            }
+        }
+        if (newPartIds.length == 0) {
+            partsOf.remove(productId);
+        }
+        else {
+            partsOf.put(productId, newPartIds);
+        }
+    }
+
+    private void count(int partId, int productId, int listings) {
+        Users users = usersOf.get(partId);
+        if (users == null) {
+            users = new Users();
+            usersOf.put(partId, users);
+        }
+        users.set(productId, listings);
+        if (users.size == 0) {
+            usersOf.remove(partId);
+        }
+    }
+
+    /** This class is the Products using one Part, as Product IDs kept in ascending order with the number of times each
+     * Product lists the Part. Most Parts are used by a handful of Products, so sorted arrays take less room than a hash
+     * table and hand back the answer to a query with a single copy.
+     * */
+    private static final class Users {
+        int[] productIds = new int[2];
+        int[] listings = new int[2];
+        int size;
+
+        void set(int productId, int count) {
+            int at = Arrays.binarySearch(productIds, 0, size, productId);
+            if (at >= 0) {
+                if (count > 0) {
+                    listings[at] = count;
+                }
+                else {
+                    System.arraycopy(productIds, at + 1, productIds, at, size - at - 1);
+                    System.arraycopy(listings, at + 1, listings, at, size - at - 1);
+                    size--;
+                }
+                return;
+            }
+            if (count == 0) {
+                return;
+            }
+            at = -at - 1;
+            if (size == productIds.length) {
+                productIds = Arrays.copyOf(productIds, size * 2);
+                listings = Arrays.copyOf(listings, size * 2);
+            }
+            System.arraycopy(productIds, at, productIds, at + 1, size - at);
+            System.arraycopy(listings, at, listings, at + 1, size - at);
+            productIds[at] = productId;
+            listings[at] = count;
+            size++;
+        }
+    }
+}